@@ -6,17 +6,18 @@ package org.theseed.web;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
 import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,16 +25,33 @@ import org.theseed.basic.ParseFailureException;
 import org.theseed.reports.CoreHtmlUtilities;
 import org.theseed.rna.RnaData;
 import org.theseed.rna.RnaFeatureData;
-import org.theseed.subsystems.GenomeSubsystemTable;
 import org.theseed.utils.FloatList;
-import org.theseed.web.rna.CellDescriptor;
+import org.theseed.web.rna.CoexpressionIndex;
+import org.theseed.web.rna.ColumnBatch;
 import org.theseed.web.rna.ColumnDescriptor;
 import org.theseed.web.rna.ColumnQualifierType;
+import org.theseed.web.rna.ColumnRangeFilter;
+import org.theseed.web.rna.FeatureSet;
+import org.theseed.web.rna.GeneNameIndex;
+import org.theseed.web.rna.GeneSetEnrichment;
+import org.theseed.web.rna.GeneStatsTable;
+import org.theseed.web.rna.GroupCatalog;
+import org.theseed.web.rna.HeatmapImage;
+import org.theseed.web.rna.LocationIndex;
 import org.theseed.web.rna.MultiKey;
 import org.theseed.web.rna.NewColumnCreator;
+import org.theseed.web.rna.RangeCodes;
 import org.theseed.web.rna.RnaDataType;
+import org.theseed.web.rna.RnaDatabaseCatalog;
+import org.theseed.web.rna.RegionRowFilter;
+import org.theseed.web.rna.RnaFeatureIndex;
+import org.theseed.web.rna.RowClustering;
 import org.theseed.web.rna.RowFilter;
+import org.theseed.web.rna.RowFilterExpression;
+import org.theseed.web.rna.SampleFragmentIndex;
+import org.theseed.web.rna.SampleSeriesIndex;
 import org.theseed.web.rna.SimpleColumnDescriptor;
+import org.theseed.web.rna.SubsystemIndex;
 
 import j2html.tags.ContainerTag;
 import j2html.tags.DomContent;
@@ -46,7 +64,9 @@ import static j2html.TagCreator.*;
  * a column for sorting.
  *
  * The feature information consists of the feature ID, its common gene name, and a list of subsystem IDs.  The
- * subsystem information is taken from the "rnaSubs.txt" file.
+ * subsystem information is taken from the "rnaSubs.txt" file, and is indexed by feature ordinal in a cached
+ * subsystem index.  When co-expression filtering is in effect, a column containing each feature's correlation with the
+ * focus peg follows the baseline.
  *
  * Each column is titled with a sample name.  Sample names have multiple components separated by underscores.  These are
  * translated to spaces for display to allow wrapping.  Differential columns have two sample names separated by a colored slash.
@@ -56,8 +76,13 @@ import static j2html.TagCreator.*;
  * The binary repository of the RNA data is in "fpkm.ser" in this directory.
  *
  * The specification of a column is (0) name of primary sample, (1) optional name of secondary sample.  If the second
- * column is present, then the display is differential with the primary sample in the numerator.  A list of column
- * specifications for previous columns is stored in the workspace data.
+ * column is present, then the display is differential with the primary sample in the numerator.  The primary sample
+ * can also be an aggregate of the form "mean(A+B+C)" or "median(A+B+C)", in which case the secondary sample can be
+ * another aggregate.  Finally, a column can display a differential-expression statistic comparing two sample groups:
+ * the primary is "de(P1:P2)", where P1 and P2 are sample-name patterns, and the secondary is "lfc", "t", or "padj".
+ * A column can also be computed from a formula over samples, such as "=log2((A+B)/2/baseline)", which is compiled
+ * once and evaluated for the whole database at once.
+ * A list of column specifications for previous columns is stored in the workspace data.
  *
  * Column specifications are kept in a cookie variable.  The variable name is "column." plus the configuration name.  The
  * configuration name cannot contain spaces or special characters.
@@ -72,16 +97,39 @@ import static j2html.TagCreator.*;
  * --type		type of RNA Seq data to display
  * --name		name of the column configuration to use
  * --cmd		command to run for new columns:  TIME1 (all times for sample 1), TIMES (matching times for both samples),
- * 				SINGLE (only one column)
+ * 				TIME0 (all times for sample 1 over its earliest time), REPLICATES (all times for every replicate
+ * 				series of sample 1), SINGLE (only one column), PATTERN (one column for each sample matching the
+ * 				sample 1 pattern), MEAN or MEDIAN (one aggregate column for all the primary samples), DIFFEXP
+ * 				(differential-expression statistics for the sample groups matching the two sample patterns), or
+ * 				FORMULA (one column computed from the formula given as the primary sample)
  * --colFilter	type of column to use in difference filter-- DIFFERENTIAL, VALUE, or NONE
  * --ranges		comma-delimited list of range limits, from lowest to highest (maximum 3)
  * --rowFilter	rule to use for difference filter; DIFFERENT, NONE
+ * --filter		row-filter expression for EXPRESSION filtering, combining filter types with "&", "|", and "!"
+ * 				(see RowFilterExpression)
  * --focus		if specified, the ID of a peg; the screen will scroll to that peg
  * --subsystem	subsystem to color
  * --group		focus operon/regulon/modulon group for group filtering
  * --filterCol	index of the column to filter on for row filtering on column values
  * --filterMin	minimum value for row filtering on column values
- * --genes		comma-delimited list of gene names to use for gene filtering
+ * --colFilters	comma-delimited list of column conditions for column range filtering, each consisting of a column
+ * 				index followed by a comparison ("2>=10.0"), a range ("3=0.5..2.0"), or a quantile ("0top5" or
+ * 				"1bottom10%") (see ColumnRangeFilter)
+ * --colMode	method for combining the column conditions (AND or OR)
+ * --genes		comma-delimited list of gene names to use for gene filtering; a name can be a b-number, and can
+ * 				contain "*" and "?" wildcards (e.g. "thr*")
+ * --set		name of a saved feature set for feature-set filtering
+ * --saveSet	if specified, the name under which to save the displayed features as a feature set
+ * --neighbors	number of co-expressed genes to show for co-expression filtering
+ * --window		maximum distance in base pairs from the focus peg (or its operon) for region filtering
+ * --strand		if specified, region filtering only shows features on the same strand as the focus peg
+ * --cluster	if specified, the rows are ordered by hierarchical clustering of their column values instead of by
+ * 				the sort column
+ * --heatmap	if specified, the rows are displayed as a heatmap image instead of a table
+ * --quantiles	if specified and no range limits are given, value columns are colored by comparing each value to the
+ * 				feature's 10th and 90th percentiles over all samples instead of to its baseline
+ * --enrich		if specified, the displayed rows are tested for enrichment in subsystems, regulons, and groups
+ * --fdr		maximum adjusted p-value for categories in the enrichment panel (default 0.05)
  *
  * @author Bruce Parrello
  *
@@ -93,28 +141,46 @@ public class ColumnProcessor extends WebProcessor {
     protected static Logger log = LoggerFactory.getLogger(ColumnProcessor.class);
     /** RNA data repository */
     private RnaData data;
-    /** subsystem data table */
-    private GenomeSubsystemTable subTable;
+    /** file containing the RNA data repository */
+    private File dataFile;
+    /** feature ordinal index for the RNA data */
+    private RnaFeatureIndex featIndex;
+    /** subsystem table file */
+    private File subFile;
+    /** subsystem index for the RNA data */
+    private SubsystemIndex subIndex;
+    /** per-feature summary statistics for the RNA data */
+    private GeneStatsTable geneStats;
+    /** location index for the RNA data */
+    private LocationIndex locIndex;
     /** list of sample names */
     private List<String> samples;
     /** array of range limits; each array entry is the exclusive upper limit for the range */
     private double[] rangeLimits;
-    /** cell descriptors for the current row */
-    private List<CellDescriptor> row;
-    /** cell descriptors for the range-colored elements */
-    private List<CellDescriptor> coloredCells;
     /** set of columns to be range-colored */
     private BitSet coloredColumns;
     /** row filter */
     private RowFilter rowFilterObject;
-    /** set of features in the focus subsystem */
-    private Set<String> subFids;
+    /** ordinal of the focus peg, or -1 if there is none */
+    private int focusIdx;
+    /** correlation of each feature with the focus peg, or NULL if co-expression filtering is not in effect */
+    private double[] focusCorrelations;
+    /** ordinals of the features in the focus subsystem */
+    private BitSet subMembers;
     /** TRUE if we are doing baseline coloring (the default) */
     private boolean baseLineColoring;
-    /** list of all possible filter groups */
-    private Set<String> filterGroupList;
-    /** column descriptor for filtering column */
-    private ColumnDescriptor filterColumnData;
+    /** group catalog for the RNA data */
+    private GroupCatalog groupCatalog;
+    /** gene name index for the RNA data */
+    private GeneNameIndex geneIndex;
+    /** conditions for column range filtering */
+    private List<ColumnRangeFilter.Condition> columnConditions;
+    /** values of the table columns, indexed by feature ordinal */
+    private ColumnBatch columnValues;
+    /** range codes of the table cells, indexed by feature ordinal */
+    private RangeCodes rangeCodes;
+    /** compiled row-filter expression, or NULL if there is none */
+    private RowFilterExpression rowExpression;
     /** rna data type array */
     private RnaDataType[] rnaTypes;
     /** actual RNA data type */
@@ -127,8 +193,31 @@ public class ColumnProcessor extends WebProcessor {
     public static final String RNA_RAW_DATA_FILE_NAME = "fpkm.ser";
     /** column configuration variable name prefix */
     public static final String COLUMNS_PREFIX = "Columns.";
-    /** number of columns before the data section */
+    /** number of columns before the data section (not counting the correlation column) */
     private static final int HEAD_COLS = 9;
+    /** format for the URL of a feature's neighborhood display */
+    private static final String REGION_URL_FORMAT = "/rna.cgi/columns?focus=%s;rowFilter=REGION;sortCol=-1";
+    /** format for the heatmap click-map script; the parameters are the feature IDs, the row labels, and the region URL */
+    private static final String HEATMAP_SCRIPT =
+            "var heatFids = [%s];%n" +
+            "var heatLabels = [%s];%n" +
+            "function heatRow(event, img) {%n" +
+            "    return Math.floor(event.offsetY * img.naturalHeight / img.clientHeight);%n" +
+            "};%n" +
+            "function heatClick(event, img) {%n" +
+            "    var r = heatRow(event, img);%n" +
+            "    if (r >= 0 && r < heatFids.length)%n" +
+            "        window.open('%s'.replace('" + SubsystemIndex.FID_MARK + "', encodeURIComponent(heatFids[r])), '_blank');%n" +
+            "};%n" +
+            "function heatHover(event, img) {%n" +
+            "    var r = heatRow(event, img);%n" +
+            "    if (r >= 0 && r < heatLabels.length)%n" +
+            "        img.title = heatLabels[r];%n" +
+            "};";
+    /** formats for the URLs of the enrichment categories, by category type */
+    private static final String[] ENRICH_URL_FORMATS = new String[] {
+            "/rna.cgi/columns?rowFilter=SUBSYSTEM;subsystem=%s", "/rna.cgi/columns?rowFilter=GROUP;group=%s",
+            "/rna.cgi/columns?rowFilter=GROUP;group=%s" };
     /** URL generator for column delete */
     private static final String DELETE_COL_URL_FORMAT = "/rna.cgi/columns?sortCol=%d;deleteCol=%d";
     /** definition for filtering checkboxes */
@@ -140,6 +229,10 @@ public class ColumnProcessor extends WebProcessor {
     private static final String SAMPLE_NAME_LIST = "sampleNameList";
     /** name of the filter-group datalist */
     private static final String FILTER_GROUP_LIST = "filterGroupList";
+    /** name of the gene-name datalist */
+    private static final String GENE_NAME_LIST = "geneNameList";
+    /** name of the feature-set datalist */
+    private static final String FEATURE_SET_LIST = "featureSetList";
     /** name of the subsystem datalist */
     private static final String SUBSYSTEM_LIST = "subsystemFocusList";
     /** name of the saved CSV file */
@@ -187,6 +280,10 @@ public class ColumnProcessor extends WebProcessor {
     @Option(name = "--rowFilter", usage = "rule for choosing rows to display")
     protected RowFilter.Type rowFilter;
 
+    /** row-filter expression */
+    @Option(name = "--filter", metaVar = "ANYSUB&!GROUP(thrLABC)", usage = "row-filter expression for EXPRESSION filtering")
+    protected String filterText;
+
     /** index of column to filter on for row filtering by column values */
     @Option(name = "--filterCol", usage = "index of column for column-value row filtering")
     protected int filterCol;
@@ -195,6 +292,14 @@ public class ColumnProcessor extends WebProcessor {
     @Option(name = "--filterMin", usage = "minimum value for column-value row filtering")
     protected double filterMin;
 
+    /** column conditions for column range filtering */
+    @Option(name = "--colFilters", metaVar = "0top5,2<1.0", usage = "comma-delimited list of column conditions")
+    protected String colFilters;
+
+    /** method for combining column conditions */
+    @Option(name = "--colMode", usage = "method for combining column conditions")
+    protected ColumnRangeFilter.Mode colMode;
+
     /** new-column strategy */
     @Option(name = "--cmd", usage = "strategy for new columns")
     protected NewColumnCreator.Type strategy;
@@ -212,9 +317,49 @@ public class ColumnProcessor extends WebProcessor {
     protected String filterGroup;
 
     /** gene names to use for gene filtering, or blank to use all */
-    @Option(name = "--genes", metaVar = "thrA,thrB", usage = "comma-delimited list of gene names to use for gene filtering")
+    @Option(name = "--genes", metaVar = "thrA,thrB,b00*", usage = "comma-delimited list of gene names to use for gene filtering")
     protected String geneNames;
 
+    /** saved feature set for feature-set filtering */
+    @Option(name = "--set", metaVar = "thrGenes", usage = "saved feature set for feature-set filtering")
+    protected String featureSet;
+
+    /** name under which to save the displayed features, or blank to not save them */
+    @Option(name = "--saveSet", metaVar = "thrGenes", usage = "name under which to save the displayed features")
+    protected String saveSet;
+
+    /** number of co-expressed genes to show */
+    @Option(name = "--neighbors", metaVar = "20", usage = "number of co-expressed genes to show for co-expression filtering")
+    protected int neighborCount;
+
+    /** maximum distance from the focus peg for region filtering */
+    @Option(name = "--window", metaVar = "5000", usage = "maximum distance from the focus peg for region filtering")
+    protected int regionWindow;
+
+    /** TRUE to restrict region filtering to the focus peg's strand */
+    @Option(name = "--strand", usage = "if specified, region filtering only shows features on the focus peg's strand")
+    protected boolean strandRegion;
+
+    /** TRUE to order the rows by clustering */
+    @Option(name = "--cluster", usage = "if specified, rows will be ordered by hierarchical clustering")
+    protected boolean clusterRows;
+
+    /** TRUE to display the rows as a heatmap */
+    @Option(name = "--heatmap", usage = "if specified, rows will be displayed as a heatmap image")
+    protected boolean heatmapView;
+
+    /** TRUE to color value columns by feature quantiles instead of baseline */
+    @Option(name = "--quantiles", usage = "if specified, value columns will be colored using each feature's quantiles")
+    protected boolean quantileColoring;
+
+    /** TRUE to display the enrichment panel */
+    @Option(name = "--enrich", usage = "if specified, the displayed rows will be tested for category enrichment")
+    protected boolean enrichFlag;
+
+    /** maximum adjusted p-value for enriched categories */
+    @Option(name = "--fdr", metaVar = "0.01", usage = "maximum adjusted p-value for the enrichment panel")
+    protected double maxFdr;
+
     @Override
     protected void setWebDefaults() {
         this.sortCol = -2;
@@ -228,12 +373,25 @@ public class ColumnProcessor extends WebProcessor {
         this.colFilter = ColumnQualifierType.NONE;
         this.ranges = "";
         this.rowFilter = RowFilter.Type.ALL;
+        this.filterText = "";
         this.focusPeg = "";
         this.subsystem = "";
         this.baseLineColoring = true;
         this.filterCol = 0;
         this.filterMin = 0.0;
+        this.colFilters = "";
+        this.colMode = ColumnRangeFilter.Mode.AND;
         this.geneNames = "";
+        this.neighborCount = 50;
+        this.regionWindow = RegionRowFilter.DEFAULT_DISTANCE;
+        this.strandRegion = false;
+        this.clusterRows = false;
+        this.heatmapView = false;
+        this.featureSet = "";
+        this.saveSet = "";
+        this.quantileColoring = false;
+        this.enrichFlag = false;
+        this.maxFdr = 0.05;
     }
 
     @Override
@@ -254,6 +412,50 @@ public class ColumnProcessor extends WebProcessor {
             Arrays.sort(this.rangeLimits);
             this.baseLineColoring = false;
         }
+        if (this.neighborCount < 1)
+            throw new ParseFailureException("Neighbor count must be positive.");
+        if (this.regionWindow < 0)
+            throw new ParseFailureException("Region window cannot be negative.");
+        // Compile the row-filter expression.
+        this.rowExpression = null;
+        if (! this.filterText.isEmpty()) {
+            try {
+                this.rowExpression = new RowFilterExpression(this.filterText);
+            } catch (IllegalArgumentException e) {
+                throw new ParseFailureException(e.getMessage());
+            }
+        } else if (this.rowFilter == RowFilter.Type.EXPRESSION)
+            throw new ParseFailureException("A filter expression is required for expression filtering.");
+        // Verify that there is a group for group filtering.
+        if (StringUtils.isBlank(this.filterGroup) && (this.rowFilter == RowFilter.Type.GROUP
+                || this.rowExpression != null && this.rowExpression.usesDefault(RowFilter.Type.GROUP)))
+            throw new ParseFailureException("A group name is required for group filtering.");
+        // Verify the feature set names.  The sets being used for filtering must already exist.
+        if (! this.saveSet.isEmpty())
+            this.saveSet = ColumnSaveProcessor.computeNewName(this.saveSet);
+        if (! this.featureSet.isEmpty()) {
+            this.featureSet = ColumnSaveProcessor.computeNewName(this.featureSet);
+            this.checkFeatureSet(this.featureSet);
+        } else if (this.rowFilter == RowFilter.Type.SET
+                || this.rowExpression != null && this.rowExpression.usesDefault(RowFilter.Type.SET))
+            throw new ParseFailureException("A feature set name is required for feature-set filtering.");
+        if (this.rowExpression != null) {
+            for (String name : this.rowExpression.getSetNames()) {
+                if (! ColumnSaveProcessor.computeNewName(name).equals(name))
+                    throw new ParseFailureException("Invalid feature set name \"" + name + "\" in filter expression.");
+                this.checkFeatureSet(name);
+            }
+        }
+        // Parse the column conditions.
+        try {
+            this.columnConditions = ColumnRangeFilter.parse(this.colFilters);
+        } catch (IllegalArgumentException e) {
+            throw new ParseFailureException(e.getMessage());
+        }
+        if (this.columnConditions.isEmpty() && this.rowFilter == RowFilter.Type.RANGES)
+            throw new ParseFailureException("Column conditions are required for column range filtering.");
+        if (this.maxFdr <= 0.0 || this.maxFdr > 1.0)
+            throw new ParseFailureException("Enrichment FDR limit must be greater than 0 and no more than 1.");
         // Analyze the RNA data type.
         this.rnaTypes = RnaDataType.values(this.getCoreDir());
         log.info("{} RNA databases found.", this.rnaTypes.length);
@@ -292,31 +494,35 @@ public class ColumnProcessor extends WebProcessor {
             // Read in the RNA data file.
             try {
                 log.info("Loading RNA-seq data from {}.", this.rnaType.getDescription());
-                File dataFile = new File(this.getCoreDir(), this.rnaType.getFileName());
-                this.data = RnaData.load(dataFile);
-                log.info("{} samples in RNA dataset {}.", this.data.size(), dataFile);
+                this.dataFile = new File(this.getCoreDir(), this.rnaType.getFileName());
+                this.data = RnaData.load(this.dataFile);
+                log.info("{} samples in RNA dataset {}.", this.data.size(), this.dataFile);
+                // Insure the metadata sidecars are available for the metadata page and the database catalog.
+                RnaDatabaseCatalog.refresh(this.dataFile, this.data);
             } catch (ClassNotFoundException e) {
                 throw new RuntimeException("Class not found: " + e.toString());
             }
+            // Get the feature index.  The other indexes are loaded when they are first needed.
+            this.featIndex = RnaFeatureIndex.get(this.dataFile, this.data);
+            this.subFile = new File(this.getCoreDir(), "rnaSubs.txt");
+            // For co-expression filtering, compute the correlations with the focus peg.
+            this.focusIdx = this.featIndex.getOrdinal(this.focusPeg);
+            this.focusCorrelations = null;
+            boolean correlated = (this.rowFilter == RowFilter.Type.CORRELATED || (this.rowFilter == RowFilter.Type.EXPRESSION
+                    && this.rowExpression.uses(RowFilter.Type.CORRELATED)));
+            if (correlated && this.focusIdx >= 0) {
+                CoexpressionIndex coexpression = CoexpressionIndex.get(this.dataFile, this.data);
+                this.focusCorrelations = coexpression.correlations(this.focusIdx);
+            }
             // Set up the row filtering.
             this.rowFilterObject = this.rowFilter.create(this);
             // Verify the samples.
-            int sampleCount = 0;
-            for (String samplei : this.sample1) {
-                if (! samplei.isEmpty()) {
-                    sampleCount++;
-                    if (this.data.getColIdx(samplei) < 0)
-                        throw new ParseFailureException("Invalid sample name " + samplei + ".");
-                }
-            }
+            long sampleCount = this.sample1.stream().filter(x -> ! x.isEmpty()).count();
             log.info("{} primary samples specified.", sampleCount);
-            if (! this.sample2.isEmpty() && ! this.sample2.contentEquals("baseline") && this.data.getColIdx(this.sample2) < 0)
-                throw new ParseFailureException("Invalid sample name " + this.sample2 + ".");
-            // Get the subsystem table.
-            File subFile = new File(this.getCoreDir(), "rnaSubs.txt");
-            this.subTable = new GenomeSubsystemTable(subFile);
-            // Create the filter group list.
-            this.filterGroupList = new TreeSet<String>();
+            for (String samplei : this.strategy.getRequiredSamples(this.sample1, this.sample2)) {
+                if (this.data.getColIdx(samplei) < 0)
+                    throw new ParseFailureException("Invalid sample name " + samplei + ".");
+            }
             // Create the list of samples.
             this.samples = this.data.getSamples().stream().map(x -> x.getName()).collect(Collectors.toList());
             // Build the cookie string describing all the columns.  If the database has changed it's the
@@ -330,7 +536,16 @@ public class ColumnProcessor extends WebProcessor {
                     cookieString = ColumnDescriptor.addColumn(oldCookieString, ",");
                 } else {
                     NewColumnCreator creator = this.strategy.create(this.sample1, this.sample2, this.samples);
-                    List<String> columns = creator.getNewColumns();
+                    creator.setSeriesIndex(SampleSeriesIndex.get(this.dataFile, this.samples));
+                    creator.setFragmentIndex(SampleFragmentIndex.get(this.dataFile, this.samples));
+                    creator.setGoodSamples(this.data.getSamples().stream().filter(x -> x.isGood())
+                            .map(x -> x.getName()).collect(Collectors.toList()));
+                    List<String> columns;
+                    try {
+                        columns = creator.getNewColumns();
+                    } catch (IllegalArgumentException e) {
+                        throw new ParseFailureException(e.getMessage());
+                    }
                     log.info("{} new columns computed.", columns.size());
                     // Get a copy of the cookie string so we can update it.  The first update will delete the sort
                     // information.
@@ -352,7 +567,7 @@ public class ColumnProcessor extends WebProcessor {
             cookies.put(COLUMNS_PREFIX + this.configuration,
                     ColumnDescriptor.savecookies(cookieString, this.sortCol, this.rnaType));
             // Split the cookie string into columns.
-            ColumnDescriptor[] columns = ColumnDescriptor.parse(cookieString, this.data);
+            ColumnDescriptor[] columns = ColumnDescriptor.parse(cookieString, this.data, this.dataFile);
             // The two page components will be put here.
             List<DomContent> parts = new ArrayList<DomContent>(2);
             // Verify that we have a table to display.
@@ -364,21 +579,21 @@ public class ColumnProcessor extends WebProcessor {
                 if (this.filterCol < 0) this.filterCol = 0;
                 if (this.filterCol >= columns.length)
                     throw new ParseFailureException("Invalid filter column specification.");
+                if (this.rowExpression != null && this.rowExpression.getMaxColumn() >= columns.length)
+                    throw new ParseFailureException("Invalid column index " + this.rowExpression.getMaxColumn()
+                            + " in filter expression.");
                 // Fetch the actual columns for sorting and filtering.
                 ColumnDescriptor sortingColumn = (this.sortCol < 0 ? null : columns[this.sortCol]);
-                this.filterColumnData = columns[this.filterCol];
                 ColumnDescriptor saveColumn = (sortingColumn == null ? columns[columns.length - 1] : sortingColumn);
-                // Create the filtering data structures.
-                this.row = new ArrayList<CellDescriptor>(columns.length);
-                this.coloredCells = new ArrayList<CellDescriptor>(columns.length);
-                this.coloredColumns = new BitSet(columns.length);
                 // Compute the colored columns.
+                this.coloredColumns = new BitSet(columns.length);
                 for (int i = 0; i < columns.length; i++) {
                     if (this.colFilter.isRangeColored(columns[i]))
                         this.coloredColumns.set(i);
                 }
                 // Create the column specs.
-                ColSpec[] specs = new ColSpec[columns.length + HEAD_COLS];
+                final int headCols = (this.focusCorrelations == null ? HEAD_COLS : HEAD_COLS + 1);
+                ColSpec[] specs = new ColSpec[columns.length + headCols];
                 specs[0] = new ColSpec.Num("#");
                 specs[1] = new ColSpec.Normal("peg_id");
                 specs[2] = new ColSpec.Normal("gene");
@@ -388,36 +603,70 @@ public class ColumnProcessor extends WebProcessor {
                 specs[6] = new ColSpec.Normal("modulons");
                 specs[7] = new ColSpec.Normal("operon");
                 specs[8] = new ColSpec.Num("baseline");
+                if (this.focusCorrelations != null)
+                    specs[HEAD_COLS] = new ColSpec.Fraction("focus_r");
                 for (int i = 0; i < columns.length; i++)
-                    specs[i+HEAD_COLS] = this.columnSpec(columns[i], i);
+                    specs[i+headCols] = this.columnSpec(columns[i], i);
                 HtmlTable<MultiKey> table = new HtmlTable<>(specs);
                 // Save the subsystem feature set.
-                this.subFids = this.subTable.getSubFeatures(this.subsystem);
-                // Now we create a row for each feature.
+                this.subMembers = this.getSubIndex().getMembers(this.subsystem);
+                // Compute the URL template for the subsystem links.
+                String subUrl = this.getPageWriter().local_url(String.format("/rna.cgi/columns?subsystem=%s;focus=%s",
+                        SubsystemIndex.SUB_MARK, SubsystemIndex.FID_MARK), this.getWorkSpace());
+                String subUrlTemplate = SubsystemIndex.urlTemplate(subUrl);
+                // Compute the column values and their range codes in a single batch.
+                this.columnValues = new ColumnBatch(columns, this.data, this.featIndex.size());
+                this.rangeCodes = this.computeRangeCodes();
+                // Now we filter the features.  The features are numbered by ordinal.  For each feature to display,
+                // we save the data row and the ordinal.
+                List<RnaData.Row> shownRows = new ArrayList<RnaData.Row>();
+                List<Integer> shownIdx = new ArrayList<Integer>();
+                int featIdx = -1;
                 for (RnaData.Row dataRow : this.data) {
-                    // Get the feature for this row.
-                    RnaFeatureData feat = dataRow.getFeat();
-                    // Get the sort key for this row.
-                    MultiKey rowKey = new MultiKey(feat, sortingColumn);
-                    // Build the column descriptors.
-                    for (int i = 0; i < columns.length; i++) {
-                        double value = columns[i].getValue(feat);
-                        if (! this.coloredColumns.get(i)) {
-                            // Here the column is not colored.
-                            this.row.add(new CellDescriptor(value, 0));
-                        } else {
-                            // Here the column is colored.  We need to compute the color.
-                            int color = this.computeColoring(feat, value);
-                            // Create the cell descriptor.
-                            CellDescriptor cell = new CellDescriptor(value, color);
-                            this.row.add(cell);
-                            this.coloredCells.add(cell);
-                        }
-                    }
+                    featIdx++;
                     // Check the row filter.
-                    if (this.rowFilterObject.isRowDisplayable(feat)) {
+                    if (this.rowFilterObject.isRowDisplayable(featIdx, dataRow.getFeat())) {
+                        shownRows.add(dataRow);
+                        shownIdx.add(featIdx);
+                    }
+                }
+                BitSet shownSet = new BitSet(this.featIndex.size());
+                shownIdx.stream().forEach(x -> shownSet.set(x));
+                // Save the displayed features if requested.
+                if (! this.saveSet.isEmpty()) {
+                    new FeatureSet(this.dataFile, this.featIndex, shownSet).save(this.getWorkSpaceDir(), this.saveSet);
+                    parts.add(p(String.format("%d features saved to set %s.", shownIdx.size(), this.saveSet)));
+                }
+                // Test the displayed features for enrichment if requested.
+                if (this.enrichFlag)
+                    parts.add(this.buildEnrichment(shownSet));
+                // If we are clustering, compute the position of each row in the cluster ordering.
+                int[] clusterRanks = null;
+                if (this.clusterRows) {
+                    clusterRanks = this.computeClusterRanks(cookieString, shownIdx);
+                    if (shownIdx.size() > RowClustering.MAX_ROWS)
+                        parts.add(p(String.format("Too many rows (%d) to cluster:  the maximum is %d, so the rows are "
+                                + "sorted normally.  Use a row filter to reduce the number of rows.", shownIdx.size(),
+                                RowClustering.MAX_ROWS)));
+                }
+                // Get the sort key for each row.
+                List<MultiKey> rowKeys = new ArrayList<MultiKey>(shownRows.size());
+                for (int k = 0; k < shownRows.size(); k++) {
+                    RnaFeatureData feat = shownRows.get(k).getFeat();
+                    int position = this.getLocationIndex().getRank(shownIdx.get(k));
+                    rowKeys.add(clusterRanks == null ? new MultiKey(feat, sortingColumn, position)
+                            : new MultiKey(clusterRanks[k], position));
+                }
+                if (this.heatmapView) {
+                    // Here we are displaying the rows as a heatmap image.
+                    parts.add(this.buildHeatmap(columns, shownRows, shownIdx, rowKeys, saveStream, saveColumn));
+                } else {
+                    // Now we create a row for each displayed feature.
+                    for (int k = 0; k < shownRows.size(); k++) {
+                        featIdx = shownIdx.get(k);
+                        RnaFeatureData feat = shownRows.get(k).getFeat();
                         // Create the row.
-                        Row<MultiKey> tableRow = new Row<MultiKey>(table, rowKey);
+                        Row<MultiKey> tableRow = new Row<MultiKey>(table, rowKeys.get(k));
                         // Put in a placeholder for the numbering column.
                         tableRow.add(0);
                         // Set up the PEG ID.  This contains a link to the feature's PATRIC page.
@@ -433,7 +682,7 @@ public class ColumnProcessor extends WebProcessor {
                         if (gene.isEmpty())
                             geneHtml = rawHtml("&nbsp;");
                         else {
-                            String regionURL = String.format("/rna.cgi/columns?focus=%s;rowFilter=REGION;sortCol=-1", fid);
+                            String regionURL = String.format(REGION_URL_FORMAT, fid);
                             String regionLink = this.getPageWriter().local_url(regionURL, this.getWorkSpace());
                             geneHtml = a(gene).withHref(regionLink).withTarget("_blank");
                         }
@@ -444,36 +693,31 @@ public class ColumnProcessor extends WebProcessor {
                         if (bNum != null && ! bNum.isEmpty())
                             saveStream.format("%s,%6.4f%n", feat.getBNumber(), saveColumn.getValue(feat));
                         // Now we process the subsystem column.
-                        Set<GenomeSubsystemTable.SubData> subs = this.subTable.getSubsystems(feat.getId());
-                        tableRow.add(this.getSubsystemList(fid, subs));
+                        String subLinks = this.getSubIndex().renderLinks(featIdx, fid, subUrlTemplate);
+                        tableRow.add(subLinks == null ? rawHtml("&nbsp;") : rawHtml(subLinks));
                         // Check for the highlight subsystem.
-                        if (this.subFids.contains(fid))
+                        if (this.subMembers.get(featIdx))
                             tableRow.highlight(4);
-                        // Next come the regulon, modulon, and operon.  These need to be added to the filter group list.
+                        // Next come the regulon, modulon, and operon.
                         tableRow.add(feat.getAtomicRegulon());
-                        this.filterGroupList.add(String.format("AR%d", feat.getAtomicRegulon()));
                         tableRow.add(StringUtils.join(feat.getiModulons(), ", "));
-                        Arrays.stream(feat.getiModulons()).forEach(x -> this.filterGroupList.add(x));;
                         tableRow.add(feat.getOperon());
-                        this.filterGroupList.add(feat.getOperon());
                         // Finally, the baseline.
                         tableRow.add(feat.getBaseLine());
+                        if (this.focusCorrelations != null)
+                            tableRow.add(this.focusCorrelations[featIdx]);
                         // Now fill in the numbers.
                         for (int i = 0; i < columns.length; i++) {
-                            CellDescriptor cell = this.row.get(i);
-                            tableRow.add(cell.getValue());
-                            int color = cell.getRange();
+                            tableRow.add(this.columnValues.getValue(i, featIdx));
+                            int color = (this.coloredColumns.get(i) ? this.rangeCodes.get(i, featIdx) : 0);
                             if (color > 0)
-                                tableRow.addStyle(i + HEAD_COLS, String.format("range%d", color));
+                                tableRow.addStyle(i + headCols, String.format("range%d", color));
                         }
                     }
-                    // Set up for the next row.
-                    this.row.clear();
-                    this.coloredCells.clear();
+                    table.setIndexColumn(0);
+                    // Format the table and store it in the output list.
+                    parts.add(table.output());
                 }
-                table.setIndexColumn(0);
-                // Format the table and store it in the output list.
-                parts.add(table.output());
             }
             // Build the forms.
             DomContent forms = buildForms(columns, cookies);
@@ -487,54 +731,166 @@ public class ColumnProcessor extends WebProcessor {
     }
 
     /**
-     * This method computes the color for the specified cell value.  This depends on the coloring type.
-     *
-     * @param feat		feature for which the cell is an expression
-     * @param value		value of expression
+     * This method computes the range codes for the table cells.  This depends on the coloring type.
      *
-     * @return the color index
+     * @return the range codes for the current column values
      */
-    private int computeColoring(RnaFeatureData feat, double value) {
-        int retVal = 0;
-        if (this.baseLineColoring) {
+    private RangeCodes computeRangeCodes() {
+        RangeCodes retVal;
+        if (this.baseLineColoring && this.quantileColoring) {
+            // Here we have quantile coloring.  The feature's 10th and 90th percentiles take the place of the baseline
+            // limits.
+            retVal = new RangeCodes(this.columnValues, this.coloredColumns,
+                    this.getGeneStats().getValues(GeneStatsTable.Stat.Q10),
+                    this.getGeneStats().getValues(GeneStatsTable.Stat.Q90));
+        } else if (this.baseLineColoring) {
             // Here we have baseline coloring.
-            double base = feat.getBaseLine();
-            if (value <= 0.5 * base)
-                retVal = 3;
-            else if (value >= 2 * base)
-                retVal = 1;
+            final int n = this.featIndex.size();
+            double[] lows = new double[n];
+            double[] highs = new double[n];
+            int featIdx = 0;
+            for (RnaData.Row dataRow : this.data) {
+                double base = dataRow.getFeat().getBaseLine();
+                lows[featIdx] = 0.5 * base;
+                highs[featIdx] = 2 * base;
+                featIdx++;
+            }
+            retVal = new RangeCodes(this.columnValues, this.coloredColumns, lows, highs);
         } else {
             // Here we have range-based coloring.
-            while (retVal < this.rangeLimits.length && value > this.rangeLimits[retVal]) retVal++;
+            retVal = new RangeCodes(this.columnValues, this.coloredColumns, this.rangeLimits);
         }
         return retVal;
     }
 
     /**
-     * This method creates the subsystem ID link list.  Each ID shows a tooltip describing the subsystem and
-     * links to the subsystem page.
+     * Build the enrichment panel for the displayed rows.  Every subsystem, regulon, and group is tested in a single
+     * pass, and the ones whose adjusted p-value is within the FDR limit are listed with links to the filtered display.
+     *
+     * @param shownSet		ordinals of the displayed features
      *
-     * @param fid	ID of the feature whose subsystems are being listed
-     * @param subs	list of subsystem descriptors
+     * @return the HTML for the enrichment panel
      *
-     * @return HTML listing the subsystems connected to the specified feature
+     * @throws IOException
      */
-    private DomContent getSubsystemList(String fid, Collection<GenomeSubsystemTable.SubData> subs) {
+    private DomContent buildEnrichment(BitSet shownSet) throws IOException {
+        GeneSetEnrichment enrichment = GeneSetEnrichment.get(this.subFile, this.dataFile, this.getSubIndex(),
+                this.getGroupCatalog(), this.featIndex.size());
+        List<GeneSetEnrichment.Result> results = enrichment.score(shownSet);
+        HtmlTable<Key.Float> table = new HtmlTable<Key.Float>(new ColSpec.Normal("category"),
+                new ColSpec.Normal("type"), new ColSpec.Num("shown"), new ColSpec.Num("size"),
+                new ColSpec.Num("expected"), new ColSpec.Num("fold"), new ColSpec.Num("p_value"),
+                new ColSpec.Num("q_value"));
+        int count = 0;
+        for (GeneSetEnrichment.Result result : results) {
+            if (result.getQValue() <= this.maxFdr) {
+                String url = String.format(ENRICH_URL_FORMATS[result.getSource().ordinal()],
+                        URLEncoder.encode(result.getName(), StandardCharsets.UTF_8.toString()));
+                String link = this.getPageWriter().local_url(url, this.getWorkSpace());
+                new Row<Key.Float>(table, new Key.Float(result.getPValue()))
+                        .add(a(result.getName()).withHref(link).withTarget("_blank"))
+                        .add(result.getSource().getDescription()).add(result.getHits()).add(result.getSize())
+                        .add(result.getExpected()).add(result.getFold())
+                        .add(String.format("%.3g", result.getPValue())).add(String.format("%.3g", result.getQValue()));
+                count++;
+            }
+        }
+        log.info("{} of {} categories enriched in {} displayed features.", count, enrichment.size(),
+                shownSet.cardinality());
         DomContent retVal;
-        if (subs == null)
-            retVal = rawHtml("&nbsp;");
-        else {
-            // Here we have actual subsystems to list.
-            List<DomContent> linkList = new ArrayList<DomContent>(subs.size());
-            for (GenomeSubsystemTable.SubData sub : subs) {
-                String text = sub.getId();
-                String tooltip = sub.getDescription();
-                // Set up a URL to focus on the subsystem.
-                String url = String.format("/rna.cgi/columns?subsystem=%s;focus=%s", text, fid);
-                url = this.getPageWriter().local_url(url, this.getWorkSpace());
-                linkList.add(a(text).withTitle(tooltip).withHref(url));
+        String title = String.format("Enrichment of %d displayed features (FDR %s)", shownSet.cardinality(),
+                Double.toString(this.maxFdr));
+        if (count == 0)
+            retVal = div(h2(title), p("No categories are significantly enriched."));
+        else
+            retVal = div(h2(title), table.output());
+        return retVal;
+    }
+
+    /**
+     * Build a heatmap display of the rows.  Each row is a single line of pixels.  The range-colored columns are
+     * colored exactly as in the table, and the other columns are drawn in the neutral color.  Clicking on a row opens
+     * the feature's neighborhood display.  As with the table, the displayed features are written to the save file.
+     *
+     * @param columns		descriptors for the data columns
+     * @param shownRows		database rows for the features being displayed
+     * @param shownIdx		ordinals of the features being displayed
+     * @param rowKeys		sort keys for the features being displayed
+     * @param saveStream	output stream for the save file
+     * @param saveColumn	column whose values are written to the save file
+     *
+     * @return the HTML for the heatmap
+     *
+     * @throws IOException
+     */
+    private DomContent buildHeatmap(ColumnDescriptor[] columns, List<RnaData.Row> shownRows,
+            List<Integer> shownIdx, List<MultiKey> rowKeys, PrintWriter saveStream,
+            ColumnDescriptor saveColumn) throws IOException {
+        final int n = shownRows.size();
+        // Sort the rows the same way the table would.
+        int[] order = IntStream.range(0, n).boxed().sorted((a, b) -> rowKeys.get(a).compareTo(rowKeys.get(b)))
+                .mapToInt(x -> x).toArray();
+        HeatmapImage image = new HeatmapImage(n, columns.length);
+        List<String> fids = new ArrayList<String>(n);
+        List<String> labels = new ArrayList<String>(n);
+        for (int p = 0; p < n; p++) {
+            int k = order[p];
+            RnaFeatureData feat = shownRows.get(k).getFeat();
+            int featIdx = shownIdx.get(k);
+            for (int i = 0; i < columns.length; i++) {
+                // As in the table, only the range-colored columns get a range code.
+                double value = this.columnValues.getValue(i, featIdx);
+                int range = (this.coloredColumns.get(i) ? this.rangeCodes.get(i, featIdx) : 0);
+                image.set(p, i, (Double.isNaN(value) ? -1 : range));
             }
-            retVal = rawHtml(linkList.stream().map(x -> x.render()).collect(Collectors.joining(", ")));
+            String fid = feat.getId();
+            String gene = feat.getGene();
+            fids.add("'" + StringEscapeUtils.escapeEcmaScript(fid) + "'");
+            labels.add("'" + StringEscapeUtils.escapeEcmaScript(gene.isEmpty() ? fid : gene + " (" + fid + ")") + "'");
+            String bNum = feat.getBNumber();
+            if (bNum != null && ! bNum.isEmpty())
+                saveStream.format("%s,%6.4f%n", feat.getBNumber(), saveColumn.getValue(feat));
+        }
+        // Create the click map script.
+        String regionUrl = this.getPageWriter().local_url(String.format(REGION_URL_FORMAT, SubsystemIndex.FID_MARK),
+                this.getWorkSpace());
+        String heatScript = String.format(HEATMAP_SCRIPT, StringUtils.join(fids, ", "), StringUtils.join(labels, ", "),
+                StringEscapeUtils.escapeEcmaScript(regionUrl));
+        // The columns are listed from left to right above the image.
+        DomContent[] titles = Arrays.stream(columns).map(x -> li(x.getTitle()).attr("title", x.getTooltip()))
+                .toArray(DomContent[]::new);
+        DomContent heatImg = img().withSrc(image.toDataUri()).withId("heatmap").attr("onclick", "heatClick(event, this)")
+                .attr("onmousemove", "heatHover(event, this)");
+        DomContent retVal = div(p(String.format("%d rows, %d pixels wide per column.", n, HeatmapImage.CELL_WIDTH)),
+                ol(titles), heatImg, script(rawHtml(heatScript)));
+        return retVal;
+    }
+
+    /**
+     * Compute the position of each displayed row in the cluster ordering.  The ordering is cached by database,
+     * column configuration, and displayed-row set.
+     *
+     * @param cookieString	column definition string
+     * @param shownIdx		ordinals of the features being displayed
+     *
+     * @return an array of cluster positions parallel to the displayed-feature lists, or NULL if the rows cannot
+     * 		   be clustered
+     *
+     * @throws IOException
+     */
+    private int[] computeClusterRanks(String cookieString, List<Integer> shownIdx) throws IOException {
+        int[] retVal = null;
+        final int n = shownIdx.size();
+        if (n > RowClustering.MAX_ROWS)
+            log.warn("Too many rows ({}) to cluster:  maximum is {}.", n, RowClustering.MAX_ROWS);
+        else if (n > 1) {
+            BitSet rows = new BitSet(this.featIndex.size());
+            shownIdx.stream().forEach(x -> rows.set(x));
+            int[] order = RowClustering.getOrder(this.dataFile, cookieString, rows,
+                    () -> shownIdx.stream().map(x -> this.columnValues.getRow(x)).toArray(double[][]::new));
+            retVal = new int[n];
+            for (int i = 0; i < n; i++)
+                retVal[order[i]] = i;
         }
         return retVal;
     }
@@ -596,10 +952,12 @@ public class ColumnProcessor extends WebProcessor {
         samples0.add("");
         // Create the data lists.
         form.createDataList(samples0, SAMPLE_NAME_LIST);
-        List<String> subsystemList = new ArrayList<String>(this.subTable.getAllSubsystems());
+        List<String> subsystemList = new ArrayList<String>(this.getSubIndex().getAllSubsystems());
         subsystemList.add("");
         form.createDataList(subsystemList, SUBSYSTEM_LIST);
-        form.createDataList(this.filterGroupList, FILTER_GROUP_LIST);
+        form.createDataList(this.getGroupCatalog().getNames(), FILTER_GROUP_LIST);
+        form.createDataList(this.getGeneIndex().getGeneNames(), GENE_NAME_LIST);
+        form.createDataList(FeatureSet.getNames(this.getWorkSpaceDir()), FEATURE_SET_LIST);
         // Create the sample selectors.
         form.addSearchRow("sample1", "Primary RNA Sampling", "", SAMPLE_NAME_LIST);
         form.addSearchRow("sample2", "Optional Denominator Sample (or \"baseline\")", "", SAMPLE_NAME_LIST);
@@ -607,6 +965,10 @@ public class ColumnProcessor extends WebProcessor {
         List<String> sortCols = Arrays.stream(columns).map(x -> x.getTitleString()).collect(Collectors.toList());
         String defaultCol = (sortCols.size() > 0 && this.sortCol >= 0 ? sortCols.get(this.sortCol) : null);
         form.addChoiceIndexedRow("sortCol", "Column for sorting", defaultCol, sortCols, "Sort by Location");
+        form.addCheckBoxWithDefault("cluster", "Cluster rows instead of sorting", this.clusterRows);
+        form.addCheckBoxWithDefault("heatmap", "Display rows as a heatmap", this.heatmapView);
+        form.addCheckBoxWithDefault("enrich", "Test displayed rows for category enrichment", this.enrichFlag);
+        form.addTextRow("fdr", "Maximum adjusted p-value for enrichment", Double.toString(this.maxFdr));
         // Add the strategy.
         form.addEnumRow("cmd", "New-column Strategy", NewColumnCreator.Type.SINGLE, NewColumnCreator.Type.values());
         // Add the rest checkbox.
@@ -616,18 +978,30 @@ public class ColumnProcessor extends WebProcessor {
         form.addChoiceRow("type", "RNA Database", this.rnaType.name(), sources);
         // Add the coloring controls.
         form.addTextRow("ranges", "Comma-delimited list of range-coloring limits (no spaces)", this.ranges);
+        form.addCheckBoxWithDefault("quantiles", "Color values by gene quantiles instead of baseline",
+                this.quantileColoring);
         form.addEnumRow("rowFilter", "Row-filtering rule", this.rowFilter, RowFilter.Type.values());
+        form.addTextRow("filter", "Row-filter expression (for EXPRESSION filtering)", this.filterText);
         form.addEnumRow("colFilter", "Range-coloring rule", this.colFilter, ColumnQualifierType.values());
         // Next the column-value filter.
         defaultCol = (sortCols.size() > 0 && this.filterCol >= 0 ? sortCols.get(this.filterCol) : null);
         form.addChoiceIndexedRow("filterCol",  "Column for value filtering", defaultCol, sortCols);
         form.addTextRow("filterMin", "Minimum value for value filtering", Double.toString(this.filterMin));
+        form.addTextRow("colFilters", "Column conditions for range filtering (e.g. 0top5,2<1.0)", this.colFilters);
+        form.addEnumRow("colMode", "Combine column conditions", this.colMode, ColumnRangeFilter.Mode.values());
         // Now the focus peg, the subsystem chooser, and the filtering group.
         form.addTextRow("focus", "Focus Peg", this.focusPeg);
+        form.addTextRow("neighbors", "Number of co-expressed genes for co-expression filtering",
+                Integer.toString(this.neighborCount));
+        form.addTextRow("window", "Distance in base pairs for region filtering", Integer.toString(this.regionWindow));
+        form.addCheckBoxWithDefault("strand", "Region filtering on focus peg strand only", this.strandRegion);
         form.addSearchRow("subsystem", "Subsystem to highlight", this.subsystem, SUBSYSTEM_LIST);
         form.addSearchRow("group", "Operon/modulon/regulon group for filtering", "", FILTER_GROUP_LIST);
         // Finally, the gene names.
-        form.addTextRow("genes", "Gene name filter (comma-delimited)", this.geneNames);
+        form.addSearchRow("genes", "Gene name filter (comma-delimited, wildcards allowed)", this.geneNames, GENE_NAME_LIST);
+        // Add the feature sets.
+        form.addSearchRow("set", "Saved feature set for filtering", this.featureSet, FEATURE_SET_LIST);
+        form.addTextRow("saveSet", "Save displayed features as set", "");
         // Add a hidden field to maintain the configuration name.
         form.addHidden("name", this.configuration);
         // Now create the load form.
@@ -665,19 +1039,13 @@ public class ColumnProcessor extends WebProcessor {
 
     /**
      * @return a table containing checkbox filters for the selection list
+     *
+     * @throws IOException
      */
-    private HtmlTable<Key.Null> buildFilters() {
-        // Create a list of sets for the different possible filters.
-        List<Set<String>> filterSets = new ArrayList<Set<String>>();
-        int partLen = 0;
-        for (String sample : this.samples) {
-            String[] parts = StringUtils.split(sample, '_');
-            if (parts.length > partLen) partLen = parts.length;
-            while (filterSets.size() < parts.length)
-                filterSets.add(new TreeSet<String>());
-            for (int i = 0; i < parts.length; i++)
-                filterSets.get(i).add(parts[i]);
-        }
+    private HtmlTable<Key.Null> buildFilters() throws IOException {
+        // The possible filters come from the sample fragment index.
+        SampleFragmentIndex fragments = SampleFragmentIndex.get(this.dataFile, this.samples);
+        int partLen = fragments.getFragmentCount();
         // Build the onclick event.
         List<String> selectors = IntStream.range(0, CHECK_COLUMNS.length).filter(i -> CHECK_COLUMNS[i] != null)
                 .mapToObj(i -> String.format(SELECTOR_FORMAT, i)).collect(Collectors.toList());
@@ -688,7 +1056,7 @@ public class ColumnProcessor extends WebProcessor {
         for (int i = 0; i < CHECK_COLUMNS.length; i++) {
             if (CHECK_COLUMNS[i] != null) {
                 // Here we have a filtering item of interest.
-                Object[] checkboxes = filterSets.get(i).stream().map(x -> CoreHtmlUtilities.checkBox(x, x, true, onclick))
+                Object[] checkboxes = fragments.getFragmentValues(i).stream().map(x -> CoreHtmlUtilities.checkBox(x, x, true, onclick))
                         .toArray();
                 DomContent checks = div(join(checkboxes)).withId(String.format(SELECTOR_FORMAT, i));
                 new Row<Key.Null>(retVal, Key.NONE).add(CHECK_COLUMNS[i]).add(checks);
@@ -715,24 +1083,200 @@ public class ColumnProcessor extends WebProcessor {
     }
 
     /**
-     * @return the cell descriptors for the cells with coloring in the current row
+     * @return the ordinal of the focus peg, or -1 if there is none
+     */
+    public int getFocusIndex() {
+        return this.focusIdx;
+    }
+
+    /**
+     * @return the correlation of each feature with the focus peg, or NULL if co-expression filtering is not in effect
+     */
+    public double[] getFocusCorrelations() {
+        return this.focusCorrelations;
+    }
+
+    /**
+     * @return the number of co-expressed genes to show
+     */
+    public int getNeighborCount() {
+        return this.neighborCount;
+    }
+
+    /**
+     * @return the range codes of the table cells
+     */
+    public RangeCodes getRangeCodes() {
+        return this.rangeCodes;
+    }
+
+    /**
+     * @return the RNA database being displayed
+     */
+    public RnaData getData() {
+        return this.data;
+    }
+
+    /**
+     * @return the compiled row-filter expression, or NULL if there is none
      */
-    public List<CellDescriptor> getColoredCells() {
-        return this.coloredCells;
+    public RowFilterExpression getRowExpression() {
+        return this.rowExpression;
     }
 
     /**
-     * @return the set of features in the focus subsystem
+     * @return the number of data columns in the table
      */
-    public Set<String> getSubFids() {
-        return this.subFids;
+    public int getColumnCount() {
+        return this.columnValues.size();
     }
 
     /**
-     * @return the subsystem table
+     * @return the values of a data column, indexed by feature ordinal
+     *
+     * @param col	index of the data column
+     */
+    public double[] getColumnValues(int col) {
+        return this.columnValues.getValues(col);
+    }
+
+    /**
+     * @return the set of ordinals for the features whose range-colored cells fall into more than one range category
+     */
+    public BitSet getVariantRows() {
+        return this.rangeCodes.getVariantRows(this.featIndex.size());
+    }
+
+    /**
+     * Verify that a feature set exists in the user workspace.
+     *
+     * @param name	name of the feature set (already validated)
+     *
+     * @throws ParseFailureException if the feature set does not exist
+     */
+    private void checkFeatureSet(String name) throws ParseFailureException {
+        if (! FeatureSet.exists(this.getWorkSpaceDir(), name))
+            throw new ParseFailureException("Feature set \"" + name + "\" not found.");
+    }
+
+    /**
+     * @return the name of the feature set for feature-set filtering
+     */
+    public String getFilterSet() {
+        return this.featureSet;
+    }
+
+    /**
+     * @return the set of ordinals for the features in a saved feature set (this set must not be modified)
+     *
+     * @param name	name of the feature set
+     *
+     * @throws IllegalArgumentException if the feature set does not exist
+     */
+    public BitSet getFeatureSet(String name) {
+        try {
+            return FeatureSet.load(this.getWorkSpaceDir(), name).getMembers(this.dataFile, this.featIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the set of ordinals for the features in the focus subsystem
+     */
+    public BitSet getSubMembers() {
+        return this.subMembers;
+    }
+
+    /**
+     * @return the subsystem index (loaded on first use)
+     */
+    public SubsystemIndex getSubIndex() {
+        if (this.subIndex == null) {
+            try {
+                this.subIndex = SubsystemIndex.get(this.subFile, this.dataFile, this.featIndex);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.subIndex;
+    }
+
+    /**
+     * @return the location index (loaded on first use)
+     */
+    public LocationIndex getLocationIndex() {
+        if (this.locIndex == null) {
+            try {
+                this.locIndex = LocationIndex.get(this.dataFile, this.data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.locIndex;
+    }
+
+    /**
+     * @return the maximum distance from the focus peg for region filtering
      */
-    public GenomeSubsystemTable getSubTable() {
-        return this.subTable;
+    public int getRegionWindow() {
+        return this.regionWindow;
+    }
+
+    /**
+     * @return TRUE if region filtering is restricted to the focus peg's strand
+     */
+    public boolean isStrandRegion() {
+        return this.strandRegion;
+    }
+
+    /**
+     * @return the per-feature summary statistics (loaded on first use)
+     */
+    public GeneStatsTable getGeneStats() {
+        if (this.geneStats == null) {
+            try {
+                this.geneStats = GeneStatsTable.get(this.dataFile, this.data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.geneStats;
+    }
+
+    /**
+     * @return the feature ordinal index
+     */
+    public RnaFeatureIndex getFeatureIndex() {
+        return this.featIndex;
+    }
+
+    /**
+     * @return the group catalog (loaded on first use)
+     */
+    public GroupCatalog getGroupCatalog() {
+        if (this.groupCatalog == null) {
+            try {
+                this.groupCatalog = GroupCatalog.get(this.dataFile, this.data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.groupCatalog;
+    }
+
+    /**
+     * @return the gene name index (loaded on first use)
+     */
+    public GeneNameIndex getGeneIndex() {
+        if (this.geneIndex == null) {
+            try {
+                this.geneIndex = GeneNameIndex.get(this.dataFile, this.data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.geneIndex;
     }
 
     /**
@@ -742,6 +1286,13 @@ public class ColumnProcessor extends WebProcessor {
         return this.filterGroup;
     }
 
+    /**
+     * @return the index of the column for column-value filtering
+     */
+    public int getFilterColumn() {
+        return this.filterCol;
+    }
+
     /**
      * @return the minimum value for column-value filtering
      */
@@ -750,12 +1301,17 @@ public class ColumnProcessor extends WebProcessor {
     }
 
     /**
-     * @return the value for the specified feature in the current value-filtering column
-     *
-     * @param feat	feature of interest
+     * @return the conditions for column range filtering
+     */
+    public List<ColumnRangeFilter.Condition> getColumnConditions() {
+        return this.columnConditions;
+    }
+
+    /**
+     * @return the method for combining the column conditions
      */
-    public double getFilterColumnValue(RnaFeatureData feat) {
-        return this.filterColumnData.getValue(feat);
+    public ColumnRangeFilter.Mode getColumnMode() {
+        return this.colMode;
     }
 
     /**
@@ -26,6 +26,7 @@ import org.theseed.io.LineReader;
 import org.theseed.reports.HtmlUtilities;
 import org.theseed.utils.IDescribable;
 import org.theseed.web.rna.GroupPageFilter;
+import org.theseed.web.rna.LocationIndex;
 
 import j2html.tags.ContainerTag;
 import j2html.tags.DomContent;
@@ -73,6 +74,8 @@ public class GroupPageProcessor extends WebProcessor implements GroupPageFilter.
     private BitSet genomeCols;
     /** index of region type (0 = upstream, 1 = instream) */
     private int typeIndex;
+    /** location index for the base genome */
+    private LocationIndex locIndex;
     /** location of the group page */
     private static final String GROUP_URL = "/rna.cgi/groups?group=";
 
@@ -162,6 +165,7 @@ public class GroupPageProcessor extends WebProcessor implements GroupPageFilter.
         if (! genomeFile.canRead())
             throw new FileNotFoundException("Genome " + this.genomeName + " in Core directory is not found or unreadable.");
         this.baseGenome = new Genome(genomeFile);
+        this.locIndex = LocationIndex.get(genomeFile, this.baseGenome);
         // Verify the group snips file.
         this.groupFile = new File(this.getCoreDir(), this.groupFileName);
         if (! this.groupFile.canRead())
@@ -176,8 +180,7 @@ public class GroupPageProcessor extends WebProcessor implements GroupPageFilter.
                 this.groupTitle = "Feature Group " + StringUtils.replaceChars(this.groupTitle, '_', ' ');
             this.groupTitle += " Showing " + this.regionArea.getDescription() + " Changes";
         }
-        // Save the sort order and the type index.
-        GroupPageSortKey.setOrder(this.sortOrder);
+        // Save the type index.  The sort order is passed to each sort key.
         this.typeIndex = this.regionArea.getIdx();
         return true;
     }
@@ -243,7 +246,8 @@ public class GroupPageProcessor extends WebProcessor implements GroupPageFilter.
                             }
                         }
                     }
-                    Row<GroupPageSortKey> row = new Row<>(table, new GroupPageSortKey(feat, marks));
+                    Row<GroupPageSortKey> row = new Row<>(table, new GroupPageSortKey(feat, this.locIndex.getRank(fid), marks,
+                            this.sortOrder));
                     // Column 1 is the feature ID, linked to PATRIC.
                     row.add(this.baseGenome.featureLink(fid));
                     // Column 2 is the function.
@@ -5,10 +5,10 @@ package org.theseed.web;
 
 import java.util.Comparator;
 
-import org.theseed.locations.Location;
-
 /**
- * This is a key type that permits sorting by location or count, depending on a static parameter.
+ * This is a key type that permits sorting by location or count.  The ordering is carried by each key, so that
+ * several requests with different orderings can be sorted at the same time.  The location is represented by the
+ * feature's rank in the genome's location index (see LocationIndex), so location sorting compares integers.
  *
  * @author Bruce Parrello
  *
@@ -17,9 +17,9 @@ public class GroupPageSortKey extends Key implements Comparable<GroupPageSortKey
 
     // FIELDS
     /** comparator for sorting */
-    private static Comparator<GroupPageSortKey> COMPARATOR = Order.LOCATION;
-    /** location of feature for this table row */
-    private Location loc;
+    private Comparator<GroupPageSortKey> comparator;
+    /** location rank of feature for this table row */
+    private int position;
     /** ID of feature for this table row */
     private String fid;
     /** number of snip changes */
@@ -29,12 +29,15 @@ public class GroupPageSortKey extends Key implements Comparable<GroupPageSortKey
      * Construct a sort key for a specified feature and change count.
      *
      * @param feat		feature for this table row
+     * @param position	location rank of the feature
      * @param marks		number of significant changes to the feature
+     * @param order		sort ordering for the table containing this key
      */
-    public GroupPageSortKey(org.theseed.genome.Feature feat, int marks) {
-        this.loc = feat.getLocation();
+    public GroupPageSortKey(org.theseed.genome.Feature feat, int position, int marks, Order order) {
+        this.position = position;
         this.fid = feat.getId();
         this.changes = marks;
+        this.comparator = order;
     }
 
     /**
@@ -45,7 +48,7 @@ public class GroupPageSortKey extends Key implements Comparable<GroupPageSortKey
             @Override
             public int compare(GroupPageSortKey o1, GroupPageSortKey o2) {
                 // Sort by location and then feature ID.
-                int retVal = o1.loc.compareTo(o2.loc);
+                int retVal = Integer.compare(o1.position, o2.position);
                 if (retVal == 0)
                     retVal = o1.fid.compareTo(o2.fid);
                 return retVal;
@@ -73,16 +76,7 @@ public class GroupPageSortKey extends Key implements Comparable<GroupPageSortKey
 
     @Override
     public int compareTo(GroupPageSortKey o) {
-        return COMPARATOR.compare(this, o);
-    }
-
-    /**
-     * Specify the sort ordering.
-     *
-     * @param sortOrder		new sort ordering
-     */
-    public static void setOrder(Order sortOrder) {
-        COMPARATOR = sortOrder;
+        return this.comparator.compare(this, o);
     }
 
 }
@@ -5,27 +5,48 @@ package org.theseed.web;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.args4j.Option;
+import org.theseed.basic.ParseFailureException;
 import org.theseed.reports.PageWriter;
-import org.theseed.rna.RnaData;
 import org.theseed.web.rna.ColumnDescriptor;
 import org.theseed.web.rna.RnaDataType;
+import org.theseed.web.rna.RnaDatabaseCatalog;
+import org.theseed.web.rna.SampleMetaTable;
+import org.theseed.web.rna.SampleSimilarityIndex;
 
-import j2html.tags.ContainerTag;
 import j2html.tags.DomContent;
 import static j2html.TagCreator.*;
 
 /**
  * This command displays the meta-data for the RNA sequence samples.  This data is encoded in the sample records
- * of the main RNA data file ("tpm.ser" in the CoreSEED directory).
+ * of the main RNA data file ("tpm.ser" in the CoreSEED directory), and is copied to a metadata sidecar file so that
+ * this page does not need to load the expression data.
  *
  * The positional parameters, as always, are the name of the coreSEED data directory and the name of the user workspace.
  *
  * The command-line options are as follows.
  *
- * --name	name of the current column configuration
- * --type	database type to display (or NULL to use what is already in the configuration)
+ * --name		name of the current column configuration
+ * --type		database type to display (or NULL to use what is already in the configuration)
+ * --all		if specified, low-quality samples will be included
+ * --sort		metadata column on which to sort the samples (default SAMPLE_ID)
+ * --desc		if specified, the samples will be sorted from highest to lowest
+ * --filters	comma-delimited list of numeric range filters, each consisting of a column name, a comparison operator,
+ * 				and a number (e.g. "coverage>10,pct_qual>=90")
+ * --page		page of samples to display (1-based, default 1)
+ * --pageSize	number of samples per page (default 100)
+ * --like		if specified, the name of a reference sample; the samples will be sorted by the similarity of their
+ * 				expression profiles to the reference sample
+ * --measure	similarity measure to use for "--like" (default CORRELATION)
  *
  * @author Bruce Parrello
  *
@@ -35,6 +56,8 @@ public class RnaMetaProcessor extends WebProcessor {
     // FIELDS
     /** rna data type array */
     private RnaDataType[] rnaTypes;
+    /** parsed range filters */
+    private List<SampleMetaTable.Filter> filterList;
     /** length of E coli genome */
     public static final int GENOME_LEN = 4638920;
 
@@ -52,15 +75,64 @@ public class RnaMetaProcessor extends WebProcessor {
     @Option(name = "--all", usage = "show low-quality strains")
     protected boolean allFlag;
 
+    /** sort column */
+    @Option(name = "--sort", usage = "metadata column for sorting")
+    protected SampleMetaTable.Field sortField;
+
+    /** if specified, the sort is descending */
+    @Option(name = "--desc", usage = "sort from highest to lowest")
+    protected boolean descending;
+
+    /** range filters */
+    @Option(name = "--filters", metaVar = "coverage>10,pct_qual>=90", usage = "comma-delimited list of range filters")
+    protected String filters;
+
+    /** page to display */
+    @Option(name = "--page", metaVar = "2", usage = "page of samples to display (1-based)")
+    protected int pageNum;
+
+    /** number of samples per page */
+    @Option(name = "--pageSize", metaVar = "50", usage = "number of samples per page")
+    protected int pageSize;
+
+    /** reference sample for similarity search */
+    @Option(name = "--like", metaVar = "7_0_0_A_asdO_000_D000_0_12_M1", usage = "reference sample for similarity search")
+    protected String likeSample;
+
+    /** similarity measure */
+    @Option(name = "--measure", usage = "similarity measure for similarity search")
+    protected SampleSimilarityIndex.Measure measure;
+
     @Override
     protected void setWebDefaults() {
         this.configuration = "Default";
         this.allFlag = false;
         this.rnaTypeName = null;
+        this.sortField = SampleMetaTable.Field.SAMPLE_ID;
+        this.descending = false;
+        this.filters = "";
+        this.pageNum = 1;
+        this.pageSize = 100;
+        this.likeSample = "";
+        this.measure = SampleSimilarityIndex.Measure.CORRELATION;
     }
 
     @Override
-    protected boolean validateWebParms() throws IOException {
+    protected boolean validateWebParms() throws IOException, ParseFailureException {
+        if (this.pageNum < 1)
+            throw new ParseFailureException("Page number must be positive.");
+        if (this.pageSize < 1)
+            throw new ParseFailureException("Page size must be positive.");
+        this.filterList = new ArrayList<SampleMetaTable.Filter>();
+        for (String spec : StringUtils.split(this.filters, ','))
+            this.filterList.add(new SampleMetaTable.Filter(spec));
+        // Verify the database type.
+        this.rnaTypes = RnaDatabaseCatalog.get(this.getCoreDir()).getTypes();
+        if (this.rnaTypeName != null) {
+            boolean found = Arrays.stream(this.rnaTypes).anyMatch(x -> x.getFileName().equals(this.rnaTypeName));
+            if (! found)
+                throw new ParseFailureException("Illegal RNA database name \"" + this.rnaTypeName + "\".");
+        }
         return true;
     }
 
@@ -71,67 +143,186 @@ public class RnaMetaProcessor extends WebProcessor {
 
     @Override
     protected void runWebCommand(CookieFile cookies) throws Exception {
-        this.rnaTypes = RnaDataType.values(this.getCoreDir());
+        RnaDatabaseCatalog catalog = RnaDatabaseCatalog.get(this.getCoreDir());
         // Get the database type from the cookie string.
         String oldCookieString = cookies.get(ColumnProcessor.COLUMNS_PREFIX + this.configuration, "");
         RnaDataType cookieType = ColumnDescriptor.getDbType(oldCookieString, this.rnaTypes);
         // This is a very simple web page:  we just build a table from the sample records.
         if (this.rnaTypeName == null)
             this.rnaTypeName = cookieType.getFileName();
+        RnaDatabaseCatalog.Info dbInfo = catalog.getInfo(new RnaDataType(this.rnaTypeName));
         File dataFile = new File(this.getCoreDir(), this.rnaTypeName);
-        RnaData data = RnaData.load(dataFile);
+        SampleMetaTable data = SampleMetaTable.load(dataFile);
         log.info("{} samples in RNA dataset {}.", data.size(), dataFile);
+        // Select and sort the samples, then compute the current page.
+        int[] selected = data.select(this.filterList, this.allFlag);
+        double[] scores = null;
+        int[] sorted;
+        if (this.likeSample.isEmpty())
+            sorted = data.sort(selected, this.sortField, this.descending);
+        else {
+            scores = this.computeSimilarities(dataFile, data);
+            sorted = data.sort(selected, scores, true);
+        }
+        SampleMetaTable.Page page = new SampleMetaTable.Page(sorted.length, this.pageNum, this.pageSize);
+        this.pageNum = page.getNumber();
+        final int start = page.getStart();
+        final int end = page.getEnd();
+        log.info("{} samples selected, displaying {} through {}.", sorted.length, start + 1, end);
         // Create a table for the meta-data.
-        HtmlTable<Key.Null> table = new HtmlTable<>(new ColSpec.Normal("sel"), new ColSpec.Normal("sample_id"),
-                new ColSpec.Fraction("Thr g/l"), new ColSpec.Num("OD"), new ColSpec.Normal("original_name"),
-                new ColSpec.Num("reads"), new ColSpec.Num("size"), new ColSpec.Num("pct_qual"),
-                new ColSpec.Normal("process_date"), new ColSpec.Num("avg_read_len"), new ColSpec.Num("coverage"),
-                new ColSpec.Num("pct_expressed"));
-        // Run through the samples, adding rows.  Note the first column contains a checkbox.
-        for (RnaData.JobData sample : data.getSamples()) {
-            DomContent sampleName = text(sample.getName());
-            boolean keep = true;
-            if (! sample.isGood()) {
-                if (! this.allFlag)
-                    keep = false;
-                else {
-                    sampleName = em(sample.getName());
-                }
-            }
-            if (keep) {
-                new Row<Key.Null>(table, Key.NONE).add(input().withType("checkbox").withName("sample1").withValue(sample.getName()))
-                        .add(sampleName).add(sample.getProduction())
-                        .add(sample.getOpticalDensity()).add(sample.getOldName()).add(sample.getReadCount())
-                        .add(sample.getBaseCount()).add(sample.getQuality()).add(sample.getProcessingDate().toString())
-                        .add(sample.getMeanReadLen()).add(sample.getCoverage(GENOME_LEN)).add(sample.getExpressedPercent());
+        List<ColSpec> specs = new ArrayList<ColSpec>(Arrays.asList(new ColSpec.Normal("sel"),
+                new ColSpec.Normal("sample_id"), new ColSpec.Fraction("Thr g/l"), new ColSpec.Num("OD"),
+                new ColSpec.Normal("original_name"), new ColSpec.Num("reads"), new ColSpec.Num("size"),
+                new ColSpec.Num("pct_qual"), new ColSpec.Normal("process_date"), new ColSpec.Num("avg_read_len"),
+                new ColSpec.Num("coverage"), new ColSpec.Num("pct_expressed"), new ColSpec.Normal("find")));
+        if (scores != null)
+            specs.add(new ColSpec.Fraction(this.measure.name().toLowerCase()));
+        HtmlTable<Key.Null> table = new HtmlTable<>(specs.stream().toArray(ColSpec[]::new));
+        // Run through the samples on this page, adding rows.  Note the first column contains a checkbox, and
+        // the last one a link to find similar samples.
+        for (int i : Arrays.copyOfRange(sorted, start, end)) {
+            String name = data.getName(i);
+            DomContent sampleName = (data.isGood(i) ? text(name) : em(name));
+            Row<Key.Null> row = new Row<Key.Null>(table, Key.NONE)
+                    .add(input().withType("checkbox").withName("sample1").withValue(name))
+                    .add(sampleName).add(data.getProduction(i))
+                    .add(data.getOpticalDensity(i)).add(data.getOldName(i)).add(data.getReadCount(i))
+                    .add(data.getBaseCount(i)).add(data.getQuality(i)).add(data.getProcessingDate(i))
+                    .add(data.getMeanReadLen(i)).add(data.getCoverage(i)).add(data.getExpressedPercent(i))
+                    .add(a("similar").withHref(this.likeUrl(name)));
+            if (scores != null)
+                row.add(scores[i]);
+        }
+        // Compute the column statistics over all the selected samples.
+        HtmlTable<Key.Null> statTable = new HtmlTable<>(new ColSpec.Normal("column"), new ColSpec.Num("count"),
+                new ColSpec.Num("min"), new ColSpec.Num("mean"), new ColSpec.Num("max"), new ColSpec.Num("stdev"));
+        for (SampleMetaTable.Field field : SampleMetaTable.Field.values()) {
+            if (field.isNumeric()) {
+                SampleMetaTable.Stats stats = data.getStats(field, selected);
+                new Row<Key.Null>(statTable, Key.NONE).add(field.getLabel()).add(stats.getCount())
+                        .add(stats.getMin()).add(stats.getMean()).add(stats.getMax()).add(stats.getStdev());
             }
         }
         // Get the page writer.
         PageWriter writer = this.getPageWriter();
-        // Set up a link to switch modes.
-        String nameParm = "name=" + this.configuration;
-        String[] parms;
-        String label;
-        if (this.allFlag) {
-            parms = new String[] { nameParm };
-            label = "Hide low-quality samples.";
-        } else {
-            parms = new String[] { nameParm, "all=on" };
-            label = "Show all samples.";
-        }
-        ContainerTag switchLink = p(a(label).withHref(this.commandUrl("rna", "meta", parms)));
-        // Format the table as a form.
+        // Build the selection form.
+        HtmlForm selectForm = new HtmlForm("rna", "meta", this);
+        selectForm.addHidden("name", this.configuration);
+        selectForm.addHidden("type", this.rnaTypeName);
+        selectForm.addEnumRow("sort", "Sort column", this.sortField, SampleMetaTable.Field.values());
+        selectForm.addCheckBoxWithDefault("desc", "Sort from highest to lowest", this.descending);
+        selectForm.addCheckBoxWithDefault("all", "Show low-quality samples", this.allFlag);
+        selectForm.addTextRow("filters", "Range filters (comma-delimited, e.g. coverage>10,pct_qual>=90)", this.filters);
+        selectForm.addTextRow("pageSize", "Samples per page", Integer.toString(this.pageSize));
+        selectForm.addTextRow("like", "Rank by similarity to sample", this.likeSample);
+        selectForm.addEnumRow("measure", "Similarity measure", this.measure, SampleSimilarityIndex.Measure.values());
+        // Describe the database.
+        String dbText = dbInfo.getType().getDescription() + ", version " + Instant.ofEpochMilli(dbInfo.getVersion());
+        if (dbInfo.isKnown())
+            dbText += String.format(": %d features, %d samples.", dbInfo.getFeatureCount(), dbInfo.getSampleCount());
+        // Set up the page navigation links.
+        DomContent pageNav = p(join(String.format("Samples %d to %d of %d selected (%d in database).", start + 1, end,
+                sorted.length, data.size()),
+                (page.hasPrevious() ? a("Previous page").withHref(this.pageUrl(this.pageNum - 1)) : text("")),
+                (page.hasNext() ? a("Next page").withHref(this.pageUrl(this.pageNum + 1)) : text(""))));
+        // Format the table as a form.  The gene names can be looked up on the search page.
+        String searchUrl = this.commandUrl("rna", "search", "name=" + encode(this.configuration),
+                "type=" + encode(this.rnaTypeName));
         DomContent submitForm = form().withMethod("POST")
                 .withAction(this.commandUrl("rna", "columns"))
                 .withClass("web").with(p(join("Add checked samples to RNA Seq page configuration",
                         input().withValue(this.configuration).withType("text").withName("name"),
                         " showing genes ", input().withValue("").withType("text").withName("genes"),
+                        " (", a("find genes").withHref(searchUrl).withTarget("_blank"), ")",
                         input().withType("hidden").withName("rowFilter").withValue("GENES"),
                         input().withType("hidden").withName("type").withValue(this.rnaTypeName),
                         input().withType("submit"))))
                 .with(table.output());
         DomContent tableHtml = this.getPageWriter().highlightBlock(submitForm);
-        writer.writePage("RNA Seq Metadata", text("Table of Samples"), switchLink, tableHtml);
+        DomContent statHtml = writer.highlightBlock(h2("Column Statistics"), statTable.output());
+        writer.writePage("RNA Seq Metadata", text("Table of Samples"), p(dbText),
+                writer.highlightBlock(selectForm.output()), pageNav, tableHtml, statHtml);
+    }
+
+    /**
+     * @return the URL for displaying a different page of the current sample selection
+     *
+     * @param page	number of the page to display
+     *
+     * @throws IOException
+     */
+    private String pageUrl(int page) throws IOException {
+        List<String> parms = new ArrayList<String>();
+        parms.add("name=" + encode(this.configuration));
+        parms.add("type=" + encode(this.rnaTypeName));
+        parms.add("sort=" + this.sortField.name());
+        parms.add("filters=" + encode(this.filters));
+        parms.add("pageSize=" + this.pageSize);
+        parms.add("page=" + page);
+        if (this.descending)
+            parms.add("desc=on");
+        if (this.allFlag)
+            parms.add("all=on");
+        if (! this.likeSample.isEmpty()) {
+            parms.add("like=" + encode(this.likeSample));
+            parms.add("measure=" + this.measure.name());
+        }
+        return this.commandUrl("rna", "meta", parms.stream().toArray(String[]::new));
+    }
+
+    /**
+     * @return the URL for ranking the samples by similarity to a reference sample
+     *
+     * @param sample	name of the reference sample
+     *
+     * @throws UnsupportedEncodingException
+     */
+    private String likeUrl(String sample) throws UnsupportedEncodingException {
+        List<String> parms = new ArrayList<String>();
+        parms.add("name=" + encode(this.configuration));
+        parms.add("type=" + encode(this.rnaTypeName));
+        parms.add("pageSize=" + this.pageSize);
+        parms.add("like=" + encode(sample));
+        parms.add("measure=" + this.measure.name());
+        if (this.allFlag)
+            parms.add("all=on");
+        return this.commandUrl("rna", "meta", parms.stream().toArray(String[]::new));
+    }
+
+    /**
+     * @return the similarity of each sample to the reference sample, indexed by metadata table index
+     *
+     * @param dataFile	RNA database file
+     * @param data		metadata table for the database
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private double[] computeSimilarities(File dataFile, SampleMetaTable data) throws IOException, ParseFailureException {
+        SampleSimilarityIndex simIndex = SampleSimilarityIndex.load(dataFile);
+        int ref = simIndex.getColumn(this.likeSample);
+        if (ref < 0)
+            throw new ParseFailureException("Invalid sample name " + this.likeSample + ".");
+        double[] colScores = simIndex.score(ref, this.measure);
+        // Map the scores from database columns to metadata rows.
+        double[] retVal = new double[data.size()];
+        for (int i = 0; i < retVal.length; i++) {
+            int col = simIndex.getColumn(data.getName(i));
+            retVal[i] = (col < 0 ? Double.NaN : colScores[col]);
+        }
+        log.info("Samples ranked by {} to {}.", this.measure, this.likeSample);
+        return retVal;
+    }
+
+    /**
+     * @return a string encoded for use in a URL parameter
+     *
+     * @param value		string to encode
+     *
+     * @throws UnsupportedEncodingException
+     */
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
     }
 
 }
@@ -0,0 +1,251 @@
+/**
+ *
+ */
+package org.theseed.web;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.web.rna.ColumnDescriptor;
+import org.theseed.web.rna.RnaDataType;
+import org.theseed.web.rna.RnaDatabaseCatalog;
+import org.theseed.web.rna.SearchIndex;
+import org.theseed.web.rna.SubsystemCatalog;
+
+import j2html.tags.DomContent;
+import static j2html.TagCreator.*;
+
+/**
+ * This web command searches the genes, subsystems, and groups of an RNA database for words.  The genes are searched
+ * by name, b-number, and function; the subsystems by ID and description (from "rnaSubs.txt"); and the groups by name.
+ * Every word in the search text must begin a word in the result.  Each gene links to the column display filtered to
+ * that gene, each subsystem to the column display filtered to the subsystem and to the subsystem page, and each group
+ * to the column display filtered to the group and to the group page.  The search index is precomputed for each
+ * version of the database (see SearchIndex).
+ *
+ * The positional parameters, as always, are the name of the CoreSEED data directory and the name of the user workspace.
+ * The command-line options are as follows.
+ *
+ * --name		name of the current column configuration
+ * --type		database type to search (or NULL to use what is already in the configuration)
+ * --search		text to search for
+ * --genome		name of the base genome (for gene functions); the default is "MG1655-wild.gto"
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SearchProcessor extends WebProcessor {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SearchProcessor.class);
+    /** base genome file */
+    private File gFile;
+    /** subsystem table file */
+    private File subFile;
+    /** available RNA databases */
+    private RnaDataType[] rnaTypes;
+
+    // COMMAND-LINE OPTIONS
+
+    /** configuration name */
+    @Option(name = "--name", usage = "configuration name")
+    protected String configuration;
+
+    /** database type */
+    @Option(name = "--type", usage = "database type")
+    protected String rnaTypeName;
+
+    /** search string */
+    @Option(name = "--search", metaVar = "threonine", usage = "text to search for")
+    protected String searchText;
+
+    /** name of the base genome (in the CoreSEED data directory) */
+    @Option(name = "--genome", metaVar = "83333.1.gto", usage = "genome file name")
+    protected String genomeName;
+
+    @Override
+    protected void setWebDefaults() {
+        this.configuration = "Default";
+        this.rnaTypeName = null;
+        this.searchText = "";
+        this.genomeName = "MG1655-wild.gto";
+    }
+
+    @Override
+    protected boolean validateWebParms() throws IOException, ParseFailureException {
+        this.gFile = new File(this.getCoreDir(), this.genomeName);
+        if (! this.gFile.canRead())
+            throw new FileNotFoundException("Base genome " + this.genomeName + " not found or unreadable.");
+        this.subFile = new File(this.getCoreDir(), "rnaSubs.txt");
+        if (! this.subFile.canRead())
+            throw new FileNotFoundException("Subsystem file " + this.subFile + " not found or unreadable.");
+        // Verify the database type.
+        this.rnaTypes = RnaDatabaseCatalog.get(this.getCoreDir()).getTypes();
+        if (this.rnaTypeName != null) {
+            boolean found = Arrays.stream(this.rnaTypes).anyMatch(x -> x.name().equals(this.rnaTypeName));
+            if (! found)
+                throw new ParseFailureException("Illegal RNA database name \"" + this.rnaTypeName + "\".");
+        }
+        return true;
+    }
+
+    @Override
+    protected String getCookieName() {
+        return ColumnProcessor.RNA_COLUMN_COOKIE_FILE;
+    }
+
+    @Override
+    protected void runWebCommand(CookieFile cookies) throws Exception {
+        // Get the database type.  If no explicit type is set, we use the type from the cookie string.
+        RnaDataType rnaType;
+        if (this.rnaTypeName == null) {
+            String oldCookieString = cookies.get(ColumnProcessor.COLUMNS_PREFIX + this.configuration, "");
+            rnaType = ColumnDescriptor.getDbType(oldCookieString, this.rnaTypes);
+            this.rnaTypeName = rnaType.name();
+        } else
+            rnaType = Arrays.stream(this.rnaTypes).filter(x -> x.name().equals(this.rnaTypeName)).findFirst().get();
+        File dataFile = new File(this.getCoreDir(), rnaType.getFileName());
+        SearchIndex index = SearchIndex.load(dataFile, this.gFile, this.subFile);
+        // Perform the search and sort the results by kind.
+        String search = StringUtils.trimToEmpty(this.searchText);
+        long start = System.nanoTime();
+        List<SearchIndex.Hit> hits = index.search(search);
+        log.info("{} of {} documents matched \"{}\" in {} microseconds.", hits.size(), index.size(), search,
+                (System.nanoTime() - start) / 1000);
+        Map<SearchIndex.Kind, List<SearchIndex.Hit>> hitMap = new EnumMap<>(SearchIndex.Kind.class);
+        for (SearchIndex.Kind kind : SearchIndex.Kind.values())
+            hitMap.put(kind, new ArrayList<SearchIndex.Hit>());
+        for (SearchIndex.Hit hit : hits)
+            hitMap.get(hit.getKind()).add(hit);
+        // Build the search form.
+        HtmlForm form = new HtmlForm("rna", "search", this);
+        form.addTextRow("search", "Words to find in gene names, functions, subsystems, or groups", search);
+        form.addHidden("name", this.configuration);
+        form.addHidden("type", this.rnaTypeName);
+        form.addHidden("genome", this.genomeName);
+        // Build the result tables.
+        List<DomContent> parts = new ArrayList<DomContent>();
+        parts.add(form.output());
+        if (! search.isEmpty()) {
+            if (hits.isEmpty())
+                parts.add(p("Nothing matched \"" + search + "\"."));
+            else {
+                List<SearchIndex.Hit> genes = hitMap.get(SearchIndex.Kind.GENE);
+                if (! genes.isEmpty())
+                    parts.add(this.geneTable(genes));
+                List<SearchIndex.Hit> subs = hitMap.get(SearchIndex.Kind.SUBSYSTEM);
+                if (! subs.isEmpty())
+                    parts.add(this.subsystemTable(subs));
+                List<SearchIndex.Hit> groups = hitMap.get(SearchIndex.Kind.GROUP);
+                if (! groups.isEmpty())
+                    parts.add(this.groupTable(groups));
+            }
+        }
+        String title = "Search " + rnaType.getDescription();
+        DomContent block = this.getPageWriter().highlightBlock(parts.stream().toArray(DomContent[]::new));
+        this.getPageWriter().writePage("RNA Search", h1(title), block);
+    }
+
+    /**
+     * @return the result section for the matching genes
+     *
+     * @param genes		list of gene hits
+     *
+     * @throws UnsupportedEncodingException
+     */
+    private DomContent geneTable(List<SearchIndex.Hit> genes) throws UnsupportedEncodingException {
+        HtmlTable<Key.Text> table = new HtmlTable<Key.Text>(new ColSpec.Normal("Gene"),
+                new ColSpec.Normal("b-number"), new ColSpec.Normal("Function"));
+        for (SearchIndex.Hit gene : genes) {
+            String url = this.commandUrl("rna", "columns", "rowFilter=GENES", "genes=" + encode(geneKey(gene)),
+                    "focus=" + encode(gene.getId()));
+            new Row<Key.Text>(table, new Key.Text(gene.getName())).add(a(gene.getName()).withHref(url))
+                    .add(gene.getAlias()).add(gene.getDescription());
+        }
+        // Link all the genes at once.
+        String geneList = genes.stream().map(x -> geneKey(x)).distinct().collect(Collectors.joining(","));
+        String allUrl = this.commandUrl("rna", "columns", "rowFilter=GENES", "genes=" + encode(geneList));
+        return div(h2("Genes"), p(a("Show all " + genes.size() + " genes").withHref(allUrl)), table.output());
+    }
+
+    /**
+     * @return the name to use for a gene in a gene-list filter (the b-number if there is one, since it is unique)
+     *
+     * @param gene		gene hit of interest
+     */
+    private static String geneKey(SearchIndex.Hit gene) {
+        return StringUtils.defaultIfEmpty(gene.getAlias(), gene.getName());
+    }
+
+    /**
+     * @return the result section for the matching subsystems
+     *
+     * @param subs		list of subsystem hits
+     *
+     * @throws IOException
+     */
+    private DomContent subsystemTable(List<SearchIndex.Hit> subs) throws IOException {
+        SubsystemCatalog subCatalog = SubsystemCatalog.load(this.gFile);
+        HtmlTable<Key.Text> table = new HtmlTable<Key.Text>(new ColSpec.Normal("Subsystem"),
+                new ColSpec.Normal("Description"));
+        for (SearchIndex.Hit sub : subs) {
+            String url = this.commandUrl("rna", "columns", "rowFilter=SUBSYSTEM", "subsystem=" + encode(sub.getId()));
+            // The description links to the subsystem page if the base genome has the subsystem.
+            DomContent description = text(sub.getDescription());
+            if (subCatalog.getSubsystem(sub.getDescription()) != null)
+                description = a(sub.getDescription()).withHref(this.commandUrl("rna", "subsystem",
+                        "name=" + encode(sub.getDescription()), "genome=" + this.genomeName));
+            new Row<Key.Text>(table, new Key.Text(sub.getName())).add(a(sub.getName()).withHref(url))
+                    .add(description);
+        }
+        return div(h2("Subsystems"), table.output());
+    }
+
+    /**
+     * @return the result section for the matching groups
+     *
+     * @param groups	list of group hits
+     *
+     * @throws UnsupportedEncodingException
+     */
+    private DomContent groupTable(List<SearchIndex.Hit> groups) throws UnsupportedEncodingException {
+        HtmlTable<Key.Text> table = new HtmlTable<Key.Text>(new ColSpec.Normal("Group"),
+                new ColSpec.Normal("Size"), new ColSpec.Normal("Group Page"));
+        for (SearchIndex.Hit group : groups) {
+            String name = encode(group.getName());
+            String url = this.commandUrl("rna", "columns", "rowFilter=GROUP", "group=" + name);
+            String pageUrl = this.commandUrl("rna", "groups", "group=" + name);
+            new Row<Key.Text>(table, new Key.Text(group.getName())).add(a(group.getName()).withHref(url))
+                    .add(group.getDescription()).add(a("snips").withHref(pageUrl));
+        }
+        return div(h2("Groups"), table.output());
+    }
+
+    /**
+     * @return a string encoded for use in a URL parameter
+     *
+     * @param value		string to encode
+     *
+     * @throws UnsupportedEncodingException
+     */
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.toString());
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package org.theseed.web;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.web.rna.SubsystemCatalog;
+
+import j2html.tags.DomContent;
+import static j2html.TagCreator.*;
+
+/**
+ * This web command lists the subsystems in a GTO, optionally restricted to the ones matching a search string.
+ * Each subsystem name links to the subsystem page.  The data is taken from the genome's precomputed subsystem
+ * catalog.  As always, the positional parameters are the name of the CoreSEED data directory and the name of
+ * the user's workspace.  The command-line options are as follows.
+ *
+ * --search		text to search for in subsystem names, classifications, and roles; the default is to list all
+ * --genome		name of the genome to display; the default is "MG1655-wild.gto"
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemListProcessor extends WebProcessor {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SubsystemListProcessor.class);
+    /** subsystem catalog for the genome */
+    private SubsystemCatalog catalog;
+
+    // COMMAND-LINE OPTIONS
+
+    /** search string */
+    @Option(name = "--search", metaVar = "threonine", usage = "text to search for")
+    protected String searchText;
+
+    /** name of the genome to display (in the CoreSEED data directory) */
+    @Option(name = "--genome", metaVar = "83333.1.gto", usage = "genome file name")
+    protected String genomeName;
+
+    @Override
+    protected void setWebDefaults() {
+        this.genomeName = "MG1655-wild.gto";
+        this.searchText = "";
+    }
+
+    @Override
+    protected boolean validateWebParms() throws IOException, ParseFailureException {
+        File gFile = new File(this.getCoreDir(), this.genomeName);
+        if (! gFile.canRead())
+            throw new FileNotFoundException("Target genome " + this.genomeName + " not found or unreadable.");
+        this.catalog = SubsystemCatalog.load(gFile);
+        return true;
+    }
+
+    @Override
+    protected String getCookieName() {
+        return "rna.subsystem";
+    }
+
+    @Override
+    protected void runWebCommand(CookieFile cookies) throws Exception {
+        // Get the subsystems to list.
+        String search = StringUtils.trimToEmpty(this.searchText);
+        Collection<SubsystemCatalog.Entry> subs;
+        if (search.isEmpty())
+            subs = this.catalog.getAll();
+        else
+            subs = this.catalog.search(search);
+        log.info("{} of {} subsystems selected.", subs.size(), this.catalog.size());
+        // Build the search form.
+        HtmlForm form = new HtmlForm("rna", "subsystems", this);
+        form.addTextRow("search", "Text to find in subsystem names, classifications, or roles", search);
+        form.addHidden("genome", this.genomeName);
+        // Build the subsystem table.
+        DomContent subTable;
+        if (subs.isEmpty())
+            subTable = p("No subsystems matched \"" + search + "\".");
+        else {
+            HtmlTable<Key.Text> table = new HtmlTable<Key.Text>(new ColSpec.Normal("Subsystem"),
+                    new ColSpec.Normal("Classification"), new ColSpec.Num("roles"));
+            for (SubsystemCatalog.Entry sub : subs) {
+                String url = this.commandUrl("rna", "subsystem",
+                        "name=" + URLEncoder.encode(sub.getName(), StandardCharsets.UTF_8.toString()),
+                        "genome=" + this.genomeName);
+                new Row<Key.Text>(table, new Key.Text(sub.getName())).add(a(sub.getName()).withHref(url))
+                        .add(StringUtils.join(sub.getClassifications(), "; ")).add(sub.getRoleCount());
+            }
+            subTable = table.output();
+        }
+        String title = "Subsystems in " + this.catalog.getGenomeName();
+        DomContent block = this.getPageWriter().highlightBlock(form.output(), subTable);
+        this.getPageWriter().writePage("Subsystem List", h1(title), block);
+    }
+
+}
@@ -6,6 +6,7 @@ package org.theseed.web;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -13,16 +14,15 @@ import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.theseed.basic.ParseFailureException;
-import org.theseed.genome.Genome;
-import org.theseed.genome.SubsystemRow;
-import org.theseed.reports.LinkObject;
+import org.theseed.web.rna.SubsystemCatalog;
 
 import j2html.tags.ContainerTag;
 import j2html.tags.DomContent;
 import static j2html.TagCreator.*;
 
 /**
- * This is a simple web command that displays the subsystem row for a GTO.  As always, the
+ * This is a simple web command that displays the subsystem row for a GTO.  The subsystem data is taken from
+ * the genome's precomputed subsystem catalog, so the genome itself is only loaded if it has changed.  As always, the
  * positional parameters are the name of the CoreSEED data directory and the name of the
  * user's workspace.  The command-line options are as follows.
  *
@@ -37,10 +37,10 @@ public class SubsystemPageProcessor extends WebProcessor {
     // FIELDS
     /** logging facility */
     protected static Logger log = LoggerFactory.getLogger(SubsystemPageProcessor.class);
-    /** subsystem row to display */
-    private SubsystemRow subRow;
-    /** link creator */
-    private LinkObject linker;
+    /** subsystem catalog for the genome */
+    private SubsystemCatalog catalog;
+    /** subsystem to display */
+    private SubsystemCatalog.Entry subRow;
 
     // COMMAND-LINE OPTONS
 
@@ -60,18 +60,16 @@ public class SubsystemPageProcessor extends WebProcessor {
 
     @Override
     protected boolean validateWebParms() throws IOException, ParseFailureException {
-        // Read in the genome.
+        // Get the genome's subsystem catalog.
         File gFile = new File(this.getCoreDir(), this.genomeName);
         if (! gFile.canRead())
             throw new FileNotFoundException("Target genome " + this.genomeName + " not found or unreadable.");
-        Genome genome = new Genome(gFile);
-        // Get the link creator.
-        this.linker = genome.getLinker();
+        this.catalog = SubsystemCatalog.load(gFile);
         // Make sure we can find the subsystem.
-        this.subRow = genome.getSubsystem(this.subName);
+        this.subRow = this.catalog.getSubsystem(this.subName);
         if (this.subRow == null)
             throw new ParseFailureException("Cannot find subsystem \"" + this.subName + "\" in genome "
-                    + genome.toString());
+                    + this.catalog.getGenomeName());
         return true;
     }
 
@@ -85,17 +83,17 @@ public class SubsystemPageProcessor extends WebProcessor {
         // Create a table of the subsystem roles.
         HtmlTable<Key.Null> roleTable = new HtmlTable<Key.Null>(new ColSpec.Normal("Role"),
                 new ColSpec.Normal("Features"));
-        for (SubsystemRow.Role role : this.subRow.getRoles()) {
+        final int n = this.subRow.getRoleCount();
+        for (int i = 0; i < n; i++) {
             Row<Key.Null> roleRow = new Row<Key.Null>(roleTable, Key.NONE);
-            roleRow.add(role.getName());
-            DomContent fids = rawHtml(role.getFeatures().stream()
-                    .map(f -> this.linker.featureLink(f.getId()).render())
-                    .collect(Collectors.joining(", ")));
+            roleRow.add(this.subRow.getRole(i));
+            DomContent fids = rawHtml(Arrays.stream(this.subRow.getRoleFeatures(i))
+                    .mapToObj(f -> this.catalog.getLink(f)).collect(Collectors.joining(", ")));
             roleRow.add(fids);
         }
         // The page title is the subsystem name.  We list the three classification strings and then
         // output the role table.
-        List<DomContent> classes = this.subRow.getClassifications().stream().filter(x -> ! x.isEmpty())
+        List<DomContent> classes = this.subRow.getClassifications().stream()
                 .map(x -> li(x)).collect(Collectors.toList());
         ContainerTag classList;
         if (classes.size() == 0)
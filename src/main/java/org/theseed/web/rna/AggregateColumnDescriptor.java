@@ -0,0 +1,361 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.rna.RnaData;
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.Key;
+
+import j2html.tags.DomContent;
+import static j2html.TagCreator.*;
+
+/**
+ * This class contains a column that displays an aggregate (mean or median) of the expression levels for a set of
+ * samples, optionally divided by the baseline, a single sample, or another aggregate.  The primary specification
+ * has the form "mean(A+B+C)" or "median(A+B+C)", where A, B, and C are sample names.  The optional denominator
+ * specification is "baseline", a sample name, or another aggregate.
+ *
+ * Missing values and inexact hits are left out of the aggregates.  The values for all the features are computed
+ * in a single pass over the database, and are cached by database file and column specification.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AggregateColumnDescriptor extends ColumnDescriptor {
+
+    /**
+     * This enum describes the aggregate functions.
+     */
+    public static enum Function {
+        MEAN {
+            @Override
+            public double compute(double[] values, int n) {
+                double retVal = Double.NaN;
+                if (n > 0) {
+                    double sum = 0.0;
+                    for (int i = 0; i < n; i++)
+                        sum += values[i];
+                    retVal = sum / n;
+                }
+                return retVal;
+            }
+        }, MEDIAN {
+            @Override
+            public double compute(double[] values, int n) {
+                double retVal = Double.NaN;
+                if (n > 0) {
+                    Arrays.sort(values, 0, n);
+                    int mid = n / 2;
+                    retVal = ((n & 1) == 1 ? values[mid] : (values[mid - 1] + values[mid]) / 2);
+                }
+                return retVal;
+            }
+        };
+
+        /**
+         * @return the aggregate of the specified values
+         *
+         * @param values	buffer containing the values (may be reordered)
+         * @param n			number of values in the buffer
+         */
+        public abstract double compute(double[] values, int n);
+
+        /**
+         * @return the name of this function as used in column specifications
+         */
+        public String label() {
+            return this.name().toLowerCase();
+        }
+
+    }
+
+    /**
+     * This class describes a parsed aggregate specification.
+     */
+    private static class Aggregate {
+
+        /** aggregate function */
+        private Function function;
+        /** column indices of the samples */
+        private int[] cols;
+
+        /**
+         * Parse an aggregate specification.
+         *
+         * @param spec			specification string
+         * @param descriptor	column descriptor, for sample lookup
+         *
+         * @return the aggregate, or NULL if the specification is invalid
+         */
+        private static Aggregate parse(String spec, ColumnDescriptor descriptor) {
+            Aggregate retVal = null;
+            Matcher m = AGGREGATE_PATTERN.matcher(spec);
+            if (m.matches()) {
+                String[] samples = StringUtils.split(m.group(2), SAMPLE_SEP);
+                int[] cols = Arrays.stream(samples).mapToInt(x -> descriptor.getColIdx(x)).toArray();
+                if (cols.length > 0 && Arrays.stream(cols).allMatch(x -> x >= 0)) {
+                    retVal = new Aggregate();
+                    retVal.function = Function.valueOf(m.group(1).toUpperCase());
+                    retVal.cols = cols;
+                }
+            }
+            return retVal;
+        }
+
+    }
+
+    // FIELDS
+    /** denominator specification */
+    private String denominator;
+    /** numerator aggregate */
+    private Aggregate numAggregate;
+    /** denominator aggregate, or NULL if there is none */
+    private Aggregate demAggregate;
+    /** TRUE if the denominator is the baseline */
+    private boolean baseline;
+    /** numerator values, indexed by feature ordinal */
+    private double[] numValues;
+    /** denominator values, indexed by feature ordinal, or NULL if there is no sample denominator */
+    private double[] demValues;
+    /** pattern for aggregate specifications */
+    private static final Pattern AGGREGATE_PATTERN = Pattern.compile("(mean|median)\\((.+)\\)");
+    /** separator for sample names in an aggregate specification */
+    public static final char SAMPLE_SEP = '+';
+    /** maximum number of aggregates to cache for a single database */
+    private static final int MAX_CACHED = 50;
+    /** cache of computed aggregates, keyed by data file and then specification */
+    private static final DataCache<Map<String, double[]>> CACHE = new DataCache<Map<String, double[]>>();
+
+    /**
+     * Construct an aggregate column.
+     *
+     * @param denominator	denominator specification, or an empty string if there is none
+     */
+    public AggregateColumnDescriptor(String denominator) {
+        this.denominator = denominator;
+    }
+
+    /**
+     * @return TRUE if the specified column specification is an aggregate
+     *
+     * @param spec	primary column specification to check
+     */
+    public static boolean isAggregate(String spec) {
+        return AGGREGATE_PATTERN.matcher(spec).matches();
+    }
+
+    /**
+     * @return the specification string for an aggregate over a list of samples
+     *
+     * @param function	aggregate function
+     * @param samples	names of the samples to aggregate
+     */
+    public static String specOf(Function function, List<String> samples) {
+        return function.label() + "(" + StringUtils.join(samples, SAMPLE_SEP) + ")";
+    }
+
+    @Override
+    protected boolean init() {
+        this.numAggregate = Aggregate.parse(this.getSample1(), this);
+        boolean retVal = (this.numAggregate != null);
+        if (retVal) {
+            this.demAggregate = null;
+            this.baseline = false;
+            if (this.denominator.contentEquals("baseline"))
+                this.baseline = true;
+            else if (! this.denominator.isEmpty()) {
+                String demSpec = this.denominator;
+                if (! isAggregate(demSpec))
+                    demSpec = Function.MEAN.label() + "(" + demSpec + ")";
+                this.demAggregate = Aggregate.parse(demSpec, this);
+                retVal = (this.demAggregate != null);
+            }
+        }
+        if (retVal) {
+            this.numValues = this.computeValues(this.getSample1(), this.numAggregate);
+            if (this.demAggregate != null)
+                this.demValues = this.computeValues(this.denominator, this.demAggregate);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the aggregate values for all the features, taken from the cache if possible
+     *
+     * @param spec			aggregate specification
+     * @param aggregate		parsed aggregate
+     */
+    private double[] computeValues(String spec, Aggregate aggregate) {
+        double[] retVal;
+        if (this.getDataFile() == null)
+            retVal = this.scan(aggregate);
+        else {
+            try {
+                Map<String, double[]> specMap = CACHE.get(this.getDataFile(),
+                        x -> new ConcurrentHashMap<String, double[]>());
+                retVal = specMap.get(spec);
+                if (retVal == null) {
+                    retVal = this.scan(aggregate);
+                    // Keep the cache from growing without bound.
+                    if (specMap.size() >= MAX_CACHED)
+                        specMap.clear();
+                    specMap.put(spec, retVal);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the aggregate values for all the features, computed in a single pass over the database
+     *
+     * @param aggregate		parsed aggregate
+     */
+    private double[] scan(Aggregate aggregate) {
+        RnaData data = this.getData();
+        double[] retVal = new double[this.getFeatureIndex().size()];
+        final int[] cols = aggregate.cols;
+        double[] buffer = new double[cols.length];
+        int f = 0;
+        for (RnaData.Row row : data) {
+            int n = 0;
+            for (int col : cols) {
+                RnaData.Weight weight = row.getWeight(col);
+                if (weight != null && weight.isExactHit()) {
+                    buffer[n] = weight.getWeight();
+                    n++;
+                }
+            }
+            retVal[f] = aggregate.function.compute(buffer, n);
+            f++;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if this column is a ratio
+     */
+    public boolean isRatio() {
+        return (this.baseline || this.demAggregate != null);
+    }
+
+    @Override
+    public double getValue(RnaFeatureData feat) {
+        int featIdx = this.getFeatureIndex().getOrdinal(feat);
+        double retVal = this.numValues[featIdx];
+        if (this.baseline)
+            retVal /= feat.getBaseLine();
+        else if (this.demValues != null)
+            retVal /= this.demValues[featIdx];
+        return retVal;
+    }
+
+    @Override
+    public Key.RevRatio getKey(RnaFeatureData feat) {
+        int featIdx = this.getFeatureIndex().getOrdinal(feat);
+        double num = this.numValues[featIdx];
+        double dem = 1.0;
+        if (this.baseline)
+            dem = feat.getBaseLine();
+        else if (this.demValues != null) {
+            // Missing values sort as zero, as they do in the differential columns.
+            num = (Double.isNaN(num) ? 0.0 : num);
+            dem = (Double.isNaN(this.demValues[featIdx]) ? 0.0 : this.demValues[featIdx]);
+        }
+        return new Key.RevRatio(num, dem);
+    }
+
+    /**
+     * @return the title string for an aggregate
+     *
+     * @param aggregate		aggregate to describe
+     */
+    private String titleStringOf(Aggregate aggregate) {
+        String retVal;
+        if (aggregate.cols.length == 1)
+            retVal = this.getSample(aggregate.cols[0]).getName();
+        else {
+            String[] names = Arrays.stream(aggregate.cols).mapToObj(x -> this.getSample(x).getName())
+                    .toArray(String[]::new);
+            retVal = aggregate.function.label() + "(" + StringUtils.join(names, ", ") + ")";
+        }
+        return StringUtils.replaceChars(retVal, '_', ' ');
+    }
+
+    /**
+     * @return the title HTML for an aggregate
+     *
+     * @param aggregate		aggregate to describe
+     */
+    private DomContent titleOf(Aggregate aggregate) {
+        DomContent retVal;
+        if (aggregate.cols.length == 1)
+            retVal = this.computeName(aggregate.cols[0]);
+        else {
+            DomContent[] names = new DomContent[aggregate.cols.length * 2 + 1];
+            names[0] = text(aggregate.function.label() + "(");
+            for (int i = 0; i < aggregate.cols.length; i++) {
+                names[2*i + 1] = this.computeName(aggregate.cols[i]);
+                names[2*i + 2] = text(i < aggregate.cols.length - 1 ? ", " : ")");
+            }
+            retVal = join((Object[]) names);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the tooltip string for an aggregate
+     *
+     * @param aggregate		aggregate to describe
+     */
+    private String tipOf(Aggregate aggregate) {
+        String retVal;
+        if (aggregate.cols.length == 1)
+            retVal = this.tipStringOf(aggregate.cols[0]);
+        else
+            retVal = StringUtils.capitalize(aggregate.function.label()) + " of " + aggregate.cols.length + " samples.";
+        return retVal;
+    }
+
+    @Override
+    public String getTitleString() {
+        String retVal = this.titleStringOf(this.numAggregate);
+        if (this.baseline)
+            retVal += " / baseline";
+        else if (this.demAggregate != null)
+            retVal += " / " + this.titleStringOf(this.demAggregate);
+        return retVal;
+    }
+
+    @Override
+    public DomContent getTitle() {
+        DomContent retVal = this.titleOf(this.numAggregate);
+        if (this.baseline)
+            retVal = join(retVal, " / baseline");
+        else if (this.demAggregate != null)
+            retVal = join(retVal, " / ", this.titleOf(this.demAggregate));
+        return retVal;
+    }
+
+    @Override
+    public String getTooltip() {
+        String retVal = this.tipOf(this.numAggregate);
+        if (this.demAggregate != null)
+            retVal = "Numerator: " + retVal + "  Denominator: " + this.tipOf(this.demAggregate);
+        return retVal;
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * This column creator produces a single aggregate column from all of the primary samples.  If the optional
+ * sample is "baseline", the aggregate is displayed relative to the baseline.  Otherwise, the optional sample
+ * may be a list of sample names separated by plus signs, in which case the column is the ratio of the two
+ * aggregates.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AggregateNewColumnCreator extends NewColumnCreator {
+
+    // FIELDS
+    /** aggregate function */
+    private AggregateColumnDescriptor.Function function;
+
+    /**
+     * Construct an aggregate column creator.
+     *
+     * @param function	aggregate function to use
+     * @param samp1		IDs of first samples
+     * @param samp2		ID of second sample
+     * @param samps		list of samples
+     */
+    public AggregateNewColumnCreator(AggregateColumnDescriptor.Function function, List<String> samp1, String samp2,
+            List<String> samps) {
+        super(samp1, samp2, samps);
+        this.function = function;
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        List<String> samp1 = this.getSample1().stream().filter(x -> ! x.isEmpty()).collect(Collectors.toList());
+        List<String> retVal;
+        if (samp1.isEmpty())
+            retVal = Collections.emptyList();
+        else {
+            String samp2 = this.getSample2();
+            if (samp2.contains(String.valueOf(AggregateColumnDescriptor.SAMPLE_SEP))) {
+                List<String> demSamples = Arrays.asList(StringUtils.split(samp2, AggregateColumnDescriptor.SAMPLE_SEP));
+                samp2 = AggregateColumnDescriptor.specOf(this.function, demSamples);
+            }
+            retVal = Collections.singletonList(AggregateColumnDescriptor.specOf(this.function, samp1) + "," + samp2);
+        }
+        return retVal;
+    }
+
+}
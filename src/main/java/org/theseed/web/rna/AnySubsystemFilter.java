@@ -7,6 +7,8 @@ import org.theseed.rna.RnaFeatureData;
 import org.theseed.web.ColumnProcessor;
 
 /**
+ * This filter only shows rows that belong to at least one subsystem.
+ *
  * @author Bruce Parrello
  *
  */
@@ -28,7 +30,13 @@ public class AnySubsystemFilter extends RowFilter {
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        return this.processor.getSubTable().isInSubsystem(feat.getId());
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.processor.getSubIndex().isInSubsystem(featIdx);
     }
 
 }
@@ -9,6 +9,8 @@ import org.theseed.web.ProductionProcessor;
 import org.theseed.web.RnaMetaProcessor;
 import org.theseed.web.SampleDisplayProcessor;
 import org.theseed.web.ScatterProcessor;
+import org.theseed.web.SearchProcessor;
+import org.theseed.web.SubsystemListProcessor;
 import org.theseed.web.SubsystemPageProcessor;
 import org.theseed.web.WebProcessor;
 
@@ -23,6 +25,8 @@ import org.theseed.web.WebProcessor;
  * production	display predictions for virtual and real samples
  * sample		display details for one or more samples
  * subsystem	display a subsystem from a GTO
+ * subsystems	list or search the subsystems in a GTO
+ * search		search the genes, subsystems, and groups of an RNA database
  * group		display the snip data for a modulon/regulon group
  * csv			download the saved CSV produced by the column processor
  *
@@ -64,9 +68,15 @@ public class App
         case "subsystem" :
             processor = new SubsystemPageProcessor();
             break;
+        case "subsystems" :
+            processor = new SubsystemListProcessor();
+            break;
         case "groups" :
             processor = new GroupPageProcessor();
             break;
+        case "search" :
+            processor = new SearchProcessor();
+            break;
         default:
             throw new RuntimeException("Invalid command " + command);
         }
@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.rna.RnaData;
+
+/**
+ * This object supports co-expression searches on an RNA database.  For each feature, the expression values in the
+ * good-quality samples are centered on the feature's mean and scaled to unit length.  The Pearson correlation between
+ * two features is then simply the dot product of their vectors.  Missing values are replaced by the feature mean
+ * (which is zero after centering), so they do not contribute to the correlation.  A feature with no variation has no
+ * correlation with anything, and its vector is left empty.
+ *
+ * The correlations between a focus feature and every other feature are computed in parallel.
+ *
+ * Co-expression indexes are cached by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CoexpressionIndex {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(CoexpressionIndex.class);
+    /** normalized expression vectors, indexed by feature ordinal (NULL if the feature does not vary) */
+    private float[][] vectors;
+    /** in-memory cache of co-expression indexes */
+    private static final DataCache<CoexpressionIndex> CACHE = new DataCache<CoexpressionIndex>();
+
+    /**
+     * Construct a co-expression index from an expression matrix.
+     *
+     * @param matrix	expression matrix for the RNA database
+     */
+    public CoexpressionIndex(ExpressionMatrix matrix) {
+        final int[] cols = matrix.getGoodColumns();
+        this.vectors = new float[matrix.getFeatureCount()][];
+        IntStream.range(0, this.vectors.length).parallel().forEach(f -> {
+            float[] row = matrix.getRow(f);
+            // Compute the mean of the values present.
+            double sum = 0.0;
+            int count = 0;
+            for (int col : cols) {
+                float v = row[col];
+                if (! Float.isNaN(v)) {
+                    sum += v;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                double mean = sum / count;
+                // Center the values and compute the length.
+                float[] vector = new float[cols.length];
+                double sqSum = 0.0;
+                for (int i = 0; i < cols.length; i++) {
+                    float v = row[cols[i]];
+                    if (! Float.isNaN(v)) {
+                        double centered = v - mean;
+                        vector[i] = (float) centered;
+                        sqSum += centered * centered;
+                    }
+                }
+                if (sqSum > 0.0) {
+                    // Scale to unit length.
+                    double norm = Math.sqrt(sqSum);
+                    for (int i = 0; i < vector.length; i++)
+                        vector[i] /= norm;
+                    this.vectors[f] = vector;
+                }
+            }
+        });
+        log.info("Co-expression index built for {} features over {} samples.", this.vectors.length, cols.length);
+    }
+
+    /**
+     * @return the co-expression index for an RNA database
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static CoexpressionIndex get(File dataFile, RnaData data) throws IOException {
+        ExpressionMatrix matrix = ExpressionMatrix.get(dataFile, data);
+        return CACHE.get(dataFile, x -> new CoexpressionIndex(matrix));
+    }
+
+    /**
+     * @return the correlation of a focus feature with every feature, indexed by feature ordinal (NaN if undefined)
+     *
+     * @param focusIdx	ordinal of the focus feature
+     */
+    public double[] correlations(int focusIdx) {
+        final int n = this.vectors.length;
+        double[] retVal = new double[n];
+        final float[] focus = this.vectors[focusIdx];
+        if (focus == null)
+            IntStream.range(0, n).forEach(f -> retVal[f] = Double.NaN);
+        else {
+            IntStream.range(0, n).parallel().forEach(f -> {
+                float[] other = this.vectors[f];
+                if (other == null)
+                    retVal[f] = Double.NaN;
+                else {
+                    double dot = 0.0;
+                    for (int i = 0; i < focus.length; i++)
+                        dot += focus[i] * other[i];
+                    retVal[f] = dot;
+                }
+            });
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the ordinals of the features most closely correlated with a focus feature, from highest to lowest
+     *
+     * The focus feature itself is not included.
+     *
+     * @param scores	correlation array computed by "correlations"
+     * @param focusIdx	ordinal of the focus feature
+     * @param k			maximum number of features to return
+     */
+    public static int[] topNeighbors(double[] scores, int focusIdx, int k) {
+        // Keep the best K in a min-heap, so the weakest is always on top.
+        PriorityQueue<Integer> best = new PriorityQueue<Integer>(k + 1, (a, b) -> Double.compare(scores[a], scores[b]));
+        for (int f = 0; f < scores.length; f++) {
+            if (f != focusIdx && ! Double.isNaN(scores[f])) {
+                if (best.size() < k)
+                    best.add(f);
+                else if (k > 0 && scores[f] > scores[best.peek()]) {
+                    best.poll();
+                    best.add(f);
+                }
+            }
+        }
+        int[] retVal = new int[best.size()];
+        for (int i = retVal.length - 1; i >= 0; i--)
+            retVal[i] = best.poll();
+        return retVal;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.BitSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.rna.RnaData;
+
+/**
+ * This object computes the values of the columns in a table in a single batch.  The database rows are walked once,
+ * and the values for all the columns are stored in arrays indexed by column and feature ordinal.  Sample columns, that
+ * is, simple and differential columns whose values are a display weight or a ratio of two display weights (see
+ * ColumnDescriptor#getBatchColumns), are computed directly from each row rather than having the descriptor look up
+ * the row for each feature.  The values of the other columns come from their descriptors.
+ *
+ * Because the values are stored by feature ordinal, row filters can examine an entire column at once.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnBatch {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ColumnBatch.class);
+    /** set of table columns computed directly from the database rows */
+    private BitSet batched;
+    /** column values, indexed by table column and then feature ordinal */
+    private double[][] values;
+
+    /**
+     * Compute the column values for a table.
+     *
+     * @param columns	descriptors for the table columns
+     * @param data		RNA database for the table
+     * @param nFeats	number of features in the database
+     */
+    public ColumnBatch(ColumnDescriptor[] columns, RnaData data, int nFeats) {
+        final int nCols = columns.length;
+        this.batched = new BitSet(nCols);
+        this.values = new double[nCols][nFeats];
+        // Get the numerator and denominator sample for each sample column.
+        int[] nums = new int[nCols];
+        int[] dens = new int[nCols];
+        for (int i = 0; i < nCols; i++) {
+            int[] cols = columns[i].getBatchColumns();
+            if (cols != null) {
+                this.batched.set(i);
+                nums[i] = cols[0];
+                dens[i] = cols[1];
+            }
+        }
+        // Walk the database rows, filling in the values for all the columns at once.
+        int f = 0;
+        for (RnaData.Row row : data) {
+            for (int i = 0; i < nCols; i++) {
+                double value;
+                if (this.batched.get(i)) {
+                    value = displayWeight(row, nums[i]);
+                    if (dens[i] >= 0)
+                        value /= displayWeight(row, dens[i]);
+                } else
+                    value = columns[i].getValue(row.getFeat());
+                this.values[i][f] = value;
+            }
+            f++;
+        }
+        log.info("{} columns ({} sample columns) computed in batch for {} features.", nCols, this.batched.cardinality(),
+                f);
+    }
+
+    /**
+     * Construct a column batch from precomputed values.
+     *
+     * @param values	column values, indexed by table column and then feature ordinal
+     */
+    protected ColumnBatch(double[][] values) {
+        this.batched = new BitSet(values.length);
+        this.values = values;
+    }
+
+    /**
+     * @return the display weight for a sample in a database row (NaN for missing or inexact hits)
+     *
+     * @param row		database row of interest
+     * @param colIdx	index of the sample column
+     */
+    private static double displayWeight(RnaData.Row row, int colIdx) {
+        RnaData.Weight weight = row.getWeight(colIdx);
+        double retVal = Double.NaN;
+        if (weight != null && weight.isExactHit())
+            retVal = weight.getWeight();
+        return retVal;
+    }
+
+    /**
+     * @return the value of a table column for a feature
+     *
+     * @param i			index of the table column
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double getValue(int i, int featIdx) {
+        return this.values[i][featIdx];
+    }
+
+    /**
+     * @return the values of a table column, indexed by feature ordinal (this array must not be modified)
+     *
+     * @param i		index of the table column
+     */
+    public double[] getValues(int i) {
+        return this.values[i];
+    }
+
+    /**
+     * @return the values of all the table columns for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double[] getRow(int featIdx) {
+        double[] retVal = new double[this.values.length];
+        for (int i = 0; i < retVal.length; i++)
+            retVal[i] = this.values[i][featIdx];
+        return retVal;
+    }
+
+    /**
+     * @return the number of table columns
+     */
+    public int size() {
+        return this.values.length;
+    }
+
+}
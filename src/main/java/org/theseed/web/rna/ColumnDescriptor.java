@@ -3,6 +3,9 @@
  */
 package org.theseed.web.rna;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +34,10 @@ public abstract class ColumnDescriptor {
     // FIELDS
     /** RNA data repository */
     private RnaData data;
+    /** file from which the RNA data repository was loaded, or NULL if it is unknown */
+    private File dataFile;
+    /** feature ordinal index for the RNA data repository */
+    private RnaFeatureIndex featIndex;
     /** primary sample name */
     private String sample1;
     /** linker for HTML */
@@ -48,11 +55,33 @@ public abstract class ColumnDescriptor {
      * @return
      */
     public static ColumnDescriptor create(String saveString, RnaData data) {
+        return create(saveString, data, null);
+    }
+
+    /**
+     * Create a column descriptor from a save string.  Columns that compute values for the whole database at once
+     * cache them by data file.
+     *
+     * @param saveString	incoming save string
+     * @param data			RNA data repository
+     * @param dataFile		file from which the repository was loaded, or NULL if it is unknown
+     *
+     * @return the column descriptor, or NULL if the save string is invalid
+     */
+    public static ColumnDescriptor create(String saveString, RnaData data, File dataFile) {
         // Split the save string.
         String[] parts = StringUtils.split(saveString, ',');
         // Create the descriptor.
         ColumnDescriptor retVal = null;
-        if (parts.length <= 1)
+        if (parts.length > 0 && FormulaColumnDescriptor.isFormula(parts[0]))
+            retVal = new FormulaColumnDescriptor();
+        else if (parts.length > 0 && AggregateColumnDescriptor.isAggregate(parts[0]))
+            retVal = new AggregateColumnDescriptor(parts.length > 1 ? parts[1] : "");
+        else if (parts.length > 0 && ZScoreColumnDescriptor.isZScore(parts[0]))
+            retVal = new ZScoreColumnDescriptor();
+        else if (parts.length > 0 && GroupTestColumnDescriptor.isComparison(parts[0]))
+            retVal = new GroupTestColumnDescriptor(parts.length > 1 ? parts[1] : "");
+        else if (parts.length <= 1)
             retVal = new SimpleColumnDescriptor();
         else if (parts[1].contentEquals("baseline"))
             retVal = new BaselineColumnDescriptor();
@@ -61,6 +90,7 @@ public abstract class ColumnDescriptor {
         // Fill in the constant data.
         retVal.sample1 = parts[0];
         retVal.data = data;
+        retVal.dataFile = dataFile;
         // Initialize the descriptor.
         if (! retVal.init())
             retVal = null;
@@ -99,6 +129,15 @@ public abstract class ColumnDescriptor {
         return retVal;
     }
 
+    /**
+     * @return the numerator and denominator sample columns if this column's value is a display weight or a ratio of
+     * 		   two display weights, or NULL if it is computed some other way (a denominator of -1 indicates there is
+     * 		   no denominator)
+     */
+    protected int[] getBatchColumns() {
+        return null;
+    }
+
     /**
      * Initialize the private data of the descriptor.
      *
@@ -126,6 +165,36 @@ public abstract class ColumnDescriptor {
         return this.data.getRow(feat.getId());
     }
 
+    /**
+     * @return the RNA data repository
+     */
+    protected RnaData getData() {
+        return this.data;
+    }
+
+    /**
+     * @return the file from which the RNA data repository was loaded, or NULL if it is unknown
+     */
+    protected File getDataFile() {
+        return this.dataFile;
+    }
+
+    /**
+     * @return the feature ordinal index for the RNA data repository
+     */
+    protected RnaFeatureIndex getFeatureIndex() {
+        if (this.featIndex == null) {
+            if (this.dataFile == null)
+                this.featIndex = new RnaFeatureIndex(this.data);
+            else try {
+                this.featIndex = RnaFeatureIndex.get(this.dataFile, this.data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.featIndex;
+    }
+
     /**
      * @return the descriptor for a sample
      *
@@ -245,10 +314,23 @@ public abstract class ColumnDescriptor {
      * @param data				RNA data repository
      */
     public static ColumnDescriptor[] parse(String cookieString, RnaData data) {
+        return parse(cookieString, data, null);
+    }
+
+    /**
+     * @return an array of column descriptors for all the columns described in the specified cookie string
+     *
+     * The cookie string contains the column definitions separated by semicolons.
+     *
+     * @param cookieString		column definition string
+     * @param data				RNA data repository
+     * @param dataFile			file from which the repository was loaded, or NULL if it is unknown
+     */
+    public static ColumnDescriptor[] parse(String cookieString, RnaData data, File dataFile) {
         String[] columns = getSpecStrings(cookieString);
         List<ColumnDescriptor> buffer = new ArrayList<ColumnDescriptor>(columns.length);
         for (int i = 0; i < columns.length; i++) {
-            ColumnDescriptor column = ColumnDescriptor.create(columns[i], data);
+            ColumnDescriptor column = ColumnDescriptor.create(columns[i], data, dataFile);
             if (column != null)
                 buffer.add(column);
         }
@@ -283,13 +365,17 @@ public abstract class ColumnDescriptor {
      * @return the database type for the specified definition string
      *
      * @param cookieString		column definition string
-     * @param rnaTypes			RNA data type array
+     * @param rnaTypes			RNA data type array, sorted by ordinal
      */
     public static RnaDataType getDbType(String cookieString, RnaDataType[] rnaTypes) {
         RnaDataType retVal = rnaTypes[0];
         String[] parts = StringUtils.splitPreserveAllTokens(cookieString, SORT_SEP_CHAR);
-        if (parts.length >= 3 && ! parts[2].isEmpty())
-            retVal = rnaTypes[Integer.valueOf(parts[2])];
+        if (parts.length >= 3 && ! parts[2].isEmpty()) {
+            // If the database is no longer present, we fall back to the default.
+            RnaDataType found = RnaDataType.find(rnaTypes, Integer.valueOf(parts[2]));
+            if (found != null)
+                retVal = found;
+        }
         return retVal;
     }
 
@@ -0,0 +1,451 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * This object represents a column formula.  A formula is an arithmetic expression over sample names, using the
+ * operators "+", "-", "*", and "/", parentheses, numeric constants, the keyword "baseline" (the feature's baseline
+ * expression value), and the one-argument functions listed in the Function enum.  So, for example,
+ * "(A+B)/2/C" is the mean of samples A and B divided by sample C, and "log2(A/baseline)" is the log ratio of sample A
+ * to the baseline.
+ *
+ * The formula is parsed once and compiled into a postfix program.  Each step of the program operates on whole
+ * vectors of values (one per feature), so a single evaluation computes the formula for the entire database.  As with
+ * the display weights, missing values and inexact hits are NaN, so they propagate to the result.  Division follows
+ * the floating-point rules:  a nonzero value divided by zero is infinite, and zero divided by zero is NaN.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnFormula {
+
+    /**
+     * This enum describes the functions that can be used in a formula.
+     */
+    public static enum Function {
+        LOG2 {
+            @Override
+            public double apply(double x) {
+                return Math.log(x) / LN2;
+            }
+        }, LOG10 {
+            @Override
+            public double apply(double x) {
+                return Math.log10(x);
+            }
+        }, LN {
+            @Override
+            public double apply(double x) {
+                return Math.log(x);
+            }
+        }, EXP {
+            @Override
+            public double apply(double x) {
+                return Math.exp(x);
+            }
+        }, SQRT {
+            @Override
+            public double apply(double x) {
+                return Math.sqrt(x);
+            }
+        }, ABS {
+            @Override
+            public double apply(double x) {
+                return Math.abs(x);
+            }
+        };
+
+        /**
+         * @return the value of this function for the specified argument
+         *
+         * @param x		argument value
+         */
+        public abstract double apply(double x);
+
+        /**
+         * @return the name of this function as used in formulas
+         */
+        public String label() {
+            return this.name().toLowerCase();
+        }
+
+        /**
+         * @return the function with the specified name, or NULL if there is none
+         *
+         * @param name	name of the desired function
+         */
+        public static Function find(String name) {
+            Function retVal = null;
+            for (Function function : Function.values()) {
+                if (function.label().equals(name))
+                    retVal = function;
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This enum describes the binary operators.
+     */
+    private static enum Operator {
+        ADD("+") {
+            @Override
+            public double apply(double a, double b) {
+                return a + b;
+            }
+        }, SUB("-") {
+            @Override
+            public double apply(double a, double b) {
+                return a - b;
+            }
+        }, MUL("*") {
+            @Override
+            public double apply(double a, double b) {
+                return a * b;
+            }
+        }, DIV("/") {
+            @Override
+            public double apply(double a, double b) {
+                return a / b;
+            }
+        };
+
+        /** operator symbol */
+        private String symbol;
+
+        private Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * @return the result of applying this operator
+         *
+         * @param a		left operand
+         * @param b		right operand
+         */
+        public abstract double apply(double a, double b);
+
+        /**
+         * @return the operator with the specified symbol, or NULL if there is none
+         *
+         * @param symbol	symbol of the desired operator
+         */
+        public static Operator find(String symbol) {
+            Operator retVal = null;
+            for (Operator op : Operator.values()) {
+                if (op.symbol.equals(symbol))
+                    retVal = op;
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This interface represents a step in a compiled formula.  Each step manipulates a stack of value vectors.
+     */
+    private static interface Step {
+
+        /**
+         * Execute this step.
+         *
+         * @param stack		stack of value vectors, indexed by feature ordinal
+         * @param matrix	expression matrix for the RNA database
+         */
+        public void execute(Deque<double[]> stack, ExpressionMatrix matrix);
+
+    }
+
+    // FIELDS
+    /** formula text */
+    private String text;
+    /** formula tokens */
+    private List<String> tokens;
+    /** column index for each token, or -1 if the token is not a sample name */
+    private int[] tokenCols;
+    /** positions of the tokens that are binary operators */
+    private BitSet binaryOps;
+    /** column indices of the samples used, in order of first use */
+    private List<Integer> sampleCols;
+    /** compiled program */
+    private List<Step> program;
+    /** TRUE if the formula contains a division */
+    private boolean ratio;
+    /** current token position during parsing */
+    private int pos;
+    /** sample-name lookup used during parsing */
+    private ToIntFunction<String> lookup;
+    /** natural log of 2 */
+    private static final double LN2 = Math.log(2.0);
+    /** special characters that are always single-character tokens */
+    private static final String SPECIALS = "+-*/()";
+    /** pattern for numeric constants */
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+(\\.\\d*)?|\\.\\d+");
+    /** keyword for the baseline value */
+    public static final String BASELINE = "baseline";
+
+    /**
+     * Parse and compile a formula.
+     *
+     * @param text		formula text
+     * @param lookup	function that returns the column index of a sample name, or -1 if it is not found
+     *
+     * @throws IllegalArgumentException if the formula is invalid
+     */
+    public ColumnFormula(String text, ToIntFunction<String> lookup) {
+        this.text = text;
+        this.tokens = tokenize(text);
+        this.tokenCols = new int[this.tokens.size()];
+        Arrays.fill(this.tokenCols, -1);
+        this.binaryOps = new BitSet(this.tokens.size());
+        this.sampleCols = new ArrayList<Integer>();
+        this.program = new ArrayList<Step>();
+        this.ratio = false;
+        this.lookup = lookup;
+        this.pos = 0;
+        if (this.tokens.isEmpty())
+            throw new IllegalArgumentException("Formula is empty.");
+        this.parseSum();
+        if (this.pos < this.tokens.size())
+            throw new IllegalArgumentException("Unexpected \"" + this.tokens.get(this.pos) + "\" in formula.");
+        // The lookup is only needed during parsing.
+        this.lookup = null;
+    }
+
+    /**
+     * @return the tokens in a formula
+     *
+     * @param text	formula text
+     */
+    private static List<String> tokenize(String text) {
+        List<String> retVal = new ArrayList<String>();
+        StringBuilder word = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || SPECIALS.indexOf(c) >= 0) {
+                if (word.length() > 0) {
+                    retVal.add(word.toString());
+                    word.setLength(0);
+                }
+                if (! Character.isWhitespace(c))
+                    retVal.add(String.valueOf(c));
+            } else
+                word.append(c);
+        }
+        if (word.length() > 0)
+            retVal.add(word.toString());
+        return retVal;
+    }
+
+    /**
+     * @return the current token, or an empty string if we are at the end
+     */
+    private String peek() {
+        return (this.pos < this.tokens.size() ? this.tokens.get(this.pos) : "");
+    }
+
+    /**
+     * Consume the current token, which must be the specified string.
+     *
+     * @param expected	expected token
+     */
+    private void expect(String expected) {
+        if (! this.peek().equals(expected))
+            throw new IllegalArgumentException("Expected \"" + expected + "\" in formula.");
+        this.pos++;
+    }
+
+    /**
+     * Parse a sum or difference of terms.
+     */
+    private void parseSum() {
+        this.parseProduct();
+        Operator op = Operator.find(this.peek());
+        while (op == Operator.ADD || op == Operator.SUB) {
+            this.binaryOps.set(this.pos);
+            this.pos++;
+            this.parseProduct();
+            this.compileOperator(op);
+            op = Operator.find(this.peek());
+        }
+    }
+
+    /**
+     * Parse a product or quotient of factors.
+     */
+    private void parseProduct() {
+        this.parseFactor();
+        Operator op = Operator.find(this.peek());
+        while (op == Operator.MUL || op == Operator.DIV) {
+            this.binaryOps.set(this.pos);
+            this.pos++;
+            this.parseFactor();
+            this.compileOperator(op);
+            if (op == Operator.DIV)
+                this.ratio = true;
+            op = Operator.find(this.peek());
+        }
+    }
+
+    /**
+     * Parse a factor, which is a negation, a parenthesized expression, a function call, a constant, the baseline, or
+     * a sample.
+     */
+    private void parseFactor() {
+        String token = this.peek();
+        if (token.isEmpty())
+            throw new IllegalArgumentException("Formula ends unexpectedly.");
+        this.pos++;
+        if (token.equals("-")) {
+            this.parseFactor();
+            this.compileFunction(x -> -x);
+        } else if (token.equals("(")) {
+            this.parseSum();
+            this.expect(")");
+        } else if (SPECIALS.contains(token)) {
+            throw new IllegalArgumentException("Unexpected \"" + token + "\" in formula.");
+        } else if (this.peek().equals("(")) {
+            Function function = Function.find(token);
+            if (function == null)
+                throw new IllegalArgumentException("Unknown function \"" + token + "\" in formula.");
+            this.pos++;
+            this.parseSum();
+            this.expect(")");
+            this.compileFunction(x -> function.apply(x));
+        } else if (NUMBER_PATTERN.matcher(token).matches()) {
+            final double value = Double.parseDouble(token);
+            this.program.add((stack, matrix) -> {
+                double[] v = new double[matrix.getFeatureCount()];
+                Arrays.fill(v, value);
+                stack.push(v);
+            });
+        } else if (token.equals(BASELINE)) {
+            this.program.add((stack, matrix) -> {
+                double[] v = new double[matrix.getFeatureCount()];
+                for (int f = 0; f < v.length; f++)
+                    v[f] = matrix.getBaseLine(f);
+                stack.push(v);
+            });
+        } else {
+            final int col = this.lookup.applyAsInt(token);
+            if (col < 0)
+                throw new IllegalArgumentException("Unknown sample \"" + token + "\" in formula.");
+            this.tokenCols[this.pos - 1] = col;
+            if (! this.sampleCols.contains(col))
+                this.sampleCols.add(col);
+            this.program.add((stack, matrix) -> {
+                double[] v = new double[matrix.getFeatureCount()];
+                for (int f = 0; f < v.length; f++)
+                    v[f] = matrix.getRow(f)[col];
+                stack.push(v);
+            });
+        }
+    }
+
+    /**
+     * Compile a step that applies a binary operator to the top two vectors on the stack.
+     *
+     * @param op	operator to apply
+     */
+    private void compileOperator(Operator op) {
+        this.program.add((stack, matrix) -> {
+            double[] b = stack.pop();
+            double[] a = stack.peek();
+            for (int f = 0; f < a.length; f++)
+                a[f] = op.apply(a[f], b[f]);
+        });
+    }
+
+    /**
+     * Compile a step that applies a function to the top vector on the stack.
+     *
+     * @param function	function to apply
+     */
+    private void compileFunction(DoubleUnaryOperator function) {
+        this.program.add((stack, matrix) -> {
+            double[] a = stack.peek();
+            for (int f = 0; f < a.length; f++)
+                a[f] = function.applyAsDouble(a[f]);
+        });
+    }
+
+    /**
+     * @return the value of this formula for every feature, indexed by feature ordinal
+     *
+     * @param matrix	expression matrix for the RNA database
+     */
+    public double[] evaluate(ExpressionMatrix matrix) {
+        Deque<double[]> stack = new ArrayDeque<double[]>();
+        for (Step step : this.program)
+            step.execute(stack, matrix);
+        return stack.pop();
+    }
+
+    /**
+     * @return the formula text
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * @return the number of tokens in the formula
+     */
+    public int size() {
+        return this.tokens.size();
+    }
+
+    /**
+     * @return the token at the specified position
+     *
+     * @param i		position of the desired token
+     */
+    public String getToken(int i) {
+        return this.tokens.get(i);
+    }
+
+    /**
+     * @return the column index of the sample at the specified token position, or -1 if the token is not a sample
+     *
+     * @param i		position of the desired token
+     */
+    public int getTokenColumn(int i) {
+        return this.tokenCols[i];
+    }
+
+    /**
+     * @return TRUE if the token at the specified position is a binary operator
+     *
+     * @param i		position of the desired token
+     */
+    public boolean isBinaryOperator(int i) {
+        return this.binaryOps.get(i);
+    }
+
+    /**
+     * @return the column indices of the samples used in the formula, in order of first use
+     */
+    public List<Integer> getSampleColumns() {
+        return this.sampleCols;
+    }
+
+    /**
+     * @return TRUE if the formula contains a division
+     */
+    public boolean isRatio() {
+        return this.ratio;
+    }
+
+}
@@ -21,7 +21,10 @@ public enum ColumnQualifierType implements IDescribable {
 
         @Override
         public boolean isRangeColored(ColumnDescriptor col) {
-            return col instanceof DifferentialColumnDescriptor;
+            return col instanceof DifferentialColumnDescriptor
+                    || (col instanceof AggregateColumnDescriptor && ((AggregateColumnDescriptor) col).isRatio())
+                    || (col instanceof FormulaColumnDescriptor && ((FormulaColumnDescriptor) col).isRatio())
+                    || col instanceof ZScoreColumnDescriptor;
         }
 
         @Override
@@ -35,7 +38,9 @@ public enum ColumnQualifierType implements IDescribable {
 
         @Override
         public boolean isRangeColored(ColumnDescriptor col) {
-            return col instanceof SimpleColumnDescriptor;
+            return col instanceof SimpleColumnDescriptor
+                    || (col instanceof AggregateColumnDescriptor && ! ((AggregateColumnDescriptor) col).isRatio())
+                    || (col instanceof FormulaColumnDescriptor && ! ((FormulaColumnDescriptor) col).isRatio());
         }
 
         @Override
@@ -0,0 +1,314 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.utils.IDescribable;
+import org.theseed.web.ColumnProcessor;
+
+/**
+ * This filter only shows rows whose values satisfy a list of column conditions.  Each condition applies to a single
+ * table column (identified by its index) and can be a comparison, a closed range, or a top or bottom quantile.
+ *
+ * 	2>=10.0			value in column 2 is at least 10
+ * 	3=0.5..2.0		value in column 3 is between 0.5 and 2.0
+ * 	0top5			value in column 0 is in the top 5% of the column
+ * 	1bottom10%		value in column 1 is in the bottom 10% of the column
+ *
+ * The conditions are combined using AND or OR.  Each condition is evaluated over an entire column at once using the
+ * column values stored by feature ordinal, and the quantile limits are found with a single selection pass over the
+ * column's defined values.  Because the column values are not available until after the columns are computed, the
+ * conditions are evaluated when the first row is checked.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnRangeFilter extends RowFilter {
+
+    /**
+     * This enum describes the ways to combine the conditions.
+     */
+    public static enum Mode implements IDescribable {
+        AND {
+            @Override
+            public String getDescription() {
+                return "All conditions must be satisfied";
+            }
+        }, OR {
+            @Override
+            public String getDescription() {
+                return "Any condition can be satisfied";
+            }
+        };
+    }
+
+    /**
+     * This class describes a single column condition.
+     */
+    public static class Condition {
+
+        /** index of the table column */
+        private int col;
+        /** comparison operator, or "top", "bottom", or ".." */
+        private String op;
+        /** comparison value, lower limit of the range, or quantile percentage */
+        private double limit;
+        /** upper limit of the range */
+        private double upper;
+        /** pattern for comparison conditions */
+        private static final Pattern COMPARE_PATTERN = Pattern.compile("\\s*(\\d+)\\s*([<>]=?)\\s*(\\S+)\\s*");
+        /** pattern for range conditions */
+        private static final Pattern RANGE_PATTERN = Pattern.compile("\\s*(\\d+)\\s*=\\s*(\\S+)\\s*\\.\\.\\s*(\\S+)\\s*");
+        /** pattern for quantile conditions */
+        private static final Pattern QUANTILE_PATTERN = Pattern.compile("\\s*(\\d+)\\s*(top|bottom)\\s*([^\\s%]+)\\s*%?\\s*",
+                Pattern.CASE_INSENSITIVE);
+
+        /**
+         * Construct a condition.
+         *
+         * @param col		index of the table column
+         * @param op		comparison operator ("<", "<=", ">", ">="), "top", "bottom", or ".."
+         * @param limit		comparison value, lower limit of the range, or quantile percentage
+         * @param upper		upper limit of the range (ignored for other operators)
+         */
+        public Condition(int col, String op, double limit, double upper) {
+            this.col = col;
+            this.op = op;
+            this.limit = limit;
+            this.upper = upper;
+        }
+
+        /**
+         * Construct a condition from a specification string.
+         *
+         * @param spec	condition specification
+         *
+         * @throws IllegalArgumentException if the specification is invalid
+         */
+        public Condition(String spec) {
+            Matcher m = COMPARE_PATTERN.matcher(spec);
+            try {
+                if (m.matches()) {
+                    this.op = m.group(2);
+                    this.limit = Double.parseDouble(m.group(3));
+                } else if ((m = RANGE_PATTERN.matcher(spec)).matches()) {
+                    this.op = "..";
+                    this.limit = Double.parseDouble(m.group(2));
+                    this.upper = Double.parseDouble(m.group(3));
+                    if (this.upper < this.limit)
+                        throw new IllegalArgumentException("Empty range in column condition \"" + spec + "\".");
+                } else if ((m = QUANTILE_PATTERN.matcher(spec)).matches()) {
+                    this.op = m.group(2).toLowerCase();
+                    this.limit = Double.parseDouble(m.group(3));
+                    if (this.limit <= 0.0 || this.limit > 100.0)
+                        throw new IllegalArgumentException("Quantile percentage in column condition \"" + spec
+                                + "\" must be greater than 0 and no more than 100.");
+                } else
+                    throw new IllegalArgumentException("Invalid column condition \"" + spec + "\".");
+                this.col = Integer.parseInt(m.group(1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in column condition \"" + spec + "\".");
+            }
+        }
+
+        /**
+         * @return the set of ordinals for the features whose values satisfy this condition
+         *
+         * @param values	column values, indexed by feature ordinal
+         */
+        public BitSet getRows(double[] values) {
+            final int n = values.length;
+            BitSet retVal = new BitSet(n);
+            double min = Double.NEGATIVE_INFINITY;
+            double max = Double.POSITIVE_INFINITY;
+            boolean minOpen = false;
+            boolean maxOpen = false;
+            switch (this.op) {
+            case "<" :
+                max = this.limit;
+                maxOpen = true;
+                break;
+            case "<=" :
+                max = this.limit;
+                break;
+            case ">" :
+                min = this.limit;
+                minOpen = true;
+                break;
+            case ">=" :
+                min = this.limit;
+                break;
+            case ".." :
+                min = this.limit;
+                max = this.upper;
+                break;
+            default :
+                // Here we have a quantile.  Compute the number of values to keep and select the limit.
+                double[] defined = new double[n];
+                int count = 0;
+                for (double value : values) {
+                    if (! Double.isNaN(value))
+                        defined[count++] = value;
+                }
+                int keep = (int) Math.ceil(count * this.limit / 100.0);
+                if (keep == 0)
+                    min = Double.POSITIVE_INFINITY;
+                else if (this.op.equals("top"))
+                    min = select(defined, count, count - keep);
+                else
+                    max = select(defined, count, keep - 1);
+            }
+            for (int f = 0; f < n; f++) {
+                double value = values[f];
+                if ((minOpen ? value > min : value >= min) && (maxOpen ? value < max : value <= max))
+                    retVal.set(f);
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the index of the table column
+         */
+        public int getCol() {
+            return this.col;
+        }
+
+        @Override
+        public String toString() {
+            String retVal;
+            switch (this.op) {
+            case ".." :
+                retVal = this.col + "=" + this.limit + ".." + this.upper;
+                break;
+            case "top" :
+            case "bottom" :
+                retVal = this.col + this.op + this.limit + "%";
+                break;
+            default :
+                retVal = this.col + this.op + this.limit;
+            }
+            return retVal;
+        }
+
+    }
+
+    // FIELDS
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features to display, or NULL if the conditions have not been evaluated */
+    private BitSet members;
+
+    /**
+     * Construct a column range filter.
+     *
+     * @param processor		controlling column processor
+     */
+    public ColumnRangeFilter(ColumnProcessor processor) {
+        this.processor = processor;
+        this.members = null;
+    }
+
+    /**
+     * @return a list of column conditions
+     *
+     * @param specs		comma-delimited list of condition specifications
+     *
+     * @throws IllegalArgumentException if a specification is invalid
+     */
+    public static List<Condition> parse(String specs) {
+        List<Condition> retVal = new ArrayList<Condition>();
+        for (String spec : StringUtils.split(specs, ','))
+            retVal.add(new Condition(spec));
+        return retVal;
+    }
+
+    /**
+     * @return the set of ordinals for the features that satisfy a list of conditions
+     *
+     * @param conditions	list of column conditions
+     * @param mode			method for combining the conditions
+     * @param processor		controlling column processor
+     *
+     * @throws IllegalArgumentException if a condition specifies an invalid column
+     */
+    public static BitSet evaluate(List<Condition> conditions, Mode mode, ColumnProcessor processor) {
+        BitSet retVal = null;
+        for (Condition condition : conditions) {
+            if (condition.getCol() >= processor.getColumnCount())
+                throw new IllegalArgumentException("Invalid column index " + condition.getCol()
+                        + " in column condition.");
+            BitSet rows = condition.getRows(processor.getColumnValues(condition.getCol()));
+            if (retVal == null)
+                retVal = rows;
+            else if (mode == Mode.AND)
+                retVal.and(rows);
+            else
+                retVal.or(rows);
+        }
+        if (retVal == null) {
+            // With no conditions, all the rows pass.
+            final int n = processor.getFeatureIndex().size();
+            retVal = new BitSet(n);
+            retVal.set(0, n);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the value of the specified rank in the first part of an array; the array is partially reordered
+     *
+     * @param values	array of values
+     * @param n			number of values in use
+     * @param k			rank (0-based) of the desired value in ascending order
+     */
+    public static double select(double[] values, int n, int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double t = values[i];
+                    values[i] = values[j];
+                    values[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                break;
+        }
+        return values[k];
+    }
+
+    @Override
+    public boolean isRowDisplayable(RnaFeatureData feat) {
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        if (this.members == null)
+            this.members = evaluate(this.processor.getColumnConditions(), this.processor.getColumnMode(),
+                    this.processor);
+        return this.members.get(featIdx);
+    }
+
+}
@@ -3,12 +3,15 @@
  */
 package org.theseed.web.rna;
 
+import java.util.BitSet;
+
 import org.theseed.rna.RnaFeatureData;
 import org.theseed.web.ColumnProcessor;
 
 /**
  * This is a row filter that restricts the display to rows with a value above a specified minimum in
- * the current filter column.
+ * the current filter column.  This is a special case of a column range filter, and is evaluated over the
+ * whole column when the first row is checked.
  *
  * @author Bruce Parrello
  *
@@ -18,18 +21,29 @@ public class ColumnValueHighFilter extends RowFilter {
     // FIELDS
     /** controlling command processor */
     private ColumnProcessor processor;
-    /** minimum value for display */
-    private double filterMin;
+    /** condition on the filter column */
+    private ColumnRangeFilter.Condition condition;
+    /** ordinals of the features to display, or NULL if the condition has not been evaluated */
+    private BitSet members;
 
     public ColumnValueHighFilter(ColumnProcessor processor) {
         this.processor = processor;
-        this.filterMin = processor.getFilterMin();
+        this.condition = new ColumnRangeFilter.Condition(processor.getFilterColumn(), ">=", processor.getFilterMin(),
+                0.0);
+        this.members = null;
     }
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        double valueInCol = this.processor.getFilterColumnValue(feat);
-        return (valueInCol >= this.filterMin);
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        if (this.members == null)
+            this.members = this.condition.getRows(this.processor.getColumnValues(this.processor.getFilterColumn()));
+        return this.members.get(featIdx);
     }
 
 }
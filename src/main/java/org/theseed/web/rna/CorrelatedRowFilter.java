@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.BitSet;
+
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.ColumnProcessor;
+
+/**
+ * This filter only shows the focus peg and the rows whose expression correlates most closely with it.  If there
+ * is no focus peg, all rows are shown.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CorrelatedRowFilter extends RowFilter {
+
+    // FIELDS
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features to display, or NULL if all are displayed */
+    private BitSet neighbors;
+
+    /**
+     * Construct a co-expression row filter.
+     *
+     * @param processor		controlling column processor
+     */
+    public CorrelatedRowFilter(ColumnProcessor processor) {
+        this.processor = processor;
+        double[] scores = processor.getFocusCorrelations();
+        if (scores == null)
+            this.neighbors = null;
+        else {
+            int focusIdx = processor.getFocusIndex();
+            this.neighbors = new BitSet(scores.length);
+            this.neighbors.set(focusIdx);
+            for (int f : CoexpressionIndex.topNeighbors(scores, focusIdx, processor.getNeighborCount()))
+                this.neighbors.set(f);
+        }
+    }
+
+    @Override
+    public boolean isRowDisplayable(RnaFeatureData feat) {
+        boolean retVal = true;
+        if (this.neighbors != null) {
+            int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+            retVal = (featIdx >= 0 && this.neighbors.get(featIdx));
+        }
+        return retVal;
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return (this.neighbors == null || this.neighbors.get(featIdx));
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This object caches data structures built from files.  Each structure is keyed by the files it was built from, and
+ * it is rebuilt whenever the modification time or size of any of those files changes.  The cache is safe to share
+ * among concurrent requests:  a structure is built only once, and readers of a current structure never block.
+ *
+ * @author Bruce Parrello
+ *
+ * @param <T>	type of structure being cached
+ */
+public class DataCache<T> {
+
+    /**
+     * This interface describes the method used to build a structure from its source file.
+     */
+    public interface ILoader<T> {
+
+        /**
+         * @return the structure built from the specified file
+         *
+         * @param file	source file for the structure
+         *
+         * @throws IOException
+         */
+        public T load(File file) throws IOException;
+
+    }
+
+    /**
+     * This interface describes the method used to build a structure from several source files.
+     */
+    public interface IBuilder<T> {
+
+        /**
+         * @return the structure built from the source files
+         *
+         * @throws IOException
+         */
+        public T build() throws IOException;
+
+    }
+
+    /**
+     * This class describes a single cache entry.
+     */
+    private static class Entry<T> {
+
+        /** modification time and length of each source file */
+        private long[] stamps;
+        /** structure built from the files */
+        private T value;
+
+        /**
+         * Construct a cache entry.
+         *
+         * @param stamps	modification time and length of each source file
+         * @param value		structure built from the files
+         */
+        private Entry(long[] stamps, T value) {
+            this.stamps = stamps;
+            this.value = value;
+        }
+
+        /**
+         * @return TRUE if this entry is current for the specified file state
+         *
+         * @param stamps	modification time and length of each source file
+         */
+        private boolean isCurrent(long[] stamps) {
+            return Arrays.equals(this.stamps, stamps);
+        }
+
+    }
+
+    // FIELDS
+    /** map of source file lists to cache entries */
+    private ConcurrentMap<List<File>, Entry<T>> cache;
+
+    /**
+     * Construct a new, empty data cache.
+     */
+    public DataCache() {
+        this.cache = new ConcurrentHashMap<List<File>, Entry<T>>();
+    }
+
+    /**
+     * @return the structure for the specified file, building it if it is not present or out of date
+     *
+     * @param file		source file for the structure
+     * @param loader	method for building the structure
+     *
+     * @throws IOException
+     */
+    public T get(File file, ILoader<T> loader) throws IOException {
+        File key = file.getAbsoluteFile();
+        return this.get(Collections.singletonList(key), () -> loader.load(key));
+    }
+
+    /**
+     * @return the structure for the specified source files, building it if it is not present or out of date
+     *
+     * @param files		source files for the structure
+     * @param builder	method for building the structure
+     *
+     * @throws IOException
+     */
+    public T get(List<File> files, IBuilder<T> builder) throws IOException {
+        final int n = files.size();
+        long[] stamps = new long[n * 2];
+        File[] keyFiles = new File[n];
+        for (int i = 0; i < n; i++) {
+            File file = files.get(i).getAbsoluteFile();
+            keyFiles[i] = file;
+            stamps[2*i] = file.lastModified();
+            stamps[2*i+1] = file.length();
+        }
+        List<File> key = Arrays.asList(keyFiles);
+        Entry<T> retVal = this.cache.get(key);
+        if (retVal == null || ! retVal.isCurrent(stamps)) {
+            try {
+                retVal = this.cache.compute(key, (k, old) -> {
+                    Entry<T> entry = old;
+                    if (entry == null || ! entry.isCurrent(stamps)) {
+                        try {
+                            entry = new Entry<T>(stamps, builder.build());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    return entry;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return retVal.value;
+    }
+
+    /**
+     * Remove all the structures from the cache.
+     */
+    public void clear() {
+        this.cache.clear();
+    }
+
+}
@@ -45,6 +45,11 @@ public class DifferentialColumnDescriptor extends ColumnDescriptor {
         return retVal;
     }
 
+    @Override
+    protected int[] getBatchColumns() {
+        return new int[] { this.colIdx1, this.colIdx2 };
+    }
+
     @Override
     public String getTitleString() {
         String retVal = this.getSample(this.colIdx1).getName() + " / " +
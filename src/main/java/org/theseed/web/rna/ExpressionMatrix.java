@@ -0,0 +1,180 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.rna.RnaData;
+
+/**
+ * This object contains the expression values of an RNA database as a primitive matrix.  There is one row per
+ * feature, in feature-ordinal order (see RnaFeatureIndex), and one column per sample, in database column order.
+ * Missing values and inexact hits are stored as NaN, just as they are in the display weights.  The baseline value of
+ * each feature is kept as well.  The numerical searches build their own normalized copies from this matrix, so the
+ * database rows only have to be walked once.
+ *
+ * Expression matrices are cached by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ExpressionMatrix {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ExpressionMatrix.class);
+    /** expression values, indexed by feature ordinal and then sample column */
+    private float[][] values;
+    /** sample names, indexed by column */
+    private String[] samples;
+    /** TRUE for each good-quality sample */
+    private boolean[] good;
+    /** baseline expression values, indexed by feature ordinal */
+    private double[] baselines;
+    /** in-memory cache of expression matrices */
+    private static final DataCache<ExpressionMatrix> CACHE = new DataCache<ExpressionMatrix>();
+
+    /**
+     * Construct an expression matrix from an RNA database.
+     *
+     * @param data		RNA database to convert
+     */
+    public ExpressionMatrix(RnaData data) {
+        List<RnaData.JobData> jobs = data.getSamples();
+        final int nSamples = jobs.size();
+        this.samples = new String[nSamples];
+        this.good = new boolean[nSamples];
+        for (int j = 0; j < nSamples; j++) {
+            RnaData.JobData job = jobs.get(j);
+            this.samples[j] = job.getName();
+            this.good[j] = job.isGood();
+        }
+        // Each row of the database becomes a row of the matrix.
+        List<float[]> rowList = new ArrayList<float[]>();
+        List<Double> baseList = new ArrayList<Double>();
+        for (RnaData.Row row : data) {
+            baseList.add(row.getFeat().getBaseLine());
+            float[] rowValues = new float[nSamples];
+            for (int j = 0; j < nSamples; j++) {
+                RnaData.Weight weight = row.getWeight(j);
+                if (weight != null && weight.isExactHit())
+                    rowValues[j] = (float) weight.getWeight();
+                else
+                    rowValues[j] = Float.NaN;
+            }
+            rowList.add(rowValues);
+        }
+        this.values = rowList.stream().toArray(float[][]::new);
+        this.baselines = baseList.stream().mapToDouble(x -> x).toArray();
+        log.info("Expression matrix built with {} features and {} samples.", this.values.length, nSamples);
+    }
+
+    /**
+     * Construct an expression matrix from its component arrays.
+     *
+     * @param samples		sample names, indexed by column
+     * @param good			TRUE for each good-quality sample
+     * @param values		expression values, indexed by feature ordinal and then sample column
+     * @param baselines		baseline expression values, indexed by feature ordinal
+     */
+    protected ExpressionMatrix(String[] samples, boolean[] good, float[][] values, double[] baselines) {
+        this.samples = samples;
+        this.good = good;
+        this.values = values;
+        this.baselines = baselines;
+    }
+
+    /**
+     * @return the expression matrix for an RNA database
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static ExpressionMatrix get(File dataFile, RnaData data) throws IOException {
+        return CACHE.get(dataFile, x -> new ExpressionMatrix(data));
+    }
+
+    /**
+     * @return the expression matrix for an RNA database, loading the database only if necessary
+     *
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    public static ExpressionMatrix load(File dataFile) throws IOException {
+        return CACHE.get(dataFile, x -> {
+            try {
+                return new ExpressionMatrix(RnaData.load(x));
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Class not found: " + e.toString());
+            }
+        });
+    }
+
+    /**
+     * @return the number of features (rows)
+     */
+    public int getFeatureCount() {
+        return this.values.length;
+    }
+
+    /**
+     * @return the number of samples (columns)
+     */
+    public int getSampleCount() {
+        return this.samples.length;
+    }
+
+    /**
+     * @return the expression values for a feature, indexed by sample column (this array must not be modified)
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public float[] getRow(int featIdx) {
+        return this.values[featIdx];
+    }
+
+    /**
+     * @return the baseline expression value for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double getBaseLine(int featIdx) {
+        return this.baselines[featIdx];
+    }
+
+    /**
+     * @return the name of the sample in a column
+     *
+     * @param col	column index of the sample
+     */
+    public String getSample(int col) {
+        return this.samples[col];
+    }
+
+    /**
+     * @return TRUE if the sample in a column is of good quality
+     *
+     * @param col	column index of the sample
+     */
+    public boolean isGood(int col) {
+        return this.good[col];
+    }
+
+    /**
+     * @return the column indices of the good-quality samples
+     */
+    public int[] getGoodColumns() {
+        return IntStream.range(0, this.good.length).filter(j -> this.good[j]).toArray();
+    }
+
+}
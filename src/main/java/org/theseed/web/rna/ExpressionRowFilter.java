@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.BitSet;
+
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.ColumnProcessor;
+
+/**
+ * This filter only shows rows that satisfy the processor's row-filter expression (see RowFilterExpression).  Some of
+ * the filters in an expression depend on the column values, so the expression is evaluated when the first row is
+ * checked, after the columns have been computed.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ExpressionRowFilter extends RowFilter {
+
+    // FIELDS
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features to display, or NULL if the expression has not been evaluated */
+    private BitSet members;
+
+    /**
+     * Construct an expression row filter.
+     *
+     * @param processor		controlling column processor
+     */
+    public ExpressionRowFilter(ColumnProcessor processor) {
+        this.processor = processor;
+        this.members = null;
+    }
+
+    @Override
+    public boolean isRowDisplayable(RnaFeatureData feat) {
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        if (this.members == null)
+            this.members = this.processor.getRowExpression().evaluate(this.processor);
+        return this.members.get(featIdx);
+    }
+
+}
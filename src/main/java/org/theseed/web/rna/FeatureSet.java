@@ -0,0 +1,225 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This object represents a named set of features saved in a user workspace.  The set is stored as a bit set of
+ * feature ordinals (see RnaFeatureIndex) for the database from which it was saved, along with the list of feature
+ * IDs.  When the set is applied to the same version of the same database, the bit set is used directly.  For any
+ * other database, the feature IDs are mapped to that database's ordinals.
+ *
+ * The workspace file for a set is named by adding "_rna.fset" to the set name.  The first line contains the name of
+ * the source database file, its modification time, and the bit set encoded in base 64, separated by tabs.  Each
+ * remaining line contains a feature ID.
+ *
+ * Feature sets are cached in memory by workspace file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FeatureSet {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(FeatureSet.class);
+    /** name of the source database file */
+    private String dbName;
+    /** modification time of the source database file */
+    private long version;
+    /** ordinals of the member features in the source database */
+    private BitSet members;
+    /** IDs of the member features */
+    private List<String> fids;
+    /** suffix for feature set file names */
+    public static final String SET_SUFFIX = "_rna.fset";
+    /** in-memory cache of feature sets */
+    private static final DataCache<FeatureSet> CACHE = new DataCache<FeatureSet>();
+
+    /**
+     * Construct a feature set from a set of feature ordinals.
+     *
+     * @param dataFile		source database file
+     * @param featIndex		feature index for the source database
+     * @param members		ordinals of the member features
+     */
+    public FeatureSet(File dataFile, RnaFeatureIndex featIndex, BitSet members) {
+        this.dbName = dataFile.getName();
+        this.version = dataFile.lastModified();
+        this.members = (BitSet) members.clone();
+        this.fids = members.stream().mapToObj(x -> featIndex.getFid(x)).collect(Collectors.toList());
+    }
+
+    /**
+     * Construct a feature set from its saved data.
+     *
+     * @param dbName		name of the source database file
+     * @param version		modification time of the source database file
+     * @param members		ordinals of the member features in the source database
+     * @param fids			IDs of the member features
+     */
+    protected FeatureSet(String dbName, long version, BitSet members, List<String> fids) {
+        this.dbName = dbName;
+        this.version = version;
+        this.members = members;
+        this.fids = fids;
+    }
+
+    /**
+     * @return the workspace file for a feature set
+     *
+     * @param workDir	user workspace directory
+     * @param name		name of the feature set
+     *
+     * @throws IllegalArgumentException if the name contains characters other than letters, digits, and underscores
+     */
+    public static File setFile(File workDir, String name) {
+        if (! StringUtils.isAlphanumeric(StringUtils.remove(name, '_')))
+            throw new IllegalArgumentException("Invalid feature set name \"" + name + "\".");
+        return new File(workDir, name + SET_SUFFIX);
+    }
+
+    /**
+     * @return TRUE if a feature set exists in a workspace
+     *
+     * @param workDir	user workspace directory
+     * @param name		name of the feature set
+     */
+    public static boolean exists(File workDir, String name) {
+        return setFile(workDir, name).canRead();
+    }
+
+    /**
+     * @return the sorted list of the feature sets in a workspace
+     *
+     * @param workDir	user workspace directory
+     */
+    public static List<String> getNames(File workDir) {
+        String[] fileNames = workDir.list();
+        List<String> retVal;
+        if (fileNames == null)
+            retVal = Collections.emptyList();
+        else
+            retVal = Arrays.stream(fileNames).filter(x -> x.endsWith(SET_SUFFIX))
+                    .map(x -> StringUtils.removeEnd(x, SET_SUFFIX)).sorted().collect(Collectors.toList());
+        return retVal;
+    }
+
+    /**
+     * Save this feature set to a workspace.  The file is written the same way as a sidecar file (see SidecarFile), so
+     * concurrent readers never see a partial file.
+     *
+     * @param workDir	user workspace directory
+     * @param name		name of the feature set
+     *
+     * @throws IOException
+     */
+    public void save(File workDir, String name) throws IOException {
+        File setFile = setFile(workDir, name);
+        SidecarFile.write(setFile, x -> {
+            try (PrintWriter writer = new PrintWriter(x)) {
+                writer.println(this.dbName + "\t" + this.version + "\t"
+                        + Base64.getEncoder().encodeToString(this.members.toByteArray()));
+                for (String fid : this.fids)
+                    writer.println(fid);
+            }
+        });
+        log.info("{} features saved to set {}.", this.fids.size(), name);
+    }
+
+    /**
+     * @return a feature set from a workspace
+     *
+     * @param workDir	user workspace directory
+     * @param name		name of the feature set
+     *
+     * @throws IOException
+     */
+    public static FeatureSet load(File workDir, String name) throws IOException {
+        File setFile = setFile(workDir, name);
+        if (! setFile.canRead())
+            throw new IllegalArgumentException("Feature set \"" + name + "\" not found.");
+        return CACHE.get(setFile, x -> read(x));
+    }
+
+    /**
+     * @return a feature set read from a workspace file
+     *
+     * @param setFile	file containing the feature set
+     *
+     * @throws IOException
+     */
+    private static FeatureSet read(File setFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(setFile))) {
+            String[] header = StringUtils.split(StringUtils.defaultString(reader.readLine()), '\t');
+            if (header.length != 3)
+                throw new IOException("Invalid header in feature set file " + setFile + ".");
+            long version;
+            try {
+                version = Long.parseLong(header[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid database version in feature set file " + setFile + ".");
+            }
+            BitSet members = BitSet.valueOf(Base64.getDecoder().decode(header[2]));
+            List<String> fids = new ArrayList<String>(members.cardinality());
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (! line.isEmpty())
+                    fids.add(line);
+            }
+            return new FeatureSet(header[0], version, members, fids);
+        }
+    }
+
+    /**
+     * @return the ordinals of the member features in a database (this set must not be modified)
+     *
+     * @param dataFile		database file
+     * @param featIndex		feature index for the database
+     */
+    public BitSet getMembers(File dataFile, RnaFeatureIndex featIndex) {
+        BitSet retVal;
+        if (dataFile.getName().equals(this.dbName) && dataFile.lastModified() == this.version)
+            retVal = this.members;
+        else {
+            retVal = new BitSet(featIndex.size());
+            for (String fid : this.fids) {
+                int featIdx = featIndex.getOrdinal(fid);
+                if (featIdx >= 0)
+                    retVal.set(featIdx);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the IDs of the member features
+     */
+    public List<String> getFids() {
+        return Collections.unmodifiableList(this.fids);
+    }
+
+    /**
+     * @return the number of features in the set
+     */
+    public int size() {
+        return this.fids.size();
+    }
+
+}
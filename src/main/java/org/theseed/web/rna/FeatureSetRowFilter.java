@@ -0,0 +1,47 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.BitSet;
+
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.ColumnProcessor;
+
+/**
+ * This filter only shows rows for features in a saved feature set (see FeatureSet).  The set's stored membership is
+ * used directly, so none of the filters that produced it are re-evaluated.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FeatureSetRowFilter extends RowFilter {
+
+    // FIELDS
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features in the set */
+    private BitSet members;
+
+    /**
+     * Construct a feature-set row filter.
+     *
+     * @param processor		controlling column processor
+     */
+    public FeatureSetRowFilter(ColumnProcessor processor) {
+        this.processor = processor;
+        this.members = processor.getFeatureSet(processor.getFilterSet());
+    }
+
+    @Override
+    public boolean isRowDisplayable(RnaFeatureData feat) {
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.members.get(featIdx);
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.TextStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.Key;
+
+import j2html.tags.DomContent;
+import static j2html.TagCreator.*;
+
+/**
+ * This class contains a column computed from a formula over samples (see ColumnFormula).  The primary specification
+ * is an equal sign followed by the formula, for example "=log2(A/baseline)".  The formula is compiled once, and the
+ * values for all the features are computed in a single evaluation and cached by database file and formula.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FormulaColumnDescriptor extends ColumnDescriptor {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(FormulaColumnDescriptor.class);
+    /** compiled formula */
+    private ColumnFormula formula;
+    /** formula values, indexed by feature ordinal */
+    private double[] values;
+    /** prefix that marks a formula specification */
+    public static final String PREFIX = "=";
+    /** maximum number of formulas to cache for a single database */
+    private static final int MAX_CACHED = 50;
+    /** cache of computed formulas, keyed by data file and then formula text */
+    private static final DataCache<Map<String, double[]>> CACHE = new DataCache<Map<String, double[]>>();
+
+    /**
+     * @return TRUE if the specified column specification is a formula
+     *
+     * @param spec	primary column specification to check
+     */
+    public static boolean isFormula(String spec) {
+        return spec.length() > PREFIX.length() && spec.startsWith(PREFIX);
+    }
+
+    @Override
+    protected boolean init() {
+        boolean retVal = true;
+        String text = this.getSample1().substring(PREFIX.length());
+        try {
+            this.formula = new ColumnFormula(text, x -> this.getColIdx(x));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid column formula \"{}\": {}", text, e.getMessage());
+            retVal = false;
+        }
+        if (retVal) {
+            try {
+                if (this.getDataFile() == null)
+                    this.values = this.formula.evaluate(new ExpressionMatrix(this.getData()));
+                else {
+                    ExpressionMatrix matrix = ExpressionMatrix.get(this.getDataFile(), this.getData());
+                    Map<String, double[]> formulaMap = CACHE.get(this.getDataFile(),
+                            x -> new ConcurrentHashMap<String, double[]>());
+                    this.values = formulaMap.get(text);
+                    if (this.values == null) {
+                        this.values = this.formula.evaluate(matrix);
+                        // Keep the cache from growing without bound.
+                        if (formulaMap.size() >= MAX_CACHED)
+                            formulaMap.clear();
+                        formulaMap.put(text, this.values);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if this column is a ratio
+     */
+    public boolean isRatio() {
+        return this.formula.isRatio();
+    }
+
+    @Override
+    public double getValue(RnaFeatureData feat) {
+        int featIdx = this.getFeatureIndex().getOrdinal(feat);
+        return this.values[featIdx];
+    }
+
+    @Override
+    public Key.RevRatio getKey(RnaFeatureData feat) {
+        double value = this.getValue(feat);
+        // Missing values sort as zero, as they do in the differential columns.
+        if (Double.isNaN(value))
+            value = 0.0;
+        return new Key.RevRatio(value, 1.0);
+    }
+
+    @Override
+    public String getTitleString() {
+        TextStringBuilder retVal = new TextStringBuilder(this.formula.getText().length() + 10);
+        for (int i = 0; i < this.formula.size(); i++) {
+            int col = this.formula.getTokenColumn(i);
+            if (col >= 0)
+                retVal.append(this.getSample(col).getName());
+            else if (this.formula.isBinaryOperator(i))
+                retVal.append(" ").append(this.formula.getToken(i)).append(" ");
+            else
+                retVal.append(this.formula.getToken(i));
+        }
+        return StringUtils.replaceChars(retVal.toString(), '_', ' ');
+    }
+
+    @Override
+    public DomContent getTitle() {
+        List<DomContent> parts = new ArrayList<DomContent>(this.formula.size());
+        for (int i = 0; i < this.formula.size(); i++) {
+            int col = this.formula.getTokenColumn(i);
+            if (col >= 0)
+                parts.add(this.computeName(col));
+            else if (this.formula.isBinaryOperator(i))
+                parts.add(text(" " + this.formula.getToken(i) + " "));
+            else
+                parts.add(text(this.formula.getToken(i)));
+        }
+        return join(parts.toArray());
+    }
+
+    @Override
+    public String getTooltip() {
+        List<Integer> cols = this.formula.getSampleColumns();
+        String retVal;
+        if (cols.size() == 1)
+            retVal = this.tipStringOf(cols.get(0));
+        else {
+            TextStringBuilder buffer = new TextStringBuilder(cols.size() * 80);
+            for (int col : cols) {
+                buffer.appendSeparator("  ");
+                buffer.append(StringUtils.replaceChars(this.getSample(col).getName(), '_', ' ')).append(": ")
+                        .append(this.tipStringOf(col));
+            }
+            retVal = buffer.toString();
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * This column creator produces a single column computed from a formula (see ColumnFormula).  The primary sample is
+ * the formula text.  If an optional sample is specified, the formula is divided by it, which allows "baseline" as
+ * well as a sample name.  The formula is compiled here to make sure it is valid before it goes into the cookie
+ * string.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FormulaNewColumnCreator extends NewColumnCreator {
+
+    public FormulaNewColumnCreator(List<String> samp1, String samp2, List<String> samps) {
+        super(samp1, samp2, samps);
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        String text = StringUtils.deleteWhitespace(StringUtils.removeStart(this.getOnlySample1(),
+                FormulaColumnDescriptor.PREFIX));
+        String samp2 = StringUtils.deleteWhitespace(this.getSample2());
+        if (! StringUtils.isEmpty(samp2))
+            text = "(" + text + ")/" + samp2;
+        // This will throw an exception if the formula is invalid.
+        List<String> samples = this.getAllSamples();
+        new ColumnFormula(text, x -> samples.indexOf(x));
+        return Collections.singletonList(FormulaColumnDescriptor.PREFIX + text);
+    }
+
+}
@@ -3,15 +3,14 @@
  */
 package org.theseed.web.rna;
 
-import java.util.Set;
+import java.util.BitSet;
 
-import org.apache.commons.lang3.StringUtils;
 import org.theseed.rna.RnaFeatureData;
-import org.theseed.utils.SetUtils;
 import org.theseed.web.ColumnProcessor;
 
 /**
- * This object uses a list of gene names to filter the rows displayed.
+ * This object uses a list of gene names to filter the rows displayed.  Each entry in the list can be a gene name or
+ * b-number, or a wildcard pattern (e.g. "thr*"), and is resolved using the database's gene name index.
  *
  * @author Bruce Parrello
  *
@@ -19,21 +18,38 @@ import org.theseed.web.ColumnProcessor;
 public class GeneListFilter extends RowFilter {
 
     // FIELDS
-    /** set of gene names to use, or NULL to use all */
-    private Set<String> names;
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features to show, or NULL to show all */
+    private BitSet members;
 
     public GeneListFilter(ColumnProcessor processor) {
-        // Get the comma-delimited list of gene names.
-        String geneNames = processor.getFilterGenes().toLowerCase();
-        if (geneNames.isEmpty())
-            this.names = null;
+        this(processor, processor.getFilterGenes());
+    }
+
+    /**
+     * Construct a filter for a specified list of genes.
+     *
+     * @param processor		controlling column processor
+     * @param geneList		comma-delimited list of gene name patterns, or an empty string to use all
+     */
+    public GeneListFilter(ColumnProcessor processor, String geneList) {
+        this.processor = processor;
+        if (geneList.isEmpty())
+            this.members = null;
         else
-            this.names = SetUtils.newFromArray(StringUtils.split(geneNames, ','));
+            this.members = processor.getGeneIndex().getMembers(geneList);
     }
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        return SetUtils.isMember(this.names, feat.getGene().toLowerCase());
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return (this.members == null || this.members.get(featIdx));
     }
 
 }
@@ -0,0 +1,396 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.io.TabbedLineReader;
+import org.theseed.rna.RnaData;
+import org.theseed.rna.RnaFeatureData;
+
+/**
+ * This object indexes the gene names and b-numbers of the features in an RNA database.  The search keys are the
+ * lower-case names and b-numbers, kept in a sorted array with the ordinal (see RnaFeatureIndex) of the feature for
+ * each key.  A name pattern can be an exact name, a prefix ending in an asterisk (e.g. "thr*"), or a more general
+ * wildcard pattern using "*" for any string and "?" for any single character (e.g. "b00?2").  The part of a pattern
+ * before the first wildcard is located by binary search, so only the keys with that prefix are examined.
+ *
+ * The names are kept in a tab-delimited sidecar file for the database (the database file name with ".names.tbl"
+ * added, see SidecarFile), so that pages which do not need the expression data can use the index without loading
+ * the database.
+ * The sidecar is written whenever the database is loaded and the sidecar is missing or older than the database.
+ *
+ * Name indexes are cached in memory by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GeneNameIndex {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GeneNameIndex.class);
+    /** array of feature IDs, indexed by ordinal */
+    private String[] fids;
+    /** array of gene names, indexed by ordinal */
+    private String[] genes;
+    /** array of b-numbers, indexed by ordinal */
+    private String[] bNumbers;
+    /** sorted array of search keys */
+    private String[] keys;
+    /** feature ordinal for each search key */
+    private int[] ordinals;
+    /** sorted list of distinct gene names */
+    private List<String> geneNames;
+    /** suffix for sidecar file names */
+    public static final String NAMES_SUFFIX = ".names.tbl";
+    /** in-memory cache of name indexes */
+    private static final DataCache<GeneNameIndex> CACHE = new DataCache<GeneNameIndex>();
+
+    /**
+     * Construct a gene name index from feature data.
+     *
+     * @param fids		array of feature IDs, indexed by ordinal
+     * @param genes		array of gene names, indexed by ordinal (entries may be NULL or empty)
+     * @param bNumbers	array of b-numbers, indexed by ordinal (entries may be NULL or empty)
+     */
+    protected GeneNameIndex(String[] fids, String[] genes, String[] bNumbers) {
+        this.fids = fids;
+        this.genes = genes;
+        this.bNumbers = bNumbers;
+        // Collect the names and b-numbers.
+        List<String> labelList = new ArrayList<String>(fids.length * 2);
+        List<Integer> ordList = new ArrayList<Integer>(fids.length * 2);
+        Set<String> nameSet = new TreeSet<String>();
+        for (int f = 0; f < fids.length; f++) {
+            if (! StringUtils.isEmpty(genes[f])) {
+                labelList.add(genes[f]);
+                ordList.add(f);
+                nameSet.add(genes[f]);
+            }
+            if (! StringUtils.isEmpty(bNumbers[f]) && ! bNumbers[f].equalsIgnoreCase(genes[f])) {
+                labelList.add(bNumbers[f]);
+                ordList.add(f);
+            }
+        }
+        this.geneNames = new ArrayList<String>(nameSet);
+        // Sort the keys.
+        final int n = labelList.size();
+        String[] lowered = labelList.stream().map(x -> x.toLowerCase()).toArray(String[]::new);
+        int[] order = IntStream.range(0, n).boxed().sorted((a, b) -> {
+            int retVal = lowered[a].compareTo(lowered[b]);
+            if (retVal == 0)
+                retVal = Integer.compare(ordList.get(a), ordList.get(b));
+            return retVal;
+        }).mapToInt(x -> x).toArray();
+        this.keys = new String[n];
+        this.ordinals = new int[n];
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            this.keys[k] = lowered[i];
+            this.ordinals[k] = ordList.get(i);
+        }
+    }
+
+    /**
+     * Construct a gene name index for an RNA database.
+     *
+     * @param data		RNA database to index
+     */
+    public GeneNameIndex(RnaData data) {
+        this(featuresOf(data));
+    }
+
+    /**
+     * Construct a gene name index for a list of RNA features.
+     *
+     * @param feats		list of features, in ordinal order
+     */
+    private GeneNameIndex(List<RnaFeatureData> feats) {
+        this(feats.stream().map(x -> x.getId()).toArray(String[]::new),
+                feats.stream().map(x -> x.getGene()).toArray(String[]::new),
+                feats.stream().map(x -> x.getBNumber()).toArray(String[]::new));
+    }
+
+    /**
+     * @return the features of an RNA database, in ordinal order
+     *
+     * @param data	RNA database of interest
+     */
+    private static List<RnaFeatureData> featuresOf(RnaData data) {
+        List<RnaFeatureData> retVal = new ArrayList<RnaFeatureData>();
+        for (RnaData.Row row : data)
+            retVal.add(row.getFeat());
+        return retVal;
+    }
+
+    /**
+     * @return the sidecar file for an RNA database
+     *
+     * @param dataFile	RNA database file
+     */
+    public static File sidecarFile(File dataFile) {
+        return SidecarFile.locate(dataFile, NAMES_SUFFIX);
+    }
+
+    /**
+     * @return TRUE if the sidecar file for an RNA database exists and is up to date
+     *
+     * @param dataFile	RNA database file
+     */
+    public static boolean isCurrent(File dataFile) {
+        return SidecarFile.isCurrent(sidecarFile(dataFile), dataFile);
+    }
+
+    /**
+     * Insure the sidecar file for an RNA database is up to date.  Failures are logged, since the sidecar can always
+     * be rebuilt later.
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file
+     */
+    public static void refresh(File dataFile, RnaData data) {
+        if (! isCurrent(dataFile)) {
+            try {
+                get(dataFile, data);
+            } catch (IOException e) {
+                log.warn("Could not index gene names for {}: {}", dataFile, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the gene name index for a loaded RNA database
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static GeneNameIndex get(File dataFile, RnaData data) throws IOException {
+        return CACHE.get(dataFile, x -> readIndex(x, data));
+    }
+
+    /**
+     * @return the gene name index for an RNA database, loading the database only if the sidecar is out of date
+     *
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    public static GeneNameIndex load(File dataFile) throws IOException {
+        return CACHE.get(dataFile, x -> readIndex(x, null));
+    }
+
+    /**
+     * @return the gene name index for an RNA database, read from the sidecar file if possible
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file, or NULL if it has not been loaded
+     *
+     * @throws IOException
+     */
+    private static GeneNameIndex readIndex(File dataFile, RnaData data) throws IOException {
+        GeneNameIndex retVal;
+        File namesFile = sidecarFile(dataFile);
+        if (isCurrent(dataFile))
+            retVal = read(namesFile);
+        else {
+            if (data == null) {
+                log.info("Gene names for {} are out of date.  Loading database.", dataFile);
+                try {
+                    data = RnaData.load(dataFile);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Class not found: " + e.toString());
+                }
+            }
+            retVal = new GeneNameIndex(data);
+            try {
+                retVal.save(namesFile);
+            } catch (IOException e) {
+                log.warn("Could not save gene names for {}: {}", dataFile, e.toString());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Write this index to a sidecar file.
+     *
+     * @param namesFile		output file
+     *
+     * @throws IOException
+     */
+    private void save(File namesFile) throws IOException {
+        SidecarFile.write(namesFile, x -> {
+            try (PrintWriter writer = new PrintWriter(x)) {
+                writer.println("fid\tgene\tbnumber");
+                for (int f = 0; f < this.fids.length; f++)
+                    writer.println(this.fids[f] + "\t" + StringUtils.defaultString(this.genes[f]) + "\t"
+                            + StringUtils.defaultString(this.bNumbers[f]));
+            }
+        });
+        log.info("Names for {} features written to {}.", this.fids.length, namesFile);
+    }
+
+    /**
+     * @return a gene name index read from a sidecar file
+     *
+     * @param namesFile		sidecar file to read
+     *
+     * @throws IOException
+     */
+    private static GeneNameIndex read(File namesFile) throws IOException {
+        List<String> fidList = new ArrayList<String>();
+        List<String> geneList = new ArrayList<String>();
+        List<String> bNumList = new ArrayList<String>();
+        try (TabbedLineReader inStream = new TabbedLineReader(namesFile)) {
+            int fidCol = inStream.findField("fid");
+            int geneCol = inStream.findField("gene");
+            int bNumCol = inStream.findField("bnumber");
+            for (TabbedLineReader.Line line : inStream) {
+                fidList.add(line.get(fidCol));
+                geneList.add(line.get(geneCol));
+                bNumList.add(line.get(bNumCol));
+            }
+        }
+        log.info("Names for {} features read from {}.", fidList.size(), namesFile);
+        return new GeneNameIndex(fidList.stream().toArray(String[]::new), geneList.stream().toArray(String[]::new),
+                bNumList.stream().toArray(String[]::new));
+    }
+
+    /**
+     * @return the position of the first search key greater than or equal to a specified string
+     *
+     * @param key	lower-case string to locate
+     */
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = this.keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.keys[mid].compareTo(key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the set of features whose gene name or b-number matches a pattern
+     *
+     * @param pattern	exact name, prefix ending with "*", or wildcard pattern
+     */
+    public BitSet match(String pattern) {
+        BitSet retVal = new BitSet(this.fids.length);
+        String pat = pattern.trim().toLowerCase();
+        int wild = StringUtils.indexOfAny(pat, '*', '?');
+        if (wild < 0) {
+            // Exact match.
+            for (int k = this.lowerBound(pat); k < this.keys.length && this.keys[k].equals(pat); k++)
+                retVal.set(this.ordinals[k]);
+        } else if (! pat.isEmpty()) {
+            // Wildcard match.  Only the keys beginning with the fixed prefix need to be checked, and if the only
+            // wildcard is a trailing asterisk, all of them match.
+            String prefix = pat.substring(0, wild);
+            boolean simple = (wild == pat.length() - 1 && pat.charAt(wild) == '*');
+            Pattern regex = (simple ? null : wildcardPattern(pat));
+            for (int k = this.lowerBound(prefix); k < this.keys.length && this.keys[k].startsWith(prefix); k++) {
+                if (simple || regex.matcher(this.keys[k]).matches())
+                    retVal.set(this.ordinals[k]);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a regular expression equivalent to a wildcard pattern
+     *
+     * @param pat	wildcard pattern to convert
+     */
+    private static Pattern wildcardPattern(String pat) {
+        StringBuilder retVal = new StringBuilder(pat.length() * 2);
+        int start = 0;
+        for (int i = 0; i < pat.length(); i++) {
+            char c = pat.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start)
+                    retVal.append(Pattern.quote(pat.substring(start, i)));
+                retVal.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < pat.length())
+            retVal.append(Pattern.quote(pat.substring(start)));
+        return Pattern.compile(retVal.toString());
+    }
+
+    /**
+     * @return the set of features matching any pattern in a comma-delimited list
+     *
+     * @param geneList	comma-delimited list of name patterns
+     */
+    public BitSet getMembers(String geneList) {
+        BitSet retVal = new BitSet(this.fids.length);
+        for (String pattern : StringUtils.split(geneList, ','))
+            retVal.or(this.match(pattern));
+        return retVal;
+    }
+
+    /**
+     * @return the sorted list of distinct gene names
+     */
+    public List<String> getGeneNames() {
+        return Collections.unmodifiableList(this.geneNames);
+    }
+
+    /**
+     * @return the ID of a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public String getFid(int featIdx) {
+        return this.fids[featIdx];
+    }
+
+    /**
+     * @return the gene name of a feature (may be NULL or empty)
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public String getGene(int featIdx) {
+        return this.genes[featIdx];
+    }
+
+    /**
+     * @return the b-number of a feature (may be NULL or empty)
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public String getBNumber(int featIdx) {
+        return this.bNumbers[featIdx];
+    }
+
+    /**
+     * @return the number of features in the index
+     */
+    public int size() {
+        return this.fids.length;
+    }
+
+}
@@ -0,0 +1,295 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+import org.theseed.utils.IDescribable;
+
+/**
+ * This object performs gene-set enrichment tests of a set of features against the subsystems, atomic regulons, and
+ * other groups (iModulons and operons) of an RNA database.  The member set of each category is stored as an array of
+ * bit-set words indexed by feature ordinal, so the overlap between the test set and every category is computed in a
+ * single pass using population counts.  The p-value for each category is the hypergeometric probability of an overlap
+ * at least as large as the one observed, taking all the features in the database as the population, and the p-values
+ * for all the categories are adjusted together using the Benjamini-Hochberg method.
+ *
+ * Enrichment tables are cached by subsystem file and database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GeneSetEnrichment {
+
+    /**
+     * This enum describes the types of categories.
+     */
+    public static enum Source implements IDescribable {
+        SUBSYSTEM {
+            @Override
+            public String getDescription() {
+                return "subsystem";
+            }
+        }, REGULON {
+            @Override
+            public String getDescription() {
+                return "atomic regulon";
+            }
+        }, GROUP {
+            @Override
+            public String getDescription() {
+                return "modulon/operon";
+            }
+        };
+    }
+
+    /**
+     * This class describes the enrichment of a single category.
+     */
+    public static class Result {
+
+        /** type of category */
+        private Source source;
+        /** name of the category */
+        private String name;
+        /** number of test features in the category */
+        private int hits;
+        /** number of features in the category */
+        private int size;
+        /** expected number of test features in the category */
+        private double expected;
+        /** hypergeometric p-value */
+        private double pValue;
+        /** adjusted p-value */
+        private double qValue;
+
+        /**
+         * Construct an enrichment result.
+         *
+         * @param source	type of category
+         * @param name		name of the category
+         * @param hits		number of test features in the category
+         * @param size		number of features in the category
+         * @param expected	expected number of test features in the category
+         * @param pValue	hypergeometric p-value
+         */
+        private Result(Source source, String name, int hits, int size, double expected, double pValue) {
+            this.source = source;
+            this.name = name;
+            this.hits = hits;
+            this.size = size;
+            this.expected = expected;
+            this.pValue = pValue;
+        }
+
+        /**
+         * @return the type of category
+         */
+        public Source getSource() {
+            return this.source;
+        }
+
+        /**
+         * @return the name of the category
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the number of test features in the category
+         */
+        public int getHits() {
+            return this.hits;
+        }
+
+        /**
+         * @return the number of features in the category
+         */
+        public int getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return the expected number of test features in the category
+         */
+        public double getExpected() {
+            return this.expected;
+        }
+
+        /**
+         * @return the ratio of the observed number of test features to the expected number
+         */
+        public double getFold() {
+            return this.hits / this.expected;
+        }
+
+        /**
+         * @return the hypergeometric p-value
+         */
+        public double getPValue() {
+            return this.pValue;
+        }
+
+        /**
+         * @return the adjusted p-value
+         */
+        public double getQValue() {
+            return this.qValue;
+        }
+
+    }
+
+    // FIELDS
+    /** number of features in the database */
+    private int nFeats;
+    /** type of each category */
+    private List<Source> sources;
+    /** name of each category */
+    private List<String> names;
+    /** bit-set words for the members of each category */
+    private List<long[]> words;
+    /** number of members in each category */
+    private List<Integer> sizes;
+    /** pattern for atomic regulon names */
+    private static final Pattern REGULON_NAME = Pattern.compile("AR\\d+");
+    /** group name for features with no atomic regulon */
+    private static final String NO_REGULON = "AR0";
+    /** in-memory cache of enrichment tables */
+    private static final DataCache<GeneSetEnrichment> CACHE = new DataCache<GeneSetEnrichment>();
+
+    /**
+     * Construct an empty enrichment table.
+     *
+     * @param nFeats	number of features in the database
+     */
+    protected GeneSetEnrichment(int nFeats) {
+        this.nFeats = nFeats;
+        this.sources = new ArrayList<Source>();
+        this.names = new ArrayList<String>();
+        this.words = new ArrayList<long[]>();
+        this.sizes = new ArrayList<Integer>();
+    }
+
+    /**
+     * Construct an enrichment table for an RNA database.
+     *
+     * @param subIndex	subsystem index for the database
+     * @param groups	group catalog for the database
+     * @param nFeats	number of features in the database
+     */
+    public GeneSetEnrichment(SubsystemIndex subIndex, GroupCatalog groups, int nFeats) {
+        this(nFeats);
+        for (String subId : subIndex.getAllSubsystems())
+            this.addCategory(Source.SUBSYSTEM, subId, subIndex.getMembers(subId));
+        this.addGroups(groups);
+    }
+
+    /**
+     * Add the groups from a group catalog to this table.  Atomic regulon 0 holds the features with no atomic regulon,
+     * and a group with an empty name holds the features with no operon or iModulon, so neither is a category.
+     *
+     * @param groups	group catalog for the database
+     */
+    protected void addGroups(GroupCatalog groups) {
+        for (String group : groups.getNames()) {
+            if (! StringUtils.isBlank(group) && ! group.equals(NO_REGULON)) {
+                Source source = (REGULON_NAME.matcher(group).matches() ? Source.REGULON : Source.GROUP);
+                this.addCategory(source, group, groups.getMembers(group));
+            }
+        }
+    }
+
+    /**
+     * Add a category to this table.  Empty categories are ignored.
+     *
+     * @param source	type of category
+     * @param name		name of the category
+     * @param members	ordinals of the member features
+     */
+    protected void addCategory(Source source, String name, BitSet members) {
+        int size = members.cardinality();
+        if (size > 0) {
+            this.sources.add(source);
+            this.names.add(name);
+            this.words.add(members.toLongArray());
+            this.sizes.add(size);
+        }
+    }
+
+    /**
+     * @return the enrichment table for an RNA database
+     *
+     * @param subFile	subsystem table file
+     * @param dataFile	file from which the RNA database was loaded
+     * @param subIndex	subsystem index for the database
+     * @param groups	group catalog for the database
+     * @param nFeats	number of features in the database
+     *
+     * @throws IOException
+     */
+    public static GeneSetEnrichment get(File subFile, File dataFile, SubsystemIndex subIndex, GroupCatalog groups,
+            int nFeats) throws IOException {
+        return CACHE.get(Arrays.asList(subFile, dataFile), () -> new GeneSetEnrichment(subIndex, groups, nFeats));
+    }
+
+    /**
+     * @return the enrichment results for the categories containing at least one test feature, sorted by p-value
+     *
+     * @param testSet	ordinals of the test features
+     */
+    public List<Result> score(BitSet testSet) {
+        List<Result> retVal = new ArrayList<Result>();
+        final int n = testSet.cardinality();
+        if (n > 0) {
+            final long[] testWords = testSet.toLongArray();
+            final int nCats = this.names.size();
+            Result[] results = new Result[nCats];
+            double[] pValues = new double[nCats];
+            for (int c = 0; c < nCats; c++) {
+                long[] catWords = this.words.get(c);
+                final int limit = Math.min(catWords.length, testWords.length);
+                int hits = 0;
+                for (int w = 0; w < limit; w++)
+                    hits += Long.bitCount(catWords[w] & testWords[w]);
+                int size = this.sizes.get(c);
+                double pValue = 1.0;
+                if (hits > 0) {
+                    HypergeometricDistribution dist = new HypergeometricDistribution(null, this.nFeats, size, n);
+                    pValue = dist.upperCumulativeProbability(hits);
+                }
+                pValues[c] = pValue;
+                results[c] = new Result(this.sources.get(c), this.names.get(c), hits, size,
+                        (double) n * size / this.nFeats, pValue);
+            }
+            // The adjustment uses all the categories, including the ones with no test features.
+            double[] qValues = GroupComparison.adjust(pValues);
+            for (int c = 0; c < nCats; c++) {
+                if (results[c].hits > 0) {
+                    results[c].qValue = qValues[c];
+                    retVal.add(results[c]);
+                }
+            }
+            retVal.sort(Comparator.comparingDouble(Result::getPValue).thenComparing(Result::getName));
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of categories in this table
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+}
@@ -0,0 +1,349 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.io.TabbedLineReader;
+import org.theseed.rna.RnaData;
+
+/**
+ * This object contains summary statistics for each feature in an RNA database, computed over the good-quality
+ * samples with exact hits.  The statistics are stored as primitive arrays indexed by feature ordinal, and are kept in
+ * a tab-delimited sidecar file for the database (the database file name with ".genes.tbl" added, see SidecarFile).
+ * The sidecar is written whenever the database is loaded and the sidecar is missing or older than the database, so
+ * requests never have to scan the expression values to get them.  The features are processed in parallel.
+ *
+ * Statistics tables are cached in memory by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GeneStatsTable {
+
+    /**
+     * This enum describes the statistics kept for each feature.  The name of each statistic is the header used in
+     * the sidecar file.
+     */
+    public static enum Stat {
+        MEAN("mean", Double.NaN), STDEV("stdev", Double.NaN), MIN("min", 0.0), Q10("q10", 0.10), Q25("q25", 0.25),
+        MEDIAN("median", 0.50), Q75("q75", 0.75), Q90("q90", 0.90), MAX("max", 1.0);
+
+        /** column header */
+        private String header;
+        /** quantile fraction, or NaN if this is not a quantile */
+        private double fraction;
+
+        private Stat(String header, double fraction) {
+            this.header = header;
+            this.fraction = fraction;
+        }
+
+        /**
+         * @return the column header for this statistic
+         */
+        public String getHeader() {
+            return this.header;
+        }
+
+        /**
+         * @return TRUE if this statistic is a quantile
+         */
+        public boolean isQuantile() {
+            return ! Double.isNaN(this.fraction);
+        }
+
+    }
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GeneStatsTable.class);
+    /** feature IDs, indexed by ordinal */
+    private String[] fids;
+    /** number of values used for each feature */
+    private int[] counts;
+    /** statistic values, indexed by statistic and then feature ordinal */
+    private double[][] values;
+    /** suffix for sidecar file names */
+    public static final String STATS_SUFFIX = ".genes.tbl";
+    /** in-memory cache of statistics tables */
+    private static final DataCache<GeneStatsTable> CACHE = new DataCache<GeneStatsTable>();
+
+    /**
+     * Construct an empty statistics table of the specified size.
+     *
+     * @param n		number of features
+     */
+    private GeneStatsTable(int n) {
+        this.fids = new String[n];
+        this.counts = new int[n];
+        this.values = new double[Stat.values().length][n];
+    }
+
+    /**
+     * Compute a statistics table from an expression matrix.
+     *
+     * @param matrix		expression matrix for the RNA database
+     * @param featIndex		feature index for the RNA database
+     */
+    public GeneStatsTable(ExpressionMatrix matrix, RnaFeatureIndex featIndex) {
+        this(matrix.getFeatureCount());
+        final int[] cols = matrix.getGoodColumns();
+        IntStream.range(0, this.fids.length).parallel().forEach(f -> {
+            this.fids[f] = featIndex.getFid(f);
+            float[] row = matrix.getRow(f);
+            double[] buffer = new double[cols.length];
+            int n = 0;
+            for (int col : cols) {
+                if (! Float.isNaN(row[col]))
+                    buffer[n++] = row[col];
+            }
+            this.counts[f] = n;
+            if (n == 0) {
+                for (double[] statValues : this.values)
+                    statValues[f] = Double.NaN;
+            } else {
+                Arrays.sort(buffer, 0, n);
+                double sum = 0.0;
+                double sqSum = 0.0;
+                for (int i = 0; i < n; i++) {
+                    sum += buffer[i];
+                    sqSum += buffer[i] * buffer[i];
+                }
+                double mean = sum / n;
+                this.values[Stat.MEAN.ordinal()][f] = mean;
+                this.values[Stat.STDEV.ordinal()][f] = (n > 1 ? Math.sqrt(Math.max(0.0, (sqSum - sum * mean) / (n - 1)))
+                        : Double.NaN);
+                for (Stat stat : Stat.values()) {
+                    if (stat.isQuantile())
+                        this.values[stat.ordinal()][f] = quantile(buffer, n, stat.fraction);
+                }
+            }
+        });
+        log.info("Statistics computed for {} features over {} samples.", this.fids.length, cols.length);
+    }
+
+    /**
+     * @return a quantile of a sorted array of values, using linear interpolation between the closest ranks
+     *
+     * @param sorted	buffer containing the values in ascending order
+     * @param n			number of values in the buffer
+     * @param fraction	quantile fraction, from 0 to 1
+     */
+    public static double quantile(double[] sorted, int n, double fraction) {
+        double pos = fraction * (n - 1);
+        int lo = (int) Math.floor(pos);
+        int hi = Math.min(n - 1, lo + 1);
+        return sorted[lo] + (pos - lo) * (sorted[hi] - sorted[lo]);
+    }
+
+    /**
+     * @return the sidecar file for an RNA database
+     *
+     * @param dataFile	RNA database file
+     */
+    public static File sidecarFile(File dataFile) {
+        return SidecarFile.locate(dataFile, STATS_SUFFIX);
+    }
+
+    /**
+     * @return TRUE if the sidecar file for an RNA database exists and is up to date
+     *
+     * @param dataFile	RNA database file
+     */
+    public static boolean isCurrent(File dataFile) {
+        return SidecarFile.isCurrent(sidecarFile(dataFile), dataFile);
+    }
+
+    /**
+     * Insure the sidecar file for an RNA database is up to date.  Failures are logged, since the sidecar can always
+     * be rebuilt later.
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file
+     */
+    public static void refresh(File dataFile, RnaData data) {
+        if (! isCurrent(dataFile)) {
+            try {
+                get(dataFile, data);
+            } catch (IOException e) {
+                log.warn("Could not compute gene statistics for {}: {}", dataFile, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the statistics table for an RNA database
+     *
+     * The table is taken from the memory cache if possible, and otherwise from the sidecar file.  If the sidecar file
+     * is missing or out of date, the statistics are computed from the database and the sidecar is rewritten.
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static GeneStatsTable get(File dataFile, RnaData data) throws IOException {
+        return CACHE.get(dataFile, x -> {
+            GeneStatsTable retVal;
+            File statsFile = sidecarFile(x);
+            if (isCurrent(x))
+                retVal = read(statsFile);
+            else {
+                retVal = new GeneStatsTable(ExpressionMatrix.get(x, data), RnaFeatureIndex.get(x, data));
+                try {
+                    retVal.save(statsFile);
+                } catch (IOException e) {
+                    log.warn("Could not save gene statistics for {}: {}", x, e.toString());
+                }
+            }
+            return retVal;
+        });
+    }
+
+    /**
+     * Write this table to a sidecar file.
+     *
+     * @param statsFile		output file
+     *
+     * @throws IOException
+     */
+    private void save(File statsFile) throws IOException {
+        SidecarFile.write(statsFile, x -> {
+            try (PrintWriter writer = new PrintWriter(x)) {
+                String[] headers = Arrays.stream(Stat.values()).map(y -> y.header).toArray(String[]::new);
+                writer.println("fid\tcount\t" + StringUtils.join(headers, '\t'));
+                for (int f = 0; f < this.fids.length; f++) {
+                    StringBuilder line = new StringBuilder(100);
+                    line.append(this.fids[f]).append('\t').append(this.counts[f]);
+                    for (double[] statValues : this.values)
+                        line.append('\t').append(statValues[f]);
+                    writer.println(line);
+                }
+            }
+        });
+        log.info("Statistics for {} features written to {}.", this.fids.length, statsFile);
+    }
+
+    /**
+     * @return a statistics table read from a sidecar file
+     *
+     * @param statsFile		sidecar file to read
+     *
+     * @throws IOException
+     */
+    private static GeneStatsTable read(File statsFile) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        final Stat[] stats = Stat.values();
+        try (TabbedLineReader inStream = new TabbedLineReader(statsFile)) {
+            int[] cols = new int[stats.length + 2];
+            cols[0] = inStream.findField("fid");
+            cols[1] = inStream.findField("count");
+            for (int s = 0; s < stats.length; s++)
+                cols[s + 2] = inStream.findField(stats[s].header);
+            for (TabbedLineReader.Line line : inStream) {
+                String[] fields = new String[cols.length];
+                for (int j = 0; j < cols.length; j++)
+                    fields[j] = line.get(cols[j]);
+                lines.add(fields);
+            }
+        }
+        GeneStatsTable retVal = new GeneStatsTable(lines.size());
+        for (int f = 0; f < lines.size(); f++) {
+            String[] fields = lines.get(f);
+            retVal.fids[f] = fields[0];
+            retVal.counts[f] = Integer.parseInt(fields[1]);
+            for (int s = 0; s < stats.length; s++)
+                retVal.values[s][f] = Double.parseDouble(fields[s + 2]);
+        }
+        log.info("Statistics for {} features read from {}.", retVal.size(), statsFile);
+        return retVal;
+    }
+
+    /**
+     * @return the number of features in the table
+     */
+    public int size() {
+        return this.fids.length;
+    }
+
+    /**
+     * @return the number of values used to compute the statistics for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public int getCount(int featIdx) {
+        return this.counts[featIdx];
+    }
+
+    /**
+     * @return the value of a statistic for a feature (NaN if there are not enough values)
+     *
+     * @param stat		statistic of interest
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double get(Stat stat, int featIdx) {
+        return this.values[stat.ordinal()][featIdx];
+    }
+
+    /**
+     * @return the values of a statistic, indexed by feature ordinal (this array must not be modified)
+     *
+     * @param stat		statistic of interest
+     */
+    public double[] getValues(Stat stat) {
+        return this.values[stat.ordinal()];
+    }
+
+    /**
+     * @return the z-score of an expression value for a feature (NaN if the feature does not vary)
+     *
+     * @param featIdx	ordinal of the feature of interest
+     * @param value		expression value to convert
+     */
+    public double zScore(int featIdx, double value) {
+        double sd = this.values[Stat.STDEV.ordinal()][featIdx];
+        double retVal = Double.NaN;
+        if (sd > 0.0)
+            retVal = (value - this.values[Stat.MEAN.ordinal()][featIdx]) / sd;
+        return retVal;
+    }
+
+    /**
+     * @return the coefficient of variation for a feature (NaN if it is undefined)
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double getVariation(int featIdx) {
+        double mean = this.values[Stat.MEAN.ordinal()][featIdx];
+        return (mean > 0.0 ? this.values[Stat.STDEV.ordinal()][featIdx] / mean : Double.NaN);
+    }
+
+    /**
+     * @return the ordinals of the most variable features
+     *
+     * @param fraction	fraction of the features with a defined coefficient of variation to return
+     */
+    public BitSet getVariableGenes(double fraction) {
+        int[] sorted = IntStream.range(0, this.fids.length).filter(f -> ! Double.isNaN(this.getVariation(f))).boxed()
+                .sorted((a, b) -> Double.compare(this.getVariation(b), this.getVariation(a)))
+                .mapToInt(x -> x).toArray();
+        int n = (int) Math.ceil(sorted.length * fraction);
+        BitSet retVal = new BitSet(this.fids.length);
+        for (int i = 0; i < n; i++)
+            retVal.set(sorted[i]);
+        return retVal;
+    }
+
+}
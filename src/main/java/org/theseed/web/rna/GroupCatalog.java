@@ -0,0 +1,275 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.io.TabbedLineReader;
+import org.theseed.rna.RnaData;
+import org.theseed.rna.RnaFeatureData;
+
+/**
+ * This object catalogs the feature groups in an RNA database.  The groups are the atomic regulons (named "AR"
+ * followed by the regulon number), the iModulons, and the operons.  Features with no atomic regulon are in group
+ * "AR0", so a group filter can select them.  For each group there is a bit set of the member features, indexed by
+ * feature ordinal (see RnaFeatureIndex), and the group names are kept in sorted order for use in the filter-group
+ * data list.
+ *
+ * The groups are kept in a tab-delimited sidecar file for the database (the database file name with ".groups.tbl"
+ * added, see SidecarFile), containing each group name and a comma-delimited list of its member ordinals, so that
+ * pages which do not need the expression data can use the catalog without loading the database.  The sidecar is
+ * written whenever the database is loaded and the sidecar is missing or older than the database.
+ *
+ * Group catalogs are cached by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GroupCatalog {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GroupCatalog.class);
+    /** map of group names to member sets */
+    private Map<String, BitSet> groupMap;
+    /** sorted list of group names */
+    private List<String> names;
+    /** empty member set */
+    private static final BitSet NO_MEMBERS = new BitSet();
+    /** suffix for sidecar file names */
+    public static final String GROUPS_SUFFIX = ".groups.tbl";
+    /** in-memory cache of group catalogs */
+    private static final DataCache<GroupCatalog> CACHE = new DataCache<GroupCatalog>();
+
+    /**
+     * Construct a group catalog for an RNA database.
+     *
+     * @param data		RNA database to catalog
+     */
+    public GroupCatalog(RnaData data) {
+        this.groupMap = new HashMap<String, BitSet>();
+        int f = 0;
+        for (RnaData.Row row : data) {
+            RnaFeatureData feat = row.getFeat();
+            this.addMember(String.format("AR%d", feat.getAtomicRegulon()), f);
+            for (String modulon : feat.getiModulons())
+                this.addMember(modulon, f);
+            this.addMember(feat.getOperon(), f);
+            f++;
+        }
+        this.sortNames();
+    }
+
+    /**
+     * Construct a group catalog from a map of group names to member sets.
+     *
+     * @param groupMap	map of group names to member sets
+     */
+    protected GroupCatalog(Map<String, BitSet> groupMap) {
+        this.groupMap = groupMap;
+        this.sortNames();
+    }
+
+    /**
+     * Compute the sorted list of group names.
+     */
+    private void sortNames() {
+        this.names = new ArrayList<String>(this.groupMap.keySet());
+        Collections.sort(this.names);
+    }
+
+    /**
+     * Add a feature to a group.
+     *
+     * @param name		name of the group
+     * @param featIdx	ordinal of the feature
+     */
+    private void addMember(String name, int featIdx) {
+        if (name != null && ! name.isEmpty())
+            this.groupMap.computeIfAbsent(name, x -> new BitSet()).set(featIdx);
+    }
+
+    /**
+     * @return the group catalog for an RNA database
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static GroupCatalog get(File dataFile, RnaData data) throws IOException {
+        return CACHE.get(dataFile, x -> readCatalog(x, data));
+    }
+
+    /**
+     * @return the group catalog for an RNA database, loading the database only if the sidecar is out of date
+     *
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    public static GroupCatalog load(File dataFile) throws IOException {
+        return CACHE.get(dataFile, x -> readCatalog(x, null));
+    }
+
+    /**
+     * @return the sidecar file for an RNA database
+     *
+     * @param dataFile	RNA database file
+     */
+    public static File sidecarFile(File dataFile) {
+        return SidecarFile.locate(dataFile, GROUPS_SUFFIX);
+    }
+
+    /**
+     * @return TRUE if the sidecar file for an RNA database exists and is up to date
+     *
+     * @param dataFile	RNA database file
+     */
+    public static boolean isCurrent(File dataFile) {
+        return SidecarFile.isCurrent(sidecarFile(dataFile), dataFile);
+    }
+
+    /**
+     * Insure the sidecar file for an RNA database is up to date.  Failures are logged, since the sidecar can always
+     * be rebuilt later.
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file
+     */
+    public static void refresh(File dataFile, RnaData data) {
+        if (! isCurrent(dataFile)) {
+            try {
+                get(dataFile, data);
+            } catch (IOException e) {
+                log.warn("Could not catalog groups for {}: {}", dataFile, e.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the group catalog for an RNA database, read from the sidecar file if possible
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file, or NULL if it has not been loaded
+     *
+     * @throws IOException
+     */
+    private static GroupCatalog readCatalog(File dataFile, RnaData data) throws IOException {
+        GroupCatalog retVal;
+        File groupsFile = sidecarFile(dataFile);
+        if (isCurrent(dataFile))
+            retVal = read(groupsFile);
+        else {
+            if (data == null) {
+                log.info("Groups for {} are out of date.  Loading database.", dataFile);
+                try {
+                    data = RnaData.load(dataFile);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Class not found: " + e.toString());
+                }
+            }
+            retVal = new GroupCatalog(data);
+            try {
+                retVal.save(groupsFile);
+            } catch (IOException e) {
+                log.warn("Could not save groups for {}: {}", dataFile, e.toString());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Write this catalog to a sidecar file.
+     *
+     * @param groupsFile	output file
+     *
+     * @throws IOException
+     */
+    private void save(File groupsFile) throws IOException {
+        SidecarFile.write(groupsFile, x -> {
+            try (PrintWriter writer = new PrintWriter(x)) {
+                writer.println("group\tmembers");
+                for (String name : this.names) {
+                    String members = this.groupMap.get(name).stream().mapToObj(Integer::toString)
+                            .collect(Collectors.joining(","));
+                    writer.println(name + "\t" + members);
+                }
+            }
+        });
+        log.info("{} groups written to {}.", this.names.size(), groupsFile);
+    }
+
+    /**
+     * @return a group catalog read from a sidecar file
+     *
+     * @param groupsFile	sidecar file to read
+     *
+     * @throws IOException
+     */
+    private static GroupCatalog read(File groupsFile) throws IOException {
+        Map<String, BitSet> groupMap = new HashMap<String, BitSet>();
+        try (TabbedLineReader inStream = new TabbedLineReader(groupsFile)) {
+            int groupCol = inStream.findField("group");
+            int membersCol = inStream.findField("members");
+            for (TabbedLineReader.Line line : inStream) {
+                BitSet members = new BitSet();
+                try {
+                    for (String ordinal : StringUtils.split(line.get(membersCol), ','))
+                        members.set(Integer.parseInt(ordinal));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid member list in group file " + groupsFile + ".");
+                }
+                groupMap.put(line.get(groupCol), members);
+            }
+        }
+        log.info("{} groups read from {}.", groupMap.size(), groupsFile);
+        return new GroupCatalog(groupMap);
+    }
+
+    /**
+     * @return the member features of a group (this set must not be modified)
+     *
+     * @param name		name of the group of interest
+     */
+    public BitSet getMembers(String name) {
+        return this.groupMap.getOrDefault(name, NO_MEMBERS);
+    }
+
+    /**
+     * @return TRUE if the specified group is in the database
+     *
+     * @param name		name of the group of interest
+     */
+    public boolean contains(String name) {
+        return this.groupMap.containsKey(name);
+    }
+
+    /**
+     * @return the sorted list of group names
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(this.names);
+    }
+
+    /**
+     * @return the number of groups in the database
+     */
+    public int size() {
+        return this.names.size();
+    }
+
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.math3.distribution.TDistribution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.rna.RnaData;
+
+/**
+ * This object contains a differential-expression comparison between two groups of samples.  Each group is defined
+ * by a sample-name pattern:  the pattern is split into fragments on underscores, just like the sample names, and
+ * each fragment must either match the corresponding sample-name fragment exactly or be an asterisk, which matches
+ * anything.  So, for example, "7_0_0_A_asdO_000_D000_0_24_*" matches all the 24-hour replicates of one strain.
+ *
+ * For each feature, the expression values are converted to log2(TPM + 1), and we compute the log fold change
+ * (difference of the group means), the Welch t statistic, and the two-sided p-value, which is then adjusted for
+ * multiple testing using the Benjamini-Hochberg method.  Missing values are left out of the groups.  The features
+ * are processed in parallel.
+ *
+ * Comparisons are cached by database file and group patterns.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GroupComparison {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GroupComparison.class);
+    /** column indices of the first group's samples */
+    private int[] group1;
+    /** column indices of the second group's samples */
+    private int[] group2;
+    /** log fold change for each feature */
+    private double[] lfc;
+    /** Welch t statistic for each feature */
+    private double[] tStat;
+    /** adjusted p-value for each feature */
+    private double[] pAdj;
+    /** wildcard fragment for sample-name patterns */
+    public static final String WILDCARD = "*";
+    /** maximum number of comparisons to cache for a single database */
+    private static final int MAX_CACHED = 50;
+    /** cache of comparisons, keyed by data file and then pattern pair */
+    private static final DataCache<Map<String, GroupComparison>> CACHE =
+            new DataCache<Map<String, GroupComparison>>();
+
+    /**
+     * Construct a comparison between two sample groups.
+     *
+     * @param matrix		expression matrix for the RNA database
+     * @param pattern1		sample-name pattern for the first group
+     * @param pattern2		sample-name pattern for the second group
+     */
+    public GroupComparison(ExpressionMatrix matrix, String pattern1, String pattern2) {
+        this.group1 = findColumns(matrix, pattern1);
+        this.group2 = findColumns(matrix, pattern2);
+        final int n = matrix.getFeatureCount();
+        this.lfc = new double[n];
+        this.tStat = new double[n];
+        double[] pValues = new double[n];
+        IntStream.range(0, n).parallel().forEach(f -> {
+            float[] row = matrix.getRow(f);
+            double[] stats1 = groupStats(row, this.group1);
+            double[] stats2 = groupStats(row, this.group2);
+            this.lfc[f] = stats1[1] - stats2[1];
+            this.tStat[f] = Double.NaN;
+            pValues[f] = Double.NaN;
+            double n1 = stats1[0];
+            double n2 = stats2[0];
+            if (n1 >= 2 && n2 >= 2) {
+                double se1 = stats1[2] / n1;
+                double se2 = stats2[2] / n2;
+                double se = se1 + se2;
+                if (se > 0.0) {
+                    this.tStat[f] = this.lfc[f] / Math.sqrt(se);
+                    // Compute the Welch-Satterthwaite degrees of freedom.
+                    double df = se * se / (se1 * se1 / (n1 - 1) + se2 * se2 / (n2 - 1));
+                    TDistribution tDist = new TDistribution(null, df);
+                    pValues[f] = 2.0 * tDist.cumulativeProbability(-Math.abs(this.tStat[f]));
+                }
+            }
+        });
+        this.pAdj = adjust(pValues);
+        log.info("Comparison of {} ({} samples) to {} ({} samples) computed for {} features.", pattern1,
+                this.group1.length, pattern2, this.group2.length, n);
+    }
+
+    /**
+     * @return the comparison between two sample groups in an RNA database
+     *
+     * @param dataFile		file from which the database was loaded
+     * @param data			RNA database loaded from the file
+     * @param pattern1		sample-name pattern for the first group
+     * @param pattern2		sample-name pattern for the second group
+     *
+     * @throws IOException
+     */
+    public static GroupComparison get(File dataFile, RnaData data, String pattern1, String pattern2)
+            throws IOException {
+        Map<String, GroupComparison> pairMap = CACHE.get(dataFile, x -> new ConcurrentHashMap<String, GroupComparison>());
+        String key = pattern1 + " " + pattern2;
+        GroupComparison retVal = pairMap.get(key);
+        if (retVal == null) {
+            retVal = new GroupComparison(ExpressionMatrix.get(dataFile, data), pattern1, pattern2);
+            // Keep the cache from growing without bound.
+            if (pairMap.size() >= MAX_CACHED)
+                pairMap.clear();
+            pairMap.put(key, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if a sample name matches a sample-name pattern
+     *
+     * @param pattern	sample-name pattern
+     * @param sample	sample name to check
+     */
+    public static boolean matches(String pattern, String sample) {
+        String[] pParts = StringUtils.split(pattern, '_');
+        String[] sParts = StringUtils.split(sample, '_');
+        boolean retVal = (pParts.length == sParts.length);
+        for (int i = 0; retVal && i < pParts.length; i++)
+            retVal = (pParts[i].equals(WILDCARD) || pParts[i].equals(sParts[i]));
+        return retVal;
+    }
+
+    /**
+     * @return the number of samples matching a sample-name pattern
+     *
+     * @param pattern	sample-name pattern
+     * @param samples	list of sample names
+     */
+    public static int countMatches(String pattern, List<String> samples) {
+        return (int) samples.stream().filter(x -> matches(pattern, x)).count();
+    }
+
+    /**
+     * @return the column indices of the good-quality samples matching a pattern
+     *
+     * @param matrix	expression matrix for the RNA database
+     * @param pattern	sample-name pattern
+     */
+    private static int[] findColumns(ExpressionMatrix matrix, String pattern) {
+        return Arrays.stream(matrix.getGoodColumns()).filter(j -> matches(pattern, matrix.getSample(j))).toArray();
+    }
+
+    /**
+     * @return the count, mean, and sample variance of the log-scaled values in a group
+     *
+     * @param row		expression values for a feature
+     * @param group		column indices of the group's samples
+     */
+    private static double[] groupStats(float[] row, int[] group) {
+        int n = 0;
+        double sum = 0.0;
+        double sqSum = 0.0;
+        for (int col : group) {
+            float v = row[col];
+            if (! Float.isNaN(v)) {
+                double logV = Math.log(v + 1.0) / Math.log(2.0);
+                sum += logV;
+                sqSum += logV * logV;
+                n++;
+            }
+        }
+        double mean = (n > 0 ? sum / n : Double.NaN);
+        double var = (n > 1 ? Math.max(0.0, (sqSum - sum * mean) / (n - 1)) : Double.NaN);
+        return new double[] { n, mean, var };
+    }
+
+    /**
+     * @return the Benjamini-Hochberg adjustment of an array of p-values (NaN values are ignored)
+     *
+     * @param pValues	array of p-values to adjust
+     */
+    public static double[] adjust(double[] pValues) {
+        double[] retVal = new double[pValues.length];
+        Arrays.fill(retVal, Double.NaN);
+        int[] order = IntStream.range(0, pValues.length).filter(i -> ! Double.isNaN(pValues[i])).boxed()
+                .sorted((a, b) -> Double.compare(pValues[a], pValues[b])).mapToInt(x -> x).toArray();
+        final int m = order.length;
+        double min = 1.0;
+        for (int r = m - 1; r >= 0; r--) {
+            int i = order[r];
+            min = Math.min(min, pValues[i] * m / (r + 1));
+            retVal[i] = min;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of samples in the first group
+     */
+    public int getSize1() {
+        return this.group1.length;
+    }
+
+    /**
+     * @return the number of samples in the second group
+     */
+    public int getSize2() {
+        return this.group2.length;
+    }
+
+    /**
+     * @return the log fold change for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double getLogFoldChange(int featIdx) {
+        return this.lfc[featIdx];
+    }
+
+    /**
+     * @return the Welch t statistic for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double getTStat(int featIdx) {
+        return this.tStat[featIdx];
+    }
+
+    /**
+     * @return the adjusted p-value for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public double getAdjustedP(int featIdx) {
+        return this.pAdj[featIdx];
+    }
+
+}
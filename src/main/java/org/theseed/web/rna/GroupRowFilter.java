@@ -3,15 +3,14 @@
  */
 package org.theseed.web.rna;
 
-import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.BitSet;
 
 import org.theseed.rna.RnaFeatureData;
 import org.theseed.web.ColumnProcessor;
 
 /**
- * This filter returns TRUE if the feature is in the specified operon, regulon, or modulon.
+ * This filter returns TRUE if the feature is in the specified operon, regulon, or modulon.  Group membership is taken
+ * from the database's group catalog.
  *
  * @author Bruce Parrello
  *
@@ -19,33 +18,35 @@ import org.theseed.web.ColumnProcessor;
 public class GroupRowFilter extends RowFilter {
 
     // FIELDS
-    /** filtering group */
-    private String groupName;
-    /** group number for atomic regulons */
-    private int groupNum;
-    /** pattern for atomic regulon group names */
-    private static final Pattern AR_PATTERN = Pattern.compile("AR(\\d+)");
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features in the filtering group */
+    private BitSet members;
 
     public GroupRowFilter(ColumnProcessor processor) {
-        this.groupName = processor.getFilterGroup();
-        Matcher m = AR_PATTERN.matcher(this.groupName);
-        if (m.matches())
-            this.groupNum = Integer.valueOf(m.group(1));
-        else
-            this.groupNum = -1;
+        this(processor, processor.getFilterGroup());
+    }
+
+    /**
+     * Construct a filter for a specified group.
+     *
+     * @param processor		controlling column processor
+     * @param groupName		name of the operon, regulon, or modulon
+     */
+    public GroupRowFilter(ColumnProcessor processor, String groupName) {
+        this.processor = processor;
+        this.members = processor.getGroupCatalog().getMembers(groupName);
     }
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        boolean retVal;
-        if (this.groupNum >= 0)
-            retVal = feat.getAtomicRegulon() == this.groupNum;
-        else {
-            retVal = feat.getOperon().contentEquals(this.groupName);
-            if (! retVal)
-                retVal = Arrays.stream(feat.getiModulons()).anyMatch(x -> x.contentEquals(this.groupName));
-        }
-        return retVal;
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.members.get(featIdx);
     }
 
 }
@@ -0,0 +1,202 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.Key;
+
+import j2html.tags.DomContent;
+import static j2html.TagCreator.*;
+
+/**
+ * This class contains a column that displays one statistic from a differential-expression comparison between two
+ * groups of samples (see GroupComparison).  The primary specification has the form "de(P1:P2)", where P1 and P2 are
+ * sample-name patterns for the two groups, and the secondary specification is the name of the statistic.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GroupTestColumnDescriptor extends ColumnDescriptor {
+
+    /**
+     * This enum describes the statistics that can be displayed.
+     */
+    public static enum Statistic {
+        LFC("log2 FC") {
+            @Override
+            public double getValue(GroupComparison comparison, int featIdx) {
+                return comparison.getLogFoldChange(featIdx);
+            }
+
+            @Override
+            public Key.RevRatio getKey(double value) {
+                return new Key.RevRatio(value, 1.0);
+            }
+        }, T("Welch t") {
+            @Override
+            public double getValue(GroupComparison comparison, int featIdx) {
+                return comparison.getTStat(featIdx);
+            }
+
+            @Override
+            public Key.RevRatio getKey(double value) {
+                return new Key.RevRatio(value, 1.0);
+            }
+        }, PADJ("adj p") {
+            @Override
+            public double getValue(GroupComparison comparison, int featIdx) {
+                return comparison.getAdjustedP(featIdx);
+            }
+
+            @Override
+            public Key.RevRatio getKey(double value) {
+                // Smaller p-values sort first.
+                return new Key.RevRatio(1.0, value);
+            }
+        };
+
+        /** label for column titles */
+        private String label;
+
+        private Statistic(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return the value of this statistic for a feature
+         *
+         * @param comparison	group comparison
+         * @param featIdx		ordinal of the feature of interest
+         */
+        public abstract double getValue(GroupComparison comparison, int featIdx);
+
+        /**
+         * @return the sort key for a value of this statistic
+         *
+         * @param value		statistic value
+         */
+        public abstract Key.RevRatio getKey(double value);
+
+        /**
+         * @return the name of this statistic as used in column specifications
+         */
+        public String code() {
+            return this.name().toLowerCase();
+        }
+
+    }
+
+    // FIELDS
+    /** statistic specification */
+    private String statName;
+    /** statistic to display */
+    private Statistic statistic;
+    /** first-group pattern */
+    private String pattern1;
+    /** second-group pattern */
+    private String pattern2;
+    /** group comparison */
+    private GroupComparison comparison;
+    /** pattern for comparison specifications */
+    private static final Pattern COMPARISON_PATTERN = Pattern.compile("de\\(([^:]+):([^:]+)\\)");
+
+    /**
+     * Construct a group-comparison column.
+     *
+     * @param statName		name of the statistic to display
+     */
+    public GroupTestColumnDescriptor(String statName) {
+        this.statName = statName;
+    }
+
+    /**
+     * @return TRUE if the specified column specification is a group comparison
+     *
+     * @param spec	primary column specification to check
+     */
+    public static boolean isComparison(String spec) {
+        return COMPARISON_PATTERN.matcher(spec).matches();
+    }
+
+    /**
+     * @return the column specifications for all the statistics of a group comparison
+     *
+     * @param pattern1		sample-name pattern for the first group
+     * @param pattern2		sample-name pattern for the second group
+     */
+    public static List<String> specsOf(String pattern1, String pattern2) {
+        List<String> retVal = new ArrayList<String>(Statistic.values().length);
+        for (Statistic stat : Statistic.values())
+            retVal.add("de(" + pattern1 + ":" + pattern2 + ")," + stat.code());
+        return retVal;
+    }
+
+    @Override
+    protected boolean init() {
+        boolean retVal = false;
+        Matcher m = COMPARISON_PATTERN.matcher(this.getSample1());
+        this.statistic = null;
+        for (Statistic stat : Statistic.values()) {
+            if (stat.code().equals(this.statName))
+                this.statistic = stat;
+        }
+        if (m.matches() && this.statistic != null) {
+            this.pattern1 = m.group(1);
+            this.pattern2 = m.group(2);
+            try {
+                if (this.getDataFile() == null)
+                    this.comparison = new GroupComparison(new ExpressionMatrix(this.getData()), this.pattern1,
+                            this.pattern2);
+                else
+                    this.comparison = GroupComparison.get(this.getDataFile(), this.getData(), this.pattern1,
+                            this.pattern2);
+                retVal = (this.comparison.getSize1() > 0 && this.comparison.getSize2() > 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public double getValue(RnaFeatureData feat) {
+        int featIdx = this.getFeatureIndex().getOrdinal(feat);
+        return this.statistic.getValue(this.comparison, featIdx);
+    }
+
+    @Override
+    public Key.RevRatio getKey(RnaFeatureData feat) {
+        return this.statistic.getKey(this.getValue(feat));
+    }
+
+    @Override
+    public String getTitleString() {
+        String retVal = this.statistic.label + " " + this.pattern1 + " vs " + this.pattern2;
+        retVal = StringUtils.replaceChars(retVal, '_', ' ');
+        return retVal;
+    }
+
+    @Override
+    public DomContent getTitle() {
+        DomContent retVal = join(text(this.statistic.label), strong(StringUtils.replaceChars(this.pattern1, '_', ' ')),
+                " / ", strong(StringUtils.replaceChars(this.pattern2, '_', ' ')));
+        return retVal;
+    }
+
+    @Override
+    public String getTooltip() {
+        String retVal = "Numerator: " + this.comparison.getSize1() + " samples.  Denominator: "
+                + this.comparison.getSize2() + " samples.";
+        return retVal;
+    }
+
+}
@@ -0,0 +1,48 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.List;
+
+/**
+ * This column creator produces the differential-expression columns for a comparison between two sample groups.
+ * The primary sample and the optional sample are sample-name patterns, in which an asterisk fragment matches
+ * any value (see GroupComparison).  Since the comparison only uses good-quality samples, each group must contain at
+ * least two of them.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GroupTestNewColumnCreator extends NewColumnCreator {
+
+    public GroupTestNewColumnCreator(List<String> samp1, String samp2, List<String> samps) {
+        super(samp1, samp2, samps);
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        String pattern1 = this.getOnlySample1();
+        String pattern2 = this.getSample2();
+        checkGroup("Primary", pattern1, this.getGoodSamples());
+        checkGroup("Optional", pattern2, this.getGoodSamples());
+        return GroupTestColumnDescriptor.specsOf(pattern1, pattern2);
+    }
+
+    /**
+     * Verify that a sample group has at least two good-quality samples.
+     *
+     * @param label			label for the group in error messages
+     * @param pattern		sample-name pattern for the group
+     * @param goodSamps		list of good-quality samples
+     *
+     * @throws IllegalArgumentException if the group is too small
+     */
+    private static void checkGroup(String label, String pattern, List<String> goodSamps) {
+        int count = GroupComparison.countMatches(pattern, goodSamps);
+        if (count < 2)
+            throw new IllegalArgumentException(String.format("%s group \"%s\" matches %d good-quality samples, "
+                    + "but at least two are required.", label, pattern, count));
+    }
+
+}
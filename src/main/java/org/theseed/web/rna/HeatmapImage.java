@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This object builds a heatmap image of an RNA expression table.  There is one pixel row per table row and a block of
+ * pixels for each column.  Each cell is colored according to its range index, the same index that selects the
+ * "range%d" style in the HTML table, using a palette that follows the site style sheet's range colors.  Missing values
+ * are left white.
+ *
+ * The image is encoded as a PNG data URI, so it can be embedded directly in the page.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class HeatmapImage {
+
+    // FIELDS
+    /** underlying image */
+    private BufferedImage image;
+    /** pixel buffer for the image */
+    private int[] pixels;
+    /** number of columns */
+    private int nCols;
+    /** width in pixels of each column */
+    public static final int CELL_WIDTH = 8;
+    /** CSS color for each range index (index 0 is the neutral color for cells that are not range-colored) */
+    public static final String[] RANGE_PALETTE = new String[] { "#E8E8E8", "#E06666", "#FFD966", "#6FA8DC" };
+    /** RGB color for each range index */
+    private static final int[] RANGE_COLORS = Arrays.stream(RANGE_PALETTE)
+            .mapToInt(x -> Integer.parseInt(x.substring(1), 16)).toArray();
+    /** RGB color for missing values */
+    private static final int MISSING_COLOR = 0xFFFFFF;
+
+    /**
+     * Construct a blank heatmap image.
+     *
+     * @param nRows		number of table rows
+     * @param nCols		number of table columns
+     */
+    public HeatmapImage(int nRows, int nCols) {
+        this.nCols = nCols;
+        this.image = new BufferedImage(Math.max(1, nCols * CELL_WIDTH), Math.max(1, nRows), BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(this.pixels, MISSING_COLOR);
+    }
+
+    /**
+     * Color a cell of the heatmap.
+     *
+     * @param row		index of the table row
+     * @param col		index of the table column
+     * @param range		range index of the cell, or -1 if the value is missing
+     */
+    public void set(int row, int col, int range) {
+        int color = (range < 0 ? MISSING_COLOR : RANGE_COLORS[Math.min(range, RANGE_COLORS.length - 1)]);
+        int start = row * this.nCols * CELL_WIDTH + col * CELL_WIDTH;
+        Arrays.fill(this.pixels, start, start + CELL_WIDTH, color);
+    }
+
+    /**
+     * @return the RGB color of a pixel in the image
+     *
+     * @param x		horizontal pixel position
+     * @param y		vertical pixel position
+     */
+    public int getColor(int x, int y) {
+        return this.image.getRGB(x, y) & 0xFFFFFF;
+    }
+
+    /**
+     * @return the image as a PNG data URI
+     *
+     * @throws IOException
+     */
+    public String toDataUri() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ImageIO.write(this.image, "png", buffer);
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(buffer.toByteArray());
+    }
+
+}
@@ -0,0 +1,334 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.theseed.genome.Genome;
+import org.theseed.locations.Location;
+import org.theseed.rna.RnaData;
+import org.theseed.rna.RnaFeatureData;
+
+/**
+ * This object indexes the locations of a set of features.  The features are numbered by ordinal (for an RNA database,
+ * this is the same ordinal used by RnaFeatureIndex), and the ordinals are sorted by contig, left position, right
+ * position, and feature ID.  The position of a feature in this ordering is its location rank, so sorting by location
+ * only requires comparing two integers.
+ *
+ * For each contig, the index keeps the range of the sorted array belonging to the contig and the length of the
+ * contig's longest feature.  A neighborhood query can then use a binary search to find the first feature that might be
+ * in range, and stops as soon as the features start beyond it.  The distance between two features is the number of
+ * base pairs between them, which is negative if they overlap.
+ *
+ * Features can also belong to a named group (for an RNA database, the operon).  The span of each group on each contig
+ * is kept so that neighborhoods can be computed around an entire operon.  If a group has features on more than one
+ * contig, only the members on the same contig as the feature of interest are used.
+ *
+ * Location indexes are cached by source file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LocationIndex {
+
+    // FIELDS
+    /** map of feature IDs to ordinals */
+    private Map<String, Integer> ordinalMap;
+    /** contig ID for each feature, or NULL if the feature has no location */
+    private String[] contigs;
+    /** left position for each feature */
+    private int[] lefts;
+    /** right position for each feature */
+    private int[] rights;
+    /** strand for each feature */
+    private char[] dirs;
+    /** group name for each feature, or NULL if the feature is not in a group */
+    private String[] groups;
+    /** feature ordinals in location order */
+    private int[] sorted;
+    /** location rank for each feature, indexed by ordinal */
+    private int[] ranks;
+    /** map of contig IDs to the start and end (exclusive) of their ranges in the sorted array */
+    private Map<String, int[]> contigRanges;
+    /** map of contig IDs to the length of the longest feature on the contig */
+    private Map<String, Integer> maxLengths;
+    /** map of group names to contig IDs to the leftmost and rightmost positions of the group's features */
+    private Map<String, Map<String, int[]>> groupSpans;
+    /** in-memory cache of location indexes */
+    private static final DataCache<LocationIndex> CACHE = new DataCache<LocationIndex>();
+
+    /**
+     * Construct a location index from feature data.
+     *
+     * @param fids		array of feature IDs, indexed by ordinal
+     * @param locs		array of feature locations, indexed by ordinal (entries may be NULL)
+     * @param groupIds	array of group names, indexed by ordinal (entries may be NULL or empty)
+     */
+    protected LocationIndex(String[] fids, Location[] locs, String[] groupIds) {
+        this(fids, Arrays.stream(locs).map(x -> (x == null ? null : x.getContigId())).toArray(String[]::new),
+                Arrays.stream(locs).mapToInt(x -> (x == null ? 0 : x.getLeft())).toArray(),
+                Arrays.stream(locs).mapToInt(x -> (x == null ? 0 : x.getRight())).toArray(),
+                dirsOf(locs), groupIds);
+    }
+
+    /**
+     * @return the strands of an array of locations
+     *
+     * @param locs		array of locations (entries may be NULL)
+     */
+    private static char[] dirsOf(Location[] locs) {
+        char[] retVal = new char[locs.length];
+        for (int i = 0; i < locs.length; i++)
+            retVal[i] = (locs[i] == null ? '+' : locs[i].getDir());
+        return retVal;
+    }
+
+    /**
+     * Construct a location index from feature positions.
+     *
+     * @param fids		array of feature IDs, indexed by ordinal
+     * @param contigs	array of contig IDs, indexed by ordinal (NULL for a feature with no location)
+     * @param lefts		array of left positions, indexed by ordinal
+     * @param rights	array of right positions, indexed by ordinal
+     * @param dirs		array of strands, indexed by ordinal
+     * @param groupIds	array of group names, indexed by ordinal (entries may be NULL or empty)
+     */
+    protected LocationIndex(String[] fids, String[] contigs, int[] lefts, int[] rights, char[] dirs, String[] groupIds) {
+        final int n = fids.length;
+        this.ordinalMap = new HashMap<String, Integer>(n * 4 / 3 + 1);
+        this.contigs = contigs;
+        this.lefts = lefts;
+        this.rights = rights;
+        this.dirs = dirs;
+        this.groups = new String[n];
+        this.groupSpans = new HashMap<String, Map<String, int[]>>();
+        for (int i = 0; i < n; i++) {
+            this.ordinalMap.put(fids[i], i);
+            String group = groupIds[i];
+            if (contigs[i] != null && group != null && ! group.isEmpty()) {
+                this.groups[i] = group;
+                int[] span = this.groupSpans.computeIfAbsent(group, x -> new HashMap<String, int[]>(4))
+                        .computeIfAbsent(contigs[i], x -> new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE });
+                span[0] = Math.min(span[0], lefts[i]);
+                span[1] = Math.max(span[1], rights[i]);
+            }
+        }
+        // Sort the features by location.  Features without a location go at the end.
+        this.sorted = IntStream.range(0, n).boxed().sorted((a, b) -> {
+            int retVal;
+            if (this.contigs[a] == null)
+                retVal = (this.contigs[b] == null ? 0 : 1);
+            else if (this.contigs[b] == null)
+                retVal = -1;
+            else
+                retVal = this.contigs[a].compareTo(this.contigs[b]);
+            if (retVal == 0)
+                retVal = Integer.compare(this.lefts[a], this.lefts[b]);
+            if (retVal == 0)
+                retVal = Integer.compare(this.rights[a], this.rights[b]);
+            if (retVal == 0)
+                retVal = fids[a].compareTo(fids[b]);
+            return retVal;
+        }).mapToInt(x -> x).toArray();
+        this.ranks = new int[n];
+        this.contigRanges = new HashMap<String, int[]>();
+        this.maxLengths = new HashMap<String, Integer>();
+        for (int k = 0; k < n; k++) {
+            int i = this.sorted[k];
+            this.ranks[i] = k;
+            String contig = this.contigs[i];
+            if (contig != null) {
+                int[] range = this.contigRanges.get(contig);
+                if (range == null) {
+                    range = new int[] { k, k };
+                    this.contigRanges.put(contig, range);
+                }
+                range[1] = k + 1;
+                this.maxLengths.merge(contig, this.rights[i] - this.lefts[i] + 1, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Construct a location index for an RNA database.  The group of each feature is its operon.
+     *
+     * @param data		RNA database to index
+     */
+    public LocationIndex(RnaData data) {
+        this(featuresOf(data));
+    }
+
+    /**
+     * Construct a location index for a list of RNA features.  The group of each feature is its operon.
+     *
+     * @param feats		list of features, in ordinal order
+     */
+    private LocationIndex(List<RnaFeatureData> feats) {
+        this(feats.stream().map(x -> x.getId()).toArray(String[]::new),
+                feats.stream().map(x -> x.getLocation()).toArray(Location[]::new),
+                feats.stream().map(x -> x.getOperon()).toArray(String[]::new));
+    }
+
+    /**
+     * Construct a location index for the features of a genome.  The ordinals follow the genome's feature order, and
+     * there are no groups.
+     *
+     * @param genome	genome to index
+     */
+    public LocationIndex(Genome genome) {
+        this(genome.getFeatures().stream().map(x -> x.getId()).toArray(String[]::new),
+                genome.getFeatures().stream().map(x -> x.getLocation()).toArray(Location[]::new),
+                new String[genome.getFeatures().size()]);
+    }
+
+    /**
+     * @return the location index for an RNA database
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static LocationIndex get(File dataFile, RnaData data) throws IOException {
+        return CACHE.get(dataFile, x -> new LocationIndex(data));
+    }
+
+    /**
+     * @return the location index for a genome
+     *
+     * @param genomeFile	file from which the genome was loaded
+     * @param genome		genome loaded from the file
+     *
+     * @throws IOException
+     */
+    public static LocationIndex get(File genomeFile, Genome genome) throws IOException {
+        return CACHE.get(genomeFile, x -> new LocationIndex(genome));
+    }
+
+    /**
+     * @return the features of an RNA database, in ordinal order
+     *
+     * @param data	RNA database of interest
+     */
+    private static List<RnaFeatureData> featuresOf(RnaData data) {
+        List<RnaFeatureData> retVal = new ArrayList<RnaFeatureData>();
+        for (RnaData.Row row : data)
+            retVal.add(row.getFeat());
+        return retVal;
+    }
+
+    /**
+     * @return the ordinal of a feature, or -1 if it is not in the index
+     *
+     * @param fid	ID of the feature of interest
+     */
+    public int getOrdinal(String fid) {
+        Integer retVal = this.ordinalMap.get(fid);
+        return (retVal == null ? -1 : retVal);
+    }
+
+    /**
+     * @return the location rank of a feature
+     *
+     * @param ordinal	ordinal of the feature of interest
+     */
+    public int getRank(int ordinal) {
+        return this.ranks[ordinal];
+    }
+
+    /**
+     * @return the location rank of a feature, or the number of features if it is not in the index
+     *
+     * @param fid	ID of the feature of interest
+     */
+    public int getRank(String fid) {
+        int ordinal = this.getOrdinal(fid);
+        return (ordinal < 0 ? this.ranks.length : this.ranks[ordinal]);
+    }
+
+    /**
+     * @return the set of features near a feature
+     *
+     * @param ordinal		ordinal of the feature of interest
+     * @param window		maximum distance in base pairs from the feature
+     * @param sameStrand	if TRUE, only features on the same strand are included
+     */
+    public BitSet getRegion(int ordinal, int window, boolean sameStrand) {
+        return this.search(this.contigs[ordinal], this.lefts[ordinal], this.rights[ordinal], window,
+                (sameStrand ? this.dirs[ordinal] : 0));
+    }
+
+    /**
+     * @return the set of features near the operon containing a feature (or near the feature, if it has no operon)
+     *
+     * Only the operon members on the same contig as the feature determine the operon's span.
+     *
+     * @param ordinal		ordinal of the feature of interest
+     * @param window		maximum distance in base pairs from the operon
+     * @param sameStrand	if TRUE, only features on the same strand are included
+     */
+    public BitSet getOperonRegion(int ordinal, int window, boolean sameStrand) {
+        BitSet retVal;
+        String group = this.groups[ordinal];
+        if (group == null)
+            retVal = this.getRegion(ordinal, window, sameStrand);
+        else {
+            int[] span = this.groupSpans.get(group).get(this.contigs[ordinal]);
+            retVal = this.search(this.contigs[ordinal], span[0], span[1], window, (sameStrand ? this.dirs[ordinal] : 0));
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the set of features within a specified distance of a contig region
+     *
+     * @param contig	ID of the contig containing the region, or NULL if there is no region
+     * @param left		leftmost position of the region
+     * @param right		rightmost position of the region
+     * @param window	maximum distance in base pairs from the region
+     * @param dir		required strand, or 0 if any strand is allowed
+     */
+    private BitSet search(String contig, int left, int right, int window, char dir) {
+        BitSet retVal = new BitSet(this.ranks.length);
+        int[] range = (contig == null ? null : this.contigRanges.get(contig));
+        if (range != null) {
+            // Binary search for the first feature that could reach the region.
+            final int minLeft = left - window - this.maxLengths.get(contig);
+            int lo = range[0];
+            int hi = range[1];
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.lefts[this.sorted[mid]] < minLeft)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            // Scan forward until the features start past the region.
+            final int maxLeft = right + window;
+            for (int k = lo; k < range[1] && this.lefts[this.sorted[k]] <= maxLeft; k++) {
+                int i = this.sorted[k];
+                int distance = Math.max(this.lefts[i] - right, left - this.rights[i]);
+                if (distance <= window && (dir == 0 || this.dirs[i] == dir))
+                    retVal.set(i);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of features in the index
+     */
+    public int size() {
+        return this.ranks.length;
+    }
+
+}
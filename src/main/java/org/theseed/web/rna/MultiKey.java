@@ -9,7 +9,9 @@ import org.theseed.web.ColSpec;
 import org.theseed.web.Key;
 
 /**
- * This is an HTML table key-type that allows sorting by RevRatio, then peg location and finally peg ID.
+ * This is an HTML table key-type that allows sorting by RevRatio and then peg location.  The peg location is
+ * represented by the feature's rank in the database's location index, so that ties are broken by an integer
+ * comparison.  When the rows are clustered, the cluster position is sorted first.
  *
  * @author Bruce Parrello
  *
@@ -17,25 +19,41 @@ import org.theseed.web.Key;
 public class MultiKey extends Key implements Comparable<MultiKey> {
 
     // FIELDS
-    /** target feature data */
-    private RnaFeatureData feat;
     /** ratio for primary sort */
     private Key.RevRatio ratio;
+    /** position of the row in the cluster ordering, or 0 if the rows are not clustered */
+    private int rank;
+    /** location rank of the feature */
+    private int position;
     /** constant RevRatio for location-only sorts */
     private static final Key.RevRatio LOCATION_ONLY = new Key.RevRatio(1.0, 0.0);
 
     /**
      * Create a sort key for the specified feature in the specified column.
      *
-     * @param feat	feature being sorted
-     * @param col	sort column, or NULL if sorting is by location only
+     * @param feat		feature being sorted
+     * @param col		sort column, or NULL if sorting is by location only
+     * @param position	location rank of the feature (see LocationIndex)
      */
-    public MultiKey(RnaFeatureData feat, ColumnDescriptor col) {
-        this.feat = feat;
+    public MultiKey(RnaFeatureData feat, ColumnDescriptor col, int position) {
         if (col == null)
             this.ratio = LOCATION_ONLY;
         else
             this.ratio = col.getKey(feat);
+        this.rank = 0;
+        this.position = position;
+    }
+
+    /**
+     * Create a sort key for a feature at the specified position in a cluster ordering.
+     *
+     * @param rank		position of the feature's row in the cluster ordering
+     * @param position	location rank of the feature (see LocationIndex)
+     */
+    public MultiKey(int rank, int position) {
+        this.ratio = LOCATION_ONLY;
+        this.rank = rank;
+        this.position = position;
     }
 
     @Override
@@ -46,9 +64,11 @@ public class MultiKey extends Key implements Comparable<MultiKey> {
 
     @Override
     public int compareTo(MultiKey o) {
-        int retVal = this.ratio.compareTo(o.ratio);
+        int retVal = Integer.compare(this.rank, o.rank);
+        if (retVal == 0)
+            retVal = this.ratio.compareTo(o.ratio);
         if (retVal == 0)
-            retVal = this.feat.compareTo(o.feat);
+            retVal = Integer.compare(this.position, o.position);
         return retVal;
     }
 
@@ -2,14 +2,12 @@
  *
  */
 package org.theseed.web.rna;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
-import org.theseed.reports.NaturalSort;
 import org.theseed.utils.IDescribable;
 
 /**
@@ -26,8 +24,16 @@ public abstract class NewColumnCreator {
     public static enum Type implements IDescribable {
         TIME1("iterate through all times for Primary"),
         TIMES("compare same times for Primary over Optional"),
+        TIME0("compare all times for Primary to its earliest time"),
+        REPLICATES("iterate through all times for every replicate series of Primary"),
         //ALL("show all samples"),
-        SINGLE("add one column");
+        SINGLE("add one column"),
+        PATTERN("add a column for each sample matching the Primary pattern (\"*\" matches any fragment) over Optional"),
+        MEAN("add the mean of all Primary samples (Optional may list samples separated by \"+\")"),
+        MEDIAN("add the median of all Primary samples (Optional may list samples separated by \"+\")"),
+        DIFFEXP("compare sample groups matching Primary and Optional patterns (\"*\" matches any fragment)"),
+        FORMULA("add a column computed from the formula in Primary, such as \"log2((A+B)/2/baseline)\""),
+        ZSCORE("add a z-score column for each Primary sample");
 
         private String description;
 
@@ -51,9 +57,33 @@ public abstract class NewColumnCreator {
             case TIMES :
                 retVal = new TimeBothNewColumnCreator(samp1, samp2, samps);
                 break;
+            case TIME0 :
+                retVal = new TimeZeroNewColumnCreator(samp1, samp2, samps);
+                break;
+            case REPLICATES :
+                retVal = new ReplicateNewColumnCreator(samp1, samp2, samps);
+                break;
             case SINGLE:
                 retVal = new SingleNewColumnCreator(samp1, samp2, samps);
                 break;
+            case PATTERN:
+                retVal = new PatternNewColumnCreator(samp1, samp2, samps);
+                break;
+            case MEAN:
+                retVal = new AggregateNewColumnCreator(AggregateColumnDescriptor.Function.MEAN, samp1, samp2, samps);
+                break;
+            case MEDIAN:
+                retVal = new AggregateNewColumnCreator(AggregateColumnDescriptor.Function.MEDIAN, samp1, samp2, samps);
+                break;
+            case DIFFEXP:
+                retVal = new GroupTestNewColumnCreator(samp1, samp2, samps);
+                break;
+            case FORMULA:
+                retVal = new FormulaNewColumnCreator(samp1, samp2, samps);
+                break;
+            case ZSCORE:
+                retVal = new ZScoreNewColumnCreator(samp1, samp2, samps);
+                break;
             //case ALL:
             //    retVal = new AllNewColumnCreator(samps);
             //    break;
@@ -73,6 +103,39 @@ public abstract class NewColumnCreator {
             // return (this != ALL);
             return true;
         }
+
+        /**
+         * @return the names of the samples that must be present in the database for this strategy
+         *
+         * @param samp1	IDs of first samples
+         * @param samp2	ID of second sample
+         */
+        public List<String> getRequiredSamples(List<String> samp1, String samp2) {
+            List<String> retVal = new ArrayList<String>();
+            switch (this) {
+            case DIFFEXP:
+            case FORMULA:
+                // Here the samples are patterns or formulas, which are checked by the column creator.
+                break;
+            case PATTERN:
+                // Here the primary samples are patterns, but the optional sample is real.
+                retVal.add(samp2);
+                break;
+            case MEAN:
+            case MEDIAN:
+                retVal.addAll(samp1);
+                retVal.addAll(Arrays.asList(StringUtils.split(samp2, AggregateColumnDescriptor.SAMPLE_SEP)));
+                break;
+            case ZSCORE:
+                retVal.addAll(samp1);
+                break;
+            default:
+                retVal.addAll(samp1);
+                retVal.add(samp2);
+            }
+            retVal.removeIf(x -> x.isEmpty() || x.contentEquals("baseline"));
+            return retVal;
+        }
     }
 
     // FIELDS
@@ -82,8 +145,12 @@ public abstract class NewColumnCreator {
     private String sample2;
     /** list of samples */
     private List<String> samples;
-    /** array index of time point */
-    private static final int TIME_INDEX = 8;
+    /** list of good-quality samples, or NULL if all the samples are good */
+    private List<String> goodSamples;
+    /** time-series index for the samples, or NULL if it has not been computed */
+    private SampleSeriesIndex seriesIndex;
+    /** fragment index for the samples, or NULL if it has not been computed */
+    private SampleFragmentIndex fragmentIndex;
 
     /**
      * Construct a new column creator.
@@ -96,6 +163,47 @@ public abstract class NewColumnCreator {
         this.sample1 = samp1;
         this.sample2 = samp2;
         this.samples = samps;
+        this.goodSamples = null;
+        this.seriesIndex = null;
+        this.fragmentIndex = null;
+    }
+
+    /**
+     * Specify the time-series index for the samples.  If no index is specified, one will be built from the sample
+     * list when it is needed.
+     *
+     * @param index		time-series index for the sample list
+     */
+    public void setSeriesIndex(SampleSeriesIndex index) {
+        this.seriesIndex = index;
+    }
+
+    /**
+     * @return the time-series index for the samples
+     */
+    protected SampleSeriesIndex getSeriesIndex() {
+        if (this.seriesIndex == null)
+            this.seriesIndex = new SampleSeriesIndex(this.samples);
+        return this.seriesIndex;
+    }
+
+    /**
+     * Specify the fragment index for the samples.  If no index is specified, one will be built from the sample
+     * list when it is needed.
+     *
+     * @param index		fragment index for the sample list
+     */
+    public void setFragmentIndex(SampleFragmentIndex index) {
+        this.fragmentIndex = index;
+    }
+
+    /**
+     * @return the fragment index for the samples
+     */
+    protected SampleFragmentIndex getFragmentIndex() {
+        if (this.fragmentIndex == null)
+            this.fragmentIndex = new SampleFragmentIndex(this.samples);
+        return this.fragmentIndex;
     }
 
     /**
@@ -106,17 +214,7 @@ public abstract class NewColumnCreator {
      * @return a map of all the represented times to the appropriate samples
      */
     protected SortedMap<String, String> getAllTimes(String samp) {
-        SortedMap<String, String> retVal = new TreeMap<String, String>(new NaturalSort());
-        // Create a pattern to match this sample's time points.
-        String[] parts = StringUtils.split(samp, '_');
-        parts[TIME_INDEX] = "([0-9p]+)";
-        Pattern pattern = Pattern.compile(StringUtils.join(parts, '_'));
-        for (String sample : this.samples) {
-            Matcher m = pattern.matcher(sample);
-            if (m.matches())
-                retVal.put(m.group(1), sample);
-        }
-        return retVal;
+        return this.getSeriesIndex().getAllTimes(samp);
     }
 
     /**
@@ -149,6 +247,22 @@ public abstract class NewColumnCreator {
         return this.samples;
     }
 
+    /**
+     * Specify the good-quality samples.  If no list is specified, all the samples are considered good.
+     *
+     * @param goodSamps		list of the good-quality samples
+     */
+    public void setGoodSamples(List<String> goodSamps) {
+        this.goodSamples = goodSamps;
+    }
+
+    /**
+     * @return a list of the good-quality samples
+     */
+    protected List<String> getGoodSamples() {
+        return (this.goodSamples == null ? this.samples : this.goodSamples);
+    }
+
     /**
      * @return the list of column specifiers to add to the cookie string
      */
@@ -0,0 +1,42 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This creator adds a column for every sample matching a sample-name pattern, in which an asterisk fragment matches
+ * any value (see GroupComparison).  Each matching sample is paired with the second sample, so the columns are simple
+ * if there is no second sample, baseline ratios if it is "baseline", and ratios to a reference sample otherwise.  The
+ * pattern is resolved using the database's sample fragment index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PatternNewColumnCreator extends NewColumnCreator {
+
+    public PatternNewColumnCreator(List<String> samp1, String samp2, List<String> samps) {
+        super(samp1, samp2, samps);
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        String samp2 = this.getSample2();
+        List<String> retVal = new ArrayList<String>();
+        for (String pattern : this.getSample1()) {
+            if (! pattern.isEmpty()) {
+                List<String> matches = this.getFragmentIndex().getMatches(pattern);
+                if (matches.isEmpty())
+                    throw new IllegalArgumentException("Sample pattern \"" + pattern + "\" does not match any samples.");
+                for (String sample : matches) {
+                    if (! sample.contentEquals(samp2))
+                        retVal.add(sample + "," + samp2);
+                }
+            }
+        }
+        return retVal;
+    }
+
+}
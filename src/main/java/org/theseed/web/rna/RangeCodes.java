@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.BitSet;
+
+/**
+ * This object contains the range code for every cell in a table, stored as a byte per cell and indexed by table column
+ * and then feature ordinal.  The range code determines the coloring of a cell (0 for normal, and a different style for
+ * each other code).  The codes are computed in a single pass over each column's value array, using either per-feature
+ * low and high limits (for baseline and quantile coloring) or a global list of range limits.  Undefined values always
+ * have a code of 0.
+ *
+ * Only some columns are range-colored in the table display.  A row is variant if its range-colored cells do not all
+ * have the same code.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RangeCodes {
+
+    // FIELDS
+    /** range codes, indexed by table column and then feature ordinal */
+    private byte[][] codes;
+    /** indices of the range-colored columns */
+    private int[] colored;
+
+    /**
+     * Compute range codes using per-feature limits.  A value at or below the feature's low limit has a code of 3, and a
+     * value at or above its high limit has a code of 1.
+     *
+     * @param batch		column values for the table
+     * @param colored	set of range-colored columns
+     * @param lows		low limit for each feature, indexed by ordinal
+     * @param highs		high limit for each feature, indexed by ordinal
+     */
+    public RangeCodes(ColumnBatch batch, BitSet colored, double[] lows, double[] highs) {
+        this(batch.size(), colored);
+        for (int i = 0; i < this.codes.length; i++) {
+            double[] values = batch.getValues(i);
+            byte[] colCodes = new byte[values.length];
+            for (int f = 0; f < values.length; f++) {
+                double value = values[f];
+                if (value <= lows[f])
+                    colCodes[f] = 3;
+                else if (value >= highs[f])
+                    colCodes[f] = 1;
+            }
+            this.codes[i] = colCodes;
+        }
+    }
+
+    /**
+     * Compute range codes using a global list of range limits.  The code for a value is the number of limits less
+     * than the value.
+     *
+     * @param batch		column values for the table
+     * @param colored	set of range-colored columns
+     * @param limits	range limits, sorted from lowest to highest
+     */
+    public RangeCodes(ColumnBatch batch, BitSet colored, double[] limits) {
+        this(batch.size(), colored);
+        for (int i = 0; i < this.codes.length; i++) {
+            double[] values = batch.getValues(i);
+            byte[] colCodes = new byte[values.length];
+            for (int f = 0; f < values.length; f++) {
+                double value = values[f];
+                if (! Double.isNaN(value)) {
+                    // Find the first limit greater than or equal to the value.
+                    int lo = 0;
+                    int hi = limits.length;
+                    while (lo < hi) {
+                        int mid = (lo + hi) >>> 1;
+                        if (limits[mid] < value)
+                            lo = mid + 1;
+                        else
+                            hi = mid;
+                    }
+                    colCodes[f] = (byte) lo;
+                }
+            }
+            this.codes[i] = colCodes;
+        }
+    }
+
+    /**
+     * Initialize the range-code arrays.
+     *
+     * @param nCols		number of table columns
+     * @param colored	set of range-colored columns
+     */
+    private RangeCodes(int nCols, BitSet colored) {
+        this.codes = new byte[nCols][];
+        this.colored = colored.stream().filter(x -> x < nCols).toArray();
+    }
+
+    /**
+     * @return the range code for a cell
+     *
+     * @param i			index of the table column
+     * @param featIdx	ordinal of the feature for the cell's row
+     */
+    public int get(int i, int featIdx) {
+        return this.codes[i][featIdx];
+    }
+
+    /**
+     * @return TRUE if the range-colored cells in a row do not all have the same code
+     *
+     * @param featIdx	ordinal of the feature for the row
+     */
+    public boolean isVariant(int featIdx) {
+        boolean retVal = false;
+        if (this.colored.length > 1) {
+            int range = this.codes[this.colored[0]][featIdx];
+            for (int k = 1; k < this.colored.length && ! retVal; k++)
+                retVal = (this.codes[this.colored[k]][featIdx] != range);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the set of ordinals for the variant rows
+     *
+     * @param nFeats	number of features in the table
+     */
+    public BitSet getVariantRows(int nFeats) {
+        BitSet retVal = new BitSet(nFeats);
+        for (int f = 0; f < nFeats; f++) {
+            if (this.isVariant(f))
+                retVal.set(f);
+        }
+        return retVal;
+    }
+
+}
@@ -3,38 +3,59 @@
  */
 package org.theseed.web.rna;
 
-import org.theseed.locations.Location;
-import org.theseed.rna.RnaData;
+import java.util.BitSet;
+
 import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.ColumnProcessor;
 
 /**
+ * This filter only shows rows near the focus peg.  The neighborhood is computed once from the database's location
+ * index, using the processor's region window and strand setting.  In operon mode, the neighborhood is measured from
+ * the whole operon containing the focus peg rather than from the peg itself.  If there is no focus peg, all rows are
+ * shown.
+ *
  * @author Bruce Parrello
  *
  */
 public class RegionRowFilter extends RowFilter {
 
     // FIELDS
-    /** location of focus peg */
-    private Location loc;
-    /** region distance to display */
-    public static int MAX_DISTANCE = 5000;
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features in the region, or NULL if there is no focus peg */
+    private BitSet members;
+    /** default region distance */
+    public static final int DEFAULT_DISTANCE = 5000;
 
-
-    public RegionRowFilter(RnaData.Row focusRow) {
-        if (focusRow == null)
-            this.loc = null;
-        else
-            this.loc = focusRow.getFeat().getLocation();
+    /**
+     * Construct a region filter.
+     *
+     * @param processor		controlling column processor
+     * @param operon		if TRUE, the region is measured from the focus peg's operon
+     */
+    public RegionRowFilter(ColumnProcessor processor, boolean operon) {
+        this.processor = processor;
+        int focusIdx = processor.getFocusIndex();
+        if (focusIdx < 0)
+            this.members = null;
+        else {
+            LocationIndex locIndex = processor.getLocationIndex();
+            int window = processor.getRegionWindow();
+            boolean sameStrand = processor.isStrandRegion();
+            this.members = (operon ? locIndex.getOperonRegion(focusIdx, window, sameStrand)
+                    : locIndex.getRegion(focusIdx, window, sameStrand));
+        }
     }
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        boolean retVal = true;
-        if (this.loc != null) {
-            Location loc2 = feat.getLocation();
-            retVal = (this.loc.distance(loc2) <= MAX_DISTANCE);
-        }
-        return retVal;
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return (this.members == null || this.members.get(featIdx));
     }
 
 }
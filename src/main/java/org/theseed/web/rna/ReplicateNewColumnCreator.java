@@ -0,0 +1,40 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * This creator expands the primary sample to all the time points of all its replicate series.  As with the
+ * TIME1 strategy, the second sample is appended to each column.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ReplicateNewColumnCreator extends NewColumnCreator {
+
+    public ReplicateNewColumnCreator(List<String> samp1, String samp2, List<String> samps) {
+        super(samp1, samp2, samps);
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        String samp2 = this.getSample2();
+        String samp1 = this.getOnlySample1();
+        List<SortedMap<String, String>> seriesList = this.getSeriesIndex().getReplicateSeries(samp1);
+        if (seriesList.isEmpty())
+            throw new IllegalArgumentException(samp1 + " is not part of a time series.");
+        List<String> retVal = new ArrayList<String>();
+        for (SortedMap<String, String> series : seriesList) {
+            for (String sample : series.values()) {
+                if (! sample.contentEquals(samp2))
+                    retVal.add(sample + "," + samp2);
+            }
+        }
+        return retVal;
+    }
+
+}
@@ -5,6 +5,8 @@ package org.theseed.web.rna;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
@@ -25,7 +27,7 @@ public class RnaDataType implements IDescribable {
      */
     public static class ClusterFilter implements FilenameFilter {
 
-        private static Pattern NAME_PATTERN = Pattern.compile("CL\\d+\\.tpm\\.ser");
+        private static final Pattern NAME_PATTERN = Pattern.compile("CL\\d+\\.tpm\\.ser");
 
         @Override
         public boolean accept(File dir, String name) {
@@ -43,8 +45,6 @@ public class RnaDataType implements IDescribable {
     private String description;
     /** ordinal code number */
     private int ordinal;
-    /** filter for cluster files */
-    private static final FilenameFilter CLUSTER_FILTER = new ClusterFilter();
 
     /**
      * Construct an RNA data type from a database identifier.
@@ -75,21 +75,40 @@ public class RnaDataType implements IDescribable {
     }
 
     /**
-     * @return a list of the valid RNA data types
+     * @return a list of the valid RNA data types, sorted by ordinal
+     *
+     * The list is taken from the cached database catalog for the directory, so the directory is only rescanned
+     * when it changes.  The ordinals are not necessarily dense:  use "find" to locate a type by ordinal.
      *
      * @param workDir	workspace directory
      */
     public static RnaDataType[] values(File workDir) {
-        // Get the cluster names.
-        String[] clusters = workDir.list(CLUSTER_FILTER);
-        // Prime with the two old values.
-        RnaDataType[] retVal = new RnaDataType[clusters.length + 2];
-        retVal[0] = new RnaDataType("tpm.ser");
-        retVal[1] = new RnaDataType("ecoli.ser");
-        // Now add the clusters.
-        for (int i = 0; i < clusters.length; i++) {
-            RnaDataType type = new RnaDataType(clusters[i]);
-            retVal[type.ordinal] = type;
+        try {
+            return RnaDatabaseCatalog.get(workDir).getTypes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the data type with the specified ordinal, or NULL if there is none
+     *
+     * @param types		array of data types, sorted by ordinal
+     * @param ordinal	ordinal code of the desired type
+     */
+    public static RnaDataType find(RnaDataType[] types, int ordinal) {
+        RnaDataType retVal = null;
+        int lo = 0;
+        int hi = types.length - 1;
+        while (retVal == null && lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midOrd = types[mid].ordinal;
+            if (midOrd < ordinal)
+                lo = mid + 1;
+            else if (midOrd > ordinal)
+                hi = mid - 1;
+            else
+                retVal = types[mid];
         }
         return retVal;
     }
@@ -0,0 +1,248 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.io.TabbedLineReader;
+import org.theseed.rna.RnaData;
+
+/**
+ * This object catalogs the RNA databases in a CoreSEED data directory.  The directory is scanned once, and the
+ * catalog is rebuilt only when the directory changes (which happens whenever a database file is added, removed, or
+ * replaced).  The database types are kept in ordinal order, but the ordinals need not be dense, so a missing cluster
+ * number is harmless.
+ *
+ * For each database, the catalog can also supply the feature count, sample count, and version without opening the
+ * database.  These are kept in a small info sidecar file (the database file name with ".info.tbl" added, see
+ * SidecarFile) that is written whenever the database is loaded and the sidecar is missing or out of date.  The
+ * sidecars are kept in a cache subdirectory, so writing them does not change the data directory and invalidate the
+ * catalog.  The version is the modification
+ * time of the database file, so it changes whenever the database is rebuilt.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RnaDatabaseCatalog {
+
+    /**
+     * This class contains the descriptive information for a single database.
+     */
+    public static class Info {
+
+        /** database type */
+        private RnaDataType type;
+        /** number of features, or -1 if unknown */
+        private int featureCount;
+        /** number of samples, or -1 if unknown */
+        private int sampleCount;
+        /** database version (file modification time), or 0 if the file does not exist */
+        private long version;
+
+        /**
+         * Construct a database information object.
+         *
+         * @param type			database type
+         * @param featureCount	number of features, or -1 if unknown
+         * @param sampleCount	number of samples, or -1 if unknown
+         * @param version		database version
+         */
+        private Info(RnaDataType type, int featureCount, int sampleCount, long version) {
+            this.type = type;
+            this.featureCount = featureCount;
+            this.sampleCount = sampleCount;
+            this.version = version;
+        }
+
+        /**
+         * @return the database type
+         */
+        public RnaDataType getType() {
+            return this.type;
+        }
+
+        /**
+         * @return the number of features, or -1 if unknown
+         */
+        public int getFeatureCount() {
+            return this.featureCount;
+        }
+
+        /**
+         * @return the number of samples, or -1 if unknown
+         */
+        public int getSampleCount() {
+            return this.sampleCount;
+        }
+
+        /**
+         * @return the database version (file modification time), or 0 if the file does not exist
+         */
+        public long getVersion() {
+            return this.version;
+        }
+
+        /**
+         * @return TRUE if the feature and sample counts are known
+         */
+        public boolean isKnown() {
+            return this.featureCount >= 0;
+        }
+
+    }
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(RnaDatabaseCatalog.class);
+    /** data directory */
+    private File coreDir;
+    /** database types, sorted by ordinal */
+    private RnaDataType[] types;
+    /** suffix for info sidecar file names */
+    public static final String INFO_SUFFIX = ".info.tbl";
+    /** names of the databases that are always present */
+    private static final String[] FIXED_DATABASES = new String[] { "tpm.ser", "ecoli.ser" };
+    /** filter for cluster files */
+    private static final RnaDataType.ClusterFilter CLUSTER_FILTER = new RnaDataType.ClusterFilter();
+    /** in-memory cache of catalogs */
+    private static final DataCache<RnaDatabaseCatalog> CACHE = new DataCache<RnaDatabaseCatalog>();
+    /** in-memory cache of database information */
+    private static final DataCache<Info> INFO_CACHE = new DataCache<Info>();
+
+    /**
+     * Construct a catalog by scanning a data directory.
+     *
+     * @param coreDir	data directory to scan
+     */
+    public RnaDatabaseCatalog(File coreDir) {
+        this.coreDir = coreDir;
+        List<RnaDataType> typeList = new ArrayList<RnaDataType>();
+        for (String fixed : FIXED_DATABASES)
+            typeList.add(new RnaDataType(fixed));
+        String[] clusters = coreDir.list(CLUSTER_FILTER);
+        if (clusters != null) {
+            for (String cluster : clusters)
+                typeList.add(new RnaDataType(cluster));
+        }
+        Collections.sort(typeList, Comparator.comparingInt(RnaDataType::ordinal));
+        this.types = typeList.stream().toArray(RnaDataType[]::new);
+        log.info("{} RNA databases found in {}.", this.types.length, coreDir);
+    }
+
+    /**
+     * @return the catalog for a data directory
+     *
+     * @param coreDir	data directory containing the databases
+     *
+     * @throws IOException
+     */
+    public static RnaDatabaseCatalog get(File coreDir) throws IOException {
+        return CACHE.get(coreDir, x -> new RnaDatabaseCatalog(x));
+    }
+
+    /**
+     * @return the database types in this catalog, sorted by ordinal
+     */
+    public RnaDataType[] getTypes() {
+        return this.types.clone();
+    }
+
+    /**
+     * @return the database type with the specified ordinal, or NULL if there is none
+     *
+     * @param ordinal	ordinal code of the desired type
+     */
+    public RnaDataType getType(int ordinal) {
+        return RnaDataType.find(this.types, ordinal);
+    }
+
+    /**
+     * @return the descriptive information for a database
+     *
+     * @param type		type of the desired database
+     *
+     * @throws IOException
+     */
+    public Info getInfo(RnaDataType type) throws IOException {
+        File dataFile = new File(this.coreDir, type.getFileName());
+        return INFO_CACHE.get(Arrays.asList(dataFile, infoFile(dataFile)), () -> readInfo(type, dataFile));
+    }
+
+    /**
+     * @return the info sidecar file for a database
+     *
+     * @param dataFile	RNA database file
+     */
+    public static File infoFile(File dataFile) {
+        return SidecarFile.locate(dataFile, INFO_SUFFIX);
+    }
+
+    /**
+     * @return the information for a database, taken from the info sidecar if it is current
+     *
+     * @param type		type of the database
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    private static Info readInfo(RnaDataType type, File dataFile) throws IOException {
+        long version = dataFile.lastModified();
+        int features = -1;
+        int samples = -1;
+        File infoFile = infoFile(dataFile);
+        if (infoFile.canRead()) {
+            try (TabbedLineReader inStream = new TabbedLineReader(infoFile)) {
+                int fCol = inStream.findField("features");
+                int sCol = inStream.findField("samples");
+                int vCol = inStream.findField("version");
+                for (TabbedLineReader.Line line : inStream) {
+                    // Only use the counts if they were computed for the current version of the database.
+                    if (Long.parseLong(line.get(vCol)) == version) {
+                        features = line.getInt(fCol);
+                        samples = line.getInt(sCol);
+                    }
+                }
+            }
+        }
+        return new Info(type, features, samples, version);
+    }
+
+    /**
+     * Insure the sidecar files for an RNA database are up to date.  This should be called whenever a database
+     * is loaded.  Failures are logged, since the sidecars can always be rebuilt later.
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file
+     */
+    public static void refresh(File dataFile, RnaData data) {
+        SampleMetaTable.refresh(dataFile, data);
+        GeneStatsTable.refresh(dataFile, data);
+        GeneNameIndex.refresh(dataFile, data);
+        GroupCatalog.refresh(dataFile, data);
+        File infoFile = infoFile(dataFile);
+        if (! SidecarFile.isCurrent(infoFile, dataFile)) {
+            try {
+                int features = RnaFeatureIndex.get(dataFile, data).size();
+                SidecarFile.write(infoFile, x -> {
+                    try (PrintWriter writer = new PrintWriter(x)) {
+                        writer.println("features\tsamples\tversion");
+                        writer.println(features + "\t" + data.size() + "\t" + dataFile.lastModified());
+                    }
+                });
+            } catch (IOException e) {
+                log.warn("Could not save database information for {}: {}", dataFile, e.toString());
+            }
+        }
+    }
+
+}
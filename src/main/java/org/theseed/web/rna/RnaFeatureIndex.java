@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.theseed.rna.RnaData;
+import org.theseed.rna.RnaFeatureData;
+
+/**
+ * This object assigns an ordinal number to each feature in an RNA database.  The ordinals follow the order in which
+ * the database returns its rows, so they are the same for every load of the same database file.  Per-feature indexes
+ * use these ordinals as bit positions and array indices.
+ *
+ * Feature indexes are cached by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RnaFeatureIndex {
+
+    // FIELDS
+    /** array of feature IDs, indexed by ordinal */
+    private String[] fids;
+    /** map of feature IDs to ordinals */
+    private Map<String, Integer> ordinalMap;
+    /** in-memory cache of feature indexes */
+    private static final DataCache<RnaFeatureIndex> CACHE = new DataCache<RnaFeatureIndex>();
+
+    /**
+     * Construct a feature index for an RNA database.
+     *
+     * @param data		RNA database to index
+     */
+    public RnaFeatureIndex(RnaData data) {
+        List<String> fidList = new ArrayList<String>();
+        for (RnaData.Row row : data)
+            fidList.add(row.getFeat().getId());
+        this.fids = fidList.stream().toArray(String[]::new);
+        this.ordinalMap = new HashMap<String, Integer>(this.fids.length * 4 / 3 + 1);
+        for (int i = 0; i < this.fids.length; i++)
+            this.ordinalMap.put(this.fids[i], i);
+    }
+
+    /**
+     * @return the feature index for an RNA database
+     *
+     * @param dataFile	file from which the database was loaded
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static RnaFeatureIndex get(File dataFile, RnaData data) throws IOException {
+        return CACHE.get(dataFile, x -> new RnaFeatureIndex(data));
+    }
+
+    /**
+     * @return the number of features in the database
+     */
+    public int size() {
+        return this.fids.length;
+    }
+
+    /**
+     * @return the ordinal of a feature, or -1 if it is not in the database
+     *
+     * @param fid	ID of the feature of interest
+     */
+    public int getOrdinal(String fid) {
+        Integer retVal = this.ordinalMap.get(fid);
+        return (retVal == null ? -1 : (int) retVal);
+    }
+
+    /**
+     * @return the ordinal of a feature, or -1 if it is not in the database
+     *
+     * @param feat	feature of interest
+     */
+    public int getOrdinal(RnaFeatureData feat) {
+        return this.getOrdinal(feat.getId());
+    }
+
+    /**
+     * @return the ID of the feature with the specified ordinal
+     *
+     * @param ordinal	ordinal of the feature of interest
+     */
+    public String getFid(int ordinal) {
+        return this.fids[ordinal];
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This object orders table rows by average-linkage hierarchical clustering.  Each row is a vector of column values.
+ * The values are compressed by a signed log so that highly-expressed genes do not dominate, and the distance between
+ * two rows is the Euclidean distance over the columns where both values are present, scaled up to the full column
+ * count.  The distance matrix is stored in condensed (upper-triangle) form and is computed in square blocks that
+ * are distributed over a fork-join pool.
+ *
+ * The clustering itself uses the nearest-neighbor-chain algorithm, which needs only quadratic time for average
+ * linkage.  The rows are then ordered by a depth-first walk of the dendrogram.  At each internal node, the subtree
+ * containing the earliest row goes first, so rows that do not cluster tightly stay in their original order.
+ *
+ * Row orders are cached by database file and then by configuration and displayed-row set.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RowClustering {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(RowClustering.class);
+    /** number of rows */
+    private int n;
+    /** condensed distance matrix */
+    private float[] distances;
+    /** row indices in dendrogram leaf order */
+    private int[] order;
+    /** number of rows in each distance block */
+    private static final int BLOCK_SIZE = 64;
+    /** maximum number of rows that can be clustered */
+    public static final int MAX_ROWS = 3000;
+    /** maximum number of row orders to cache for a single database */
+    private static final int MAX_CACHED = 50;
+    /** cache of row orders, keyed by data file and then by configuration and row set */
+    private static final DataCache<Map<String, int[]>> CACHE = new DataCache<Map<String, int[]>>();
+
+    /**
+     * This task computes the distances for a range of blocks.  Ranges of more than one block are split in half
+     * and processed in parallel.
+     */
+    private class DistanceTask extends RecursiveAction {
+
+        /** serialization ID */
+        private static final long serialVersionUID = 6325148807563018721L;
+        /** normalized row vectors */
+        private final double[][] vectors;
+        /** list of blocks; each block is a pair of block indices, with the first no greater than the second */
+        private final List<int[]> blocks;
+        /** index of the first block to process */
+        private final int lo;
+        /** index past the last block to process */
+        private final int hi;
+
+        /**
+         * Construct a task to compute the distances for a range of blocks.
+         *
+         * @param vectors	normalized row vectors
+         * @param blocks	list of blocks
+         * @param lo		index of the first block to process
+         * @param hi		index past the last block to process
+         */
+        private DistanceTask(double[][] vectors, List<int[]> blocks, int lo, int hi) {
+            this.vectors = vectors;
+            this.blocks = blocks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hi - this.lo > 1) {
+                int mid = (this.lo + this.hi) / 2;
+                invokeAll(new DistanceTask(this.vectors, this.blocks, this.lo, mid),
+                        new DistanceTask(this.vectors, this.blocks, mid, this.hi));
+            } else if (this.hi > this.lo) {
+                int[] block = this.blocks.get(this.lo);
+                final int iEnd = Math.min(n, (block[0] + 1) * BLOCK_SIZE);
+                final int jEnd = Math.min(n, (block[1] + 1) * BLOCK_SIZE);
+                for (int i = block[0] * BLOCK_SIZE; i < iEnd; i++) {
+                    int jStart = Math.max(i + 1, block[1] * BLOCK_SIZE);
+                    for (int j = jStart; j < jEnd; j++)
+                        distances[index(i, j)] = (float) distance(this.vectors[i], this.vectors[j]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Cluster a set of rows.
+     *
+     * @param vectors	array of row vectors; each row must have the same number of columns
+     */
+    public RowClustering(double[][] vectors) {
+        this.n = vectors.length;
+        double[][] normalized = new double[this.n][];
+        for (int i = 0; i < this.n; i++) {
+            double[] row = vectors[i];
+            normalized[i] = new double[row.length];
+            for (int c = 0; c < row.length; c++)
+                normalized[i][c] = Math.signum(row[c]) * Math.log1p(Math.abs(row[c]));
+        }
+        // Compute the distance matrix.
+        this.distances = new float[this.n * (this.n - 1) / 2];
+        final int nBlocks = (this.n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        List<int[]> blocks = new ArrayList<int[]>(nBlocks * (nBlocks + 1) / 2);
+        for (int bi = 0; bi < nBlocks; bi++) {
+            for (int bj = bi; bj < nBlocks; bj++)
+                blocks.add(new int[] { bi, bj });
+        }
+        ForkJoinPool.commonPool().invoke(new DistanceTask(normalized, blocks, 0, blocks.size()));
+        // Build the dendrogram and compute the leaf order.
+        this.order = this.cluster();
+        log.info("{} rows clustered using {} distance blocks.", this.n, blocks.size());
+    }
+
+    /**
+     * @return the row order for a table configuration, taken from the cache if possible
+     *
+     * @param dataFile	file from which the RNA database was loaded
+     * @param config	string describing the table columns
+     * @param rows		ordinals of the features being displayed
+     * @param vectors	method for computing the row vectors if the order is not cached
+     *
+     * @throws IOException
+     */
+    public static int[] getOrder(File dataFile, String config, BitSet rows, Supplier<double[][]> vectors)
+            throws IOException {
+        Map<String, int[]> orderMap = CACHE.get(dataFile, x -> new ConcurrentHashMap<String, int[]>());
+        String key = config + "|" + Base64.getEncoder().encodeToString(rows.toByteArray());
+        int[] retVal = orderMap.get(key);
+        if (retVal == null) {
+            retVal = new RowClustering(vectors.get()).getOrder();
+            // Keep the cache from growing without bound.
+            if (orderMap.size() >= MAX_CACHED)
+                orderMap.clear();
+            orderMap.put(key, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the distance between two normalized row vectors
+     *
+     * @param v1	first row vector
+     * @param v2	second row vector
+     */
+    private static double distance(double[] v1, double[] v2) {
+        double sum = 0.0;
+        int count = 0;
+        for (int c = 0; c < v1.length; c++) {
+            double diff = v1[c] - v2[c];
+            if (! Double.isNaN(diff)) {
+                sum += diff * diff;
+                count++;
+            }
+        }
+        return (count == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(sum * v1.length / count));
+    }
+
+    /**
+     * @return the index in the condensed distance matrix of the distance between two rows
+     *
+     * @param i		index of the first row
+     * @param j		index of the second row (must be different from the first)
+     */
+    private int index(int i, int j) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return i * this.n - i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    /**
+     * Perform average-linkage clustering using the nearest-neighbor chain.  The distance matrix is updated in place,
+     * with each merged cluster stored under the lower of its two row indices.
+     *
+     * @return the row indices in dendrogram leaf order
+     */
+    private int[] cluster() {
+        int[] retVal = new int[this.n];
+        if (this.n == 1)
+            retVal[0] = 0;
+        else if (this.n > 1) {
+            // Node IDs below N are rows; the others are internal nodes, numbered by merge.
+            int[] left = new int[this.n - 1];
+            int[] right = new int[this.n - 1];
+            int[] firstRow = new int[this.n - 1];
+            // For each cluster representative, the size and the dendrogram node.
+            int[] size = new int[this.n];
+            int[] node = new int[this.n];
+            boolean[] active = new boolean[this.n];
+            for (int i = 0; i < this.n; i++) {
+                size[i] = 1;
+                node[i] = i;
+                active[i] = true;
+            }
+            int[] chain = new int[this.n];
+            int top = 0;
+            int nextStart = 0;
+            for (int m = 0; m < this.n - 1; m++) {
+                // Grow the chain until we find a pair of reciprocal nearest neighbors.
+                int a = -1;
+                int b = -1;
+                while (b < 0) {
+                    if (top == 0) {
+                        while (! active[nextStart]) nextStart++;
+                        chain[top++] = nextStart;
+                    }
+                    a = chain[top - 1];
+                    int prev = (top > 1 ? chain[top - 2] : -1);
+                    // Ties go to the previous chain element, which guarantees termination.
+                    int best = prev;
+                    double bestD = (prev >= 0 ? this.distances[this.index(a, prev)] : Double.POSITIVE_INFINITY);
+                    for (int k = 0; k < this.n; k++) {
+                        if (active[k] && k != a) {
+                            double d = this.distances[this.index(a, k)];
+                            if (best < 0 || d < bestD) {
+                                best = k;
+                                bestD = d;
+                            }
+                        }
+                    }
+                    if (best == prev) {
+                        b = prev;
+                        top -= 2;
+                    } else
+                        chain[top++] = best;
+                }
+                // Merge the two clusters into the lower index.
+                int i = Math.min(a, b);
+                int j = Math.max(a, b);
+                for (int k = 0; k < this.n; k++) {
+                    if (active[k] && k != i && k != j) {
+                        int ik = this.index(i, k);
+                        this.distances[ik] = (float) ((size[i] * (double) this.distances[ik]
+                                + size[j] * (double) this.distances[this.index(j, k)]) / (size[i] + size[j]));
+                    }
+                }
+                int ni = node[i];
+                int nj = node[j];
+                int fi = (ni < this.n ? ni : firstRow[ni - this.n]);
+                int fj = (nj < this.n ? nj : firstRow[nj - this.n]);
+                left[m] = (fi < fj ? ni : nj);
+                right[m] = (fi < fj ? nj : ni);
+                firstRow[m] = Math.min(fi, fj);
+                size[i] += size[j];
+                node[i] = this.n + m;
+                active[j] = false;
+            }
+            // Walk the dendrogram from the root, which is the last merge.
+            int[] stack = new int[this.n];
+            int sp = 0;
+            stack[sp++] = 2 * this.n - 2;
+            int pos = 0;
+            while (sp > 0) {
+                int id = stack[--sp];
+                if (id < this.n)
+                    retVal[pos++] = id;
+                else {
+                    stack[sp++] = right[id - this.n];
+                    stack[sp++] = left[id - this.n];
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the row indices in dendrogram leaf order
+     */
+    public int[] getOrder() {
+        return this.order;
+    }
+
+}
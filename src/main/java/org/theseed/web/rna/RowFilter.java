@@ -3,6 +3,9 @@
  */
 package org.theseed.web.rna;
 
+import java.util.BitSet;
+
+import org.theseed.rna.RnaData;
 import org.theseed.rna.RnaFeatureData;
 import org.theseed.utils.IDescribable;
 import org.theseed.web.ColumnProcessor;
@@ -50,13 +53,23 @@ public abstract class RowFilter {
         }, REGION {
             @Override
             public RowFilter create(ColumnProcessor processor) {
-                return new RegionRowFilter(processor.getFocus());
+                return new RegionRowFilter(processor, false);
             }
 
             @Override
             public String getDescription() {
                 return "Only show rows near the focus peg.";
             }
+        }, OPERON {
+            @Override
+            public RowFilter create(ColumnProcessor processor) {
+                return new RegionRowFilter(processor, true);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Only show rows near the focus peg's operon.";
+            }
         }, SUBSYSTEM {
             @Override
             public RowFilter create(ColumnProcessor processor) {
@@ -91,6 +104,30 @@ public abstract class RowFilter {
                 return "Only show rows with high values in a specified column.";
             }
 
+        }, RANGES {
+
+            @Override
+            public RowFilter create(ColumnProcessor processor) {
+                return new ColumnRangeFilter(processor);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Only show rows satisfying the column range conditions.";
+            }
+
+        }, SET {
+
+            @Override
+            public RowFilter create(ColumnProcessor processor) {
+                return new FeatureSetRowFilter(processor);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Only show rows in the saved feature set.";
+            }
+
         }, GENES {
 
             @Override
@@ -100,7 +137,43 @@ public abstract class RowFilter {
 
             @Override
             public String getDescription() {
-                return "Only show rows for specified genes.";
+                return "Only show rows for specified genes (wildcards allowed).";
+            }
+
+        }, CORRELATED {
+
+            @Override
+            public RowFilter create(ColumnProcessor processor) {
+                return new CorrelatedRowFilter(processor);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Only show rows co-expressed with the focus peg.";
+            }
+
+        }, EXPRESSION {
+
+            @Override
+            public RowFilter create(ColumnProcessor processor) {
+                return new ExpressionRowFilter(processor);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Only show rows matching the filter expression.";
+            }
+
+        }, VARIABLE {
+
+            @Override
+            public RowFilter create(ColumnProcessor processor) {
+                return new VariableRowFilter(processor);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Only show rows with unusually variable expression.";
             }
 
         };
@@ -119,6 +192,34 @@ public abstract class RowFilter {
      */
     public abstract boolean isRowDisplayable(RnaFeatureData feat);
 
+    /**
+     * @return TRUE if the specified row should be displayed, else FALSE
+     *
+     * Filters that work from per-feature indexes override this method to avoid looking up the feature's ordinal.
+     *
+     * @param featIdx	ordinal of the feature in the RNA database
+     * @param feat		feature being displayed
+     */
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.isRowDisplayable(feat);
+    }
+
+    /**
+     * @return the set of ordinals for all the features in a database that pass this filter
+     *
+     * @param data		RNA database containing the features
+     */
+    public BitSet getRows(RnaData data) {
+        BitSet retVal = new BitSet();
+        int featIdx = 0;
+        for (RnaData.Row row : data) {
+            if (this.isRowDisplayable(featIdx, row.getFeat()))
+                retVal.set(featIdx);
+            featIdx++;
+        }
+        return retVal;
+    }
+
     /**
      * This is the simplest type of row filter:  it accepts every row.
      */
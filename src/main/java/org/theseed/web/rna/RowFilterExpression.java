@@ -0,0 +1,335 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.web.ColumnProcessor;
+
+/**
+ * This object represents a boolean combination of row filters.  An expression is built from row-filter type names
+ * (see RowFilter.Type) using the operators "&" (and), "|" (or), and "!" (not), along with parentheses.  The words
+ * "and", "or", and "not" can be used in place of the operator symbols.  Some filter types take an argument in
+ * parentheses that overrides the corresponding page setting.
+ *
+ * 	GROUP(name)			features in the named operon, modulon, or regulon
+ * 	SUBSYSTEM(id)		features in the subsystem with the specified ID
+ * 	COLVALUE(col,min)	features whose value in the column with the specified index is at least the specified minimum
+ * 	GENES(a,b*,c)		features with the specified gene names (wildcards are allowed)
+ * 	RANGES(0top5,2<1.0)	features satisfying the specified column conditions (see ColumnRangeFilter)
+ * 	SET(name)			features in the saved feature set with the specified name (see FeatureSet)
+ *
+ * So, for example, "SUBSYSTEM(AspaThreModu) & COLVALUE(2,10.0) & !GROUP(thrLABC)" selects the features in a
+ * subsystem with high values in the third column that are not in a particular operon, and
+ * "SET(listA) & !SET(listB)" selects the features in one saved set but not another.
+ *
+ * The expression is parsed once and compiled into a postfix program.  When the program runs, each filter is evaluated
+ * once for the whole database to produce a set of feature ordinals, and the operators are applied to the sets.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RowFilterExpression {
+
+    /**
+     * This interface represents a step in a compiled expression.  Each step manipulates a stack of feature sets.
+     */
+    private static interface Step {
+
+        /**
+         * Execute this step.
+         *
+         * @param stack			stack of feature sets
+         * @param processor		controlling column processor
+         */
+        public void execute(Deque<BitSet> stack, ColumnProcessor processor);
+
+    }
+
+    // FIELDS
+    /** expression text */
+    private String text;
+    /** compiled program */
+    private List<Step> program;
+    /** filter types used in the expression */
+    private Set<RowFilter.Type> types;
+    /** filter types used without an argument, and thus depending on the page settings */
+    private Set<RowFilter.Type> defaultTypes;
+    /** names of the feature sets specified in the expression */
+    private Set<String> setNames;
+    /** highest column index specified in the expression, or -1 if none */
+    private int maxColumn;
+    /** current character position during parsing */
+    private int pos;
+    /** filter types that accept an argument */
+    private static final Set<RowFilter.Type> ARG_TYPES = EnumSet.of(RowFilter.Type.GROUP, RowFilter.Type.SUBSYSTEM,
+            RowFilter.Type.COLVALUE, RowFilter.Type.GENES, RowFilter.Type.RANGES,
+            RowFilter.Type.SET);
+
+    /**
+     * Parse and compile a row-filter expression.
+     *
+     * @param text		expression text
+     *
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public RowFilterExpression(String text) {
+        this.text = text;
+        this.program = new ArrayList<Step>();
+        this.types = EnumSet.noneOf(RowFilter.Type.class);
+        this.defaultTypes = EnumSet.noneOf(RowFilter.Type.class);
+        this.setNames = new TreeSet<String>();
+        this.maxColumn = -1;
+        this.pos = 0;
+        if (StringUtils.isBlank(text))
+            throw new IllegalArgumentException("Filter expression is empty.");
+        this.parseOr();
+        this.skipSpace();
+        if (this.pos < this.text.length())
+            throw new IllegalArgumentException("Unexpected \"" + this.text.substring(this.pos) + "\" in filter expression.");
+    }
+
+    /**
+     * Skip over whitespace in the expression text.
+     */
+    private void skipSpace() {
+        while (this.pos < this.text.length() && Character.isWhitespace(this.text.charAt(this.pos))) this.pos++;
+    }
+
+    /**
+     * @return TRUE if the next item in the expression is the specified operator, consuming it if it is
+     *
+     * @param symbol	operator symbol
+     * @param word		operator word, or NULL if there is none
+     */
+    private boolean accept(char symbol, String word) {
+        this.skipSpace();
+        boolean retVal = false;
+        if (this.pos < this.text.length() && this.text.charAt(this.pos) == symbol) {
+            this.pos++;
+            retVal = true;
+        } else if (word != null) {
+            int end = this.pos + word.length();
+            if (end <= this.text.length() && this.text.substring(this.pos, end).equalsIgnoreCase(word)
+                    && (end == this.text.length() || ! Character.isLetterOrDigit(this.text.charAt(end)))) {
+                this.pos = end;
+                retVal = true;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Parse a disjunction of terms.
+     */
+    private void parseOr() {
+        this.parseAnd();
+        while (this.accept('|', "or")) {
+            this.parseAnd();
+            this.program.add((stack, processor) -> {
+                BitSet b = stack.pop();
+                stack.peek().or(b);
+            });
+        }
+    }
+
+    /**
+     * Parse a conjunction of factors.
+     */
+    private void parseAnd() {
+        this.parseFactor();
+        while (this.accept('&', "and")) {
+            this.parseFactor();
+            this.program.add((stack, processor) -> {
+                BitSet b = stack.pop();
+                stack.peek().and(b);
+            });
+        }
+    }
+
+    /**
+     * Parse a factor, which is a negation, a parenthesized expression, or a filter.
+     */
+    private void parseFactor() {
+        if (this.accept('!', "not")) {
+            this.parseFactor();
+            this.program.add((stack, processor) -> stack.peek().flip(0, processor.getFeatureIndex().size()));
+        } else if (this.accept('(', null)) {
+            this.parseOr();
+            if (! this.accept(')', null))
+                throw new IllegalArgumentException("Missing \")\" in filter expression.");
+        } else {
+            // Here we have a filter.  Get the type name.
+            this.skipSpace();
+            int start = this.pos;
+            while (this.pos < this.text.length() && Character.isLetter(this.text.charAt(this.pos))) this.pos++;
+            String name = this.text.substring(start, this.pos).toUpperCase();
+            if (name.isEmpty())
+                throw new IllegalArgumentException("Filter expression ends unexpectedly.");
+            final RowFilter.Type type;
+            try {
+                type = RowFilter.Type.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown filter type \"" + name + "\" in filter expression.");
+            }
+            if (type == RowFilter.Type.EXPRESSION)
+                throw new IllegalArgumentException("Filter expressions cannot be nested.");
+            // Check for an argument.
+            String arg = "";
+            this.skipSpace();
+            if (this.pos < this.text.length() && this.text.charAt(this.pos) == '(') {
+                if (! ARG_TYPES.contains(type))
+                    throw new IllegalArgumentException("Filter type " + name + " does not take an argument.");
+                int end = this.text.indexOf(')', this.pos);
+                if (end < 0)
+                    throw new IllegalArgumentException("Missing \")\" after " + name + " argument.");
+                arg = this.text.substring(this.pos + 1, end).trim();
+                this.pos = end + 1;
+            }
+            this.types.add(type);
+            if (arg.isEmpty())
+                this.defaultTypes.add(type);
+            final String filterArg = arg;
+            if (type == RowFilter.Type.COLVALUE && ! arg.isEmpty())
+                this.maxColumn = Math.max(this.maxColumn, checkColumnArg(arg));
+            else if (type == RowFilter.Type.RANGES)
+                ColumnRangeFilter.parse(arg);
+            else if (type == RowFilter.Type.SET && ! arg.isEmpty())
+                this.setNames.add(arg);
+            this.program.add((stack, processor) -> stack.push(evaluate(type, filterArg, processor)));
+        }
+    }
+
+    /**
+     * Verify the argument of a column-value filter.
+     *
+     * @param arg	argument to check
+     *
+     * @return the column index specified in the argument
+     */
+    private static int checkColumnArg(String arg) {
+        String[] parts = StringUtils.split(arg, ',');
+        try {
+            if (parts.length != 2)
+                throw new NumberFormatException();
+            int retVal = Integer.parseInt(parts[0].trim());
+            if (retVal < 0)
+                throw new NumberFormatException();
+            Double.parseDouble(parts[1].trim());
+            return retVal;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Column-value filter argument must be a column index and a minimum value.");
+        }
+    }
+
+    /**
+     * @return the set of ordinals for the features that pass a filter
+     *
+     * @param type			filter type
+     * @param arg			filter argument, or an empty string to use the page settings
+     * @param processor		controlling column processor
+     */
+    private static BitSet evaluate(RowFilter.Type type, String arg, ColumnProcessor processor) {
+        BitSet retVal;
+        switch (type) {
+        case GROUP:
+            retVal = (BitSet) processor.getGroupCatalog().getMembers(arg.isEmpty() ? processor.getFilterGroup() : arg).clone();
+            break;
+        case GENES:
+            retVal = new GeneListFilter(processor, arg.isEmpty() ? processor.getFilterGenes() : arg)
+                    .getRows(processor.getData());
+            break;
+        case SUBSYSTEM:
+            retVal = (BitSet) (arg.isEmpty() ? processor.getSubMembers() : processor.getSubIndex().getMembers(arg)).clone();
+            break;
+        case COLVALUE:
+            int col = processor.getFilterColumn();
+            double min = processor.getFilterMin();
+            if (! arg.isEmpty()) {
+                String[] parts = StringUtils.split(arg, ',');
+                col = Integer.parseInt(parts[0].trim());
+                min = Double.parseDouble(parts[1].trim());
+            }
+            if (col >= processor.getColumnCount())
+                throw new IllegalArgumentException("Invalid column index " + col + " in filter expression.");
+            retVal = new ColumnRangeFilter.Condition(col, ">=", min, 0.0).getRows(processor.getColumnValues(col));
+            break;
+        case RANGES:
+            List<ColumnRangeFilter.Condition> conditions = (arg.isEmpty() ? processor.getColumnConditions()
+                    : ColumnRangeFilter.parse(arg));
+            retVal = ColumnRangeFilter.evaluate(conditions, processor.getColumnMode(), processor);
+            break;
+        case SET:
+            retVal = (BitSet) processor.getFeatureSet(arg.isEmpty() ? processor.getFilterSet() : arg).clone();
+            break;
+        case VARIANT:
+            retVal = (BitSet) processor.getVariantRows().clone();
+            break;
+        default:
+            retVal = type.create(processor).getRows(processor.getData());
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the set of ordinals for the features that satisfy this expression
+     *
+     * @param processor		controlling column processor
+     */
+    public BitSet evaluate(ColumnProcessor processor) {
+        Deque<BitSet> stack = new ArrayDeque<BitSet>();
+        for (Step step : this.program)
+            step.execute(stack, processor);
+        return stack.pop();
+    }
+
+    /**
+     * @return TRUE if the expression uses the specified filter type
+     *
+     * @param type		filter type of interest
+     */
+    public boolean uses(RowFilter.Type type) {
+        return this.types.contains(type);
+    }
+
+    /**
+     * @return TRUE if the expression uses the specified filter type without an argument
+     *
+     * @param type		filter type of interest
+     */
+    public boolean usesDefault(RowFilter.Type type) {
+        return this.defaultTypes.contains(type);
+    }
+
+    /**
+     * @return the names of the feature sets specified as arguments in the expression
+     */
+    public Set<String> getSetNames() {
+        return Collections.unmodifiableSet(this.setNames);
+    }
+
+    /**
+     * @return the highest column index specified as an argument in the expression, or -1 if there is none
+     */
+    public int getMaxColumn() {
+        return this.maxColumn;
+    }
+
+    /**
+     * @return the expression text
+     */
+    public String getText() {
+        return this.text;
+    }
+
+}
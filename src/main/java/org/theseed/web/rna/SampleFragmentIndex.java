@@ -0,0 +1,124 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * This object indexes the fragments of the sample names in an RNA database.  A sample name consists of fragments
+ * separated by underscores.  For each fragment position, the index maps each fragment value to the set of samples
+ * having that value at that position, and it also records the set of samples having each fragment count.  A sample-name
+ * pattern (see GroupComparison) is then resolved by intersecting the sets for its non-wildcard fragments, rather than
+ * by matching it against every sample name.
+ *
+ * Fragment indexes are cached by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SampleFragmentIndex {
+
+    // FIELDS
+    /** sample names, indexed by position in the sample list */
+    private String[] samples;
+    /** for each fragment position, a map from fragment values to sample sets, in value order */
+    private List<TreeMap<String, BitSet>> fragmentMaps;
+    /** map of fragment counts to sample sets */
+    private Map<Integer, BitSet> lengthMap;
+    /** cache of fragment indexes */
+    private static final DataCache<SampleFragmentIndex> CACHE = new DataCache<SampleFragmentIndex>();
+
+    /**
+     * Construct a fragment index for a list of samples.
+     *
+     * @param samples	list of sample names
+     */
+    public SampleFragmentIndex(List<String> samples) {
+        final int n = samples.size();
+        this.samples = samples.stream().toArray(String[]::new);
+        this.fragmentMaps = new ArrayList<TreeMap<String, BitSet>>();
+        this.lengthMap = new HashMap<Integer, BitSet>();
+        for (int i = 0; i < n; i++) {
+            String[] parts = StringUtils.split(this.samples[i], '_');
+            while (this.fragmentMaps.size() < parts.length)
+                this.fragmentMaps.add(new TreeMap<String, BitSet>());
+            for (int p = 0; p < parts.length; p++)
+                this.fragmentMaps.get(p).computeIfAbsent(parts[p], x -> new BitSet(n)).set(i);
+            this.lengthMap.computeIfAbsent(parts.length, x -> new BitSet(n)).set(i);
+        }
+    }
+
+    /**
+     * @return the fragment index for a database, taken from the cache if possible
+     *
+     * @param dataFile	file from which the RNA database was loaded
+     * @param samples	list of sample names in the database
+     *
+     * @throws IOException
+     */
+    public static SampleFragmentIndex get(File dataFile, List<String> samples) throws IOException {
+        return CACHE.get(dataFile, x -> new SampleFragmentIndex(samples));
+    }
+
+    /**
+     * @return the set of positions of the samples matching a sample-name pattern
+     *
+     * @param pattern	sample-name pattern to resolve
+     */
+    public BitSet match(String pattern) {
+        String[] parts = StringUtils.split(pattern, '_');
+        BitSet found = this.lengthMap.get(parts.length);
+        BitSet retVal = (found == null ? new BitSet() : (BitSet) found.clone());
+        for (int p = 0; p < parts.length && ! retVal.isEmpty(); p++) {
+            if (! parts[p].equals(GroupComparison.WILDCARD)) {
+                found = this.fragmentMaps.get(p).get(parts[p]);
+                if (found == null)
+                    retVal.clear();
+                else
+                    retVal.and(found);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the names of the samples matching a sample-name pattern, in sample-list order
+     *
+     * @param pattern	sample-name pattern to resolve
+     */
+    public List<String> getMatches(String pattern) {
+        BitSet matches = this.match(pattern);
+        List<String> retVal = new ArrayList<String>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1))
+            retVal.add(this.samples[i]);
+        return retVal;
+    }
+
+    /**
+     * @return the number of fragment positions
+     */
+    public int getFragmentCount() {
+        return this.fragmentMaps.size();
+    }
+
+    /**
+     * @return the sorted set of values found at a fragment position
+     *
+     * @param p		fragment position of interest
+     */
+    public Set<String> getFragmentValues(int p) {
+        return this.fragmentMaps.get(p).keySet();
+    }
+
+}
@@ -0,0 +1,795 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.io.TabbedLineReader;
+import org.theseed.reports.NaturalSort;
+import org.theseed.rna.RnaData;
+import org.theseed.utils.IDescribable;
+import org.theseed.web.RnaMetaProcessor;
+
+/**
+ * This object contains the sample metadata for an RNA database, stored as primitive column arrays.  It is read from
+ * a tab-delimited sidecar file for the database, so the expression data never has to be loaded to display it.
+ * The sidecar is named by adding ".meta.tbl" to the database file name (see SidecarFile).  It is written whenever the
+ * database is loaded and the sidecar is missing or older than the database.
+ *
+ * Metadata tables are cached in memory by database file.  Selection, sorting, and column statistics are all computed
+ * directly from the column arrays.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SampleMetaTable {
+
+    /**
+     * This enum describes the metadata columns.  The name of each column is the header used in the sidecar file.
+     */
+    public static enum Field implements IDescribable {
+        SAMPLE_ID("sample_id", "Sample ID", false) {
+            @Override
+            public Comparator<Integer> comparator(SampleMetaTable table) {
+                return (i, j) -> NATURAL.compare(table.names[i], table.names[j]);
+            }
+        }, PRODUCTION("production", "Threonine production (g/l)", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.production[i];
+            }
+        }, OD("OD", "Optical density", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.density[i];
+            }
+        }, ORIGINAL_NAME("original_name", "Original sample name", false) {
+            @Override
+            public Comparator<Integer> comparator(SampleMetaTable table) {
+                return (i, j) -> NATURAL.compare(table.oldNames[i], table.oldNames[j]);
+            }
+        }, READS("reads", "Number of reads", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.reads[i];
+            }
+        }, SIZE("size", "Number of base pairs", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.bases[i];
+            }
+        }, PCT_QUAL("pct_qual", "Percent of reads passing quality", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.quality[i];
+            }
+        }, PROCESS_DATE("process_date", "Processing date", false) {
+            @Override
+            public Comparator<Integer> comparator(SampleMetaTable table) {
+                return (i, j) -> table.dates[i].compareTo(table.dates[j]);
+            }
+        }, AVG_READ_LEN("avg_read_len", "Mean read length", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.readLens[i];
+            }
+        }, COVERAGE("coverage", "Genome coverage", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.coverage[i];
+            }
+        }, PCT_EXPRESSED("pct_expressed", "Percent of genes expressed", true) {
+            @Override
+            public double getValue(SampleMetaTable table, int i) {
+                return table.expressed[i];
+            }
+        };
+
+        /** column name */
+        private String label;
+        /** column description */
+        private String description;
+        /** TRUE if this field is numeric */
+        private boolean numeric;
+
+        private Field(String label, String description, boolean numeric) {
+            this.label = label;
+            this.description = description;
+            this.numeric = numeric;
+        }
+
+        /**
+         * @return the numeric value of this field for a sample, or NaN if the field is not numeric
+         *
+         * @param table		metadata table containing the sample
+         * @param i			index of the sample
+         */
+        public double getValue(SampleMetaTable table, int i) {
+            return Double.NaN;
+        }
+
+        /**
+         * @return TRUE if this field is numeric
+         */
+        public boolean isNumeric() {
+            return this.numeric;
+        }
+
+        /**
+         * @return a comparator that sorts sample indices by this field
+         *
+         * @param table		metadata table containing the samples
+         */
+        public Comparator<Integer> comparator(SampleMetaTable table) {
+            return (i, j) -> Double.compare(this.getValue(table, i), this.getValue(table, j));
+        }
+
+        /**
+         * @return the column name of this field
+         */
+        public String getLabel() {
+            return this.label;
+        }
+
+        @Override
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * @return the field with the specified column name or enum name, or NULL if there is none
+         *
+         * @param name	name of the desired field
+         */
+        public static Field find(String name) {
+            Field retVal = null;
+            for (Field field : Field.values()) {
+                if (field.label.equalsIgnoreCase(name) || field.name().equalsIgnoreCase(name))
+                    retVal = field;
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This class describes a numeric range filter on a metadata column.  Filters are specified as a column name,
+     * a comparison operator, and a number, e.g. "coverage>10" or "pct_qual>=90".
+     */
+    public static class Filter {
+
+        /** field to check */
+        private Field field;
+        /** comparison operator */
+        private String op;
+        /** comparison value */
+        private double limit;
+        /** pattern for parsing filter specifications */
+        private static final Pattern FILTER_PATTERN = Pattern.compile("\\s*(\\w+)\\s*([<>]=?|=)\\s*(\\S+)\\s*");
+
+        /**
+         * Construct a filter from a specification string.
+         *
+         * @param spec	filter specification
+         *
+         * @throws ParseFailureException
+         */
+        public Filter(String spec) throws ParseFailureException {
+            Matcher m = FILTER_PATTERN.matcher(spec);
+            if (! m.matches())
+                throw new ParseFailureException("Invalid metadata filter \"" + spec + "\".");
+            this.field = Field.find(m.group(1));
+            if (this.field == null || ! this.field.isNumeric())
+                throw new ParseFailureException("Invalid numeric metadata column \"" + m.group(1) + "\".");
+            this.op = m.group(2);
+            try {
+                this.limit = Double.parseDouble(m.group(3));
+            } catch (NumberFormatException e) {
+                throw new ParseFailureException("Invalid limit value in metadata filter \"" + spec + "\".");
+            }
+        }
+
+        /**
+         * @return TRUE if a sample passes this filter
+         *
+         * @param table		metadata table containing the sample
+         * @param i			index of the sample
+         */
+        public boolean matches(SampleMetaTable table, int i) {
+            double value = this.field.getValue(table, i);
+            boolean retVal;
+            switch (this.op) {
+            case "<" :
+                retVal = value < this.limit;
+                break;
+            case "<=" :
+                retVal = value <= this.limit;
+                break;
+            case ">" :
+                retVal = value > this.limit;
+                break;
+            case ">=" :
+                retVal = value >= this.limit;
+                break;
+            default :
+                retVal = value == this.limit;
+            }
+            return retVal;
+        }
+
+        @Override
+        public String toString() {
+            return this.field.getLabel() + this.op + this.limit;
+        }
+
+    }
+
+    /**
+     * This class contains summary statistics for a numeric metadata column.
+     */
+    public static class Stats {
+
+        /** number of values */
+        private int count;
+        /** minimum value */
+        private double min;
+        /** maximum value */
+        private double max;
+        /** mean value */
+        private double mean;
+        /** standard deviation */
+        private double stdev;
+
+        /**
+         * Compute the statistics for a column over a set of samples.
+         *
+         * @param table		metadata table containing the samples
+         * @param field		numeric field to summarize
+         * @param samples	indices of the samples to summarize
+         */
+        private Stats(SampleMetaTable table, Field field, int[] samples) {
+            this.count = samples.length;
+            this.min = Double.NaN;
+            this.max = Double.NaN;
+            this.mean = Double.NaN;
+            this.stdev = Double.NaN;
+            if (this.count > 0) {
+                double sum = 0.0;
+                double sqSum = 0.0;
+                this.min = Double.POSITIVE_INFINITY;
+                this.max = Double.NEGATIVE_INFINITY;
+                for (int i : samples) {
+                    double v = field.getValue(table, i);
+                    sum += v;
+                    sqSum += v * v;
+                    if (v < this.min) this.min = v;
+                    if (v > this.max) this.max = v;
+                }
+                this.mean = sum / this.count;
+                if (this.count > 1)
+                    this.stdev = Math.sqrt(Math.max(0.0, (sqSum - sum * this.mean) / (this.count - 1)));
+            }
+        }
+
+        /**
+         * @return the number of values
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the minimum value
+         */
+        public double getMin() {
+            return this.min;
+        }
+
+        /**
+         * @return the maximum value
+         */
+        public double getMax() {
+            return this.max;
+        }
+
+        /**
+         * @return the mean value
+         */
+        public double getMean() {
+            return this.mean;
+        }
+
+        /**
+         * @return the standard deviation (NaN if there are fewer than two values)
+         */
+        public double getStdev() {
+            return this.stdev;
+        }
+
+    }
+
+    /**
+     * This class describes one page of a list of selected samples.
+     */
+    public static class Page {
+
+        /** page number (1-based) */
+        private int number;
+        /** number of pages */
+        private int count;
+        /** position of the first sample on the page */
+        private int start;
+        /** position past the last sample on the page */
+        private int end;
+
+        /**
+         * Compute a page of a sample list.  A page number past the end is moved to the last page.
+         *
+         * @param total		number of samples in the list
+         * @param number	requested page number (1-based)
+         * @param size		number of samples per page
+         */
+        public Page(int total, int number, int size) {
+            this.count = Math.max(1, (total + size - 1) / size);
+            this.number = Math.min(number, this.count);
+            this.start = (this.number - 1) * size;
+            this.end = Math.min(total, this.start + size);
+        }
+
+        /**
+         * @return the page number (1-based)
+         */
+        public int getNumber() {
+            return this.number;
+        }
+
+        /**
+         * @return the number of pages
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the position of the first sample on the page
+         */
+        public int getStart() {
+            return this.start;
+        }
+
+        /**
+         * @return the position past the last sample on the page
+         */
+        public int getEnd() {
+            return this.end;
+        }
+
+        /**
+         * @return TRUE if there is a page before this one
+         */
+        public boolean hasPrevious() {
+            return this.number > 1;
+        }
+
+        /**
+         * @return TRUE if there is a page after this one
+         */
+        public boolean hasNext() {
+            return this.number < this.count;
+        }
+
+    }
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SampleMetaTable.class);
+    /** sample names */
+    private String[] names;
+    /** original sample names */
+    private String[] oldNames;
+    /** TRUE for each good-quality sample */
+    private boolean[] good;
+    /** threonine production */
+    private double[] production;
+    /** optical density */
+    private double[] density;
+    /** read counts */
+    private long[] reads;
+    /** base counts */
+    private long[] bases;
+    /** percent quality */
+    private double[] quality;
+    /** processing dates */
+    private String[] dates;
+    /** mean read lengths */
+    private double[] readLens;
+    /** coverage of the genome */
+    private double[] coverage;
+    /** percent of genes expressed */
+    private double[] expressed;
+    /** suffix for sidecar file names */
+    public static final String META_SUFFIX = ".meta.tbl";
+    /** sidecar file headers */
+    private static final String HEADERS = "sample_id\toriginal_name\tgood\tproduction\tOD\treads\tsize\tpct_qual"
+            + "\tprocess_date\tavg_read_len\tcoverage\tpct_expressed";
+    /** comparator for sample names */
+    private static final NaturalSort NATURAL = new NaturalSort();
+    /** in-memory cache of metadata tables */
+    private static final DataCache<SampleMetaTable> CACHE = new DataCache<SampleMetaTable>();
+
+    /**
+     * Construct an empty metadata table of the specified size.
+     *
+     * @param n		number of samples
+     */
+    private SampleMetaTable(int n) {
+        this.names = new String[n];
+        this.oldNames = new String[n];
+        this.good = new boolean[n];
+        this.production = new double[n];
+        this.density = new double[n];
+        this.reads = new long[n];
+        this.bases = new long[n];
+        this.quality = new double[n];
+        this.dates = new String[n];
+        this.readLens = new double[n];
+        this.coverage = new double[n];
+        this.expressed = new double[n];
+    }
+
+    /**
+     * Construct a metadata table from an RNA database.
+     *
+     * @param data		source RNA database
+     */
+    public SampleMetaTable(RnaData data) {
+        this(data.getSamples().size());
+        int i = 0;
+        for (RnaData.JobData sample : data.getSamples()) {
+            this.names[i] = sample.getName();
+            this.oldNames[i] = sample.getOldName();
+            this.good[i] = sample.isGood();
+            this.production[i] = sample.getProduction();
+            this.density[i] = sample.getOpticalDensity();
+            this.reads[i] = sample.getReadCount();
+            this.bases[i] = sample.getBaseCount();
+            this.quality[i] = sample.getQuality();
+            this.dates[i] = sample.getProcessingDate().toString();
+            this.readLens[i] = sample.getMeanReadLen();
+            this.coverage[i] = sample.getCoverage(RnaMetaProcessor.GENOME_LEN);
+            this.expressed[i] = sample.getExpressedPercent();
+            i++;
+        }
+    }
+
+    /**
+     * @return the sidecar file for an RNA database
+     *
+     * @param dataFile	RNA database file
+     */
+    public static File sidecarFile(File dataFile) {
+        return SidecarFile.locate(dataFile, META_SUFFIX);
+    }
+
+    /**
+     * @return TRUE if the sidecar file for an RNA database exists and is up to date
+     *
+     * @param dataFile	RNA database file
+     */
+    public static boolean isCurrent(File dataFile) {
+        return SidecarFile.isCurrent(sidecarFile(dataFile), dataFile);
+    }
+
+    /**
+     * Write the sidecar file for an RNA database.
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file
+     *
+     * @throws IOException
+     */
+    public static void save(File dataFile, RnaData data) throws IOException {
+        new SampleMetaTable(data).save(sidecarFile(dataFile));
+    }
+
+    /**
+     * Insure the sidecar file for an RNA database is up to date.  Failures are logged, since the sidecar can always
+     * be rebuilt later.
+     *
+     * @param dataFile	RNA database file
+     * @param data		RNA database loaded from the file
+     */
+    public static void refresh(File dataFile, RnaData data) {
+        if (! isCurrent(dataFile)) {
+            try {
+                save(dataFile, data);
+            } catch (IOException e) {
+                log.warn("Could not save sample metadata for {}: {}", dataFile, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Write this table to a sidecar file.
+     *
+     * @param metaFile	output file
+     *
+     * @throws IOException
+     */
+    private void save(File metaFile) throws IOException {
+        SidecarFile.write(metaFile, x -> {
+            try (PrintWriter writer = new PrintWriter(x)) {
+                writer.println(HEADERS);
+                for (int i = 0; i < this.names.length; i++)
+                    writer.println(this.names[i] + "\t" + this.oldNames[i] + "\t" + (this.good[i] ? "Y" : "")
+                            + "\t" + this.production[i] + "\t" + this.density[i] + "\t" + this.reads[i]
+                            + "\t" + this.bases[i] + "\t" + this.quality[i] + "\t" + this.dates[i]
+                            + "\t" + this.readLens[i] + "\t" + this.coverage[i] + "\t" + this.expressed[i]);
+            }
+        });
+        log.info("{} sample descriptors written to {}.", this.names.length, metaFile);
+    }
+
+    /**
+     * @return the metadata table for an RNA database
+     *
+     * The table is taken from the memory cache if possible, and otherwise from the sidecar file.  If the sidecar file
+     * is missing or out of date, the database is loaded and the sidecar is rewritten.
+     *
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    public static SampleMetaTable load(File dataFile) throws IOException {
+        return CACHE.get(dataFile, x -> readTable(x));
+    }
+
+    /**
+     * @return the metadata table for an RNA database, read from the sidecar file if possible
+     *
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    private static SampleMetaTable readTable(File dataFile) throws IOException {
+        SampleMetaTable retVal;
+        File metaFile = sidecarFile(dataFile);
+        if (isCurrent(dataFile))
+            retVal = read(metaFile);
+        else {
+            log.info("Sample metadata for {} is out of date.  Loading database.", dataFile);
+            try {
+                RnaData data = RnaData.load(dataFile);
+                retVal = new SampleMetaTable(data);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Class not found: " + e.toString());
+            }
+            try {
+                retVal.save(metaFile);
+            } catch (IOException e) {
+                log.warn("Could not save sample metadata for {}: {}", dataFile, e.toString());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a metadata table read from a sidecar file
+     *
+     * @param metaFile	sidecar file to read
+     *
+     * @throws IOException
+     */
+    private static SampleMetaTable read(File metaFile) throws IOException {
+        List<String[]> lines = new ArrayList<String[]>();
+        try (TabbedLineReader inStream = new TabbedLineReader(metaFile)) {
+            int[] cols = new int[] { inStream.findField("sample_id"), inStream.findField("original_name"),
+                    inStream.findField("good"), inStream.findField("production"), inStream.findField("OD"),
+                    inStream.findField("reads"), inStream.findField("size"), inStream.findField("pct_qual"),
+                    inStream.findField("process_date"), inStream.findField("avg_read_len"),
+                    inStream.findField("coverage"), inStream.findField("pct_expressed") };
+            for (TabbedLineReader.Line line : inStream) {
+                String[] fields = new String[cols.length];
+                for (int j = 0; j < cols.length; j++)
+                    fields[j] = line.get(cols[j]);
+                lines.add(fields);
+            }
+        }
+        SampleMetaTable retVal = new SampleMetaTable(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String[] fields = lines.get(i);
+            retVal.names[i] = fields[0];
+            retVal.oldNames[i] = fields[1];
+            retVal.good[i] = fields[2].equals("Y");
+            retVal.production[i] = Double.parseDouble(fields[3]);
+            retVal.density[i] = Double.parseDouble(fields[4]);
+            retVal.reads[i] = Long.parseLong(fields[5]);
+            retVal.bases[i] = Long.parseLong(fields[6]);
+            retVal.quality[i] = Double.parseDouble(fields[7]);
+            retVal.dates[i] = fields[8];
+            retVal.readLens[i] = Double.parseDouble(fields[9]);
+            retVal.coverage[i] = Double.parseDouble(fields[10]);
+            retVal.expressed[i] = Double.parseDouble(fields[11]);
+        }
+        log.info("{} sample descriptors read from {}.", retVal.size(), metaFile);
+        return retVal;
+    }
+
+    /**
+     * @return the indices of the samples that pass all the specified filters, in database order
+     *
+     * @param filters	filters to apply
+     * @param all		TRUE to include low-quality samples, else FALSE
+     */
+    public int[] select(List<Filter> filters, boolean all) {
+        return IntStream.range(0, this.names.length).filter(i -> (all || this.good[i])
+                && filters.stream().allMatch(x -> x.matches(this, i))).toArray();
+    }
+
+    /**
+     * @return the specified sample indices sorted by a metadata column
+     *
+     * @param samples		indices of the samples to sort
+     * @param field			field to sort on
+     * @param descending	TRUE to sort from highest to lowest, else FALSE
+     */
+    public int[] sort(int[] samples, Field field, boolean descending) {
+        Comparator<Integer> comparator = field.comparator(this);
+        if (descending)
+            comparator = comparator.reversed();
+        return IntStream.of(samples).boxed().sorted(comparator).mapToInt(x -> x).toArray();
+    }
+
+    /**
+     * @return the specified sample indices sorted by an array of scores; samples with undefined (NaN) scores go last
+     *
+     * @param samples		indices of the samples to sort
+     * @param scores		array of scores, indexed by sample index
+     * @param descending	TRUE to sort from highest to lowest, else FALSE
+     */
+    public int[] sort(int[] samples, double[] scores, boolean descending) {
+        Comparator<Integer> comparator = (i, j) -> Double.compare(scores[i], scores[j]);
+        if (descending)
+            comparator = comparator.reversed();
+        Comparator<Integer> nanLast = Comparator.comparing(i -> Double.isNaN(scores[i]));
+        return IntStream.of(samples).boxed().sorted(nanLast.thenComparing(comparator)).mapToInt(x -> x).toArray();
+    }
+
+    /**
+     * @return the summary statistics for a numeric column over the specified samples
+     *
+     * @param field		numeric field to summarize
+     * @param samples	indices of the samples to summarize
+     */
+    public Stats getStats(Field field, int[] samples) {
+        return new Stats(this, field, samples);
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int size() {
+        return this.names.length;
+    }
+
+    /**
+     * @return the name of a sample
+     *
+     * @param i		index of the sample
+     */
+    public String getName(int i) {
+        return this.names[i];
+    }
+
+    /**
+     * @return the original name of a sample
+     *
+     * @param i		index of the sample
+     */
+    public String getOldName(int i) {
+        return this.oldNames[i];
+    }
+
+    /**
+     * @return TRUE if a sample is of good quality
+     *
+     * @param i		index of the sample
+     */
+    public boolean isGood(int i) {
+        return this.good[i];
+    }
+
+    /**
+     * @return the threonine production of a sample
+     *
+     * @param i		index of the sample
+     */
+    public double getProduction(int i) {
+        return this.production[i];
+    }
+
+    /**
+     * @return the optical density of a sample
+     *
+     * @param i		index of the sample
+     */
+    public double getOpticalDensity(int i) {
+        return this.density[i];
+    }
+
+    /**
+     * @return the read count of a sample
+     *
+     * @param i		index of the sample
+     */
+    public long getReadCount(int i) {
+        return this.reads[i];
+    }
+
+    /**
+     * @return the base count of a sample
+     *
+     * @param i		index of the sample
+     */
+    public long getBaseCount(int i) {
+        return this.bases[i];
+    }
+
+    /**
+     * @return the percent quality of a sample
+     *
+     * @param i		index of the sample
+     */
+    public double getQuality(int i) {
+        return this.quality[i];
+    }
+
+    /**
+     * @return the processing date of a sample
+     *
+     * @param i		index of the sample
+     */
+    public String getProcessingDate(int i) {
+        return this.dates[i];
+    }
+
+    /**
+     * @return the mean read length of a sample
+     *
+     * @param i		index of the sample
+     */
+    public double getMeanReadLen(int i) {
+        return this.readLens[i];
+    }
+
+    /**
+     * @return the genome coverage of a sample
+     *
+     * @param i		index of the sample
+     */
+    public double getCoverage(int i) {
+        return this.coverage[i];
+    }
+
+    /**
+     * @return the percent of genes expressed in a sample
+     *
+     * @param i		index of the sample
+     */
+    public double getExpressedPercent(int i) {
+        return this.expressed[i];
+    }
+
+}
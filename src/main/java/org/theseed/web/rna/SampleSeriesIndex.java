@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.reports.NaturalSort;
+
+/**
+ * This object indexes the time series in a list of sample names.  A sample name consists of fragments separated by
+ * underscores, and the fragment at TIME_INDEX is the time point.  Two samples are in the same series if their names
+ * are identical except for the time point.  The series key is the sample name with the time point replaced by an
+ * asterisk, and each series maps its time points to sample names in natural order.  Only samples with a numeric time
+ * point (digits, with "p" for a decimal point) are members of a series, but every sample with a time fragment has a
+ * series key, so a sample with a non-numeric time point (such as "ML") still finds the members of its series.  A replicate group is a set of
+ * series whose keys differ only in a trailing replicate fragment (such as "rep0").
+ *
+ * The index is built once per database, so the column creators do not have to scan the sample list for each request.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SampleSeriesIndex {
+
+    // FIELDS
+    /** map of series keys to time-point maps */
+    private Map<String, SortedMap<String, String>> seriesMap;
+    /** map of sample names to series keys */
+    private Map<String, String> sampleMap;
+    /** map of replicate group keys to series keys, in natural order */
+    private Map<String, List<String>> replicateMap;
+    /** array index of time point */
+    public static final int TIME_INDEX = 8;
+    /** pattern for valid time points */
+    private static final Pattern TIME_PATTERN = Pattern.compile("[0-9p]+");
+    /** pattern for replicate fragments */
+    private static final Pattern REP_PATTERN = Pattern.compile("rep\\d+");
+    /** cache of series indexes */
+    private static final DataCache<SampleSeriesIndex> CACHE = new DataCache<SampleSeriesIndex>();
+
+    /**
+     * Construct a series index for a list of samples.
+     *
+     * @param samples	list of sample names
+     */
+    public SampleSeriesIndex(List<String> samples) {
+        this.seriesMap = new HashMap<String, SortedMap<String, String>>();
+        this.sampleMap = new HashMap<String, String>(samples.size() * 4 / 3 + 1);
+        SortedMap<String, List<String>> replicates = new TreeMap<String, List<String>>(new NaturalSort());
+        for (String sample : samples) {
+            String[] parts = StringUtils.split(sample, '_');
+            if (parts.length > TIME_INDEX) {
+                String time = parts[TIME_INDEX];
+                parts[TIME_INDEX] = GroupComparison.WILDCARD;
+                String key = StringUtils.join(parts, '_');
+                this.sampleMap.put(sample, key);
+                if (TIME_PATTERN.matcher(time).matches()) {
+                    SortedMap<String, String> series = this.seriesMap.get(key);
+                    if (series == null) {
+                        series = new TreeMap<String, String>(new NaturalSort());
+                        this.seriesMap.put(key, series);
+                        replicates.computeIfAbsent(replicateKey(parts), x -> new ArrayList<String>()).add(key);
+                    }
+                    series.put(time, sample);
+                }
+            }
+        }
+        // Sort each replicate group so the series come out in a predictable order.
+        this.replicateMap = new HashMap<String, List<String>>(replicates.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<String>> entry : replicates.entrySet()) {
+            List<String> keys = entry.getValue();
+            keys.sort(new NaturalSort());
+            this.replicateMap.put(entry.getKey(), keys);
+        }
+    }
+
+    /**
+     * @return the series index for a database, taken from the cache if possible
+     *
+     * @param dataFile	file from which the RNA database was loaded
+     * @param samples	list of sample names in the database
+     *
+     * @throws IOException
+     */
+    public static SampleSeriesIndex get(File dataFile, List<String> samples) throws IOException {
+        return CACHE.get(dataFile, x -> new SampleSeriesIndex(samples));
+    }
+
+    /**
+     * @return the replicate group key for a series
+     *
+     * @param parts		fragments of the series key
+     */
+    private static String replicateKey(String[] parts) {
+        int n = parts.length;
+        while (n > TIME_INDEX + 1 && REP_PATTERN.matcher(parts[n - 1]).matches()) n--;
+        return StringUtils.join(parts, '_', 0, n);
+    }
+
+    /**
+     * @return a map of all the numeric time points in a sample's series to the appropriate samples (empty if the
+     * 		   sample is not part of a series)
+     *
+     * @param sample	name of the sample of interest
+     */
+    public SortedMap<String, String> getAllTimes(String sample) {
+        SortedMap<String, String> retVal = null;
+        String key = this.sampleMap.get(sample);
+        if (key != null)
+            retVal = this.seriesMap.get(key);
+        if (retVal == null)
+            retVal = Collections.emptySortedMap();
+        else
+            retVal = Collections.unmodifiableSortedMap(retVal);
+        return retVal;
+    }
+
+    /**
+     * @return a list of the time-point maps for every replicate series of a sample, including the sample's own
+     *
+     * @param sample	name of the sample of interest
+     */
+    public List<SortedMap<String, String>> getReplicateSeries(String sample) {
+        List<SortedMap<String, String>> retVal = new ArrayList<SortedMap<String, String>>();
+        String key = this.sampleMap.get(sample);
+        if (key != null) {
+            List<String> seriesKeys = this.replicateMap.get(replicateKey(StringUtils.split(key, '_')));
+            if (seriesKeys != null) {
+                for (String seriesKey : seriesKeys)
+                    retVal.add(Collections.unmodifiableSortedMap(this.seriesMap.get(seriesKey)));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of series in the index
+     */
+    public int size() {
+        return this.seriesMap.size();
+    }
+
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.utils.IDescribable;
+
+/**
+ * This object supports searches for samples with similar expression profiles.  The expression values are stored
+ * sample by sample, with missing values treated as zero, and the sum, length, and centered length of each sample
+ * vector are precomputed.  Both cosine similarity and Pearson correlation can then be computed from a single dot
+ * product.  The vectors are stored as floats, but all the products and sums are accumulated in double precision, since
+ * the correlation subtracts two large, nearly equal quantities.  To score a reference sample against the whole
+ * database, the samples are divided into blocks that are scored in parallel.
+ *
+ * Similarity indexes are cached by database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SampleSimilarityIndex {
+
+    /**
+     * This enum describes the similarity measures.
+     */
+    public static enum Measure implements IDescribable {
+        CORRELATION {
+            @Override
+            public String getDescription() {
+                return "Pearson correlation";
+            }
+
+            @Override
+            protected double score(SampleSimilarityIndex index, int ref, int other, double dot) {
+                double denom = index.centeredNorms[ref] * index.centeredNorms[other];
+                double n = index.nGenes;
+                return (dot - index.sums[ref] * index.sums[other] / n) / denom;
+            }
+
+            @Override
+            protected boolean isDefined(SampleSimilarityIndex index, int col) {
+                return index.centeredNorms[col] > 0.0;
+            }
+        }, COSINE {
+            @Override
+            public String getDescription() {
+                return "Cosine similarity";
+            }
+
+            @Override
+            protected double score(SampleSimilarityIndex index, int ref, int other, double dot) {
+                return dot / (index.norms[ref] * index.norms[other]);
+            }
+
+            @Override
+            protected boolean isDefined(SampleSimilarityIndex index, int col) {
+                return index.norms[col] > 0.0;
+            }
+        };
+
+        /**
+         * @return the similarity score for two samples
+         *
+         * @param index		similarity index containing the samples
+         * @param ref		column index of the reference sample
+         * @param other		column index of the other sample
+         * @param dot		dot product of the two sample vectors
+         */
+        protected abstract double score(SampleSimilarityIndex index, int ref, int other, double dot);
+
+        /**
+         * @return TRUE if the similarity score is defined for a sample
+         *
+         * @param index		similarity index containing the sample
+         * @param col		column index of the sample
+         */
+        protected abstract boolean isDefined(SampleSimilarityIndex index, int col);
+
+    }
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SampleSimilarityIndex.class);
+    /** expression vectors, indexed by sample column and then feature ordinal */
+    private float[][] vectors;
+    /** sum of each sample vector */
+    private double[] sums;
+    /** length of each sample vector */
+    private double[] norms;
+    /** length of each sample vector after centering */
+    private double[] centeredNorms;
+    /** number of features */
+    private int nGenes;
+    /** map of sample names to column indices */
+    private Map<String, Integer> sampleMap;
+    /** number of samples in each parallel scoring block */
+    private static final int BLOCK_SIZE = 32;
+    /** in-memory cache of similarity indexes */
+    private static final DataCache<SampleSimilarityIndex> CACHE = new DataCache<SampleSimilarityIndex>();
+
+    /**
+     * Construct a similarity index from an expression matrix.
+     *
+     * @param matrix	expression matrix for the RNA database
+     */
+    public SampleSimilarityIndex(ExpressionMatrix matrix) {
+        final int nSamples = matrix.getSampleCount();
+        this.nGenes = matrix.getFeatureCount();
+        this.sampleMap = new HashMap<String, Integer>(nSamples * 4 / 3 + 1);
+        for (int j = 0; j < nSamples; j++)
+            this.sampleMap.put(matrix.getSample(j), j);
+        // Transpose the matrix so that each sample vector is contiguous.
+        this.vectors = new float[nSamples][this.nGenes];
+        for (int f = 0; f < this.nGenes; f++) {
+            float[] row = matrix.getRow(f);
+            for (int j = 0; j < nSamples; j++) {
+                float v = row[j];
+                if (! Float.isNaN(v))
+                    this.vectors[j][f] = v;
+            }
+        }
+        // Compute the sums and norms.
+        this.sums = new double[nSamples];
+        this.norms = new double[nSamples];
+        this.centeredNorms = new double[nSamples];
+        IntStream.range(0, nSamples).parallel().forEach(j -> {
+            double sum = 0.0;
+            double sqSum = 0.0;
+            for (float v : this.vectors[j]) {
+                sum += v;
+                sqSum += (double) v * v;
+            }
+            this.sums[j] = sum;
+            this.norms[j] = Math.sqrt(sqSum);
+            this.centeredNorms[j] = Math.sqrt(Math.max(0.0, sqSum - sum * sum / this.nGenes));
+        });
+        log.info("Similarity index built for {} samples over {} features.", nSamples, this.nGenes);
+    }
+
+    /**
+     * @return the similarity index for an RNA database, loading the database only if necessary
+     *
+     * @param dataFile	RNA database file
+     *
+     * @throws IOException
+     */
+    public static SampleSimilarityIndex load(File dataFile) throws IOException {
+        return CACHE.get(dataFile, x -> new SampleSimilarityIndex(ExpressionMatrix.load(x)));
+    }
+
+    /**
+     * @return the column index of a sample, or -1 if the sample is not in the database
+     *
+     * @param name	name of the sample of interest
+     */
+    public int getColumn(String name) {
+        Integer retVal = this.sampleMap.get(name);
+        return (retVal == null ? -1 : (int) retVal);
+    }
+
+    /**
+     * @return the similarity of every sample to a reference sample, indexed by column (NaN if undefined)
+     *
+     * @param ref		column index of the reference sample
+     * @param measure	similarity measure to use
+     */
+    public double[] score(int ref, Measure measure) {
+        final int nSamples = this.vectors.length;
+        final double[] retVal = new double[nSamples];
+        final float[] refVector = this.vectors[ref];
+        final boolean refDefined = measure.isDefined(this, ref);
+        final int nBlocks = (nSamples + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, nBlocks).parallel().forEach(b -> {
+            final int end = Math.min(nSamples, (b + 1) * BLOCK_SIZE);
+            for (int j = b * BLOCK_SIZE; j < end; j++) {
+                if (! refDefined || ! measure.isDefined(this, j))
+                    retVal[j] = Double.NaN;
+                else {
+                    float[] other = this.vectors[j];
+                    double dot = 0.0;
+                    for (int f = 0; f < refVector.length; f++)
+                        dot += (double) refVector[f] * other[f];
+                    retVal[j] = measure.score(this, ref, j, dot);
+                }
+            }
+        });
+        return retVal;
+    }
+
+}
@@ -0,0 +1,419 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.genome.Feature;
+import org.theseed.genome.Genome;
+import org.theseed.subsystems.GenomeSubsystemTable;
+
+/**
+ * This object is a full-text index over the genes, subsystems, and groups of an RNA database.  Each indexed item is a
+ * document with a kind, an ID, a name, an alias, and a description.  The gene documents are taken from the features
+ * of the database and contain the gene name, the b-number, and the function from the base genome.  The subsystem
+ * documents contain the subsystem IDs and descriptions from the "rnaSubs.txt" file.  The group documents contain the
+ * names of the operons, regulons, and modulons in the database's group catalog.
+ *
+ * The text of each document is broken into lower-case words, and for each word we keep the list of documents
+ * containing it.  The words are kept in a sorted array, so a query word is found by binary search and matches any
+ * indexed word it begins (e.g. "thr" matches "thra" and "threonine").  A document matches a query if it matches
+ * every query word, and documents in which a query word is a whole word score higher than prefix matches.
+ *
+ * The index is built once for each version of its source files and serialized in a sidecar file for the database (the
+ * database file name with ".search.ser" added, see SidecarFile), so that later processes can read it without loading
+ * the genome.  It is also cached in memory by source files.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SearchIndex implements Serializable {
+
+    /**
+     * This enum describes the kinds of indexed documents.
+     */
+    public static enum Kind {
+        GENE, SUBSYSTEM, GROUP;
+    }
+
+    /**
+     * This class describes a document matching a query.
+     */
+    public static class Hit {
+
+        /** kind of document */
+        private Kind kind;
+        /** document ID */
+        private String id;
+        /** document name */
+        private String name;
+        /** document alias */
+        private String alias;
+        /** document description */
+        private String description;
+        /** match score */
+        private int score;
+
+        /**
+         * Construct a hit for a document.
+         *
+         * @param index		source search index
+         * @param doc		ordinal of the document
+         * @param score		match score
+         */
+        private Hit(SearchIndex index, int doc, int score) {
+            this.kind = Kind.values()[index.kinds[doc]];
+            this.id = index.ids[doc];
+            this.name = index.names[doc];
+            this.alias = index.aliases[doc];
+            this.description = index.descriptions[doc];
+            this.score = score;
+        }
+
+        /**
+         * @return the kind of document
+         */
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        /**
+         * @return the document ID (feature ID, subsystem ID, or group name)
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * @return the document name (gene name, subsystem ID, or group name)
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the document alias (the b-number for a gene, otherwise empty)
+         */
+        public String getAlias() {
+            return this.alias;
+        }
+
+        /**
+         * @return the document description (gene function, subsystem description, or group size)
+         */
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * @return the match score
+         */
+        public int getScore() {
+            return this.score;
+        }
+
+    }
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SearchIndex.class);
+    /** serialization version */
+    private static final long serialVersionUID = -3190358468101367642L;
+    /** kind ordinal for each document */
+    private byte[] kinds;
+    /** ID of each document */
+    private String[] ids;
+    /** name of each document */
+    private String[] names;
+    /** alias of each document */
+    private String[] aliases;
+    /** description of each document */
+    private String[] descriptions;
+    /** sorted array of indexed words */
+    private String[] keys;
+    /** sorted document ordinals for each indexed word */
+    private int[][] postings;
+    /** map of words to document lists, used while the index is being built */
+    private transient Map<String, List<Integer>> wordMap;
+    /** list of documents, used while the index is being built */
+    private transient List<String[]> docList;
+    /** suffix for the serialized index file */
+    public static final String SEARCH_SUFFIX = ".search.ser";
+    /** in-memory cache of search indexes */
+    private static final DataCache<SearchIndex> CACHE = new DataCache<SearchIndex>();
+    /** comparator for sorting hits */
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparing(Hit::getScore).reversed()
+            .thenComparing(Hit::getKind).thenComparing(x -> x.getName().toLowerCase());
+
+    /**
+     * Construct an empty search index.  Documents are added with "addDocument", and then the index is completed
+     * with "finish".
+     */
+    protected SearchIndex() {
+        this.wordMap = new HashMap<String, List<Integer>>();
+        this.docList = new ArrayList<String[]>();
+    }
+
+    /**
+     * Construct a search index for an RNA database.
+     *
+     * @param geneIndex		gene name index for the database
+     * @param functions		map of feature IDs to functions
+     * @param subTable		subsystem table for the genome
+     * @param groups		group catalog for the database
+     */
+    public SearchIndex(GeneNameIndex geneIndex, Map<String, String> functions, GenomeSubsystemTable subTable,
+            GroupCatalog groups) {
+        this();
+        // Index the genes, collecting the subsystem descriptions as we go.
+        Map<String, String> subDescriptions = new TreeMap<String, String>();
+        for (String subId : subTable.getAllSubsystems())
+            subDescriptions.put(subId, "");
+        final int nFeats = geneIndex.size();
+        for (int f = 0; f < nFeats; f++) {
+            String fid = geneIndex.getFid(f);
+            String bNumber = StringUtils.defaultString(geneIndex.getBNumber(f));
+            String name = StringUtils.defaultIfEmpty(geneIndex.getGene(f), StringUtils.defaultIfEmpty(bNumber, fid));
+            this.addDocument(Kind.GENE, fid, name, bNumber, StringUtils.defaultString(functions.get(fid)));
+            Set<GenomeSubsystemTable.SubData> subs = subTable.getSubsystems(fid);
+            if (subs != null) {
+                for (GenomeSubsystemTable.SubData sub : subs) {
+                    String description = StringUtils.defaultString(sub.getDescription());
+                    subDescriptions.merge(sub.getId(), description, (a, b) -> (a.isEmpty() ? b : a));
+                }
+            }
+        }
+        // Index the subsystems.
+        for (Map.Entry<String, String> subEntry : subDescriptions.entrySet())
+            this.addDocument(Kind.SUBSYSTEM, subEntry.getKey(), subEntry.getKey(), "", subEntry.getValue());
+        // Index the groups.
+        for (String group : groups.getNames()) {
+            int size = groups.getMembers(group).cardinality();
+            this.addDocument(Kind.GROUP, group, group, "", size + (size == 1 ? " feature" : " features"));
+        }
+        this.finish();
+    }
+
+    /**
+     * Add a document to the index.  The name, alias, and description are all searchable.
+     *
+     * @param kind			kind of document
+     * @param id			document ID
+     * @param name			document name
+     * @param alias			document alias
+     * @param description	document description
+     */
+    protected void addDocument(Kind kind, String id, String name, String alias, String description) {
+        final int doc = this.docList.size();
+        this.docList.add(new String[] { Integer.toString(kind.ordinal()), id, name, alias, description });
+        String[] words = words(name + " " + alias + " " + description);
+        for (String word : words) {
+            List<Integer> docs = this.wordMap.computeIfAbsent(word, x -> new ArrayList<Integer>());
+            // A document is added in a single call, so a repeated word shows up at the end of the list.
+            if (docs.isEmpty() || docs.get(docs.size() - 1) != doc)
+                docs.add(doc);
+        }
+    }
+
+    /**
+     * Complete the index after all the documents have been added.
+     */
+    protected void finish() {
+        final int nDocs = this.docList.size();
+        this.kinds = new byte[nDocs];
+        this.ids = new String[nDocs];
+        this.names = new String[nDocs];
+        this.aliases = new String[nDocs];
+        this.descriptions = new String[nDocs];
+        for (int d = 0; d < nDocs; d++) {
+            String[] doc = this.docList.get(d);
+            this.kinds[d] = Byte.parseByte(doc[0]);
+            this.ids[d] = doc[1];
+            this.names[d] = doc[2];
+            this.aliases[d] = doc[3];
+            this.descriptions[d] = doc[4];
+        }
+        this.keys = this.wordMap.keySet().stream().sorted().toArray(String[]::new);
+        this.postings = new int[this.keys.length][];
+        for (int k = 0; k < this.keys.length; k++)
+            this.postings[k] = this.wordMap.get(this.keys[k]).stream().mapToInt(x -> x).toArray();
+        log.info("Search index contains {} words in {} documents.", this.keys.length, nDocs);
+        this.wordMap = null;
+        this.docList = null;
+    }
+
+    /**
+     * @return the lower-case words in a string of text
+     *
+     * @param text	text to split into words
+     */
+    public static String[] words(String text) {
+        return StringUtils.split(text.toLowerCase(), " \t\r\n!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~");
+    }
+
+    /**
+     * @return the search index for an RNA database
+     *
+     * The index is taken from the memory cache if possible, then from the serialized index file, and finally
+     * built from the source files.
+     *
+     * @param dataFile	RNA database file
+     * @param gFile		base genome file (for the gene functions)
+     * @param subFile	subsystem table file
+     *
+     * @throws IOException
+     */
+    public static SearchIndex load(File dataFile, File gFile, File subFile) throws IOException {
+        return CACHE.get(Arrays.asList(dataFile, gFile, subFile), () -> readIndex(dataFile, gFile, subFile));
+    }
+
+    /**
+     * @return the serialized index file for an RNA database
+     *
+     * @param dataFile	RNA database file
+     */
+    public static File indexFile(File dataFile) {
+        return SidecarFile.locate(dataFile, SEARCH_SUFFIX);
+    }
+
+    /**
+     * @return a search index read from the serialized index file or built from the source files
+     *
+     * @param dataFile	RNA database file
+     * @param gFile		base genome file
+     * @param subFile	subsystem table file
+     *
+     * @throws IOException
+     */
+    private static SearchIndex readIndex(File dataFile, File gFile, File subFile) throws IOException {
+        SearchIndex retVal = null;
+        File indexFile = indexFile(dataFile);
+        if (SidecarFile.isCurrent(indexFile, dataFile, gFile, subFile)) {
+            try (ObjectInputStream inStream = new ObjectInputStream(new FileInputStream(indexFile))) {
+                retVal = (SearchIndex) inStream.readObject();
+                log.info("Search index read from {}.", indexFile);
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                log.warn("Search index {} is unusable: {}", indexFile, e.toString());
+            }
+        }
+        if (retVal == null) {
+            log.info("Building search index for {}.", dataFile);
+            GeneNameIndex geneIndex = GeneNameIndex.load(dataFile);
+            GroupCatalog groups = GroupCatalog.load(dataFile);
+            Genome genome = new Genome(gFile);
+            Map<String, String> functions = new HashMap<String, String>();
+            for (Feature feat : genome.getFeatures())
+                functions.put(feat.getId(), feat.getFunction());
+            retVal = new SearchIndex(geneIndex, functions, new GenomeSubsystemTable(subFile), groups);
+            try {
+                retVal.save(indexFile);
+            } catch (IOException e) {
+                log.warn("Could not save search index to {}: {}", indexFile, e.toString());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Write this index to a sidecar file.
+     *
+     * @param indexFile		output file
+     *
+     * @throws IOException
+     */
+    private void save(File indexFile) throws IOException {
+        SidecarFile.write(indexFile, x -> {
+            try (ObjectOutputStream outStream = new ObjectOutputStream(x)) {
+                outStream.writeObject(this);
+            }
+        });
+        log.info("Search index saved to {}.", indexFile);
+    }
+
+    /**
+     * @return the position of the first indexed word greater than or equal to a specified string
+     *
+     * @param word	lower-case string to locate
+     */
+    private int lowerBound(String word) {
+        int lo = 0;
+        int hi = this.keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.keys[mid].compareTo(word) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the documents matching a query, sorted by score, kind, and name
+     *
+     * @param query		query text; every word in the query must begin a word in the document
+     */
+    public List<Hit> search(String query) {
+        String[] words = words(query);
+        List<Hit> retVal = new ArrayList<Hit>();
+        if (words.length > 0) {
+            final int nDocs = this.ids.length;
+            int[] scores = new int[nDocs];
+            BitSet found = null;
+            for (String word : words) {
+                BitSet exact = new BitSet(nDocs);
+                BitSet matched = new BitSet(nDocs);
+                for (int k = this.lowerBound(word); k < this.keys.length && this.keys[k].startsWith(word); k++) {
+                    BitSet target = (this.keys[k].length() == word.length() ? exact : matched);
+                    for (int doc : this.postings[k])
+                        target.set(doc);
+                }
+                matched.or(exact);
+                if (found == null)
+                    found = matched;
+                else
+                    found.and(matched);
+                // Whole-word matches count double.
+                for (int doc = matched.nextSetBit(0); doc >= 0; doc = matched.nextSetBit(doc + 1))
+                    scores[doc] += (exact.get(doc) ? 2 : 1);
+            }
+            for (int doc = found.nextSetBit(0); doc >= 0; doc = found.nextSetBit(doc + 1))
+                retVal.add(new Hit(this, doc, scores[doc]));
+            retVal.sort(HIT_ORDER);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of documents in the index
+     */
+    public int size() {
+        return this.ids.length;
+    }
+
+    /**
+     * @return the number of distinct words in the index
+     */
+    public int getWordCount() {
+        return this.keys.length;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class contains utilities for the sidecar files of an RNA database or base genome.  A sidecar holds data
+ * precomputed from the data file (and sometimes other source files), so that pages which need only that data do not
+ * have to load the data file itself.  Each sidecar is named by adding a suffix to the data file name, and it is
+ * current if it is at least as new as every one of its source files.
+ *
+ * The sidecars are kept in a cache subdirectory of the directory containing the data file.  Writing a sidecar
+ * therefore does not change the data directory itself, which would invalidate the database catalog (see
+ * RnaDatabaseCatalog).  A sidecar is written to a temporary file in the cache directory and then moved into place, so
+ * concurrent readers never see a partial file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SidecarFile {
+
+    /**
+     * This interface describes the method used to write the content of a sidecar file.
+     */
+    public interface IWriter {
+
+        /**
+         * Write the sidecar content to an output stream.
+         *
+         * @param outStream		stream to receive the content
+         *
+         * @throws IOException
+         */
+        public void write(OutputStream outStream) throws IOException;
+
+    }
+
+    /** name of the sidecar cache subdirectory */
+    public static final String CACHE_DIR = ".rnaCache";
+
+    /**
+     * @return the sidecar file with a specified suffix for a data file
+     *
+     * @param dataFile	RNA database or genome file
+     * @param suffix	suffix for the sidecar file name
+     */
+    public static File locate(File dataFile, String suffix) {
+        File cacheDir = new File(dataFile.getAbsoluteFile().getParentFile(), CACHE_DIR);
+        return new File(cacheDir, dataFile.getName() + suffix);
+    }
+
+    /**
+     * @return TRUE if a sidecar file exists and is at least as new as all of its source files
+     *
+     * @param sidecar	sidecar file to check
+     * @param sources	files from which the sidecar is built
+     */
+    public static boolean isCurrent(File sidecar, File... sources) {
+        boolean retVal = sidecar.canRead();
+        for (int i = 0; retVal && i < sources.length; i++)
+            retVal = (sidecar.lastModified() >= sources[i].lastModified());
+        return retVal;
+    }
+
+    /**
+     * Write a sidecar file, creating its directory if necessary.  The file is written to a temporary name in the
+     * same directory and then moved into place.
+     *
+     * @param sidecar	sidecar file to write
+     * @param writer	method for writing the content
+     *
+     * @throws IOException
+     */
+    public static void write(File sidecar, IWriter writer) throws IOException {
+        File cacheDir = sidecar.getAbsoluteFile().getParentFile();
+        if (! cacheDir.isDirectory() && ! cacheDir.mkdirs() && ! cacheDir.isDirectory())
+            throw new IOException("Could not create sidecar directory " + cacheDir + ".");
+        File tempFile = File.createTempFile("sidecar", ".tmp", cacheDir);
+        try {
+            try (OutputStream outStream = new FileOutputStream(tempFile)) {
+                writer.write(outStream);
+            }
+            Files.move(tempFile.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+}
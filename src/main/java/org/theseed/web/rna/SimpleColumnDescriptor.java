@@ -26,6 +26,11 @@ public class SimpleColumnDescriptor extends ColumnDescriptor {
         return this.getDisplayWeight(feat, this.colIdx);
     }
 
+    @Override
+    protected int[] getBatchColumns() {
+        return new int[] { this.colIdx, -1 };
+    }
+
     @Override
     public String getTitleString() {
         String retVal = this.getSample(this.colIdx).getName();
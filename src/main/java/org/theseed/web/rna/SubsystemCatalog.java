@@ -0,0 +1,300 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.genome.Feature;
+import org.theseed.genome.Genome;
+import org.theseed.genome.SubsystemRow;
+import org.theseed.reports.LinkObject;
+
+/**
+ * This object contains a precomputed catalog of the subsystems in a genome.  For each subsystem, we store the
+ * classifications, the roles, and the ordinals of the features in each role.  The features themselves are stored
+ * once, with their IDs and pre-rendered hyperlinks, so that a subsystem page can be built without loading the genome.
+ *
+ * Catalogs are cached in memory by genome file, and a serialized copy is kept in a sidecar file for the genome (see
+ * SidecarFile) so that it survives between processes.  Either copy is rebuilt whenever the genome file changes.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemCatalog implements Serializable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SubsystemCatalog.class);
+    /** serialization version */
+    private static final long serialVersionUID = 2839403312745928613L;
+    /** display name of the genome */
+    private String genomeName;
+    /** array of feature IDs, indexed by feature ordinal */
+    private String[] fids;
+    /** array of rendered feature links, indexed by feature ordinal */
+    private String[] links;
+    /** map of subsystem names to descriptors, sorted by name */
+    private SortedMap<String, Entry> subsystems;
+    /** in-memory cache of catalogs */
+    private static final DataCache<SubsystemCatalog> CACHE = new DataCache<SubsystemCatalog>();
+    /** suffix for the serialized catalog file */
+    public static final String CATALOG_SUFFIX = ".subs.ser";
+
+    /**
+     * This class describes a single subsystem in the catalog.
+     */
+    public static class Entry implements Serializable {
+
+        /** serialization version */
+        private static final long serialVersionUID = -4516823364185418850L;
+        /** subsystem name */
+        private String name;
+        /** classification strings (empty ones are removed) */
+        private List<String> classifications;
+        /** role names, in subsystem order */
+        private String[] roles;
+        /** feature ordinals for each role */
+        private int[][] roleFeatures;
+
+        /**
+         * Construct a catalog entry from a subsystem row.
+         *
+         * @param row			subsystem row from the genome
+         * @param ordinalMap	map of feature IDs to feature ordinals (updated as needed)
+         * @param linker		link generator for new features
+         * @param fidList		list of feature IDs, indexed by ordinal (updated as needed)
+         * @param linkList		list of rendered feature links, indexed by ordinal (updated as needed)
+         */
+        private Entry(SubsystemRow row, Map<String, Integer> ordinalMap, LinkObject linker, List<String> fidList,
+                List<String> linkList) {
+            this.name = row.getName();
+            this.classifications = row.getClassifications().stream().filter(x -> ! x.isEmpty())
+                    .collect(Collectors.toList());
+            List<SubsystemRow.Role> roleList = row.getRoles();
+            final int n = roleList.size();
+            this.roles = new String[n];
+            this.roleFeatures = new int[n][];
+            for (int i = 0; i < n; i++) {
+                SubsystemRow.Role role = roleList.get(i);
+                this.roles[i] = role.getName();
+                Collection<Feature> feats = role.getFeatures();
+                int[] ordinals = new int[feats.size()];
+                int j = 0;
+                for (Feature feat : feats) {
+                    String fid = feat.getId();
+                    Integer ordinal = ordinalMap.get(fid);
+                    if (ordinal == null) {
+                        ordinal = fidList.size();
+                        ordinalMap.put(fid, ordinal);
+                        fidList.add(fid);
+                        linkList.add(linker.featureLink(fid).render());
+                    }
+                    ordinals[j] = ordinal;
+                    j++;
+                }
+                this.roleFeatures[i] = ordinals;
+            }
+        }
+
+        /**
+         * @return the subsystem name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the non-empty classification strings
+         */
+        public List<String> getClassifications() {
+            return this.classifications;
+        }
+
+        /**
+         * @return the number of roles
+         */
+        public int getRoleCount() {
+            return this.roles.length;
+        }
+
+        /**
+         * @return the name of a role
+         *
+         * @param idx	index of the role
+         */
+        public String getRole(int idx) {
+            return this.roles[idx];
+        }
+
+        /**
+         * @return the feature ordinals for a role
+         *
+         * @param idx	index of the role
+         */
+        public int[] getRoleFeatures(int idx) {
+            return this.roleFeatures[idx];
+        }
+
+        /**
+         * @return TRUE if the subsystem name, a classification, or a role name contains the specified text
+         *
+         * @param lowerText		search text, in lower case
+         */
+        public boolean matches(String lowerText) {
+            boolean retVal = this.name.toLowerCase().contains(lowerText);
+            for (int i = 0; ! retVal && i < this.classifications.size(); i++)
+                retVal = this.classifications.get(i).toLowerCase().contains(lowerText);
+            for (int i = 0; ! retVal && i < this.roles.length; i++)
+                retVal = this.roles[i].toLowerCase().contains(lowerText);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Build a subsystem catalog from a genome.
+     *
+     * @param genome	source genome
+     */
+    public SubsystemCatalog(Genome genome) {
+        this.genomeName = genome.toString();
+        LinkObject linker = genome.getLinker();
+        Map<String, Integer> ordinalMap = new HashMap<String, Integer>();
+        List<String> fidList = new ArrayList<String>();
+        List<String> linkList = new ArrayList<String>();
+        this.subsystems = new TreeMap<String, Entry>();
+        for (SubsystemRow row : genome.getSubsystems()) {
+            Entry entry = new Entry(row, ordinalMap, linker, fidList, linkList);
+            this.subsystems.put(entry.getName(), entry);
+        }
+        this.fids = fidList.stream().toArray(String[]::new);
+        this.links = linkList.stream().toArray(String[]::new);
+    }
+
+    /**
+     * @return the subsystem catalog for the specified genome file
+     *
+     * The catalog is taken from the memory cache if possible, then from the serialized catalog file, and
+     * finally built from the genome itself.
+     *
+     * @param gFile		genome file of interest
+     *
+     * @throws IOException
+     */
+    public static SubsystemCatalog load(File gFile) throws IOException {
+        return CACHE.get(gFile, x -> readCatalog(x));
+    }
+
+    /**
+     * @return a subsystem catalog read from the catalog file or built from the genome
+     *
+     * @param gFile		genome file of interest
+     *
+     * @throws IOException
+     */
+    private static SubsystemCatalog readCatalog(File gFile) throws IOException {
+        SubsystemCatalog retVal = null;
+        File catFile = SidecarFile.locate(gFile, CATALOG_SUFFIX);
+        if (SidecarFile.isCurrent(catFile, gFile)) {
+            try (ObjectInputStream inStream = new ObjectInputStream(new FileInputStream(catFile))) {
+                retVal = (SubsystemCatalog) inStream.readObject();
+                log.info("Subsystem catalog read from {}.", catFile);
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                log.warn("Subsystem catalog {} is unusable: {}", catFile, e.toString());
+            }
+        }
+        if (retVal == null) {
+            log.info("Building subsystem catalog for {}.", gFile);
+            retVal = new SubsystemCatalog(new Genome(gFile));
+            final SubsystemCatalog catalog = retVal;
+            try {
+                SidecarFile.write(catFile, x -> {
+                    try (ObjectOutputStream outStream = new ObjectOutputStream(x)) {
+                        outStream.writeObject(catalog);
+                    }
+                });
+                log.info("Subsystem catalog saved to {}.", catFile);
+            } catch (IOException e) {
+                log.warn("Could not save subsystem catalog to {}: {}", catFile, e.toString());
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the descriptor for the named subsystem, or NULL if it is not in the genome
+     *
+     * @param name	name of the desired subsystem
+     */
+    public Entry getSubsystem(String name) {
+        return this.subsystems.get(name);
+    }
+
+    /**
+     * @return the descriptors of all the subsystems, sorted by name
+     */
+    public Collection<Entry> getAll() {
+        return Collections.unmodifiableCollection(this.subsystems.values());
+    }
+
+    /**
+     * @return the descriptors of the subsystems matching a search string, sorted by name
+     *
+     * @param text	search text; a subsystem matches if the text occurs in its name, a classification,
+     * 				or a role (case-insensitive)
+     */
+    public List<Entry> search(String text) {
+        String lowerText = text.toLowerCase();
+        return this.subsystems.values().stream().filter(x -> x.matches(lowerText)).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of subsystems in the catalog
+     */
+    public int size() {
+        return this.subsystems.size();
+    }
+
+    /**
+     * @return the ID of a feature
+     *
+     * @param ordinal	ordinal number of the feature
+     */
+    public String getFid(int ordinal) {
+        return this.fids[ordinal];
+    }
+
+    /**
+     * @return the rendered HTML hyperlink for a feature
+     *
+     * @param ordinal	ordinal number of the feature
+     */
+    public String getLink(int ordinal) {
+        return this.links[ordinal];
+    }
+
+    /**
+     * @return the display name of the genome
+     */
+    public String getGenomeName() {
+        return this.genomeName;
+    }
+
+}
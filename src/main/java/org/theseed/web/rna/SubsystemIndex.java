@@ -0,0 +1,259 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.theseed.subsystems.GenomeSubsystemTable;
+
+import static j2html.TagCreator.*;
+
+/**
+ * This object indexes the subsystem table for an RNA database by feature ordinal.  For each subsystem there is a
+ * bit set of member features, and for each feature there is a list of subsystem ordinals.  The subsystem links for
+ * the feature table are pre-rendered for each subsystem, so only the target URL has to be filled in for each row.
+ *
+ * Subsystem indexes are cached by subsystem file and database file.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemIndex {
+
+    // FIELDS
+    /** array of subsystem IDs, indexed by subsystem ordinal */
+    private String[] subIds;
+    /** map of subsystem IDs to ordinals */
+    private Map<String, Integer> subMap;
+    /** member features for each subsystem */
+    private BitSet[] members;
+    /** features in any subsystem */
+    private BitSet anySub;
+    /** subsystem ordinals for each feature */
+    private int[][] featureSubs;
+    /** rendered link HTML before the URL for each subsystem */
+    private String[] linkPrefix;
+    /** rendered link HTML after the URL for each subsystem */
+    private String[] linkSuffix;
+    /** empty member set */
+    private static final BitSet NO_MEMBERS = new BitSet();
+    /** empty subsystem list */
+    private static final int[] NO_SUBS = new int[0];
+    /** URL placeholder for pre-rendered links */
+    private static final String URL_MARK = "@@URL@@";
+    /** subsystem ID placeholder for link URL templates */
+    public static final String SUB_MARK = "@@SUB@@";
+    /** feature ID placeholder for link URL templates */
+    public static final String FID_MARK = "@@FID@@";
+    /** in-memory cache of subsystem indexes */
+    private static final DataCache<SubsystemIndex> CACHE = new DataCache<SubsystemIndex>();
+
+    /**
+     * Construct a subsystem index.
+     *
+     * @param subTable	subsystem table for the genome
+     * @param feats		feature index for the RNA database
+     */
+    public SubsystemIndex(GenomeSubsystemTable subTable, RnaFeatureIndex feats) {
+        final int nFeats = feats.size();
+        // Run through the features, collecting the subsystem IDs.  We also pick up the descriptions here.
+        Map<String, String> descriptions = new HashMap<String, String>();
+        String[][] featSubIds = new String[nFeats][];
+        for (int f = 0; f < nFeats; f++) {
+            Set<GenomeSubsystemTable.SubData> subs = subTable.getSubsystems(feats.getFid(f));
+            if (subs == null)
+                featSubIds[f] = new String[0];
+            else {
+                featSubIds[f] = subs.stream().map(x -> x.getId()).toArray(String[]::new);
+                for (GenomeSubsystemTable.SubData sub : subs)
+                    descriptions.putIfAbsent(sub.getId(), sub.getDescription());
+            }
+        }
+        this.build(subTable.getAllSubsystems(), featSubIds, descriptions);
+    }
+
+    /**
+     * Construct a subsystem index from lists of subsystem IDs.
+     *
+     * @param allSubs		IDs of all the subsystems in the genome
+     * @param featSubIds	IDs of the subsystems for each feature, indexed by feature ordinal
+     * @param descriptions	map of subsystem IDs to descriptions
+     */
+    protected SubsystemIndex(Collection<String> allSubs, String[][] featSubIds, Map<String, String> descriptions) {
+        this.build(allSubs, featSubIds, descriptions);
+    }
+
+    /**
+     * Build the index structures.
+     *
+     * @param allSubs		IDs of all the subsystems in the genome
+     * @param featSubIds	IDs of the subsystems for each feature, indexed by feature ordinal
+     * @param descriptions	map of subsystem IDs to descriptions
+     */
+    private void build(Collection<String> allSubs, String[][] featSubIds, Map<String, String> descriptions) {
+        final int nFeats = featSubIds.length;
+        // Assign the subsystem ordinals.
+        List<String> subList = new ArrayList<String>(allSubs);
+        Collections.sort(subList);
+        this.subMap = new HashMap<String, Integer>(subList.size() * 4 / 3 + 1);
+        for (String subId : subList)
+            this.subMap.put(subId, this.subMap.size());
+        // Convert each feature's subsystem IDs to ordinals.
+        this.featureSubs = new int[nFeats][];
+        for (int f = 0; f < nFeats; f++) {
+            String[] subs = featSubIds[f];
+            if (subs.length == 0)
+                this.featureSubs[f] = NO_SUBS;
+            else {
+                int[] ords = new int[subs.length];
+                for (int i = 0; i < subs.length; i++) {
+                    String subId = subs[i];
+                    Integer ord = this.subMap.get(subId);
+                    if (ord == null) {
+                        ord = subList.size();
+                        subList.add(subId);
+                        this.subMap.put(subId, ord);
+                    }
+                    ords[i] = ord;
+                }
+                this.featureSubs[f] = ords;
+            }
+        }
+        this.subIds = subList.stream().toArray(String[]::new);
+        // Build the member sets and the pre-rendered links.
+        final int nSubs = this.subIds.length;
+        this.members = new BitSet[nSubs];
+        this.linkPrefix = new String[nSubs];
+        this.linkSuffix = new String[nSubs];
+        for (int s = 0; s < nSubs; s++) {
+            this.members[s] = new BitSet(nFeats);
+            String subId = this.subIds[s];
+            String tooltip = descriptions.getOrDefault(subId, "");
+            String html = a(subId).withTitle(tooltip).withHref(URL_MARK).render();
+            this.linkPrefix[s] = StringUtils.substringBefore(html, URL_MARK);
+            this.linkSuffix[s] = StringUtils.substringAfter(html, URL_MARK);
+        }
+        this.anySub = new BitSet(nFeats);
+        for (int f = 0; f < nFeats; f++) {
+            for (int s : this.featureSubs[f]) {
+                this.members[s].set(f);
+                this.anySub.set(f);
+            }
+        }
+    }
+
+    /**
+     * @return the subsystem index for an RNA database
+     *
+     * @param subFile	subsystem table file
+     * @param dataFile	file from which the RNA database was loaded
+     * @param feats		feature index for the RNA database
+     *
+     * @throws IOException
+     */
+    public static SubsystemIndex get(File subFile, File dataFile, RnaFeatureIndex feats) throws IOException {
+        return CACHE.get(Arrays.asList(subFile, dataFile), () -> new SubsystemIndex(new GenomeSubsystemTable(subFile), feats));
+    }
+
+    /**
+     * @return the IDs of all the subsystems, sorted
+     */
+    public List<String> getAllSubsystems() {
+        return Arrays.asList(this.subIds);
+    }
+
+    /**
+     * @return the ordinal of a subsystem, or -1 if it is not in the table
+     *
+     * @param subId		ID of the subsystem of interest
+     */
+    public int getSubOrdinal(String subId) {
+        Integer retVal = this.subMap.get(subId);
+        return (retVal == null ? -1 : (int) retVal);
+    }
+
+    /**
+     * @return the set of ordinals for features in a subsystem (this set must not be modified)
+     *
+     * @param subId		ID of the subsystem of interest
+     */
+    public BitSet getMembers(String subId) {
+        int ord = this.getSubOrdinal(subId);
+        return (ord < 0 ? NO_MEMBERS : this.members[ord]);
+    }
+
+    /**
+     * @return the set of ordinals for features in any subsystem (this set must not be modified)
+     */
+    public BitSet getAnySubsystem() {
+        return this.anySub;
+    }
+
+    /**
+     * @return TRUE if a feature is in any subsystem
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public boolean isInSubsystem(int featIdx) {
+        return this.anySub.get(featIdx);
+    }
+
+    /**
+     * @return the subsystem ordinals for a feature
+     *
+     * @param featIdx	ordinal of the feature of interest
+     */
+    public int[] getSubsystems(int featIdx) {
+        return this.featureSubs[featIdx];
+    }
+
+    /**
+     * @return a URL template for the subsystem links, ready to be filled in for each feature
+     *
+     * The incoming URL should contain SUB_MARK in place of the subsystem ID and FID_MARK in place of the feature ID.
+     *
+     * @param url	URL containing the placeholders
+     */
+    public static String urlTemplate(String url) {
+        return StringEscapeUtils.escapeHtml4(url);
+    }
+
+    /**
+     * @return the rendered HTML for the subsystem links of a feature, or NULL if the feature has no subsystems
+     *
+     * @param featIdx	ordinal of the feature of interest
+     * @param fid		ID of the feature of interest
+     * @param template	URL template computed by "urlTemplate"
+     */
+    public String renderLinks(int featIdx, String fid, String template) {
+        String retVal = null;
+        int[] subs = this.featureSubs[featIdx];
+        if (subs.length > 0) {
+            String fidUrl = StringUtils.replace(template, FID_MARK, StringEscapeUtils.escapeHtml4(fid));
+            StringBuilder buffer = new StringBuilder(subs.length * 80);
+            for (int s : subs) {
+                if (buffer.length() > 0)
+                    buffer.append(", ");
+                buffer.append(this.linkPrefix[s])
+                        .append(StringUtils.replace(fidUrl, SUB_MARK, StringEscapeUtils.escapeHtml4(this.subIds[s])))
+                        .append(this.linkSuffix[s]);
+            }
+            retVal = buffer.toString();
+        }
+        return retVal;
+    }
+
+}
@@ -29,8 +29,13 @@ public class SubsystemRowFilter extends RowFilter {
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        String fid = feat.getId();
-        return this.processor.getSubFids().contains(fid);
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.processor.getSubMembers().get(featIdx);
     }
 
 }
@@ -0,0 +1,37 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * This creator compares each time point in the primary sample's series to the earliest time point in the series.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TimeZeroNewColumnCreator extends NewColumnCreator {
+
+    public TimeZeroNewColumnCreator(List<String> samp1, String samp2, List<String> samps) {
+        super(samp1, samp2, samps);
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        String samp1 = this.getOnlySample1();
+        SortedMap<String, String> timeMap = this.getAllTimes(samp1);
+        if (timeMap.size() < 2)
+            throw new IllegalArgumentException(samp1 + " is not part of a time series.");
+        String zero = timeMap.get(timeMap.firstKey());
+        List<String> retVal = new ArrayList<String>(timeMap.size() - 1);
+        for (String sample : timeMap.values()) {
+            if (! sample.contentEquals(zero))
+                retVal.add(sample + "," + zero);
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.BitSet;
+
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.ColumnProcessor;
+
+/**
+ * This filter only shows the rows whose expression is unusually variable, that is, the features whose coefficient
+ * of variation over the good-quality samples is in the top tenth for the database.  The coefficients come from the
+ * database's gene statistics table (see GeneStatsTable).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class VariableRowFilter extends RowFilter {
+
+    // FIELDS
+    /** controlling column processor */
+    private ColumnProcessor processor;
+    /** ordinals of the features to display */
+    private BitSet variable;
+    /** fraction of the features considered unusually variable */
+    public static final double VARIABLE_FRACTION = 0.10;
+
+    /**
+     * Construct a variable-expression row filter.
+     *
+     * @param processor		controlling column processor
+     */
+    public VariableRowFilter(ColumnProcessor processor) {
+        this.processor = processor;
+        this.variable = processor.getGeneStats().getVariableGenes(VARIABLE_FRACTION);
+    }
+
+    @Override
+    public boolean isRowDisplayable(RnaFeatureData feat) {
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.variable.get(featIdx));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.variable.get(featIdx);
+    }
+
+}
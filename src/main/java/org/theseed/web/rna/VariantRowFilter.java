@@ -3,13 +3,12 @@
  */
 package org.theseed.web.rna;
 
-import java.util.List;
-
 import org.theseed.rna.RnaFeatureData;
 import org.theseed.web.ColumnProcessor;
 
 /**
- * This filter only displays rows where at least one cell has a different range color from the others.
+ * This filter only displays rows where at least one cell has a different range color from the others.  The check
+ * uses the processor's range codes, so it only looks at one byte per colored cell.
  *
  * @author Bruce Parrello
  */
@@ -25,14 +24,13 @@ public class VariantRowFilter extends RowFilter {
 
     @Override
     public boolean isRowDisplayable(RnaFeatureData feat) {
-        boolean retVal = false;
-        List<CellDescriptor> cells = processor.getColoredCells();
-        if (cells.size() > 0) {
-            int range = cells.get(0).getRange();
-            for (int i = 1; i < cells.size() && ! retVal; i++)
-                retVal = (cells.get(i).getRange() != range);
-        }
-        return retVal;
+        int featIdx = this.processor.getFeatureIndex().getOrdinal(feat);
+        return (featIdx >= 0 && this.isRowDisplayable(featIdx, feat));
+    }
+
+    @Override
+    public boolean isRowDisplayable(int featIdx, RnaFeatureData feat) {
+        return this.processor.getRangeCodes().isVariant(featIdx);
     }
 
 }
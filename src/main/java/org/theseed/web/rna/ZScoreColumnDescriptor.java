@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.rna.RnaFeatureData;
+import org.theseed.web.Key;
+
+import j2html.tags.DomContent;
+import static j2html.TagCreator.*;
+
+/**
+ * This class contains a column that displays the expression level of a sample as a z-score, that is, the number of
+ * standard deviations above or below the feature's mean over the good-quality samples.  The primary specification
+ * has the form "z(A)", where A is a sample name.  The means and standard deviations come from the database's
+ * gene statistics table (see GeneStatsTable).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ZScoreColumnDescriptor extends ColumnDescriptor {
+
+    // FIELDS
+    /** index of relevant data column */
+    private int colIdx;
+    /** gene statistics for the database */
+    private GeneStatsTable stats;
+    /** pattern for z-score specifications */
+    private static final Pattern ZSCORE_PATTERN = Pattern.compile("z\\((.+)\\)");
+
+    /**
+     * @return TRUE if the specified column specification is a z-score
+     *
+     * @param spec	primary column specification to check
+     */
+    public static boolean isZScore(String spec) {
+        return ZSCORE_PATTERN.matcher(spec).matches();
+    }
+
+    /**
+     * @return the specification string for the z-score of a sample
+     *
+     * @param sample	name of the sample
+     */
+    public static String specOf(String sample) {
+        return "z(" + sample + ")";
+    }
+
+    @Override
+    protected boolean init() {
+        Matcher m = ZSCORE_PATTERN.matcher(this.getSample1());
+        boolean retVal = m.matches();
+        if (retVal) {
+            this.colIdx = this.getColIdx(m.group(1));
+            retVal = (this.colIdx >= 0);
+        }
+        if (retVal) {
+            try {
+                if (this.getDataFile() == null)
+                    this.stats = new GeneStatsTable(new ExpressionMatrix(this.getData()), this.getFeatureIndex());
+                else
+                    this.stats = GeneStatsTable.get(this.getDataFile(), this.getData());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public double getValue(RnaFeatureData feat) {
+        int featIdx = this.getFeatureIndex().getOrdinal(feat);
+        return this.stats.zScore(featIdx, this.getDisplayWeight(feat, this.colIdx));
+    }
+
+    @Override
+    public Key.RevRatio getKey(RnaFeatureData feat) {
+        double value = this.getValue(feat);
+        // Missing values sort as zero, as they do in the differential columns.
+        if (Double.isNaN(value))
+            value = 0.0;
+        return new Key.RevRatio(value, 1.0);
+    }
+
+    @Override
+    public String getTitleString() {
+        String retVal = "z " + this.getSample(this.colIdx).getName();
+        retVal = StringUtils.replaceChars(retVal, '_', ' ');
+        return retVal;
+    }
+
+    @Override
+    public DomContent getTitle() {
+        return join(text("z"), this.computeName(this.colIdx));
+    }
+
+    @Override
+    public String getTooltip() {
+        return "Z-score.  " + this.tipStringOf(this.colIdx);
+    }
+
+}
@@ -0,0 +1,27 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This column creator returns a z-score column for each primary sample.  The optional sample is ignored.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ZScoreNewColumnCreator extends NewColumnCreator {
+
+    public ZScoreNewColumnCreator(List<String> samp1, String samp2, List<String> samps) {
+        super(samp1, samp2, samps);
+    }
+
+    @Override
+    public List<String> getNewColumns() {
+        return this.getSample1().stream().filter(x -> ! x.isEmpty()).map(x -> ZScoreColumnDescriptor.specOf(x))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the co-expression index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestCoexpressionIndex {
+
+    @Test
+    public void testNeighbors() {
+        String[] samples = new String[] { "A_1", "A_2", "A_3", "A_4", "A_5", "A_6" };
+        boolean[] good = new boolean[] { true, true, true, true, true, false };
+        float[][] values = new float[][] { { 1, 2, 3, 4, 5, 1000 }, { 2, 4, 6, 8, 10, 0 }, { 5, 4, 3, 2, 1, 0 },
+                { 7, 7, 7, 7, 7, 0 }, { 1, 3, 2, 5, 4, 0 }, { 1, Float.NaN, 3, 4, 5, 0 } };
+        ExpressionMatrix matrix = new ExpressionMatrix(samples, good, values, new double[values.length]);
+        CoexpressionIndex index = new CoexpressionIndex(matrix);
+        double[] scores = index.correlations(0);
+        // The bad-quality sample is ignored, so feature 0 is a straight line.
+        assertThat(scores[0], closeTo(1.0, 1e-6));
+        assertThat(scores[1], closeTo(1.0, 1e-6));
+        assertThat(scores[2], closeTo(-1.0, 1e-6));
+        // A feature with no variation has no correlation.
+        assertThat(Double.isNaN(scores[3]), equalTo(true));
+        assertThat(scores[4], closeTo(0.8, 1e-6));
+        // A missing value is replaced by the feature's mean.
+        assertThat(scores[5], closeTo(Math.sqrt(0.875), 1e-6));
+        // The neighbors are sorted from highest to lowest, without the focus feature.
+        assertThat(CoexpressionIndex.topNeighbors(scores, 0, 3), equalTo(new int[] { 1, 5, 4 }));
+        assertThat(CoexpressionIndex.topNeighbors(scores, 0, 10), equalTo(new int[] { 1, 5, 4, 2 }));
+        assertThat(CoexpressionIndex.topNeighbors(scores, 0, 0).length, equalTo(0));
+        // A focus feature with no variation has no neighbors.
+        scores = index.correlations(3);
+        assertThat(CoexpressionIndex.topNeighbors(scores, 3, 5).length, equalTo(0));
+    }
+
+}
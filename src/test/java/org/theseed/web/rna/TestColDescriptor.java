@@ -7,6 +7,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
 import java.io.File;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -44,4 +45,33 @@ public class TestColDescriptor {
         assertThat(ColumnDescriptor.getDbType(cookieString, rnaTypes), equalTo(rnaTypes[1]));
     }
 
+    @Test
+    public void testAggregates() {
+        assertThat(AggregateColumnDescriptor.isAggregate("median(A_1+B_1+C_1)"), equalTo(true));
+        assertThat(AggregateColumnDescriptor.isAggregate("A_1"), equalTo(false));
+        double[] buffer = new double[] { 4.0, 1.0, 3.0, 2.0, 100.0 };
+        assertThat(AggregateColumnDescriptor.Function.MEDIAN.compute(buffer, 4), closeTo(2.5, 1e-9));
+        assertThat(AggregateColumnDescriptor.Function.MEAN.compute(buffer, 3), closeTo(2.0, 1e-9));
+        assertThat(Double.isNaN(AggregateColumnDescriptor.Function.MEAN.compute(buffer, 0)), equalTo(true));
+    }
+
+    @Test
+    public void testGroupTestSpecs() {
+        List<String> specs = GroupTestColumnDescriptor.specsOf("A_*", "B_*");
+        assertThat(specs, contains("de(A_*:B_*),lfc", "de(A_*:B_*),t", "de(A_*:B_*),padj"));
+        assertThat(GroupTestColumnDescriptor.isComparison("de(A_*:B_*)"), equalTo(true));
+    }
+
+    @Test
+    public void testFormula() {
+        assertThat(FormulaColumnDescriptor.isFormula("=(A_1+B_1)/baseline"), equalTo(true));
+        assertThat(FormulaColumnDescriptor.isFormula("A_1"), equalTo(false));
+    }
+
+    @Test
+    public void testZScore() {
+        assertThat(ZScoreColumnDescriptor.isZScore(ZScoreColumnDescriptor.specOf("A_1")), equalTo(true));
+        assertThat(ZScoreColumnDescriptor.isZScore("A_1"), equalTo(false));
+    }
+
 }
@@ -5,6 +5,7 @@ package org.theseed.web.rna;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -54,4 +55,83 @@ public class TestColumnCreator {
                 "7_0_0_A_asdO_000_D000_0_12_M1,7_0_0_A_asdO_000_D000_I_12_M1"));
     }
 
+    @Test
+    public void testGroupTest() {
+        List<String> samples = Arrays.stream(SAMPLES).collect(Collectors.toList());
+        List<String> samp1 = Collections.singletonList("7_D_Tasd_P_asdD_000_D000_I_*_M1");
+        String samp2 = "7_0_0_A_asdO_000_D000_I_*_M1";
+        NewColumnCreator creator = NewColumnCreator.Type.DIFFEXP.create(samp1, samp2, samples);
+        assertThat(creator.getNewColumns().size(), greaterThan(0));
+        // Only the good-quality samples count toward the group size.
+        List<String> good = samples.stream().filter(x -> ! x.equals("7_0_0_A_asdO_000_D000_I_9_M1")
+                && ! x.equals("7_0_0_A_asdO_000_D000_I_12_M1")).collect(Collectors.toList());
+        creator.setGoodSamples(good);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> creator.getNewColumns());
+        assertThat(e.getMessage(), containsString("Optional group"));
+        assertThat(e.getMessage(), containsString(samp2));
+    }
+
+    @Test
+    public void testAggregates() {
+        List<String> samples = Arrays.asList("A_1", "B_1", "C_1", "D_1");
+        NewColumnCreator creator = NewColumnCreator.Type.MEAN.create(Arrays.asList("A_1", "B_1"), "C_1+D_1", samples);
+        assertThat(creator.getNewColumns(), contains("mean(A_1+B_1),mean(C_1+D_1)"));
+        creator = NewColumnCreator.Type.MEDIAN.create(Arrays.asList("A_1", "B_1", "C_1"), "baseline", samples);
+        assertThat(creator.getNewColumns(), contains("median(A_1+B_1+C_1),baseline"));
+    }
+
+    @Test
+    public void testFormula() {
+        List<String> samples = Arrays.asList("A_1", "B_1", "C_1");
+        NewColumnCreator creator = NewColumnCreator.Type.FORMULA.create(Arrays.asList("A_1 + B_1"), "baseline", samples);
+        assertThat(creator.getNewColumns(), contains("=(A_1+B_1)/baseline"));
+    }
+
+    @Test
+    public void testZScore() {
+        List<String> samples = Arrays.asList("A_1", "B_1");
+        NewColumnCreator creator = NewColumnCreator.Type.ZSCORE.create(samples, "", samples);
+        assertThat(creator.getNewColumns(), contains("z(A_1)", "z(B_1)"));
+    }
+
+    @Test
+    public void testSeries() {
+        List<String> samples = Arrays.asList("7_0_0_A_asdO_000_D000_0_12_M1", "7_0_0_A_asdO_000_D000_0_4p5_M1",
+                "7_0_0_A_asdO_000_D000_0_24_M1_rep0", "7_0_0_A_asdO_000_D000_0_3_M1", "7_0_0_A_asdO_000_D000_0_ML_M1",
+                "7_0_0_A_asdO_000_D000_0_9_M1_rep0", "7_0_0_A_asdO_000_D000_I_9_M1", "7_0_0_A_asdO_000_D000_I_3_M1",
+                "A_1");
+        NewColumnCreator creator = NewColumnCreator.Type.TIME0.create(Arrays.asList("7_0_0_A_asdO_000_D000_0_12_M1"),
+                "", samples);
+        assertThat(creator.getNewColumns(), contains("7_0_0_A_asdO_000_D000_0_4p5_M1,7_0_0_A_asdO_000_D000_0_3_M1",
+                "7_0_0_A_asdO_000_D000_0_12_M1,7_0_0_A_asdO_000_D000_0_3_M1"));
+        creator = NewColumnCreator.Type.REPLICATES.create(Arrays.asList("7_0_0_A_asdO_000_D000_0_12_M1"), "", samples);
+        assertThat(creator.getNewColumns().size(), equalTo(5));
+        // A sample with a non-numeric time point uses the rest of its series.
+        final String mlSample = "7_0_0_A_asdO_000_D000_0_ML_M1";
+        creator = NewColumnCreator.Type.TIME1.create(Arrays.asList(mlSample), "7_0_0_A_asdO_000_D000_I_9_M1", samples);
+        assertThat(creator.getNewColumns(), contains("7_0_0_A_asdO_000_D000_0_3_M1,7_0_0_A_asdO_000_D000_I_9_M1",
+                "7_0_0_A_asdO_000_D000_0_4p5_M1,7_0_0_A_asdO_000_D000_I_9_M1",
+                "7_0_0_A_asdO_000_D000_0_12_M1,7_0_0_A_asdO_000_D000_I_9_M1"));
+        creator = NewColumnCreator.Type.TIMES.create(Arrays.asList(mlSample), "7_0_0_A_asdO_000_D000_I_9_M1", samples);
+        assertThat(creator.getNewColumns(), contains("7_0_0_A_asdO_000_D000_0_3_M1,7_0_0_A_asdO_000_D000_I_3_M1"));
+        creator = NewColumnCreator.Type.TIME0.create(Arrays.asList(mlSample), "", samples);
+        assertThat(creator.getNewColumns(), contains("7_0_0_A_asdO_000_D000_0_4p5_M1,7_0_0_A_asdO_000_D000_0_3_M1",
+                "7_0_0_A_asdO_000_D000_0_12_M1,7_0_0_A_asdO_000_D000_0_3_M1"));
+        creator = NewColumnCreator.Type.REPLICATES.create(Arrays.asList(mlSample), "", samples);
+        assertThat(creator.getNewColumns().size(), equalTo(5));
+    }
+
+    @Test
+    public void testPattern() {
+        List<String> samples = Arrays.asList("M_asdD_9_rep0", "M_asdD_9_rep1", "M_asdO_9_rep0", "N_asdD_9_rep0",
+                "M_asdD_3_rep0", "M_asdD_9");
+        NewColumnCreator creator = NewColumnCreator.Type.PATTERN.create(Arrays.asList("M_asdD_*_rep0"),
+                "M_asdD_3_rep0", samples);
+        assertThat(creator.getNewColumns(), contains("M_asdD_9_rep0,M_asdD_3_rep0"));
+        creator = NewColumnCreator.Type.PATTERN.create(Arrays.asList("M_asdD_*_rep0"), "", samples);
+        assertThat(creator.getNewColumns(), contains("M_asdD_9_rep0,", "M_asdD_3_rep0,"));
+        assertThrows(IllegalArgumentException.class, () -> NewColumnCreator.Type.PATTERN.create(Arrays.asList("Q_*"), "",
+                samples).getNewColumns());
+    }
+
 }
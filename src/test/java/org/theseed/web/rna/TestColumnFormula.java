@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the column formula parser and evaluator.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestColumnFormula {
+
+    @Test
+    public void testParse() {
+        List<String> samples = Arrays.asList("A_1", "B_1", "C_1");
+        ColumnFormula formula = new ColumnFormula("log2((A_1+B_1)/2/baseline)", x -> samples.indexOf(x));
+        assertThat(formula.isRatio(), equalTo(true));
+        assertThat(formula.getSampleColumns(), contains(0, 1));
+        assertThat(formula.getToken(0), equalTo("log2"));
+        assertThat(formula.getTokenColumn(3), equalTo(0));
+        assertThat(formula.isBinaryOperator(4), equalTo(true));
+        formula = new ColumnFormula("-C_1 * 2.5 - A_1", x -> samples.indexOf(x));
+        assertThat(formula.isRatio(), equalTo(false));
+        assertThat(formula.isBinaryOperator(0), equalTo(false));
+        assertThat(formula.getSampleColumns(), contains(2, 0));
+        for (String bad : new String[] { "A_1+", "(A_1", "A_1 B_1", "D_1/A_1", "foo(A_1)", "" })
+            assertThrows(IllegalArgumentException.class, () -> new ColumnFormula(bad, x -> samples.indexOf(x)), bad);
+        assertThat(ColumnFormula.Function.LOG2.apply(8.0), closeTo(3.0, 1e-9));
+    }
+
+    @Test
+    public void testEvaluate() {
+        List<String> samples = Arrays.asList("A_1", "B_1", "C_1");
+        float[][] values = new float[][] { { 2, 3, 4 }, { 0, 1, 0 }, { 1, Float.NaN, 1 } };
+        ExpressionMatrix matrix = new ExpressionMatrix(samples.stream().toArray(String[]::new),
+                new boolean[] { true, true, true }, values, new double[] { 5.0, 0.0, 2.0 });
+        // Multiplication binds tighter than addition, and parentheses override it.
+        assertThat(eval("A_1 + B_1 * C_1", samples, matrix), equalTo(new double[] { 14.0, 0.0, Double.NaN }));
+        assertThat(eval("(A_1 + B_1) * C_1", samples, matrix), equalTo(new double[] { 20.0, 0.0, Double.NaN }));
+        // Subtraction and division associate to the left.
+        assertThat(eval("A_1 - B_1 - C_1", samples, matrix), equalTo(new double[] { -5.0, -1.0, Double.NaN }));
+        assertThat(eval("A_1 / C_1 / 2", samples, matrix)[0], closeTo(0.25, 1e-9));
+        // Unary minus applies to the next factor, and can follow a binary operator.
+        assertThat(eval("-A_1 * B_1 - -C_1", samples, matrix)[0], closeTo(-2.0, 1e-9));
+        assertThat(eval("-(A_1 + C_1) / 2", samples, matrix)[2], closeTo(-1.0, 1e-9));
+        // The baseline, constants, and functions.
+        assertThat(eval("log2(B_1 + 1) * 2 + baseline", samples, matrix)[0], closeTo(9.0, 1e-9));
+        assertThat(eval("1.5", samples, matrix), equalTo(new double[] { 1.5, 1.5, 1.5 }));
+        // Division by zero follows the floating-point rules.
+        double[] result = eval("B_1 / A_1", samples, matrix);
+        assertThat(result[0], closeTo(1.5, 1e-9));
+        assertThat(result[1], equalTo(Double.POSITIVE_INFINITY));
+        assertThat(eval("-B_1 / A_1", samples, matrix)[1], equalTo(Double.NEGATIVE_INFINITY));
+        assertThat(Double.isNaN(eval("A_1 / C_1", samples, matrix)[1]), equalTo(true));
+        assertThat(Double.isNaN(eval("A_1 / baseline", samples, matrix)[1]), equalTo(true));
+    }
+
+    /**
+     * @return the values of a formula for each feature
+     *
+     * @param text		formula text
+     * @param samples	list of sample names
+     * @param matrix	expression matrix to use
+     */
+    private static double[] eval(String text, List<String> samples, ExpressionMatrix matrix) {
+        return new ColumnFormula(text, x -> samples.indexOf(x)).evaluate(matrix);
+    }
+
+}
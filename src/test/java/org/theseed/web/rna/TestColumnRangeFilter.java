@@ -0,0 +1,43 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the column range and quantile conditions.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestColumnRangeFilter {
+
+    @Test
+    public void testColumnConditions() {
+        double[] values = new double[] { 5.0, 1.0, Double.NaN, 8.0, 3.0, 10.0, 2.0, 7.0, 4.0, 6.0, 9.0 };
+        List<ColumnRangeFilter.Condition> conditions = ColumnRangeFilter.parse("0>=7, 1<3.0,2=3..5,3top20,4 bottom 30%");
+        assertThat(conditions.size(), equalTo(5));
+        assertThat(conditions.get(0).getRows(values).stream().toArray(), equalTo(new int[] { 3, 5, 7, 10 }));
+        assertThat(conditions.get(1).getRows(values).stream().toArray(), equalTo(new int[] { 1, 6 }));
+        assertThat(conditions.get(2).getRows(values).stream().toArray(), equalTo(new int[] { 0, 4, 8 }));
+        assertThat(conditions.get(3).getRows(values).stream().toArray(), equalTo(new int[] { 5, 10 }));
+        assertThat(conditions.get(4).getRows(values).stream().toArray(), equalTo(new int[] { 1, 4, 6 }));
+        assertThat(conditions.get(3).getCol(), equalTo(3));
+        assertThat(conditions.get(4).toString(), equalTo("4bottom30.0%"));
+        assertThat(new ColumnRangeFilter.Condition("0top100").getRows(values).cardinality(), equalTo(10));
+        for (String bad : new String[] { "x>1", "1>>2", "2=5..1", "3top0", "3top101", "1<abc", "1 middle 5" })
+            assertThrows(IllegalArgumentException.class, () -> new ColumnRangeFilter.Condition(bad), bad);
+        double[] buffer = new double[] { 4.0, 1.0, 3.0, 3.0, 2.0, 5.0 };
+        for (int k = 0; k < buffer.length; k++)
+            assertThat(ColumnRangeFilter.select(buffer.clone(), buffer.length, k),
+                    equalTo(new double[] { 1.0, 2.0, 3.0, 3.0, 4.0, 5.0 }[k]));
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Stress test for the request helpers.  A mixture of column-creation and cookie-string commands is run
+ * serially, and then the same commands are run many times in parallel threads.  The parallel output must
+ * match the serial output exactly.  The same is done for formulas, filters, and group comparisons built
+ * against a shared expression matrix, and the data cache is checked to build a shared structure only once.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestConcurrency {
+
+    /** number of times to repeat each command in the parallel run */
+    private static final int REPEATS = 50;
+    /** number of threads for the parallel run */
+    private static final int THREADS = 8;
+
+    private static final List<String> SAMPLES = Arrays.asList(
+            "7_0_0_A_asdO_000_D000_0_3_M1", "7_0_0_A_asdO_000_D000_0_4p5_M1", "7_0_0_A_asdO_000_D000_0_4p5_M1_rep1",
+            "7_0_0_A_asdO_000_D000_0_5p5_M1", "7_0_0_A_asdO_000_D000_0_9_M1", "7_0_0_A_asdO_000_D000_0_9_M1_rep0",
+            "7_0_0_A_asdO_000_D000_0_12_M1", "7_0_0_A_asdO_000_D000_0_24_M1", "7_0_0_A_asdO_000_D000_0_24_M1_rep0",
+            "7_0_0_A_asdO_000_D000_I_5p5_M1", "7_0_0_A_asdO_000_D000_I_9_M1", "7_0_0_A_asdO_000_D000_I_9_M1_rep0",
+            "7_0_0_A_asdO_000_D000_I_12_M1", "7_0_TasdA_0_asdO_000_D000_0_ML_M2", "7_0_TasdA_0_asdO_000_D000_0_ML_M3",
+            "7_D_Tasd_P_asdD_000_D000_0_4p5_M1", "7_D_Tasd_P_asdD_000_D000_0_5p5_M1", "7_D_Tasd_P_asdD_000_D000_0_9_M1",
+            "7_D_Tasd_P_asdD_000_D000_0_12_M1", "7_D_Tasd_P_asdD_000_D000_0_24_M1", "7_D_Tasd_P_asdD_000_D000_I_5p5_M1",
+            "7_D_Tasd_P_asdD_000_D000_I_9_M1", "7_D_Tasd_P_asdD_000_D000_I_12_M1", "7_D_Tasd_P_asdD_000_D000_I_24_M1");
+
+    /**
+     * @return a list of mixed commands to run
+     */
+    private static List<Callable<String>> buildCommands() {
+        List<Callable<String>> retVal = new ArrayList<Callable<String>>();
+        File workDir = new File("data", "clusters");
+        for (String sample : SAMPLES) {
+            List<String> samp1 = Collections.singletonList(sample);
+            retVal.add(() -> NewColumnCreator.Type.SINGLE.create(samp1, "baseline", SAMPLES).getNewColumns().toString());
+            retVal.add(() -> NewColumnCreator.Type.TIME1.create(samp1, "", SAMPLES).getNewColumns().toString());
+            retVal.add(() -> {
+                String cookie = "";
+                for (String column : NewColumnCreator.Type.TIME1.create(samp1, "", SAMPLES).getNewColumns())
+                    cookie = ColumnDescriptor.addColumn(cookie, column);
+                cookie = ColumnDescriptor.deleteColumn(cookie, 1);
+                RnaDataType[] rnaTypes = RnaDataType.values(workDir);
+                return ColumnDescriptor.savecookies(cookie, 0, rnaTypes[0]);
+            });
+        }
+        retVal.add(() -> NewColumnCreator.Type.TIMES.create(Collections.singletonList("7_0_0_A_asdO_000_D000_0_9_M1"),
+                "7_0_0_A_asdO_000_D000_I_5p5_M1", SAMPLES).getNewColumns().toString());
+        retVal.add(() -> NewColumnCreator.Type.TIMES.create(Collections.singletonList("7_D_Tasd_P_asdD_000_D000_0_9_M1"),
+                "7_D_Tasd_P_asdD_000_D000_I_9_M1", SAMPLES).getNewColumns().toString());
+        return retVal;
+    }
+
+    /**
+     * Run a list of commands serially, and then run them repeatedly in parallel threads in shuffled order.  Each
+     * parallel result must match the serial result.
+     *
+     * @param commands	list of commands to run
+     *
+     * @throws Exception
+     */
+    private static void checkParallel(List<Callable<String>> commands) throws Exception {
+        // Compute the serial results.
+        List<String> expected = new ArrayList<String>(commands.size());
+        for (Callable<String> command : commands)
+            expected.add(command.call());
+        // Build the parallel run.  Each command is repeated, and the order is shuffled.
+        List<Integer> order = new ArrayList<Integer>(commands.size() * REPEATS);
+        for (int r = 0; r < REPEATS; r++) {
+            for (int i = 0; i < commands.size(); i++)
+                order.add(i);
+        }
+        Collections.shuffle(order, new Random(142857));
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = pool.invokeAll(order.stream().map(i -> commands.get(i))
+                    .collect(Collectors.toList()));
+            for (int k = 0; k < order.size(); k++) {
+                int i = order.get(k);
+                assertThat("Command " + i, results.get(k).get(), equalTo(expected.get(i)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testMixedCommands() throws Exception {
+        checkParallel(buildCommands());
+    }
+
+    @Test
+    public void testCacheBuildsOnce() throws Exception {
+        File dataFile = File.createTempFile("cache", ".txt");
+        dataFile.deleteOnExit();
+        Files.write(dataFile.toPath(), Arrays.asList("alpha", "beta", "gamma"));
+        DataCache<List<String>> cache = new DataCache<List<String>>();
+        AtomicInteger builds = new AtomicInteger();
+        // All the threads wait at the gate and then ask for the structure at the same time.
+        CountDownLatch gate = new CountDownLatch(1);
+        Callable<List<String>> request = () -> {
+            gate.await();
+            return cache.get(dataFile, x -> {
+                builds.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException("Build interrupted.");
+                }
+                return Files.readAllLines(x.toPath());
+            });
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < THREADS * 4; i++)
+                results.add(pool.submit(request));
+            gate.countDown();
+            List<String> first = results.get(0).get();
+            assertThat(first, contains("alpha", "beta", "gamma"));
+            for (Future<List<String>> result : results)
+                assertThat(result.get(), sameInstance(first));
+            assertThat(builds.get(), equalTo(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return an expression matrix with pseudo-random values for the samples in the sample list
+     */
+    private static ExpressionMatrix buildMatrix() {
+        Random rand = new Random(271828);
+        final int nFeats = 200;
+        final int nSamples = SAMPLES.size();
+        String[] samples = SAMPLES.stream().toArray(String[]::new);
+        boolean[] good = new boolean[nSamples];
+        for (int j = 0; j < nSamples; j++)
+            good[j] = (j % 7 != 3);
+        float[][] values = new float[nFeats][nSamples];
+        double[] baselines = new double[nFeats];
+        for (int f = 0; f < nFeats; f++) {
+            for (int j = 0; j < nSamples; j++)
+                values[f][j] = (rand.nextInt(20) == 0 ? Float.NaN : (float) (rand.nextDouble() * 1000.0));
+            baselines[f] = rand.nextDouble() * 500.0;
+        }
+        return new ExpressionMatrix(samples, good, values, baselines);
+    }
+
+    @Test
+    public void testSharedData() throws Exception {
+        final ExpressionMatrix matrix = buildMatrix();
+        List<Callable<String>> commands = new ArrayList<Callable<String>>();
+        String[] formulas = new String[] { SAMPLES.get(0) + " - baseline", "log2(" + SAMPLES.get(3) + " + 1)",
+                "(" + SAMPLES.get(4) + " + " + SAMPLES.get(5) + ") / 2 - -" + SAMPLES.get(6),
+                SAMPLES.get(16) + " / " + SAMPLES.get(9) };
+        for (String formula : formulas) {
+            commands.add(() -> Arrays.toString(new ColumnFormula(formula, x -> SAMPLES.indexOf(x)).evaluate(matrix)));
+            commands.add(() -> {
+                double[] values = new ColumnFormula(formula, x -> SAMPLES.indexOf(x)).evaluate(matrix);
+                return ColumnRangeFilter.parse("0top10,0>=50,0=1..500").stream().map(x -> x.getRows(values).toString())
+                        .collect(Collectors.joining("; "));
+            });
+        }
+        String[][] groups = new String[][] { { "7_0_0_A_asdO_000_D000_0_*_M1", "7_D_Tasd_P_asdD_000_D000_0_*_M1" },
+                { "7_*_*_*_*_000_D000_I_*_M1", "7_*_*_*_*_000_D000_0_*_M1" } };
+        for (String[] pair : groups) {
+            commands.add(() -> {
+                GroupComparison comparison = new GroupComparison(matrix, pair[0], pair[1]);
+                StringBuilder retVal = new StringBuilder();
+                for (int f = 0; f < matrix.getFeatureCount(); f++)
+                    retVal.append(comparison.getLogFoldChange(f)).append(',').append(comparison.getTStat(f))
+                            .append(',').append(comparison.getAdjustedP(f)).append(';');
+                return retVal.toString();
+            });
+        }
+        for (String expression : new String[] { "SUBSYSTEM and not (GROUP or SET(setA))", "SET(setB) or VARIANT" })
+            commands.add(() -> new RowFilterExpression(expression).getSetNames().toString());
+        checkParallel(commands);
+    }
+
+}
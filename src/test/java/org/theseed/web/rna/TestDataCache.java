@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the file-stamped data cache.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestDataCache {
+
+    @Test
+    public void testRebuild() throws IOException {
+        File workDir = Files.createTempDirectory("cache").toFile();
+        try {
+            File file1 = new File(workDir, "data1.txt");
+            File file2 = new File(workDir, "data2.txt");
+            Files.writeString(file1.toPath(), "alpha");
+            Files.writeString(file2.toPath(), "beta");
+            DataCache<String> cache = new DataCache<String>();
+            AtomicInteger builds = new AtomicInteger();
+            DataCache.ILoader<String> loader = x -> {
+                builds.incrementAndGet();
+                return Files.readString(x.toPath());
+            };
+            // The structure is built once and then served from memory.
+            String value = cache.get(file1, loader);
+            assertThat(value, equalTo("alpha"));
+            assertThat(cache.get(file1, loader), sameInstance(value));
+            assertThat(builds.get(), equalTo(1));
+            // A change in length with the same modification time forces a rebuild.
+            long stamp = file1.lastModified();
+            Files.writeString(file1.toPath(), "alphabet");
+            file1.setLastModified(stamp);
+            assertThat(cache.get(file1, loader), equalTo("alphabet"));
+            assertThat(builds.get(), equalTo(2));
+            // So does a change in modification time with the same length.
+            Files.writeString(file1.toPath(), "ALPHABET");
+            file1.setLastModified(stamp - 10000);
+            assertThat(cache.get(file1, loader), equalTo("ALPHABET"));
+            assertThat(builds.get(), equalTo(3));
+            // A structure built from several files is rebuilt when any of them changes.
+            List<File> files = Arrays.asList(file1, file2);
+            DataCache.IBuilder<String> builder = () -> {
+                builds.incrementAndGet();
+                return Files.readString(file1.toPath()) + Files.readString(file2.toPath());
+            };
+            assertThat(cache.get(files, builder), equalTo("ALPHABETbeta"));
+            assertThat(cache.get(files, builder), equalTo("ALPHABETbeta"));
+            assertThat(builds.get(), equalTo(4));
+            Files.writeString(file2.toPath(), "gamma");
+            assertThat(cache.get(files, builder), equalTo("ALPHABETgamma"));
+            assertThat(builds.get(), equalTo(5));
+            // A failed build is not cached.
+            cache.clear();
+            assertThrows(IOException.class, () -> cache.get(file1, x -> { throw new IOException("failed"); }));
+            assertThat(cache.get(file1, loader), equalTo("ALPHABET"));
+            assertThat(builds.get(), equalTo(6));
+        } finally {
+            for (File file : workDir.listFiles())
+                file.delete();
+            workDir.delete();
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the persistent feature sets.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestFeatureSet {
+
+    @Test
+    public void testFeatureSet() throws IOException {
+        File workDir = Files.createTempDirectory("fset").toFile();
+        try {
+            File dbFile = new File(workDir, "test.ser");
+            Files.writeString(dbFile.toPath(), "x");
+            BitSet members = new BitSet();
+            members.set(1);
+            members.set(4);
+            members.set(130);
+            FeatureSet fset = new FeatureSet(dbFile.getName(), dbFile.lastModified(), members,
+                    Arrays.asList("fig|83333.1.peg.2", "fig|83333.1.peg.5", "fig|83333.1.peg.131"));
+            fset.save(workDir, "setB");
+            fset.save(workDir, "setA");
+            assertThat(FeatureSet.getNames(workDir), contains("setA", "setB"));
+            FeatureSet fset2 = FeatureSet.load(workDir, "setA");
+            assertThat(fset2.size(), equalTo(3));
+            assertThat(fset2.getFids(), contains("fig|83333.1.peg.2", "fig|83333.1.peg.5", "fig|83333.1.peg.131"));
+            assertThat(fset2.getMembers(dbFile, null).stream().toArray(), equalTo(new int[] { 1, 4, 130 }));
+            assertThrows(IllegalArgumentException.class, () -> FeatureSet.load(workDir, "setC"));
+            assertThat(FeatureSet.exists(workDir, "setA"), equalTo(true));
+            assertThat(FeatureSet.exists(workDir, "setC"), equalTo(false));
+            for (String bad : new String[] { "../setA", "set/A", "", "set A" })
+                assertThrows(IllegalArgumentException.class, () -> FeatureSet.setFile(workDir, bad), bad);
+            RowFilterExpression expr = new RowFilterExpression("SET(setB) & !SET(setA) | SET");
+            assertThat(expr.getSetNames(), contains("setA", "setB"));
+            assertThat(expr.usesDefault(RowFilter.Type.SET), equalTo(true));
+            assertThat(new RowFilterExpression("SET(setA)").usesDefault(RowFilter.Type.SET), equalTo(false));
+        } finally {
+            for (File file : workDir.listFiles())
+                file.delete();
+            workDir.delete();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the gene-name index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestGeneNameIndex {
+
+    @Test
+    public void testGeneNameIndex() {
+        String[] fids = new String[] { "f0", "f1", "f2", "f3", "f4", "f5" };
+        String[] genes = new String[] { "thrL", "thrA", "thrB", "dnaK", "", "b0015" };
+        String[] bNums = new String[] { "b0001", "b0002", "b0003", "b0014", "b0018", "b0015" };
+        GeneNameIndex index = new GeneNameIndex(fids, genes, bNums);
+        assertThat(index.size(), equalTo(6));
+        assertThat(index.getGeneNames(), contains("b0015", "dnaK", "thrA", "thrB", "thrL"));
+        assertThat(index.match("THRA").stream().toArray(), equalTo(new int[] { 1 }));
+        assertThat(index.match("b0018").stream().toArray(), equalTo(new int[] { 4 }));
+        assertThat(index.match("thr").isEmpty(), equalTo(true));
+        assertThat(index.match("thr*").stream().toArray(), equalTo(new int[] { 0, 1, 2 }));
+        assertThat(index.match("b001*").stream().toArray(), equalTo(new int[] { 3, 4, 5 }));
+        assertThat(index.match("b0?1?").stream().toArray(), equalTo(new int[] { 3, 4, 5 }));
+        assertThat(index.match("*k").stream().toArray(), equalTo(new int[] { 3 }));
+        assertThat(index.match("t?r[").isEmpty(), equalTo(true));
+        assertThat(index.getMembers("thrA, dnaK,b0003").stream().toArray(), equalTo(new int[] { 1, 2, 3 }));
+        assertThat(index.getMembers("").isEmpty(), equalTo(true));
+    }
+
+}
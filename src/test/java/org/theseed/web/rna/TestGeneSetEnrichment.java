@@ -0,0 +1,87 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Bruce Parrello
+ *
+ */
+public class TestGeneSetEnrichment {
+
+    @Test
+    public void testEnrichment() {
+        GeneSetEnrichment enrichment = new GeneSetEnrichment(20);
+        BitSet members = new BitSet();
+        members.set(0, 5);
+        enrichment.addCategory(GeneSetEnrichment.Source.SUBSYSTEM, "SubA", members);
+        members = new BitSet();
+        members.set(10, 20);
+        enrichment.addCategory(GeneSetEnrichment.Source.REGULON, "AR1", members);
+        members = new BitSet();
+        members.set(3, 7);
+        enrichment.addCategory(GeneSetEnrichment.Source.GROUP, "thrLABC", members);
+        enrichment.addCategory(GeneSetEnrichment.Source.GROUP, "empty", new BitSet());
+        assertThat(enrichment.size(), equalTo(3));
+        BitSet shown = new BitSet();
+        shown.set(0, 4);
+        List<GeneSetEnrichment.Result> results = enrichment.score(shown);
+        assertThat(results.size(), equalTo(2));
+        GeneSetEnrichment.Result result = results.get(0);
+        assertThat(result.getName(), equalTo("SubA"));
+        assertThat(result.getHits(), equalTo(4));
+        assertThat(result.getSize(), equalTo(5));
+        assertThat(result.getExpected(), closeTo(1.0, 1e-9));
+        assertThat(result.getFold(), closeTo(4.0, 1e-9));
+        assertThat(result.getPValue(), closeTo(5.0 / 4845.0, 1e-9));
+        assertThat(result.getQValue(), closeTo(15.0 / 4845.0, 1e-9));
+        result = results.get(1);
+        assertThat(result.getName(), equalTo("thrLABC"));
+        assertThat(result.getSource(), equalTo(GeneSetEnrichment.Source.GROUP));
+        assertThat(result.getHits(), equalTo(1));
+        assertThat(result.getPValue(), closeTo(1.0 - 1820.0 / 4845.0, 1e-9));
+        assertThat(result.getQValue(), closeTo((1.0 - 1820.0 / 4845.0) * 1.5, 1e-9));
+        assertThat(enrichment.score(new BitSet()).size(), equalTo(0));
+    }
+
+    @Test
+    public void testGroupCategories() {
+        Map<String, BitSet> groupMap = new HashMap<String, BitSet>();
+        BitSet members = new BitSet();
+        members.set(0, 10);
+        groupMap.put("AR0", members);
+        groupMap.put("", members);
+        members = new BitSet();
+        members.set(10, 15);
+        groupMap.put("AR2", members);
+        members = new BitSet();
+        members.set(15, 18);
+        groupMap.put("thrLABC", members);
+        GeneSetEnrichment enrichment = new GeneSetEnrichment(20);
+        enrichment.addGroups(new GroupCatalog(groupMap));
+        assertThat(enrichment.size(), equalTo(2));
+        BitSet shown = new BitSet();
+        shown.set(0, 20);
+        List<GeneSetEnrichment.Result> results = enrichment.score(shown);
+        List<String> names = results.stream().map(x -> x.getName()).sorted().collect(Collectors.toList());
+        assertThat(names, contains("AR2", "thrLABC"));
+        for (GeneSetEnrichment.Result result : results) {
+            if (result.getName().equals("AR2"))
+                assertThat(result.getSource(), equalTo(GeneSetEnrichment.Source.REGULON));
+            else
+                assertThat(result.getSource(), equalTo(GeneSetEnrichment.Source.GROUP));
+        }
+    }
+
+}
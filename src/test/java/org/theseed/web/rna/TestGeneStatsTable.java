@@ -0,0 +1,28 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the per-gene summary statistics.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestGeneStatsTable {
+
+    @Test
+    public void testQuantile() {
+        double[] sorted = new double[] { 1.0, 2.0, 3.0, 4.0, 5.0 };
+        assertThat(GeneStatsTable.quantile(sorted, 5, 0.5), closeTo(3.0, 1e-9));
+        assertThat(GeneStatsTable.quantile(sorted, 5, 0.1), closeTo(1.4, 1e-9));
+        assertThat(GeneStatsTable.quantile(sorted, 4, 1.0), closeTo(4.0, 1e-9));
+        assertThat(GeneStatsTable.quantile(sorted, 1, 0.9), closeTo(1.0, 1e-9));
+    }
+
+}
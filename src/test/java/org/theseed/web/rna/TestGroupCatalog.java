@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the group catalog.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestGroupCatalog {
+
+    @Test
+    public void testSidecar() throws IOException {
+        File workDir = Files.createTempDirectory("groups").toFile();
+        File dataFile = new File(workDir, "test.tpm.ser");
+        File groupsFile = GroupCatalog.sidecarFile(dataFile);
+        try {
+            // The dummy database cannot be loaded, so this only works if the sidecar is used.
+            Files.writeString(dataFile.toPath(), "x");
+            dataFile.setLastModified(dataFile.lastModified() - 10000);
+            groupsFile.getParentFile().mkdirs();
+            Files.write(groupsFile.toPath(), Arrays.asList("group\tmembers", "thrLABC\t0,1,2,3", "AR3\t1,4",
+                    "Crp-2\t2,3,5", "AR12\t6"));
+            assertThat(GroupCatalog.isCurrent(dataFile), equalTo(true));
+            GroupCatalog groups = GroupCatalog.load(dataFile);
+            assertThat(groups.size(), equalTo(4));
+            assertThat(groups.getNames(), contains("AR12", "AR3", "Crp-2", "thrLABC"));
+            assertThat(groups.contains("AR3"), equalTo(true));
+            assertThat(groups.contains("AR4"), equalTo(false));
+            assertThat(groups.getMembers("thrLABC").stream().toArray(), equalTo(new int[] { 0, 1, 2, 3 }));
+            assertThat(groups.getMembers("AR3").stream().toArray(), equalTo(new int[] { 1, 4 }));
+            assertThat(groups.getMembers("Crp-2").stream().toArray(), equalTo(new int[] { 2, 3, 5 }));
+            assertThat(groups.getMembers("missing").isEmpty(), equalTo(true));
+            // A sidecar older than the database is out of date.
+            groupsFile.setLastModified(dataFile.lastModified() - 10000);
+            assertThat(GroupCatalog.isCurrent(dataFile), equalTo(false));
+        } finally {
+            groupsFile.delete();
+            dataFile.delete();
+            workDir.delete();
+        }
+    }
+
+    @Test
+    public void testMembers() {
+        Map<String, BitSet> groupMap = new HashMap<String, BitSet>();
+        BitSet operon = new BitSet();
+        operon.set(3, 6);
+        groupMap.put("dnaKJ", operon);
+        BitSet regulon = new BitSet();
+        regulon.set(0);
+        regulon.set(5);
+        groupMap.put("AR7", regulon);
+        GroupCatalog groups = new GroupCatalog(groupMap);
+        assertThat(groups.size(), equalTo(2));
+        assertThat(groups.getNames(), contains("AR7", "dnaKJ"));
+        assertThat(groups.getMembers("dnaKJ").stream().toArray(), equalTo(new int[] { 3, 4, 5 }));
+        // The bit sets support direct overlap tests, as in the group row filter.
+        assertThat(groups.getMembers("AR7").intersects(groups.getMembers("dnaKJ")), equalTo(true));
+        assertThat(groups.getMembers("AR7").get(4), equalTo(false));
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sample-group comparison statistics.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestGroupComparison {
+
+    @Test
+    public void testGroupComparison() {
+        assertThat(GroupComparison.matches("7_0_*_A_asdO_000_D000_0_24_*", "7_0_0_A_asdO_000_D000_0_24_M1"), equalTo(true));
+        assertThat(GroupComparison.matches("7_0_*_A_asdO_000_D000_0_24_*", "7_0_0_A_asdO_000_D000_0_12_M1"), equalTo(false));
+        assertThat(GroupComparison.matches("7_0_*_A_asdO_000_D000_0_24_*", "7_0_0_A_asdO_000_D000_0_24_M1_rep0"),
+                equalTo(false));
+        double[] adjusted = GroupComparison.adjust(new double[] { 0.01, 0.04, Double.NaN, 0.03, 0.005 });
+        assertThat(adjusted[0], closeTo(0.02, 1e-9));
+        assertThat(adjusted[1], closeTo(0.04, 1e-9));
+        assertThat(Double.isNaN(adjusted[2]), equalTo(true));
+        assertThat(adjusted[3], closeTo(0.04, 1e-9));
+        assertThat(adjusted[4], closeTo(0.02, 1e-9));
+    }
+
+    @Test
+    public void testWelch() {
+        // The values are chosen so that their log2(x + 1) values are small integers.
+        String[] samples = new String[] { "A_1", "A_2", "A_3", "A_4", "B_1", "B_2", "B_3" };
+        boolean[] good = new boolean[] { true, true, true, false, true, true, true };
+        float[][] values = new float[][] { { 1, 3, 7, 1000, 15, 31, 63 }, { 0, 1, 3, 1000, 3, 15, 63 },
+                { 7, 7, 7, 1000, 7, 7, 7 } };
+        ExpressionMatrix matrix = new ExpressionMatrix(samples, good, values, new double[3]);
+        GroupComparison comparison = new GroupComparison(matrix, "A_*", "B_*");
+        // The bad-quality sample A_4 is not in the first group.
+        assertThat(comparison.getSize1(), equalTo(3));
+        assertThat(comparison.getSize2(), equalTo(3));
+        // Feature 0 has logs 1,2,3 against 4,5,6:  both variances are 1, so t = -3 / sqrt(2/3) and df = 4.
+        double t0 = -3.0 / Math.sqrt(2.0 / 3.0);
+        assertThat(comparison.getLogFoldChange(0), closeTo(-3.0, 1e-9));
+        assertThat(comparison.getTStat(0), closeTo(t0, 1e-9));
+        // With 4 degrees of freedom, the two-sided p-value is 1 - (3/2) x (1 - x^2 / 3), where x = |t| / sqrt(t^2 + 4).
+        double x = Math.abs(t0) / Math.sqrt(t0 * t0 + 4.0);
+        double p0 = 1.0 - 1.5 * x * (1.0 - x * x / 3.0);
+        assertThat(p0, closeTo(0.021311, 1e-6));
+        // Feature 1 has logs 0,1,2 against 2,4,6:  the variances are 1 and 4, so t = -3 / sqrt(5/3) and df = 50/17.
+        double t1 = -3.0 / Math.sqrt(5.0 / 3.0);
+        assertThat(comparison.getTStat(1), closeTo(t1, 1e-9));
+        double p1 = 2.0 * new TDistribution(null, 50.0 / 17.0).cumulativeProbability(t1);
+        // Feature 2 has no variance, so it has no statistics.
+        assertThat(Double.isNaN(comparison.getTStat(2)), equalTo(true));
+        assertThat(Double.isNaN(comparison.getAdjustedP(2)), equalTo(true));
+        // The Benjamini-Hochberg adjustment ranks p0 first and p1 second out of two.
+        assertThat(p0, lessThan(p1));
+        assertThat(comparison.getAdjustedP(0), closeTo(Math.min(p0 * 2.0, p1), 1e-9));
+        assertThat(comparison.getAdjustedP(1), closeTo(p1, 1e-9));
+    }
+
+}
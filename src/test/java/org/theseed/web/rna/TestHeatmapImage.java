@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the heatmap image builder.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestHeatmapImage {
+
+    @Test
+    public void testHeatmap() throws IOException {
+        HeatmapImage image = new HeatmapImage(3, 2);
+        image.set(0, 0, 1);
+        image.set(1, 1, -1);
+        image.set(2, 1, 3);
+        assertThat(image.getColor(0, 0), equalTo(image.getColor(HeatmapImage.CELL_WIDTH - 1, 0)));
+        assertThat(image.getColor(0, 0), not(equalTo(image.getColor(HeatmapImage.CELL_WIDTH, 0))));
+        assertThat(image.getColor(HeatmapImage.CELL_WIDTH, 1), equalTo(0xFFFFFF));
+        assertThat(image.getColor(HeatmapImage.CELL_WIDTH, 2), not(equalTo(image.getColor(0, 0))));
+        assertThat(image.toDataUri(), startsWith("data:image/png;base64,"));
+    }
+
+    @Test
+    public void testPalette() {
+        // Each range index is drawn in its palette color.
+        final int n = HeatmapImage.RANGE_PALETTE.length;
+        HeatmapImage image = new HeatmapImage(1, n);
+        for (int i = 0; i < n; i++)
+            image.set(0, i, i);
+        for (int i = 0; i < n; i++)
+            assertThat(String.format("#%06X", image.getColor(i * HeatmapImage.CELL_WIDTH, 0)),
+                    equalToIgnoringCase(HeatmapImage.RANGE_PALETTE[i]));
+    }
+
+}
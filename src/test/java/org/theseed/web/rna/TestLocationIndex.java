@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the feature location index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestLocationIndex {
+
+    @Test
+    public void testLocationIndex() {
+        String[] fids = new String[] { "f0", "f1", "f2", "f3", "f4", "f5" };
+        String[] contigs = new String[] { "c1", "c1", "c2", "c1", "c1", null };
+        int[] lefts = new int[] { 5000, 100, 200, 9000, 20000, 0 };
+        int[] rights = new int[] { 6000, 900, 800, 9500, 21000, 0 };
+        char[] dirs = new char[] { '+', '-', '+', '+', '+', '+' };
+        String[] operons = new String[] { "opA", "", null, "opA", null, null };
+        LocationIndex index = new LocationIndex(fids, contigs, lefts, rights, dirs, operons);
+        assertThat(index.getRank(1), equalTo(0));
+        assertThat(index.getRank("f0"), equalTo(1));
+        assertThat(index.getRank("f2"), equalTo(4));
+        assertThat(index.getRank(5), equalTo(5));
+        assertThat(index.getRank("fX"), equalTo(6));
+        assertThat(index.getRegion(0, 5000, false).stream().toArray(), equalTo(new int[] { 0, 1, 3 }));
+        assertThat(index.getRegion(0, 5000, true).stream().toArray(), equalTo(new int[] { 0, 3 }));
+        assertThat(index.getRegion(0, 3000, false).stream().toArray(), equalTo(new int[] { 0, 3 }));
+        assertThat(index.getOperonRegion(0, 0, false).stream().toArray(), equalTo(new int[] { 0, 3 }));
+        assertThat(index.getOperonRegion(0, 11000, false).stream().toArray(), equalTo(new int[] { 0, 1, 3, 4 }));
+        assertThat(index.getOperonRegion(1, 4100, false).stream().toArray(), equalTo(new int[] { 0, 1 }));
+        assertThat(index.getRegion(5, 100000, false).isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testSplitOperon() {
+        // The operon is mistakenly assigned to features on two contigs.
+        String[] fids = new String[] { "g0", "g1", "g2", "g3", "g4" };
+        String[] contigs = new String[] { "c1", "c1", "c2", "c2", "c1" };
+        int[] lefts = new int[] { 100, 1000, 50000, 52000, 30000 };
+        int[] rights = new int[] { 900, 1500, 51000, 52500, 31000 };
+        char[] dirs = new char[] { '+', '+', '+', '+', '+' };
+        String[] operons = new String[] { "opB", "opB", "opB", null, null };
+        LocationIndex index = new LocationIndex(fids, contigs, lefts, rights, dirs, operons);
+        // Each operon region only spans the members on the anchor feature's contig.
+        assertThat(index.getOperonRegion(0, 0, false).stream().toArray(), equalTo(new int[] { 0, 1 }));
+        assertThat(index.getOperonRegion(1, 100, false).stream().toArray(), equalTo(new int[] { 0, 1 }));
+        assertThat(index.getOperonRegion(2, 0, false).stream().toArray(), equalTo(new int[] { 2 }));
+        assertThat(index.getOperonRegion(2, 1000, false).stream().toArray(), equalTo(new int[] { 2, 3 }));
+    }
+
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the range codes against the cell-by-cell coloring computation they replaced.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestRangeCodes {
+
+    /** number of table columns */
+    private static final int COLS = 5;
+    /** number of features */
+    private static final int FEATS = 400;
+    /** range limits for value coloring */
+    private static final double[] LIMITS = new double[] { 10.0, 100.0, 100.0, 1000.0 };
+
+    /**
+     * @return a batch of column values, including missing values and values exactly on the limits
+     *
+     * @param rand		random number generator
+     * @param bases		baseline value for each feature
+     */
+    private static ColumnBatch buildBatch(Random rand, double[] bases) {
+        double[][] values = new double[COLS][FEATS];
+        for (int i = 0; i < COLS; i++) {
+            for (int f = 0; f < FEATS; f++) {
+                double value;
+                switch (rand.nextInt(6)) {
+                case 0 :
+                    value = Double.NaN;
+                    break;
+                case 1 :
+                    value = LIMITS[rand.nextInt(LIMITS.length)];
+                    break;
+                case 2 :
+                    value = (rand.nextBoolean() ? 0.5 : 2.0) * bases[f];
+                    break;
+                default :
+                    value = rand.nextDouble() * 2000.0;
+                }
+                values[i][f] = value;
+            }
+        }
+        return new ColumnBatch(values);
+    }
+
+    /**
+     * @return the old baseline or quantile coloring for a cell
+     *
+     * @param low		feature's low limit
+     * @param high		feature's high limit
+     * @param value		cell value
+     */
+    private static int oldLimitCode(double low, double high, double value) {
+        int retVal = 0;
+        if (value <= low)
+            retVal = 3;
+        else if (value >= high)
+            retVal = 1;
+        return retVal;
+    }
+
+    /**
+     * @return the old range coloring for a cell
+     *
+     * @param value		cell value
+     */
+    private static int oldRangeCode(double value) {
+        int retVal = 0;
+        while (retVal < LIMITS.length && value > LIMITS[retVal]) retVal++;
+        return retVal;
+    }
+
+    /**
+     * Verify that the variant rows match the old computation, which compared the codes of the colored cells.
+     *
+     * @param codes		range codes to check
+     * @param colored	set of range-colored columns
+     */
+    private static void checkVariants(RangeCodes codes, BitSet colored) {
+        int[] cols = colored.stream().toArray();
+        BitSet variants = codes.getVariantRows(FEATS);
+        for (int f = 0; f < FEATS; f++) {
+            boolean expected = false;
+            for (int k = 1; k < cols.length; k++)
+                expected = expected || (codes.get(cols[k], f) != codes.get(cols[0], f));
+            assertThat("Feature " + f, variants.get(f), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testModes() {
+        Random rand = new Random(314159);
+        double[] bases = new double[FEATS];
+        double[] q10 = new double[FEATS];
+        double[] q90 = new double[FEATS];
+        for (int f = 0; f < FEATS; f++) {
+            bases[f] = rand.nextDouble() * 500.0;
+            // Features with no statistics have NaN quantiles.
+            boolean missing = (rand.nextInt(10) == 0);
+            q10[f] = (missing ? Double.NaN : rand.nextDouble() * 200.0);
+            q90[f] = (missing ? Double.NaN : q10[f] + rand.nextDouble() * 800.0);
+        }
+        ColumnBatch batch = buildBatch(rand, bases);
+        BitSet colored = new BitSet();
+        colored.set(0);
+        colored.set(2);
+        colored.set(3);
+        // Baseline coloring.
+        double[] lows = new double[FEATS];
+        double[] highs = new double[FEATS];
+        for (int f = 0; f < FEATS; f++) {
+            lows[f] = 0.5 * bases[f];
+            highs[f] = 2 * bases[f];
+        }
+        RangeCodes codes = new RangeCodes(batch, colored, lows, highs);
+        for (int i = 0; i < COLS; i++) {
+            for (int f = 0; f < FEATS; f++)
+                assertThat("Baseline cell " + i + "," + f, codes.get(i, f),
+                        equalTo(oldLimitCode(lows[f], highs[f], batch.getValue(i, f))));
+        }
+        checkVariants(codes, colored);
+        // Quantile coloring.
+        codes = new RangeCodes(batch, colored, q10, q90);
+        for (int i = 0; i < COLS; i++) {
+            for (int f = 0; f < FEATS; f++)
+                assertThat("Quantile cell " + i + "," + f, codes.get(i, f),
+                        equalTo(oldLimitCode(q10[f], q90[f], batch.getValue(i, f))));
+        }
+        checkVariants(codes, colored);
+        // Value coloring.
+        codes = new RangeCodes(batch, colored, LIMITS);
+        for (int i = 0; i < COLS; i++) {
+            for (int f = 0; f < FEATS; f++)
+                assertThat("Range cell " + i + "," + f, codes.get(i, f), equalTo(oldRangeCode(batch.getValue(i, f))));
+        }
+        checkVariants(codes, colored);
+        // Missing values and values on a limit, explicitly.
+        double[][] edges = new double[][] { { Double.NaN, 10.0, 100.0, 1000.0, 10.5, 5000.0, -1.0 } };
+        codes = new RangeCodes(new ColumnBatch(edges), colored, LIMITS);
+        for (int f = 0; f < edges[0].length; f++)
+            assertThat(codes.get(0, f), equalTo(new int[] { 0, 0, 1, 3, 1, 4, 0 }[f]));
+        codes = new RangeCodes(new ColumnBatch(edges), colored, new double[] { 10.0, 10.0, 10.0, 10.0, 20.0, 20.0, 0.0 },
+                new double[] { 100.0, 20.0, 100.0, 1000.0, 20.0, Double.NaN, 0.0 });
+        for (int f = 0; f < edges[0].length; f++)
+            assertThat(codes.get(0, f), equalTo(new int[] { 0, 3, 1, 1, 3, 0, 3 }[f]));
+    }
+
+}
@@ -0,0 +1,43 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the RNA database type catalog.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestRnaDataType {
+
+    @Test
+    public void testClusterGaps() throws IOException {
+        File workDir = Files.createTempDirectory("clusters").toFile();
+        try {
+            for (String name : new String[] { "CL5.tpm.ser", "CL2.tpm.ser", "CL10.tpm.ser", "other.ser" })
+                new File(workDir, name).createNewFile();
+            RnaDataType[] rnaTypes = RnaDataType.values(workDir);
+            assertThat(rnaTypes.length, equalTo(5));
+            assertThat(rnaTypes[2].getFileName(), equalTo("CL2.tpm.ser"));
+            assertThat(rnaTypes[4].getFileName(), equalTo("CL10.tpm.ser"));
+            assertThat(ColumnDescriptor.getDbType("A,B|0|6", rnaTypes).getFileName(), equalTo("CL5.tpm.ser"));
+            assertThat(ColumnDescriptor.getDbType("A,B|0|4", rnaTypes), equalTo(rnaTypes[0]));
+            assertThat(RnaDataType.find(rnaTypes, 11), equalTo(rnaTypes[4]));
+        } finally {
+            for (File file : workDir.listFiles())
+                file.delete();
+            workDir.delete();
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the hierarchical row clustering.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestRowClustering {
+
+    @Test
+    public void testClustering() {
+        double[][] vectors = new double[][] { { 1.0, 100.0, 1.0 }, { 50.0, 2.0, 50.0 }, { 1.2, 90.0, Double.NaN },
+                { 55.0, 2.5, 45.0 }, { 1.0, 100.0, 1.1 } };
+        RowClustering clustering = new RowClustering(vectors);
+        assertThat(ArrayUtils.toObject(clustering.getOrder()), arrayContaining(0, 4, 2, 1, 3));
+        clustering = new RowClustering(new double[][] { { 1.0 } });
+        assertThat(clustering.getOrder().length, equalTo(1));
+    }
+
+}
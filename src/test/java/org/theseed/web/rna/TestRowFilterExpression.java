@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the row-filter expression parser.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestRowFilterExpression {
+
+    @Test
+    public void testRowFilterExpression() {
+        RowFilterExpression expr = new RowFilterExpression("SUBSYSTEM(AspaThreModu) & COLVALUE(2, 10.0) & !GROUP(thrLABC)");
+        assertThat(expr.uses(RowFilter.Type.SUBSYSTEM), equalTo(true));
+        assertThat(expr.uses(RowFilter.Type.GROUP), equalTo(true));
+        assertThat(expr.uses(RowFilter.Type.VARIANT), equalTo(false));
+        assertThat(expr.usesDefault(RowFilter.Type.GROUP), equalTo(false));
+        assertThat(expr.getMaxColumn(), equalTo(2));
+        expr = new RowFilterExpression("COLVALUE(4,1.5) | COLVALUE(1,2) & GROUP");
+        assertThat(expr.getMaxColumn(), equalTo(4));
+        assertThat(expr.usesDefault(RowFilter.Type.GROUP), equalTo(true));
+        expr = new RowFilterExpression("(anysub or variant) and not genes(thrA,thrB)");
+        assertThat(expr.uses(RowFilter.Type.ANYSUB), equalTo(true));
+        assertThat(expr.uses(RowFilter.Type.GENES), equalTo(true));
+        assertThat(expr.uses(RowFilter.Type.CORRELATED), equalTo(false));
+        assertThat(expr.getMaxColumn(), equalTo(-1));
+        for (String bad : new String[] { "", "ANYSUB &", "(ANYSUB", "FOO", "ANYSUB(x)", "COLVALUE(x,1)", "GROUP(AR1",
+                "EXPRESSION", "ANYSUB VARIANT" })
+            assertThrows(IllegalArgumentException.class, () -> new RowFilterExpression(bad), bad);
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sample fragment index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSampleFragmentIndex {
+
+    @Test
+    public void testFragmentIndex() {
+        List<String> samples = Arrays.asList("M_asdD_9_rep0", "M_asdD_9_rep1", "M_asdO_9_rep0", "N_asdD_9_rep0",
+                "M_asdD_3_rep0", "M_asdD_9");
+        SampleFragmentIndex index = new SampleFragmentIndex(samples);
+        assertThat(index.getFragmentCount(), equalTo(4));
+        assertThat(index.getFragmentValues(1), contains("asdD", "asdO"));
+        assertThat(index.getMatches("M_asdD_9_*"), contains("M_asdD_9_rep0", "M_asdD_9_rep1"));
+        assertThat(index.getMatches("*_*_9_rep0"), contains("M_asdD_9_rep0", "M_asdO_9_rep0", "N_asdD_9_rep0"));
+        assertThat(index.getMatches("M_asdX_9_*").isEmpty(), equalTo(true));
+        assertThat(index.getMatches("M_*").isEmpty(), equalTo(true));
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.theseed.basic.ParseFailureException;
+
+/**
+ * Test the sample metadata table.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSampleMetaTable {
+
+    /** sidecar file contents for the tests */
+    private static final String[] META_LINES = new String[] {
+            "sample_id\toriginal_name\tgood\tproduction\tOD\treads\tsize\tpct_qual\tprocess_date\tavg_read_len\tcoverage\tpct_expressed",
+            "7_0_0_A_asdO_000_D000_0_12_M1\told12\tY\t1.5\t0.8\t3000000000\t450000000000\t92.5\t2021-03-04\t150.0\t24.2\t88.0",
+            "7_0_0_A_asdO_000_D000_0_3_M1\told3\t\t0.2\t0.3\t1200\t180000\t60.0\t2021-03-05\t150.0\t0.04\t10.0",
+            "7_0_0_A_asdO_000_D000_0_9_M1\told9\tY\t1.1\t1.2\t2000000\t300000000\t95.0\t2021-03-06\t150.0\t64.7\t91.5" };
+
+    /**
+     * @return a metadata table loaded from a sidecar file for a dummy database
+     *
+     * @param workDir	directory to contain the database
+     *
+     * @throws IOException
+     */
+    private static SampleMetaTable buildTable(File workDir) throws IOException {
+        File dataFile = new File(workDir, "test.tpm.ser");
+        Files.writeString(dataFile.toPath(), "x");
+        dataFile.setLastModified(dataFile.lastModified() - 10000);
+        File metaFile = SampleMetaTable.sidecarFile(dataFile);
+        metaFile.getParentFile().mkdirs();
+        Files.write(metaFile.toPath(), Arrays.asList(META_LINES));
+        return SampleMetaTable.load(dataFile);
+    }
+
+    /**
+     * Delete a directory and its contents.
+     *
+     * @param dir	directory to delete
+     */
+    private static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                deleteAll(file);
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testSidecar() throws IOException {
+        File workDir = Files.createTempDirectory("meta").toFile();
+        try {
+            // The dummy database cannot be loaded, so this only works if the sidecar is used.
+            SampleMetaTable table = buildTable(workDir);
+            assertThat(table.size(), equalTo(3));
+            assertThat(table.getName(1), equalTo("7_0_0_A_asdO_000_D000_0_3_M1"));
+            assertThat(table.getOldName(0), equalTo("old12"));
+            assertThat(table.isGood(0), equalTo(true));
+            assertThat(table.isGood(1), equalTo(false));
+            assertThat(table.getProduction(2), closeTo(1.1, 1e-9));
+            assertThat(table.getOpticalDensity(2), closeTo(1.2, 1e-9));
+            // Read counts can exceed the range of an integer.
+            assertThat(table.getReadCount(0), equalTo(3000000000L));
+            assertThat(table.getBaseCount(0), equalTo(450000000000L));
+            assertThat(table.getQuality(1), closeTo(60.0, 1e-9));
+            assertThat(table.getProcessingDate(2), equalTo("2021-03-06"));
+            assertThat(table.getMeanReadLen(1), closeTo(150.0, 1e-9));
+            assertThat(table.getCoverage(1), closeTo(0.04, 1e-9));
+            assertThat(table.getExpressedPercent(0), closeTo(88.0, 1e-9));
+        } finally {
+            deleteAll(workDir);
+        }
+    }
+
+    @Test
+    public void testSelection() throws IOException, ParseFailureException {
+        File workDir = Files.createTempDirectory("meta").toFile();
+        try {
+            SampleMetaTable table = buildTable(workDir);
+            // Low-quality samples are only selected on request.
+            List<SampleMetaTable.Filter> filters = new ArrayList<SampleMetaTable.Filter>();
+            assertThat(table.select(filters, false), equalTo(new int[] { 0, 2 }));
+            assertThat(table.select(filters, true), equalTo(new int[] { 0, 1, 2 }));
+            filters.add(new SampleMetaTable.Filter("coverage>1"));
+            filters.add(new SampleMetaTable.Filter("pct_qual >= 95"));
+            assertThat(table.select(filters, true), equalTo(new int[] { 2 }));
+            assertThrows(ParseFailureException.class, () -> new SampleMetaTable.Filter("sample_id>1"));
+            assertThrows(ParseFailureException.class, () -> new SampleMetaTable.Filter("coverage>abc"));
+            // Sort by a column and by a score array.
+            int[] all = new int[] { 0, 1, 2 };
+            assertThat(table.sort(all, SampleMetaTable.Field.PRODUCTION, false), equalTo(new int[] { 1, 2, 0 }));
+            assertThat(table.sort(all, SampleMetaTable.Field.COVERAGE, true), equalTo(new int[] { 2, 0, 1 }));
+            double[] scores = new double[] { 0.5, Double.NaN, 0.9 };
+            assertThat(table.sort(all, scores, true), equalTo(new int[] { 2, 0, 1 }));
+            assertThat(table.sort(all, scores, false), equalTo(new int[] { 0, 2, 1 }));
+            // Column statistics.
+            SampleMetaTable.Stats stats = table.getStats(SampleMetaTable.Field.PRODUCTION, all);
+            assertThat(stats.getCount(), equalTo(3));
+            assertThat(stats.getMin(), closeTo(0.2, 1e-9));
+            assertThat(stats.getMax(), closeTo(1.5, 1e-9));
+            assertThat(stats.getMean(), closeTo(0.9333333, 1e-6));
+            assertThat(stats.getStdev(), closeTo(0.6658328, 1e-6));
+            stats = table.getStats(SampleMetaTable.Field.PRODUCTION, new int[] { 1 });
+            assertThat(Double.isNaN(stats.getStdev()), equalTo(true));
+            assertThat(Double.isNaN(table.getStats(SampleMetaTable.Field.OD, new int[0]).getMean()), equalTo(true));
+        } finally {
+            deleteAll(workDir);
+        }
+    }
+
+    @Test
+    public void testPaging() {
+        SampleMetaTable.Page page = new SampleMetaTable.Page(250, 1, 100);
+        assertThat(page.getCount(), equalTo(3));
+        assertThat(page.getStart(), equalTo(0));
+        assertThat(page.getEnd(), equalTo(100));
+        assertThat(page.hasPrevious(), equalTo(false));
+        assertThat(page.hasNext(), equalTo(true));
+        page = new SampleMetaTable.Page(250, 3, 100);
+        assertThat(page.getStart(), equalTo(200));
+        assertThat(page.getEnd(), equalTo(250));
+        assertThat(page.hasPrevious(), equalTo(true));
+        assertThat(page.hasNext(), equalTo(false));
+        // A page past the end moves to the last page.
+        page = new SampleMetaTable.Page(250, 7, 100);
+        assertThat(page.getNumber(), equalTo(3));
+        assertThat(page.getStart(), equalTo(200));
+        page = new SampleMetaTable.Page(200, 2, 100);
+        assertThat(page.getCount(), equalTo(2));
+        assertThat(page.getEnd(), equalTo(200));
+        // An empty list has a single empty page.
+        page = new SampleMetaTable.Page(0, 4, 100);
+        assertThat(page.getNumber(), equalTo(1));
+        assertThat(page.getCount(), equalTo(1));
+        assertThat(page.getStart(), equalTo(0));
+        assertThat(page.getEnd(), equalTo(0));
+        assertThat(page.hasNext(), equalTo(false));
+    }
+
+}
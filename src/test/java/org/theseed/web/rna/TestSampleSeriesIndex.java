@@ -0,0 +1,38 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sample series index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSampleSeriesIndex {
+
+    @Test
+    public void testSeriesIndex() {
+        List<String> samples = Arrays.asList("7_0_0_A_asdO_000_D000_0_12_M1", "7_0_0_A_asdO_000_D000_0_4p5_M1",
+                "7_0_0_A_asdO_000_D000_0_24_M1_rep0", "7_0_0_A_asdO_000_D000_0_3_M1", "7_0_0_A_asdO_000_D000_0_ML_M1",
+                "7_0_0_A_asdO_000_D000_0_9_M1_rep0", "7_0_0_A_asdO_000_D000_I_9_M1", "A_1");
+        SampleSeriesIndex index = new SampleSeriesIndex(samples);
+        assertThat(index.size(), equalTo(3));
+        assertThat(index.getAllTimes("7_0_0_A_asdO_000_D000_0_12_M1").keySet(), contains("3", "4p5", "12"));
+        assertThat(index.getAllTimes("A_1").isEmpty(), equalTo(true));
+        // A sample with a non-numeric time point is not in its series, but it can still find the members.
+        assertThat(index.getAllTimes("7_0_0_A_asdO_000_D000_0_ML_M1").keySet(), contains("3", "4p5", "12"));
+        assertThat(index.getReplicateSeries("7_0_0_A_asdO_000_D000_0_ML_M1").size(), equalTo(2));
+        assertThat(index.getReplicateSeries("7_0_0_A_asdO_000_D000_0_3_M1").size(), equalTo(2));
+        assertThat(index.getReplicateSeries("7_0_0_A_asdO_000_D000_I_9_M1").size(), equalTo(1));
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sample similarity index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSampleSimilarityIndex {
+
+    @Test
+    public void testRanking() {
+        // The values are large compared to their spread, so the correlation is only right in double precision.
+        String[] samples = new String[] { "S0", "S1", "S2", "S3", "S4" };
+        float[][] values = new float[][] { { 10001, 10002, 10004, 10001, 0 }, { 10002, 10004, 10003, 10003, 0 },
+                { 10003, 10006, 10002, 10002, Float.NaN }, { 10004, 10008, 10001, 10004, 0 } };
+        boolean[] good = new boolean[] { true, true, true, true, true };
+        ExpressionMatrix matrix = new ExpressionMatrix(samples, good, values, new double[values.length]);
+        SampleSimilarityIndex index = new SampleSimilarityIndex(matrix);
+        assertThat(index.getColumn("S3"), equalTo(3));
+        assertThat(index.getColumn("S9"), equalTo(-1));
+        double[] scores = index.score(0, SampleSimilarityIndex.Measure.CORRELATION);
+        assertThat(scores[0], closeTo(1.0, 1e-9));
+        assertThat(scores[1], closeTo(1.0, 1e-9));
+        assertThat(scores[2], closeTo(-1.0, 1e-9));
+        assertThat(scores[3], closeTo(0.8, 1e-9));
+        // A sample with no variation has no correlation.
+        assertThat(Double.isNaN(scores[4]), equalTo(true));
+        // Rank the samples the way the metadata page does.
+        final double[] corr = Arrays.stream(scores).map(x -> (Double.isNaN(x) ? -2.0 : x)).toArray();
+        int[] ranked = IntStream.range(0, samples.length).boxed()
+                .sorted((a, b) -> Double.compare(corr[b], corr[a])).mapToInt(x -> x).toArray();
+        assertThat(ranked, equalTo(new int[] { 0, 1, 3, 2, 4 }));
+        // Cosine similarity is defined for all the non-zero samples.
+        scores = index.score(0, SampleSimilarityIndex.Measure.COSINE);
+        double dot = 10001.0 * 10002 + 10002.0 * 10004 + 10003.0 * 10006 + 10004.0 * 10008;
+        double norm0 = Math.sqrt(10001.0 * 10001 + 10002.0 * 10002 + 10003.0 * 10003 + 10004.0 * 10004);
+        double norm1 = Math.sqrt(10002.0 * 10002 + 10004.0 * 10004 + 10006.0 * 10006 + 10008.0 * 10008);
+        assertThat(scores[1], closeTo(dot / (norm0 * norm1), 1e-12));
+        assertThat(Double.isNaN(scores[4]), equalTo(true));
+        scores = index.score(4, SampleSimilarityIndex.Measure.COSINE);
+        assertThat(Double.isNaN(scores[0]), equalTo(true));
+    }
+
+}
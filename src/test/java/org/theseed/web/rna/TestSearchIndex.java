@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the full-text search index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSearchIndex {
+
+    @Test
+    public void testSearchIndex() {
+        SearchIndex index = new SearchIndex();
+        index.addDocument(SearchIndex.Kind.GENE, "fig|83333.1.peg.2", "thrA", "b0002",
+                "Aspartokinase (EC 2.7.2.4) / Homoserine dehydrogenase (EC 1.1.1.3)");
+        index.addDocument(SearchIndex.Kind.GENE, "fig|83333.1.peg.4", "thrC", "b0004", "Threonine synthase (EC 4.2.3.1)");
+        index.addDocument(SearchIndex.Kind.SUBSYSTEM, "AspaThreModu", "AspaThreModu", "",
+                "Aspartate to threonine module");
+        index.addDocument(SearchIndex.Kind.GROUP, "thrLABC", "thrLABC", "", "4 features");
+        index.finish();
+        assertThat(index.size(), equalTo(4));
+        assertThat(SearchIndex.words("L-Threonine (EC 4.2.3.1)"), arrayContaining("l", "threonine", "ec", "4", "2", "3", "1"));
+        List<SearchIndex.Hit> hits = index.search("threonine");
+        assertThat(hits.stream().map(x -> x.getId()).toArray(), arrayContaining("fig|83333.1.peg.4", "AspaThreModu"));
+        assertThat(hits.get(0).getKind(), equalTo(SearchIndex.Kind.GENE));
+        assertThat(hits.get(0).getAlias(), equalTo("b0004"));
+        assertThat(hits.get(1).getDescription(), equalTo("Aspartate to threonine module"));
+        // Prefix matches score lower than whole-word matches.
+        hits = index.search("thr");
+        assertThat(hits.stream().map(x -> x.getId()).toArray(), arrayContaining("fig|83333.1.peg.2",
+                "fig|83333.1.peg.4", "AspaThreModu", "thrLABC"));
+        hits = index.search("THRA");
+        assertThat(hits.size(), equalTo(1));
+        assertThat(hits.get(0).getScore(), equalTo(2));
+        // All the words must match.
+        hits = index.search("aspart thr");
+        assertThat(hits.stream().map(x -> x.getId()).toArray(), arrayContaining("fig|83333.1.peg.2", "AspaThreModu"));
+        assertThat(index.search("b0004 dehydrogenase").size(), equalTo(0));
+        assertThat(index.search("  ").size(), equalTo(0));
+        assertThat(index.search("zzz").size(), equalTo(0));
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sidecar file utilities.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSidecarFile {
+
+    @Test
+    public void testSidecar() throws IOException {
+        File workDir = Files.createTempDirectory("sidecar").toFile();
+        File dataFile = new File(workDir, "test.tpm.ser");
+        File cacheDir = new File(workDir, SidecarFile.CACHE_DIR);
+        File sidecar = SidecarFile.locate(dataFile, ".test.tbl");
+        File other = new File(workDir, "rnaSubs.txt");
+        try {
+            // The sidecar goes in the cache directory, so the data directory only holds the database.
+            File expected = new File(cacheDir, "test.tpm.ser.test.tbl");
+            assertThat(sidecar.getAbsoluteFile(), equalTo(expected.getAbsoluteFile()));
+            Files.writeString(dataFile.toPath(), "x");
+            dataFile.setLastModified(dataFile.lastModified() - 10000);
+            assertThat(SidecarFile.isCurrent(sidecar, dataFile), equalTo(false));
+            SidecarFile.write(sidecar, x -> {
+                try (PrintWriter writer = new PrintWriter(x)) {
+                    writer.println("line 1");
+                    writer.println("line 2");
+                }
+            });
+            assertThat(Files.readAllLines(sidecar.toPath()), contains("line 1", "line 2"));
+            assertThat(cacheDir.list(), arrayContaining(sidecar.getName()));
+            assertThat(workDir.list(), arrayContainingInAnyOrder(dataFile.getName(), cacheDir.getName()));
+            assertThat(SidecarFile.isCurrent(sidecar, dataFile), equalTo(true));
+            // A newer source file makes the sidecar out of date.
+            Files.writeString(other.toPath(), "y");
+            other.setLastModified(sidecar.lastModified() + 10000);
+            assertThat(SidecarFile.isCurrent(sidecar, dataFile, other), equalTo(false));
+        } finally {
+            sidecar.delete();
+            cacheDir.delete();
+            other.delete();
+            dataFile.delete();
+            workDir.delete();
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package org.theseed.web.rna;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the subsystem index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TestSubsystemIndex {
+
+    @Test
+    public void testIndex() {
+        Map<String, String> descriptions = new HashMap<String, String>();
+        descriptions.put("ThreSynt", "Threonine synthesis");
+        descriptions.put("AspaThreModu", "Aspartate to threonine module");
+        descriptions.put("Extra", "Subsystem not in the genome list");
+        String[][] featSubIds = new String[][] { { "ThreSynt", "AspaThreModu" }, { }, { "ThreSynt" }, { "Extra" },
+                { } };
+        SubsystemIndex index = new SubsystemIndex(Arrays.asList("ThreSynt", "AspaThreModu", "Empty"), featSubIds,
+                descriptions);
+        // The genome's subsystems are sorted, and subsystems found only on features go at the end.
+        assertThat(index.getAllSubsystems(), contains("AspaThreModu", "Empty", "ThreSynt", "Extra"));
+        assertThat(index.getSubOrdinal("ThreSynt"), equalTo(2));
+        assertThat(index.getSubOrdinal("Extra"), equalTo(3));
+        assertThat(index.getMembers("ThreSynt").stream().toArray(), equalTo(new int[] { 0, 2 }));
+        assertThat(index.getMembers("AspaThreModu").stream().toArray(), equalTo(new int[] { 0 }));
+        assertThat(index.getMembers("Empty").isEmpty(), equalTo(true));
+        assertThat(index.getMembers("Missing").isEmpty(), equalTo(true));
+        assertThat(index.getAnySubsystem().stream().toArray(), equalTo(new int[] { 0, 2, 3 }));
+        assertThat(index.isInSubsystem(1), equalTo(false));
+        assertThat(index.isInSubsystem(3), equalTo(true));
+        assertThat(index.getSubsystems(0), equalTo(new int[] { 2, 0 }));
+        assertThat(index.getSubsystems(4).length, equalTo(0));
+        // The links are rendered with the feature and subsystem filled in.
+        String template = SubsystemIndex.urlTemplate("sub?id=" + SubsystemIndex.SUB_MARK + "&fid="
+                + SubsystemIndex.FID_MARK);
+        String links = index.renderLinks(0, "fig|83333.1.peg.2", template);
+        assertThat(links, containsString("href=\"sub?id=ThreSynt&amp;fid=fig|83333.1.peg.2\""));
+        assertThat(links, containsString("title=\"Aspartate to threonine module\""));
+        assertThat(links.indexOf("ThreSynt"), lessThan(links.indexOf("AspaThreModu")));
+        assertThat(index.renderLinks(1, "fig|83333.1.peg.3", template), nullValue());
+    }
+
+}